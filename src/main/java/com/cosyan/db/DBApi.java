@@ -16,10 +16,11 @@
 package com.cosyan.db;
 
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
+import com.cosyan.db.DBExecutor.Lane;
+import com.cosyan.db.DBExecutor.LaneStat;
+import com.cosyan.db.DBExecutor.OverloadException;
+import com.cosyan.db.DBExecutor.Priority;
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.auth.Authenticator;
 import com.cosyan.db.auth.Authenticator.AuthException;
@@ -35,7 +36,9 @@ import com.cosyan.db.meta.MetaRepo;
 import com.cosyan.db.session.AdminSession;
 import com.cosyan.db.session.Session;
 import com.cosyan.db.tools.BackupManager;
+import com.cosyan.db.tools.RetentionManager;
 import com.cosyan.db.transaction.TransactionHandler;
+import com.google.common.collect.ImmutableMap;
 
 public class DBApi {
 
@@ -45,10 +48,10 @@ public class DBApi {
   private final TransactionJournal transactionJournal;
   private final Authenticator authenticator;
   private final BackupManager backupManager;
+  private final RetentionManager retentionManager;
   private final EntityHandler entityHandler;
 
-  private final ThreadPoolExecutor threadPoolExecutor;
-  private final ArrayBlockingQueue<Runnable> queue;
+  private final DBExecutor executor;
 
   public DBApi(Config config) throws IOException, DBException, ConfigException {
     // System.out.println("Server starting in root directory " + config.confDir());
@@ -61,12 +64,9 @@ public class DBApi {
     backupManager = new BackupManager(config, metaRepo);
     entityHandler = new EntityHandler(metaRepo.config(), transactionHandler);
     metaRepo.init();
+    retentionManager = new RetentionManager(config, metaRepo, this::newAdminSession);
     // System.out.println("Server started.");
-    int numThreads = config.getInt(Config.DB_NUM_THREADS);
-    // TODO: figure out capacity.
-    this.queue = new ArrayBlockingQueue<>(numThreads * 16);
-    this.threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, Long.MAX_VALUE,
-        TimeUnit.SECONDS, queue);
+    this.executor = new DBExecutor(config);
   }
 
   public MetaRepo getMetaRepo() {
@@ -85,6 +85,10 @@ public class DBApi {
     return config;
   }
 
+  public RetentionManager retentionManager() {
+    return retentionManager;
+  }
+
   public Session newAdminSession() {
     return newAdminSession(authenticator.token());
   }
@@ -115,11 +119,24 @@ public class DBApi {
   }
 
   public void shutdown() throws IOException {
+    retentionManager.shutdown();
     metaRepo.shutdown();
   }
 
-  public void execute(Runnable runnable) {
-    threadPoolExecutor.execute(runnable);
+  public void execute(Lane lane, Task task) throws OverloadException {
+    execute(lane, Priority.NORMAL, task);
+  }
+
+  public void execute(Lane lane, Priority priority, Task task) throws OverloadException {
+    executor.execute(lane, task.session.authToken().username(), priority, task);
+  }
+
+  public void execute(Lane lane, String user, Runnable runnable) throws OverloadException {
+    executor.execute(lane, user, runnable);
+  }
+
+  public ImmutableMap<Lane, LaneStat> executorStats() {
+    return executor.stats();
   }
 
   public static abstract class Task implements Runnable {
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.lang.sql.Tokens;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.Data;
+
+/**
+ * Runs DB tasks on separate bounded pools per workload type, so long running
+ * exports cannot starve point queries and admins can always get a thread. Queued
+ * tasks of a lane run in the order of their priority, then in arrival order. With
+ * authentication enabled a single user can occupy at most half of the queue of a
+ * lane, otherwise all the sessions run as the same user.
+ *
+ * <p>If DB_VIRTUAL_THREADS is set and the JVM supports it the lanes run their
+ * tasks on virtual threads, so tasks waiting for locks are cheap.
+ */
+public class DBExecutor {
+
+  public enum Lane {
+    READ, WRITE, ANALYTICS, ADMIN
+  }
+
+  // In the order of execution.
+  public enum Priority {
+    HIGH, NORMAL, LOW
+  }
+
+  public static class OverloadException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;
+
+    public OverloadException(Lane lane, int retryAfterSeconds) {
+      super(String.format("Too many %s tasks, retry after %s seconds.",
+          lane.name().toLowerCase(Locale.ROOT), retryAfterSeconds));
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+      return retryAfterSeconds;
+    }
+  }
+
+  @Data
+  public static class LaneStat {
+    private final int threads;
+    private final int active;
+    private final int queued;
+    private final int capacity;
+    private final long completed;
+    private final long rejected;
+  }
+
+  private static final int RETRY_AFTER_SECONDS = 1;
+
+  private final ImmutableMap<Lane, LaneExecutor> lanes;
+  private final boolean virtual;
+
+  public DBExecutor(Config config) throws ConfigException {
+    int numThreads = config.getInt(Config.DB_NUM_THREADS);
+    int queueSize = config.getInt(Config.DB_QUEUE_SIZE, numThreads * 16);
+    int analyticsThreads = config.getInt(Config.DB_ANALYTICS_NUM_THREADS, 1);
+    virtual = config.getBool(Config.DB_VIRTUAL_THREADS, false) && virtualThreadsSupported();
+    boolean fair = config.getBool(Config.AUTH, false);
+    lanes = ImmutableMap.of(
+        Lane.READ, new LaneExecutor(Lane.READ, numThreads, queueSize, virtual, fair),
+        Lane.WRITE, new LaneExecutor(Lane.WRITE, numThreads, queueSize, virtual, fair),
+        Lane.ANALYTICS, new LaneExecutor(Lane.ANALYTICS, analyticsThreads, queueSize, virtual, fair),
+        Lane.ADMIN, new LaneExecutor(Lane.ADMIN, 1, queueSize, virtual, fair));
+  }
+
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  public static boolean virtualThreadsSupported() {
+    return virtualThreadFactory("probe-").isPresent();
+  }
+
+  /**
+   * Returns a factory of named virtual threads, empty on JVMs older than 21. Looked up
+   * reflectively since the code base targets Java 8.
+   */
+  static Optional<ThreadFactory> virtualThreadFactory(String prefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, prefix, 0L);
+      return Optional.of((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Guesses the workload type from the first keyword of the SQL.
+   */
+  public static Lane lane(String sql) {
+    if (sql == null) {
+      return Lane.READ;
+    }
+    String trimmed = sql.trim().toLowerCase(Locale.ROOT);
+    int end = 0;
+    while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+      end++;
+    }
+    String keyword = trimmed.substring(0, end);
+    if (keyword.equals(Tokens.SELECT) || keyword.equals(Tokens.FETCH)
+        || keyword.equals(Tokens.DECLARE) || keyword.equals(Tokens.CLOSE)) {
+      return Lane.READ;
+    } else if (keyword.equals(Tokens.IMPORT) || keyword.equals(Tokens.EXPORT)) {
+      return Lane.ANALYTICS;
+    } else if (keyword.equals(Tokens.CREATE) || keyword.equals(Tokens.ALTER)
+        || keyword.equals(Tokens.DROP) || keyword.equals(Tokens.GRANT)) {
+      return Lane.ADMIN;
+    } else {
+      return Lane.WRITE;
+    }
+  }
+
+  /**
+   * Parses the priority of a request, normal if not specified or invalid.
+   */
+  public static Priority priority(String priority) {
+    if (priority != null) {
+      for (Priority p : Priority.values()) {
+        if (p.name().equalsIgnoreCase(priority.trim())) {
+          return p;
+        }
+      }
+    }
+    return Priority.NORMAL;
+  }
+
+  public void execute(Lane lane, String user, Runnable runnable) throws OverloadException {
+    execute(lane, user, Priority.NORMAL, runnable);
+  }
+
+  public void execute(Lane lane, String user, Priority priority, Runnable runnable) throws OverloadException {
+    lanes.get(lane).execute(user, priority, runnable);
+  }
+
+  public ImmutableMap<Lane, LaneStat> stats() {
+    ImmutableMap.Builder<Lane, LaneStat> builder = ImmutableMap.builder();
+    for (LaneExecutor laneExecutor : lanes.values()) {
+      builder.put(laneExecutor.lane, laneExecutor.stat());
+    }
+    return builder.build();
+  }
+
+  public void shutdown() {
+    for (LaneExecutor laneExecutor : lanes.values()) {
+      laneExecutor.executor.shutdown();
+    }
+  }
+
+  private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+    private final Priority priority;
+    private final long sequence;
+    private final Runnable runnable;
+
+    private PrioritizedTask(Priority priority, long sequence, Runnable runnable) {
+      this.priority = priority;
+      this.sequence = sequence;
+      this.runnable = runnable;
+    }
+
+    @Override
+    public void run() {
+      runnable.run();
+    }
+
+    @Override
+    public int compareTo(PrioritizedTask other) {
+      int result = priority.compareTo(other.priority);
+      return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  private static class LaneExecutor {
+    private final Lane lane;
+    private final int capacity;
+    // The number of running and queued tasks.
+    private final int maxTasks;
+    private final Optional<Integer> maxPerUser;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, AtomicInteger> tasksPerUser = new ConcurrentHashMap<>();
+    private final AtomicInteger tasks = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private LaneExecutor(Lane lane, int numThreads, int capacity, boolean virtual, boolean fair) {
+      this.lane = lane;
+      this.capacity = capacity;
+      this.maxTasks = numThreads + capacity;
+      this.maxPerUser = fair ? Optional.of(Math.max(1, capacity / 2)) : Optional.empty();
+      String prefix = "cosyan-" + lane.name().toLowerCase(Locale.ROOT) + "-";
+      // The priority queue is unbounded, the number of tasks is limited in execute().
+      if (virtual) {
+        // Virtual threads are not meant to be pooled, let idle ones terminate.
+        this.executor = new ThreadPoolExecutor(numThreads, numThreads, 1,
+            TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+            virtualThreadFactory(prefix).get());
+        this.executor.allowCoreThreadTimeOut(true);
+      } else {
+        this.executor = new ThreadPoolExecutor(numThreads, numThreads, Long.MAX_VALUE,
+            TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat(prefix + "%d").build());
+      }
+    }
+
+    private OverloadException reject() {
+      rejected.incrementAndGet();
+      return new OverloadException(lane, RETRY_AFTER_SECONDS);
+    }
+
+    private void execute(String user, Priority priority, Runnable runnable) throws OverloadException {
+      if (tasks.incrementAndGet() > maxTasks) {
+        tasks.decrementAndGet();
+        throw reject();
+      }
+      AtomicInteger userTasks = maxPerUser.isPresent()
+          ? tasksPerUser.computeIfAbsent(user, u -> new AtomicInteger())
+          : null;
+      if (userTasks != null && userTasks.incrementAndGet() > maxPerUser.get()) {
+        userTasks.decrementAndGet();
+        tasks.decrementAndGet();
+        throw reject();
+      }
+      try {
+        executor.execute(new PrioritizedTask(priority, sequence.getAndIncrement(), () -> {
+          try {
+            runnable.run();
+          } finally {
+            if (userTasks != null) {
+              userTasks.decrementAndGet();
+            }
+            tasks.decrementAndGet();
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        if (userTasks != null) {
+          userTasks.decrementAndGet();
+        }
+        tasks.decrementAndGet();
+        throw reject();
+      }
+    }
+
+    private LaneStat stat() {
+      return new LaneStat(
+          executor.getCorePoolSize(),
+          executor.getActiveCount(),
+          executor.getQueue().size(),
+          capacity,
+          executor.getCompletedTaskCount(),
+          rejected.get());
+    }
+  }
+}
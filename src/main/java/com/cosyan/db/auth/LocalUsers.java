@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.cosyan.db.auth.Authenticator.AuthException;
+import com.google.common.io.BaseEncoding;
 
 public class LocalUsers {
 
@@ -65,8 +66,8 @@ public class LocalUsers {
 
   private String hash(String password) throws NoSuchAlgorithmException {
     MessageDigest digest = MessageDigest.getInstance("SHA-256");
-    return javax.xml.bind.DatatypeConverter
-        .printHexBinary(digest.digest(password.getBytes(StandardCharsets.UTF_8)));
+    return BaseEncoding.base16()
+        .encode(digest.digest(password.getBytes(StandardCharsets.UTF_8)));
   }
 
   public AuthToken auth(String username, String password, String token) throws AuthException {
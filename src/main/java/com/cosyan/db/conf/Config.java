@@ -41,15 +41,42 @@ public class Config {
   @ConfigType(type = ConfigType.INT, mandatory = true, doc = "The port Cosyan server listens on.")
   public static final String PORT = "PORT";
 
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The port of the binary TCP protocol, disabled if not set.")
+  public static final String TCP_PORT = "TCP_PORT";
+
   @ConfigType(type = ConfigType.INT, mandatory = true, doc = "The number of threads for the webserver.")
   public static final String WEBSERVER_NUM_THREADS = "WEBSERVER_NUM_THREADS";
 
   @ConfigType(type = ConfigType.INT, mandatory = true, doc = "The number of threads for the DB.")
   public static final String DB_NUM_THREADS = "DB_NUM_THREADS";
 
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The number of threads for long running tasks like imports and exports, 1 by default.")
+  public static final String DB_ANALYTICS_NUM_THREADS = "DB_ANALYTICS_NUM_THREADS";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The maximum number of waiting tasks per workload type, 16 times DB_NUM_THREADS by default.")
+  public static final String DB_QUEUE_SIZE = "DB_QUEUE_SIZE";
+
+  @ConfigType(type = ConfigType.BOOL, mandatory = false, doc = "Whether to run DB tasks on virtual threads if the JVM supports them (Java 21+), false by default. DB_NUM_THREADS can be set much higher in this mode.")
+  public static final String DB_VIRTUAL_THREADS = "DB_VIRTUAL_THREADS";
+
   @ConfigType(type = ConfigType.INT, mandatory = true, doc = "The amount of time tasks sleep before trying to acquire locks again.")
   public static final String TR_RETRY_MS = "TR_RETRY_MS";
 
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The amount of time after which unused cursors are closed, 10 minutes by default.")
+  public static final String CURSOR_IDLE_TIMEOUT_MS = "CURSOR_IDLE_TIMEOUT_MS";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The amount of time after which unused sessions are closed, 30 minutes by default.")
+  public static final String SESSION_IDLE_TIMEOUT_MS = "SESSION_IDLE_TIMEOUT_MS";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The memory budget of the index node cache shared by all indexes in megabytes, 64 by default.")
+  public static final String INDEX_CACHE_SIZE_MB = "INDEX_CACHE_SIZE_MB";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The memory budget of the page cache shared by all log tables in megabytes, 64 by default.")
+  public static final String TABLE_CACHE_SIZE_MB = "TABLE_CACHE_SIZE_MB";
+
+  @ConfigType(type = ConfigType.INT, mandatory = false, doc = "The period of checking the tables with retention for expired records in seconds, 1 hour by default. 0 disables the check.")
+  public static final String RETENTION_CHECK_INTERVAL_SEC = "RETENTION_CHECK_INTERVAL_SEC";
+
   private final String confDir;
   private final Properties props;
 
@@ -143,4 +170,18 @@ public class Config {
     }
     return integer(props.getProperty(key));
   }
+
+  public int getInt(String key, int defaultValue) throws ConfigException {
+    if (!props.containsKey(key)) {
+      return defaultValue;
+    }
+    return integer(props.getProperty(key));
+  }
+
+  public boolean getBool(String key, boolean defaultValue) throws ConfigException {
+    if (!props.containsKey(key)) {
+      return defaultValue;
+    }
+    return bool(props.getProperty(key));
+  }
 }
@@ -0,0 +1,749 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.index.ByteTrie.RuntimeIndexException;
+import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
+import com.cosyan.db.model.DataTypes.DataType;
+
+/**
+ * A disk based B+tree mapping keys to the file pointers of records. Entries are
+ * ordered by (key, file pointer), so a key can point to multiple records and every
+ * entry is unique. Leaves are linked in both directions for ordered and range scans.
+ * 
+ * The tree is stored in fixed size pages, page 0 is a header storing the root. Modified
+ * pages are pending until commit, committed pages are kept in the shared
+ * {@link NodeCache}. Deletes do not rebalance the tree, cursors skip empty leaves.
+ * 
+ * @author gsvigruha
+ */
+public class BPlusTree {
+
+  public static final int PAGE_SIZE = 4096;
+
+  private static final byte LEAF = 1;
+  private static final byte INNER = 2;
+
+  // Type, count, previous and next leaf.
+  private static final int LEAF_HEADER_SIZE = 1 + 4 + 8 + 8;
+  // Type, count and the first child.
+  private static final int INNER_HEADER_SIZE = 1 + 4 + 8;
+
+  // A page split in half by size has to fit both halves.
+  public static final int MAX_KEY_SIZE = PAGE_SIZE / 4 - 2 * Long.BYTES;
+
+  // Leaves are filled up to this size by bulk loading, leaving room for inserts.
+  private static final int BULK_FILL_SIZE = PAGE_SIZE * 7 / 8;
+
+  private static class Page {
+    private final boolean leaf;
+    private int count;
+    private Object[] keys;
+    private long[] positions;
+    // Inner pages only, count + 1 children.
+    private long[] children;
+    // Leaf pages only, 0 if there is no such leaf.
+    private long prev;
+    private long next;
+    private int size;
+
+    private Page(boolean leaf, int capacity) {
+      this.leaf = leaf;
+      this.keys = new Object[capacity];
+      this.positions = new long[capacity];
+      this.children = leaf ? null : new long[capacity + 1];
+      this.size = leaf ? LEAF_HEADER_SIZE : INNER_HEADER_SIZE;
+    }
+
+    private Page copy() {
+      Page page = new Page(leaf, Math.max(count + 1, 8));
+      System.arraycopy(keys, 0, page.keys, 0, count);
+      System.arraycopy(positions, 0, page.positions, 0, count);
+      if (!leaf) {
+        System.arraycopy(children, 0, page.children, 0, count + 1);
+      }
+      page.count = count;
+      page.prev = prev;
+      page.next = next;
+      page.size = size;
+      return page;
+    }
+
+    private void ensureCapacity() {
+      if (count == keys.length) {
+        keys = Arrays.copyOf(keys, count * 2);
+        positions = Arrays.copyOf(positions, count * 2);
+        if (!leaf) {
+          children = Arrays.copyOf(children, count * 2 + 1);
+        }
+      }
+    }
+
+    private int entrySize(int keySize) {
+      return leaf ? keySize + Long.BYTES : keySize + 2 * Long.BYTES;
+    }
+  }
+
+  private final String fileName;
+  private final DataType<?> keyType;
+  private final NodeCache.Handle cache;
+  private final LinkedHashMap<Long, Page> pendingPages = new LinkedHashMap<>();
+
+  // Guards seek and read/write pairs on raf, a monitor would pin virtual threads.
+  private final ReentrantLock fileLock = new ReentrantLock();
+  private RandomAccessFile raf;
+  private long root;
+  private long stableRoot;
+  private long pageCount;
+  private long stablePageCount;
+
+  public BPlusTree(String fileName, DataType<?> keyType) throws IOException {
+    this(fileName, keyType, NodeCache.defaultCache());
+  }
+
+  public BPlusTree(String fileName, DataType<?> keyType, NodeCache nodeCache) throws IOException {
+    this.fileName = fileName;
+    this.keyType = keyType;
+    this.cache = nodeCache.register();
+    this.raf = new RandomAccessFile(fileName, "rw");
+    if (raf.length() == 0) {
+      root = 1;
+      writeHeader();
+      writePage(1, new Page(true, 0));
+    } else {
+      raf.seek(0);
+      root = raf.readLong();
+    }
+    pageCount = raf.length() / PAGE_SIZE;
+    stableRoot = root;
+    stablePageCount = pageCount;
+  }
+
+  public void close() throws IOException {
+    cleanUp();
+    raf.close();
+  }
+
+  public void cleanUp() {
+    cache.clear();
+  }
+
+  public void drop() throws IOException {
+    close();
+    new File(fileName).delete();
+  }
+
+  public void reOpen() throws FileNotFoundException {
+    this.raf = new RandomAccessFile(fileName, "rw");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compareKeys(Object key1, Object key2) {
+    return ((Comparable<Object>) key1).compareTo(key2);
+  }
+
+  private static int compare(Page page, int i, Object key, long position) {
+    int result = compareKeys(page.keys[i], key);
+    return result != 0 ? result : Long.compare(page.positions[i], position);
+  }
+
+  /**
+   * The index of the first entry not smaller than (key, position).
+   */
+  private static int lowerBound(Page page, Object key, long position) {
+    int low = 0;
+    int high = page.count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(page, mid, key, position) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * The index of the child of an inner page containing (key, position).
+   */
+  private static int childIndex(Page page, Object key, long position) {
+    int low = 0;
+    int high = page.count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(page, mid, key, position) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private Page getPage(long id) throws IOException {
+    Page page = pendingPages.get(id);
+    if (page != null) {
+      return page;
+    }
+    page = (Page) cache.get(id);
+    if (page == null) {
+      if (id <= 0 || id >= pageCount) {
+        throw new RuntimeIndexException("Inconsistent state.");
+      }
+      page = readPage(id);
+      cache.put(id, page, page.size + NodeCache.ENTRY_OVERHEAD);
+    }
+    return page;
+  }
+
+  /**
+   * Returns a pending copy of the page which can be modified until commit.
+   */
+  private Page writablePage(long id) throws IOException {
+    Page page = pendingPages.get(id);
+    if (page == null) {
+      page = getPage(id).copy();
+      pendingPages.put(id, page);
+    }
+    return page;
+  }
+
+  private long newPage(Page page) {
+    long id = pageCount++;
+    pendingPages.put(id, page);
+    return id;
+  }
+
+  private Page readPage(long id) throws IOException {
+    byte[] bytes = new byte[PAGE_SIZE];
+    fileLock.lock();
+    try {
+      raf.seek(id * PAGE_SIZE);
+      raf.readFully(bytes);
+    } finally {
+      fileLock.unlock();
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    byte type = in.readByte();
+    int count = in.readInt();
+    Page page = new Page(type == LEAF, Math.max(count, 8));
+    page.count = count;
+    if (page.leaf) {
+      page.prev = in.readLong();
+      page.next = in.readLong();
+    } else {
+      page.children[0] = in.readLong();
+    }
+    for (int i = 0; i < count; i++) {
+      page.keys[i] = keyType.read(in);
+      page.positions[i] = in.readLong();
+      if (!page.leaf) {
+        page.children[i + 1] = in.readLong();
+      }
+      page.size += page.entrySize(keyType.size(page.keys[i]));
+    }
+    return page;
+  }
+
+  private void writePage(long id, Page page) throws IOException {
+    ByteArrayOutputStream b = new ByteArrayOutputStream(PAGE_SIZE);
+    DataOutputStream out = new DataOutputStream(b);
+    out.writeByte(page.leaf ? LEAF : INNER);
+    out.writeInt(page.count);
+    if (page.leaf) {
+      out.writeLong(page.prev);
+      out.writeLong(page.next);
+    } else {
+      out.writeLong(page.children[0]);
+    }
+    for (int i = 0; i < page.count; i++) {
+      keyType.write(page.keys[i], out);
+      out.writeLong(page.positions[i]);
+      if (!page.leaf) {
+        out.writeLong(page.children[i + 1]);
+      }
+    }
+    fileLock.lock();
+    try {
+      raf.seek(id * PAGE_SIZE);
+      raf.write(Arrays.copyOf(b.toByteArray(), PAGE_SIZE));
+    } finally {
+      fileLock.unlock();
+    }
+  }
+
+  private void writeHeader() throws IOException {
+    byte[] header = new byte[PAGE_SIZE];
+    ByteBuffer.wrap(header).putLong(root);
+    fileLock.lock();
+    try {
+      raf.seek(0);
+      raf.write(header);
+    } finally {
+      fileLock.unlock();
+    }
+  }
+
+  private int keySize(Object key) throws IndexException {
+    int keySize = keyType.size(key);
+    if (keySize > MAX_KEY_SIZE) {
+      throw new IndexException("Key '" + key + "' is too long for a B+tree index.");
+    }
+    return keySize;
+  }
+
+  public void put(Object key, long position) throws IOException, IndexException {
+    int keySize = keySize(key);
+    ArrayList<Long> path = new ArrayList<>();
+    ArrayList<Integer> childIndexes = new ArrayList<>();
+    long id = root;
+    Page page = getPage(id);
+    while (!page.leaf) {
+      int c = childIndex(page, key, position);
+      path.add(id);
+      childIndexes.add(c);
+      id = page.children[c];
+      page = getPage(id);
+    }
+    int i = lowerBound(page, key, position);
+    if (i < page.count && compare(page, i, key, position) == 0) {
+      throw new IndexException("Key '" + key + "' already present in index.");
+    }
+    page = writablePage(id);
+    insert(page, i, key, position, 0L, keySize);
+    while (page.size > PAGE_SIZE) {
+      int mid = splitPoint(page);
+      Object sepKey = page.keys[mid];
+      long sepPosition = page.positions[mid];
+      long rightId = split(id, page, mid);
+      if (path.isEmpty()) {
+        Page newRoot = new Page(false, 8);
+        newRoot.children[0] = id;
+        insert(newRoot, 0, sepKey, sepPosition, rightId, keyType.size(sepKey));
+        root = newPage(newRoot);
+        break;
+      }
+      id = path.remove(path.size() - 1);
+      int c = childIndexes.remove(childIndexes.size() - 1);
+      page = writablePage(id);
+      insert(page, c, sepKey, sepPosition, rightId, keyType.size(sepKey));
+    }
+  }
+
+  private static void insert(Page page, int i, Object key, long position, long rightChild, int keySize) {
+    page.ensureCapacity();
+    System.arraycopy(page.keys, i, page.keys, i + 1, page.count - i);
+    System.arraycopy(page.positions, i, page.positions, i + 1, page.count - i);
+    page.keys[i] = key;
+    page.positions[i] = position;
+    if (!page.leaf) {
+      System.arraycopy(page.children, i + 1, page.children, i + 2, page.count - i);
+      page.children[i + 1] = rightChild;
+    }
+    page.count++;
+    page.size += page.entrySize(keySize);
+  }
+
+  private void remove(Page page, int i) {
+    page.size -= page.entrySize(keyType.size(page.keys[i]));
+    System.arraycopy(page.keys, i + 1, page.keys, i, page.count - i - 1);
+    System.arraycopy(page.positions, i + 1, page.positions, i, page.count - i - 1);
+    page.count--;
+    page.keys[page.count] = null;
+  }
+
+  private int splitPoint(Page page) {
+    int half = page.size / 2;
+    int size = page.leaf ? LEAF_HEADER_SIZE : INNER_HEADER_SIZE;
+    int mid = 0;
+    while (mid < page.count - 1 && size < half) {
+      size += page.entrySize(keyType.size(page.keys[mid]));
+      mid++;
+    }
+    return Math.max(mid, 1);
+  }
+
+  /**
+   * Moves the entries from <code>mid</code> to a new right sibling. In case of inner
+   * pages the entry at <code>mid</code> is moved up to the parent.
+   */
+  private long split(long id, Page page, int mid) throws IOException {
+    int from = page.leaf ? mid : mid + 1;
+    Page right = new Page(page.leaf, Math.max(page.count - from, 8));
+    for (int i = from; i < page.count; i++) {
+      right.keys[i - from] = page.keys[i];
+      right.positions[i - from] = page.positions[i];
+      right.size += right.entrySize(keyType.size(page.keys[i]));
+    }
+    right.count = page.count - from;
+    if (!page.leaf) {
+      System.arraycopy(page.children, mid + 1, right.children, 0, right.count + 1);
+    }
+    while (page.count > mid) {
+      remove(page, page.count - 1);
+    }
+    long rightId = newPage(right);
+    if (page.leaf) {
+      right.prev = id;
+      right.next = page.next;
+      if (page.next != 0) {
+        writablePage(page.next).prev = rightId;
+      }
+      page.next = rightId;
+    }
+    return rightId;
+  }
+
+  private long findLeaf(Object key, long position) throws IOException {
+    long id = root;
+    Page page = getPage(id);
+    while (!page.leaf) {
+      id = page.children[childIndex(page, key, position)];
+      page = getPage(id);
+    }
+    return id;
+  }
+
+  private long edgeLeaf(boolean first) throws IOException {
+    long id = root;
+    Page page = getPage(id);
+    while (!page.leaf) {
+      id = page.children[first ? 0 : page.count];
+      page = getPage(id);
+    }
+    return id;
+  }
+
+  public boolean delete(Object key, long position) throws IOException {
+    long id = findLeaf(key, position);
+    Page page = getPage(id);
+    int i = lowerBound(page, key, position);
+    if (i < page.count && compare(page, i, key, position) == 0) {
+      remove(writablePage(id), i);
+      return true;
+    }
+    return false;
+  }
+
+  public boolean delete(Object key) throws IOException {
+    boolean deleted = false;
+    long id = findLeaf(key, Long.MIN_VALUE);
+    while (id != 0) {
+      Page page = getPage(id);
+      int i = lowerBound(page, key, Long.MIN_VALUE);
+      int j = i;
+      while (j < page.count && compareKeys(page.keys[j], key) == 0) {
+        j++;
+      }
+      // The following leaves can have the same key only if this one ends with it.
+      boolean more = j == page.count;
+      if (j > i) {
+        page = writablePage(id);
+        for (int k = j - 1; k >= i; k--) {
+          remove(page, k);
+        }
+        deleted = true;
+      }
+      if (!more) {
+        break;
+      }
+      id = page.next;
+    }
+    return deleted;
+  }
+
+  public long[] get(Object key) throws IOException {
+    return range(key, true, key, true);
+  }
+
+  public boolean contains(Object key) throws IOException {
+    return cursor(key, true, key, true, true).next() >= 0;
+  }
+
+  public long[] range(Object from, boolean fromInclusive, Object to, boolean toInclusive) throws IOException {
+    Cursor cursor = cursor(from, fromInclusive, to, toInclusive, true);
+    long[] result = new long[8];
+    int n = 0;
+    long position;
+    while ((position = cursor.next()) >= 0) {
+      if (n == result.length) {
+        result = Arrays.copyOf(result, n * 2);
+      }
+      result[n++] = position;
+    }
+    return Arrays.copyOf(result, n);
+  }
+
+  /**
+   * Returns a cursor iterating over the file pointers of the entries with keys between
+   * <code>from</code> and <code>to</code> in key order. Null bounds are unbounded.
+   */
+  public Cursor cursor(Object from, boolean fromInclusive, Object to, boolean toInclusive, boolean ascending)
+      throws IOException {
+    return new Cursor(from, fromInclusive, fromInclusive ? Long.MIN_VALUE : Long.MAX_VALUE,
+        to, toInclusive, ascending);
+  }
+
+  /**
+   * Returns a cursor iterating over the file pointers of the entries with <code>key</code>
+   * starting from <code>fromPosition</code> in file pointer order.
+   */
+  public Cursor cursor(Object key, long fromPosition) throws IOException {
+    return new Cursor(key, true, fromPosition, key, true, true);
+  }
+
+  public class Cursor {
+    private final Object from;
+    private final boolean fromInclusive;
+    private final Object to;
+    private final boolean toInclusive;
+    private final boolean ascending;
+
+    private Page page;
+    private int index;
+
+    private Cursor(Object from, boolean fromInclusive, long fromPosition, Object to, boolean toInclusive,
+        boolean ascending) throws IOException {
+      this.from = from;
+      this.fromInclusive = fromInclusive;
+      this.to = to;
+      this.toInclusive = toInclusive;
+      this.ascending = ascending;
+      if (ascending) {
+        if (from == null) {
+          page = getPage(edgeLeaf(true));
+          index = 0;
+        } else {
+          page = getPage(findLeaf(from, fromPosition));
+          index = lowerBound(page, from, fromPosition);
+        }
+      } else {
+        if (to == null) {
+          page = getPage(edgeLeaf(false));
+          index = page.count - 1;
+        } else {
+          long position = toInclusive ? Long.MAX_VALUE : Long.MIN_VALUE;
+          page = getPage(findLeaf(to, position));
+          index = lowerBound(page, to, position) - 1;
+        }
+      }
+    }
+
+    /**
+     * Returns the next file pointer or -1 if there are no more entries.
+     */
+    public long next() throws IOException {
+      while (page != null) {
+        if (ascending) {
+          if (index >= page.count) {
+            page = page.next == 0 ? null : getPage(page.next);
+            index = 0;
+            continue;
+          }
+          if (to != null) {
+            int result = compareKeys(page.keys[index], to);
+            if (result > 0 || (result == 0 && !toInclusive)) {
+              page = null;
+              break;
+            }
+          }
+          return page.positions[index++];
+        } else {
+          if (index < 0) {
+            page = page.prev == 0 ? null : getPage(page.prev);
+            index = page == null ? -1 : page.count - 1;
+            continue;
+          }
+          if (from != null) {
+            int result = compareKeys(page.keys[index], from);
+            if (result < 0 || (result == 0 && !fromInclusive)) {
+              page = null;
+              break;
+            }
+          }
+          return page.positions[index--];
+        }
+      }
+      return -1L;
+    }
+  }
+
+  /**
+   * Order preserving byte representation of the key, compared lexicographically as
+   * signed bytes.
+   */
+  public byte[] sortKey(Object key) {
+    if (key instanceof CompositeKey) {
+      return ((CompositeKey) key).getBytes();
+    }
+    byte[] bytes;
+    if (key instanceof String) {
+      String string = (String) key;
+      ByteBuffer buffer = ByteBuffer.allocate(Character.BYTES * string.length());
+      buffer.asCharBuffer().put(string.toCharArray());
+      bytes = buffer.array();
+    } else {
+      bytes = ByteBuffer.allocate(Long.BYTES).putLong(CompositeKey.orderedLong(key)).array();
+    }
+    // Unsigned to signed order.
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] ^= 0x80;
+    }
+    return bytes;
+  }
+
+  /**
+   * Builds the tree bottom-up from entries sorted by key and file pointer. Pages are
+   * appended to the file directly, only the new root is pending until commit. Falls
+   * back to individual puts if the tree is not empty.
+   */
+  public void bulkLoad(Iterator<? extends Map.Entry<?, Long>> entries) throws IOException, IndexException {
+    if (!pendingPages.isEmpty() || root != 1 || getPage(root).count > 0) {
+      while (entries.hasNext()) {
+        Map.Entry<?, Long> entry = entries.next();
+        put(entry.getKey(), entry.getValue());
+      }
+      return;
+    }
+    try {
+      // The first entry and the id of every page of the level being built.
+      ArrayList<Object> firstKeys = new ArrayList<>();
+      ArrayList<Long> firstPositions = new ArrayList<>();
+      ArrayList<Long> ids = new ArrayList<>();
+      Page leaf = null;
+      Object lastKey = null;
+      long lastPosition = 0L;
+      while (entries.hasNext()) {
+        Map.Entry<?, Long> entry = entries.next();
+        Object key = entry.getKey();
+        long position = entry.getValue();
+        int keySize = keySize(key);
+        if (lastKey != null) {
+          int result = compareKeys(lastKey, key);
+          result = result != 0 ? result : Long.compare(lastPosition, position);
+          if (result == 0) {
+            throw new IndexException("Key '" + key + "' already present in index.");
+          } else if (result > 0) {
+            throw new RuntimeIndexException("Keys are not sorted.");
+          }
+        }
+        if (leaf == null || leaf.size + leaf.entrySize(keySize) > BULK_FILL_SIZE) {
+          long id = pageCount++;
+          if (leaf != null) {
+            leaf.next = id;
+            writePage(id - 1, leaf);
+          }
+          leaf = new Page(true, 64);
+          leaf.prev = ids.isEmpty() ? 0L : id - 1;
+          ids.add(id);
+          firstKeys.add(key);
+          firstPositions.add(position);
+        }
+        insert(leaf, leaf.count, key, position, 0L, keySize);
+        lastKey = key;
+        lastPosition = position;
+      }
+      if (leaf == null) {
+        return;
+      }
+      writePage(pageCount - 1, leaf);
+      while (ids.size() > 1) {
+        ArrayList<Object> upperKeys = new ArrayList<>();
+        ArrayList<Long> upperPositions = new ArrayList<>();
+        ArrayList<Long> upperIds = new ArrayList<>();
+        Page inner = null;
+        for (int i = 0; i < ids.size(); i++) {
+          int keySize = keyType.size(firstKeys.get(i));
+          if (inner == null || inner.size + inner.entrySize(keySize) > BULK_FILL_SIZE) {
+            if (inner != null) {
+              writePage(pageCount++, inner);
+            }
+            inner = new Page(false, 64);
+            inner.children[0] = ids.get(i);
+            upperIds.add(pageCount);
+            upperKeys.add(firstKeys.get(i));
+            upperPositions.add(firstPositions.get(i));
+          } else {
+            insert(inner, inner.count, firstKeys.get(i), firstPositions.get(i), ids.get(i), keySize);
+          }
+        }
+        writePage(pageCount++, inner);
+        ids = upperIds;
+        firstKeys = upperKeys;
+        firstPositions = upperPositions;
+      }
+      root = ids.get(0);
+    } catch (IndexException | IOException | RuntimeException e) {
+      rollback();
+      throw e;
+    }
+  }
+
+  public void commit() throws IOException {
+    for (Map.Entry<Long, Page> page : pendingPages.entrySet()) {
+      writePage(page.getKey(), page.getValue());
+    }
+    if (root != stableRoot) {
+      writeHeader();
+    }
+    if (pageCount * PAGE_SIZE != raf.length()) {
+      throw new RuntimeIndexException("Inconsistent state.");
+    }
+    for (Map.Entry<Long, Page> page : pendingPages.entrySet()) {
+      cache.put(page.getKey(), page.getValue(), page.getValue().size + NodeCache.ENTRY_OVERHEAD);
+    }
+    pendingPages.clear();
+    stableRoot = root;
+    stablePageCount = pageCount;
+  }
+
+  public void rollback() {
+    pendingPages.clear();
+    root = stableRoot;
+    pageCount = stablePageCount;
+    try {
+      if (raf.length() > stablePageCount * PAGE_SIZE) {
+        // Discard the pages written by an uncommitted bulk load.
+        raf.setLength(stablePageCount * PAGE_SIZE);
+      }
+    } catch (IOException e) {
+      throw new RuntimeIndexException("Inconsistent state.");
+    }
+  }
+
+  public ByteMultiTrieStat stats() throws IOException {
+    return new ByteMultiTrieStat(raf.length(), 0L, cache.entries(), pendingPages.size(), 0,
+        cache.hits(), cache.misses(), cache.evictions());
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.cosyan.db.index.ByteTrie.RuntimeIndexException;
+import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
+import com.cosyan.db.io.Serializer;
+import com.cosyan.db.model.DataTypes.DataType;
+
+import lombok.Data;
+
+/**
+ * Index for low cardinality columns, storing the positions of the records per key in a
+ * {@link PositionBitmap}. The bitmaps are kept in memory. The index file is a snapshot of
+ * the bitmaps followed by the log of the committed changes. The log is merged into a new
+ * snapshot when it becomes larger than the snapshot.
+ *
+ * @author gsvigruha
+ */
+public class BitmapIndex {
+
+  private static final byte FORMAT_VERSION = 1;
+  private static final byte ADD = 1;
+  private static final byte REMOVE = 2;
+
+  @Data
+  private static class Change {
+    private final byte op;
+    private final Object key;
+    private final long position;
+  }
+
+  private final String fileName;
+  private final DataType<?> keyType;
+  private final HashMap<Object, PositionBitmap> bitmaps = new HashMap<>();
+  // The positions of all the records with a non null key.
+  private PositionBitmap all = new PositionBitmap();
+  private final ArrayList<Change> pendingChanges = new ArrayList<>();
+  private long snapshotSize;
+  private long fileSize;
+
+  public BitmapIndex(String fileName, DataType<?> keyType) throws IOException {
+    this.fileName = fileName;
+    this.keyType = keyType;
+    if (new File(fileName).exists()) {
+      load();
+    } else {
+      writeSnapshot();
+    }
+  }
+
+  private void load() throws IOException {
+    byte[] data = Files.readAllBytes(Paths.get(fileName));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    if (in.readByte() != FORMAT_VERSION) {
+      throw new RuntimeIndexException(String.format(
+          "Index file '%s' has an unsupported format, the index has to be recreated.", fileName));
+    }
+    int keys = in.readInt();
+    for (int i = 0; i < keys; i++) {
+      Object key = Serializer.readColumn(keyType, in);
+      PositionBitmap bitmap = PositionBitmap.read(in);
+      bitmaps.put(key, bitmap);
+      all = all.or(bitmap);
+    }
+    snapshotSize = data.length - in.available();
+    fileSize = snapshotSize;
+    try {
+      while (in.available() > 0) {
+        byte op = in.readByte();
+        Object key = Serializer.readColumn(keyType, in);
+        long position = in.readLong();
+        apply(op, key, position);
+        fileSize = data.length - in.available();
+      }
+    } catch (EOFException e) {
+      // A partially written log entry of an unfinished commit.
+      try (RandomAccessFile raf = new RandomAccessFile(fileName, "rw")) {
+        raf.setLength(fileSize);
+      }
+    }
+  }
+
+  private boolean apply(byte op, Object key, long position) {
+    if (op == ADD) {
+      all.add(position);
+      return bitmaps.computeIfAbsent(key, k -> new PositionBitmap()).add(position);
+    } else {
+      PositionBitmap bitmap = bitmaps.get(key);
+      if (bitmap == null || !bitmap.remove(position)) {
+        return false;
+      }
+      all.remove(position);
+      if (bitmap.isEmpty()) {
+        bitmaps.remove(key);
+      }
+      return true;
+    }
+  }
+
+  private void writeSnapshot() throws IOException {
+    String tmpFileName = fileName + ".tmp";
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmpFileName), 1 << 16))) {
+      out.writeByte(FORMAT_VERSION);
+      out.writeInt(bitmaps.size());
+      for (Map.Entry<Object, PositionBitmap> entry : bitmaps.entrySet()) {
+        Serializer.writeColumn(entry.getKey(), keyType, out);
+        entry.getValue().write(out);
+      }
+    }
+    Files.move(Paths.get(tmpFileName), Paths.get(fileName),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    snapshotSize = new File(fileName).length();
+    fileSize = snapshotSize;
+  }
+
+  public void put(Object key, long position) {
+    if (apply(ADD, key, position)) {
+      pendingChanges.add(new Change(ADD, key, position));
+    }
+  }
+
+  public boolean delete(Object key, long position) {
+    if (apply(REMOVE, key, position)) {
+      pendingChanges.add(new Change(REMOVE, key, position));
+      return true;
+    }
+    return false;
+  }
+
+  public boolean delete(Object key) {
+    PositionBitmap bitmap = bitmaps.get(key);
+    if (bitmap == null) {
+      return false;
+    }
+    for (long position : bitmap.toArray()) {
+      delete(key, position);
+    }
+    return true;
+  }
+
+  public void bulkLoad(Iterator<Map.Entry<Object, Long>> entries) {
+    while (entries.hasNext()) {
+      Map.Entry<Object, Long> entry = entries.next();
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * The positions of the records with the given key, must not be modified.
+   */
+  public PositionBitmap bitmap(Object key) {
+    PositionBitmap bitmap = bitmaps.get(key);
+    return bitmap == null ? new PositionBitmap() : bitmap;
+  }
+
+  /**
+   * The positions of the records with any non null key, must not be modified.
+   */
+  public PositionBitmap all() {
+    return all;
+  }
+
+  /**
+   * The positions of the records with keys between <code>from</code> and <code>to</code>,
+   * null bounds are unbounded.
+   */
+  @SuppressWarnings("unchecked")
+  public PositionBitmap range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+    PositionBitmap result = new PositionBitmap();
+    for (Map.Entry<Object, PositionBitmap> entry : bitmaps.entrySet()) {
+      Comparable<Object> key = (Comparable<Object>) entry.getKey();
+      if (from != null && key.compareTo(from) < (fromInclusive ? 0 : 1)) {
+        continue;
+      }
+      if (to != null && key.compareTo(to) > (toInclusive ? 0 : -1)) {
+        continue;
+      }
+      result = result.or(entry.getValue());
+    }
+    return result;
+  }
+
+  public long[] get(Object key) {
+    return bitmap(key).toArray();
+  }
+
+  public boolean contains(Object key) {
+    return bitmaps.containsKey(key);
+  }
+
+  public byte[] sortKey(Object key) {
+    return CompositeKey.of(Collections.singletonList(key)).getBytes();
+  }
+
+  public void commit() throws IOException {
+    if (pendingChanges.isEmpty()) {
+      return;
+    }
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(log);
+    for (Change change : pendingChanges) {
+      out.writeByte(change.getOp());
+      Serializer.writeColumn(change.getKey(), keyType, out);
+      out.writeLong(change.getPosition());
+    }
+    pendingChanges.clear();
+    if (fileSize + log.size() - snapshotSize > snapshotSize) {
+      writeSnapshot();
+    } else {
+      try (FileOutputStream fos = new FileOutputStream(fileName, /* append= */true)) {
+        log.writeTo(fos);
+      }
+      fileSize += log.size();
+    }
+  }
+
+  public void rollback() {
+    for (int i = pendingChanges.size() - 1; i >= 0; i--) {
+      Change change = pendingChanges.get(i);
+      apply(change.getOp() == ADD ? REMOVE : ADD, change.getKey(), change.getPosition());
+    }
+    pendingChanges.clear();
+  }
+
+  public ByteMultiTrieStat stats() {
+    return new ByteMultiTrieStat(fileSize, 0L, bitmaps.size(), 0, pendingChanges.size(), 0L, 0L, 0L);
+  }
+
+  public void drop() throws IOException {
+    bitmaps.clear();
+    pendingChanges.clear();
+    new File(fileName).delete();
+  }
+}
@@ -15,18 +15,24 @@
  */
 package com.cosyan.db.index;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
 
 import com.cosyan.db.index.ByteTrie.IndexException;
@@ -35,16 +41,33 @@ import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
 import com.cosyan.db.io.Serializer;
 import com.cosyan.db.model.DataTypes;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
 
 import lombok.Data;
 
+/**
+ * Maps keys to posting lists of file pointers. The posting list of a key is a chain of
+ * nodes in the chain file. Every new node of a chain has twice the capacity of the previous
+ * one (up to {@link #MAX_POINTERS_PER_NODE}), so long lists need a logarithmic number of
+ * random reads. Chains with many deleted values are rewritten into contiguous nodes at
+ * commit.
+ */
 public abstract class ByteMultiTrie<T> {
 
   private static final long[] EMPTY = new long[0];
 
-  private static final int POINTERS_PER_NODE = 10;
-  private static final int NODE_SIZE = Long.BYTES * (POINTERS_PER_NODE + 1);
+  private static final byte FORMAT_VERSION = 2;
+  static final int MIN_POINTERS_PER_NODE = 10;
+  static final int MAX_POINTERS_PER_NODE = 8192;
+  // Next pointer, capacity and number of used slots.
+  private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES * 2;
   private static final long NULL_VALUE = Long.MIN_VALUE;
+  // Files of the old format start with 0 and chain nodes have a next pointer and 10 values.
+  private static final byte LEGACY_FORMAT_VERSION = 0;
+  private static final int LEGACY_POINTERS_PER_NODE = 10;
 
   @Data
   private static class MultiLeaf {
@@ -52,36 +75,31 @@ public abstract class ByteMultiTrie<T> {
     private final long lastIndex;
   }
 
-  private static interface ChainNode {
-
-    public long getValue(int i);
-
-    public long getNextPointer();
-  }
-
   @Data
-  private static class ImmutableNode implements ChainNode {
-    private final long nextPointer;
+  private static class ChainNode {
+    private long nextPointer;
+    private int used;
     private final long[] values;
 
-    public long getValue(int i) {
-      return values[i];
+    private ChainNode(int capacity) {
+      nextPointer = 0L;
+      used = 0;
+      values = new long[capacity];
+      Arrays.fill(values, NULL_VALUE);
     }
-  }
 
-  @Data
-  private static class PendingNode implements ChainNode {
-    private long nextPointer;
-    private long[] values;
+    private ChainNode(long nextPointer, int used, long[] values) {
+      this.nextPointer = nextPointer;
+      this.used = used;
+      this.values = values;
+    }
 
-    public PendingNode() {
-      nextPointer = 0L;
-      values = new long[POINTERS_PER_NODE];
-      Arrays.fill(values, NULL_VALUE);
+    private int capacity() {
+      return values.length;
     }
 
-    public long getValue(int i) {
-      return values[i];
+    private int size() {
+      return HEADER_SIZE + Long.BYTES * values.length;
     }
   }
 
@@ -92,20 +110,79 @@ public abstract class ByteMultiTrie<T> {
   private long filePointer;
   private long stableFilePointer;
 
-  private final LinkedHashMap<Long, PendingNode> pendingNodes = new LinkedHashMap<>();
+  private final LinkedHashMap<Long, ChainNode> pendingNodes = new LinkedHashMap<>();
+  // Keys with deleted values in the current transaction, candidates for compaction.
+  private final LinkedHashSet<T> deletedKeys = new LinkedHashSet<>();
 
   protected ByteMultiTrie(String fileName, ByteTrie<T, MultiLeaf> trie) throws IOException {
     this.fileName = fileName;
     this.raf = new RandomAccessFile(fileName, "rw");
     this.trie = trie;
-    if (!new File(fileName).exists() || raf.length() == 0) {
-      // Let's not start indexing from 0, since that is the null file pointer.
-      raf.write(0);
+    if (raf.length() == 0) {
+      // The version byte also makes sure that 0 is never a valid node pointer.
+      raf.write(FORMAT_VERSION);
+    } else {
+      raf.seek(0);
+      byte version = raf.readByte();
+      if (version == LEGACY_FORMAT_VERSION) {
+        migrate();
+      } else if (version != FORMAT_VERSION) {
+        raf.close();
+        throw new RuntimeIndexException(String.format(
+            "Index file '%s' has an unsupported format, the index has to be recreated.", fileName));
+      }
     }
     filePointer = raf.length();
     stableFilePointer = filePointer;
   }
 
+  /**
+   * Rewrites a chain file of the old format. The live values of every key are copied into
+   * contiguous chain nodes and the leaves of the keys are pointed to the new chains.
+   */
+  private void migrate() throws IOException {
+    raf.close();
+    File legacyFile = new File(fileName + ".legacy");
+    Files.move(new File(fileName).toPath(), legacyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    raf = new RandomAccessFile(fileName, "rw");
+    raf.write(FORMAT_VERSION);
+    filePointer = raf.length();
+    RandomAccessFile legacy = new RandomAccessFile(legacyFile, "r");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(fileName, /* append= */true), 1 << 16));
+    try {
+      long[] values = new long[MIN_POINTERS_PER_NODE];
+      Iterator<Map.Entry<T, MultiLeaf>> entries = trie.entries();
+      while (entries.hasNext()) {
+        Map.Entry<T, MultiLeaf> entry = entries.next();
+        int n = 0;
+        long nextPointer = entry.getValue().getFirstIndex();
+        while (nextPointer > 0) {
+          legacy.seek(nextPointer);
+          nextPointer = legacy.readLong();
+          for (int i = 0; i < LEGACY_POINTERS_PER_NODE; i++) {
+            long value = legacy.readLong();
+            if (value != NULL_VALUE) {
+              if (n == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+              }
+              values[n++] = value;
+            }
+          }
+        }
+        trie.replace(entry.getKey(), writeChain(out, values, n));
+      }
+      out.close();
+      trie.commit();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      out.close();
+      legacy.close();
+    }
+    legacyFile.delete();
+  }
+
   public void close() throws IOException {
     raf.close();
   }
@@ -121,8 +198,13 @@ public abstract class ByteMultiTrie<T> {
   }
 
   public void commit() throws IOException {
+    try {
+      compact();
+    } catch (IndexException e) {
+      throw new RuntimeIndexException(e.getMessage());
+    }
     trie.commit();
-    for (Map.Entry<Long, PendingNode> node : pendingNodes.entrySet()) {
+    for (Map.Entry<Long, ChainNode> node : pendingNodes.entrySet()) {
       saveNode(node.getKey(), node.getValue());
     }
     if (filePointer != raf.length()) {
@@ -132,12 +214,13 @@ public abstract class ByteMultiTrie<T> {
     stableFilePointer = filePointer;
   }
 
-  private void saveNode(long filePointer, PendingNode node) throws IOException {
+  private void saveNode(long filePointer, ChainNode node) throws IOException {
     raf.seek(filePointer);
-    ByteBuffer bb = ByteBuffer.allocate(NODE_SIZE);
-    LongBuffer lb = bb.asLongBuffer();
-    lb.put(node.getNextPointer());
-    lb.put(node.getValues());
+    ByteBuffer bb = ByteBuffer.allocate(node.size());
+    bb.putLong(node.getNextPointer());
+    bb.putInt(node.capacity());
+    bb.putInt(node.getUsed());
+    bb.asLongBuffer().put(node.getValues());
     raf.write(bb.array());
   }
 
@@ -145,21 +228,126 @@ public abstract class ByteMultiTrie<T> {
     trie.rollback();
     filePointer = stableFilePointer;
     pendingNodes.clear();
+    deletedKeys.clear();
+    try {
+      if (raf.length() > stableFilePointer) {
+        // Discard the chain nodes written by an uncommitted bulk load.
+        raf.setLength(stableFilePointer);
+      }
+    } catch (IOException e) {
+      throw new RuntimeIndexException("Inconsistent state.");
+    }
+  }
+
+  public byte[] sortKey(T key) {
+    return trie.sortKey(key);
+  }
+
+  /**
+   * Builds the index from entries sorted by {@link #sortKey}. The chain nodes of every key
+   * are appended to the file sequentially and the key trie is bulk loaded. Falls back to
+   * individual puts if the index is not empty.
+   */
+  public void bulkLoad(Iterator<? extends Map.Entry<T, Long>> entries) throws IOException, IndexException {
+    if (filePointer != 1 || !pendingNodes.isEmpty()) {
+      while (entries.hasNext()) {
+        Map.Entry<T, Long> entry = entries.next();
+        put(entry.getKey(), entry.getValue());
+      }
+      return;
+    }
+    PeekingIterator<? extends Map.Entry<T, Long>> sorted = Iterators.peekingIterator(entries);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(fileName, /* append= */true), 1 << 16));
+    try {
+      trie.bulkLoad(new AbstractIterator<Map.Entry<T, MultiLeaf>>() {
+        private long[] values = new long[MIN_POINTERS_PER_NODE];
+
+        @Override
+        protected Map.Entry<T, MultiLeaf> computeNext() {
+          if (!sorted.hasNext()) {
+            return endOfData();
+          }
+          T key = sorted.peek().getKey();
+          int n = 0;
+          while (sorted.hasNext() && sorted.peek().getKey().equals(key)) {
+            if (n == values.length) {
+              values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[n++] = sorted.next().getValue();
+          }
+          try {
+            return Maps.immutableEntry(key, writeChain(out, values, n));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      });
+      out.close();
+    } catch (UncheckedIOException e) {
+      out.close();
+      rollback();
+      throw e.getCause();
+    } catch (IndexException | IOException | RuntimeException e) {
+      out.close();
+      rollback();
+      throw e;
+    }
+  }
+
+  private MultiLeaf writeChain(DataOutputStream out, long[] values, int n) throws IOException {
+    long firstIndex = filePointer;
+    long lastIndex = filePointer;
+    int offset = 0;
+    do {
+      int used = Math.min(n - offset, MAX_POINTERS_PER_NODE);
+      int capacity = Math.max(used, MIN_POINTERS_PER_NODE);
+      lastIndex = filePointer;
+      long nodeSize = HEADER_SIZE + Long.BYTES * capacity;
+      // The next node of the chain directly follows this one.
+      long nextPointer = offset + used < n ? filePointer + nodeSize : 0L;
+      out.writeLong(nextPointer);
+      out.writeInt(capacity);
+      out.writeInt(used);
+      for (int i = 0; i < capacity; i++) {
+        out.writeLong(i < used ? values[offset + i] : NULL_VALUE);
+      }
+      filePointer += nodeSize;
+      offset += used;
+    } while (offset < n);
+    return new MultiLeaf(firstIndex, lastIndex);
   }
 
   private ChainNode loadNode(long id) throws IOException {
-    PendingNode pendingNode = pendingNodes.get(id);
+    ChainNode pendingNode = pendingNodes.get(id);
     if (pendingNode != null) {
       return pendingNode;
     }
     raf.seek(id);
-    ByteBuffer bb = ByteBuffer.allocate(NODE_SIZE);
-    raf.read(bb.array());
-    LongBuffer lb = bb.asLongBuffer();
-    long[] values = new long[POINTERS_PER_NODE];
-    long nextPointer = lb.get();
-    lb.get(values);
-    return new ImmutableNode(nextPointer, values);
+    long nextPointer = raf.readLong();
+    int capacity = raf.readInt();
+    int used = raf.readInt();
+    ByteBuffer bb = ByteBuffer.allocate(Long.BYTES * capacity);
+    raf.readFully(bb.array());
+    long[] values = new long[capacity];
+    bb.asLongBuffer().get(values);
+    return new ChainNode(nextPointer, used, values);
+  }
+
+  /**
+   * Loaded nodes are never shared, so modifying one only requires registering it as pending.
+   */
+  private ChainNode writableNode(long id) throws IOException {
+    ChainNode node = loadNode(id);
+    pendingNodes.put(id, node);
+    return node;
+  }
+
+  private long appendNode(ChainNode node) {
+    long pointer = filePointer;
+    pendingNodes.put(pointer, node);
+    filePointer += node.size();
+    return pointer;
   }
 
   public long[] get(T key) throws IOException {
@@ -167,80 +355,73 @@ public abstract class ByteMultiTrie<T> {
     if (leaf == null) {
       return EMPTY;
     }
-    List<Long> result = new LinkedList<>();
+    long[] result = new long[MIN_POINTERS_PER_NODE];
+    int n = 0;
     long nextPointer = leaf.getFirstIndex();
     while (nextPointer > 0) {
       ChainNode node = loadNode(nextPointer);
-      for (int i = 0; i < POINTERS_PER_NODE; i++) {
-        long value = node.getValue(i);
-        if (value != NULL_VALUE) {
-          result.add(value);
+      long[] values = node.getValues();
+      if (n + node.getUsed() > result.length) {
+        result = Arrays.copyOf(result, Math.max(result.length * 2, n + node.getUsed()));
+      }
+      for (int i = 0; i < node.getUsed(); i++) {
+        if (values[i] != NULL_VALUE) {
+          result[n++] = values[i];
         }
       }
       nextPointer = node.getNextPointer();
     }
-    return result.stream().mapToLong(Long::longValue).toArray();
+    return n == result.length ? result : Arrays.copyOf(result, n);
   }
 
   public void put(T key, long finalIndex) throws IOException, IndexException {
     MultiLeaf leaf = trie.get(key);
     if (leaf == null) {
-      // Key doesn't exist.
-      long newLeafPointer = filePointer;
-      // Create new chain node.
-      PendingNode node = new PendingNode();
-      pendingNodes.put(newLeafPointer, node);
-      filePointer += NODE_SIZE;
-      // Save key in the index trie.
-      leaf = new MultiLeaf(newLeafPointer, newLeafPointer);
-      trie.put(key, leaf);
-    }
-    ChainNode node = loadNode(leaf.getLastIndex());
-    int i;
-    for (i = 0; i < POINTERS_PER_NODE; i++) {
-      if (node.getValue(i) == NULL_VALUE) {
-        break; // Found an empty slot in the last node.
-      }
+      // Key doesn't exist, create a new chain and save the key in the index trie.
+      ChainNode node = new ChainNode(MIN_POINTERS_PER_NODE);
+      node.getValues()[0] = finalIndex;
+      node.setUsed(1);
+      long newLeafPointer = appendNode(node);
+      trie.put(key, new MultiLeaf(newLeafPointer, newLeafPointer));
+      return;
     }
-    if (i < POINTERS_PER_NODE) {
-      // Value can fit among the existing nodes.
-      if (node instanceof PendingNode) {
-        ((PendingNode) node).getValues()[i] = finalIndex;
-      } else {
-        PendingNode newNode = new PendingNode();
-        System.arraycopy(((ImmutableNode) node).getValues(), 0, newNode.getValues(), 0, POINTERS_PER_NODE);
-        newNode.getValues()[i] = finalIndex;
-        pendingNodes.put(leaf.getLastIndex(), newNode);
-      }
+    ChainNode node = writableNode(leaf.getLastIndex());
+    if (node.getUsed() < node.capacity()) {
+      // Value can fit in the last node.
+      node.getValues()[node.getUsed()] = finalIndex;
+      node.setUsed(node.getUsed() + 1);
     } else {
-      // Need to add new node to the chain.
-      PendingNode newNode = new PendingNode();
+      // Need to add a new, larger node to the chain.
+      ChainNode newNode = new ChainNode(Math.min(node.capacity() * 2, MAX_POINTERS_PER_NODE));
       newNode.getValues()[0] = finalIndex;
-      long newNodePointer = filePointer;
-      pendingNodes.put(newNodePointer, newNode);
-      filePointer += NODE_SIZE;
-
-      // Modify the next pointer of the previous chain node.
-      if (node instanceof PendingNode) {
-        ((PendingNode) node).setNextPointer(newNodePointer);
-      } else {
-        PendingNode newParentNode = new PendingNode();
-        System.arraycopy(((ImmutableNode) node).getValues(), 0, newParentNode.getValues(), 0, POINTERS_PER_NODE);
-        newParentNode.setNextPointer(newNodePointer);
-        pendingNodes.put(leaf.getLastIndex(), newParentNode);
-      }
+      newNode.setUsed(1);
+      long newNodePointer = appendNode(newNode);
+      node.setNextPointer(newNodePointer);
 
       // Modify the last index of the key in the trie.
-      trie.delete(key);
-      trie.put(key, new MultiLeaf(leaf.getFirstIndex(), newNodePointer));
+      trie.replace(key, new MultiLeaf(leaf.getFirstIndex(), newNodePointer));
     }
   }
 
   public boolean delete(T key) throws IOException {
+    deletedKeys.remove(key);
     return trie.delete(key);
   }
 
   public boolean delete(T key, long valueToDelete) throws IOException {
+    // Delete the first matching value by setting it to null.
+    if (replace(key, valueToDelete, NULL_VALUE)) {
+      deletedKeys.add(key);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Overwrites the first matching value of the key in its chain node, returns false if the
+   * key does not have the value.
+   */
+  public boolean replace(T key, long oldValue, long newValue) throws IOException {
     MultiLeaf leaf = trie.get(key);
     if (leaf == null) {
       return false;
@@ -248,19 +429,11 @@ public abstract class ByteMultiTrie<T> {
     long nextPointer = leaf.getFirstIndex();
     while (nextPointer > 0) {
       ChainNode node = loadNode(nextPointer);
-      for (int i = 0; i < POINTERS_PER_NODE; i++) {
-        long value = node.getValue(i);
-        // Delete the first matching value by setting it to null.
-        if (value == valueToDelete) {
-          if (node instanceof PendingNode) {
-            ((PendingNode) node).getValues()[i] = NULL_VALUE;
-          } else {
-            PendingNode newNode = new PendingNode();
-            System.arraycopy(((ImmutableNode) node).getValues(), 0, newNode.getValues(), 0, POINTERS_PER_NODE);
-            newNode.getValues()[i] = NULL_VALUE;
-            newNode.setNextPointer(node.getNextPointer());
-            pendingNodes.put(nextPointer, newNode);
-          }
+      long[] values = node.getValues();
+      for (int i = 0; i < node.getUsed(); i++) {
+        if (values[i] == oldValue) {
+          values[i] = newValue;
+          pendingNodes.put(nextPointer, node);
           return true;
         }
       }
@@ -269,6 +442,81 @@ public abstract class ByteMultiTrie<T> {
     return false;
   }
 
+  /**
+   * Removes the keys without remaining values and rewrites the chains of keys where the
+   * majority of the used slots are deleted into contiguous nodes.
+   */
+  private void compact() throws IOException, IndexException {
+    for (T key : deletedKeys) {
+      MultiLeaf leaf = trie.get(key);
+      if (leaf == null) {
+        continue;
+      }
+      long[] values = new long[MIN_POINTERS_PER_NODE];
+      int live = 0;
+      int used = 0;
+      long nextPointer = leaf.getFirstIndex();
+      while (nextPointer > 0) {
+        ChainNode node = loadNode(nextPointer);
+        used += node.getUsed();
+        for (int i = 0; i < node.getUsed(); i++) {
+          long value = node.getValues()[i];
+          if (value != NULL_VALUE) {
+            if (live == values.length) {
+              values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[live++] = value;
+          }
+        }
+        nextPointer = node.getNextPointer();
+      }
+      if (live > 0 && (used - live) * 2 <= used) {
+        // Not fragmented enough, keep the chain as it is.
+        continue;
+      }
+      discardChain(leaf);
+      trie.delete(key);
+      if (live > 0) {
+        trie.put(key, appendChain(values, live));
+      }
+    }
+    deletedKeys.clear();
+  }
+
+  private void discardChain(MultiLeaf leaf) throws IOException {
+    long nextPointer = leaf.getFirstIndex();
+    while (nextPointer > 0) {
+      ChainNode node = loadNode(nextPointer);
+      if (nextPointer < stableFilePointer) {
+        // Committed nodes are not referenced anymore, no need to save them. Nodes of this
+        // transaction still have to be written to keep the file contiguous.
+        pendingNodes.remove(nextPointer);
+      }
+      nextPointer = node.getNextPointer();
+    }
+  }
+
+  private MultiLeaf appendChain(long[] values, int n) {
+    long firstIndex = filePointer;
+    ChainNode last = null;
+    long lastIndex = 0L;
+    int offset = 0;
+    while (offset < n) {
+      int used = Math.min(n - offset, MAX_POINTERS_PER_NODE);
+      ChainNode node = new ChainNode(Math.max(used, MIN_POINTERS_PER_NODE));
+      System.arraycopy(values, offset, node.getValues(), 0, used);
+      node.setUsed(used);
+      long pointer = appendNode(node);
+      if (last != null) {
+        last.setNextPointer(pointer);
+      }
+      last = node;
+      lastIndex = pointer;
+      offset += used;
+    }
+    return new MultiLeaf(firstIndex, lastIndex);
+  }
+
   public ByteMultiTrieStat stats() throws IOException {
     ByteTrieStat trieStat = trie.stats();
     return new ByteMultiTrieStat(
@@ -276,13 +524,16 @@ public abstract class ByteMultiTrie<T> {
         raf.length(),
         trieStat.getInMemNodes(),
         trieStat.getPendingNodes(),
-        pendingNodes.size());
+        pendingNodes.size(),
+        trieStat.getCacheHits(),
+        trieStat.getCacheMisses(),
+        trieStat.getCacheEvictions());
   }
 
   private static class LongMultiLeafIndex extends ByteTrie<Long, MultiLeaf> {
 
-    protected LongMultiLeafIndex(String fileName) throws IOException {
-      super(fileName + "#index");
+    protected LongMultiLeafIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#index", cache);
     }
 
     @Override
@@ -293,22 +544,17 @@ public abstract class ByteMultiTrie<T> {
     }
 
     @Override
-    protected Leaf<Long, MultiLeaf> loadLeaf(long filePointer) throws IOException {
-      raf.seek(filePointer);
+    protected Leaf<Long, MultiLeaf> readLeaf(DataInput stream) throws IOException {
       return new Leaf<Long, MultiLeaf>(
-          (Long) Serializer.readColumn(DataTypes.LongType, raf),
-          new MultiLeaf(raf.readLong(), raf.readLong()));
+          (Long) Serializer.readColumn(DataTypes.LongType, stream),
+          new MultiLeaf(stream.readLong(), stream.readLong()));
     }
 
     @Override
-    protected void saveLeaf(long filePointer, Leaf<Long, MultiLeaf> leaf) throws IOException {
-      raf.seek(filePointer);
-      ByteArrayOutputStream b = new ByteArrayOutputStream(leafSize(leaf));
-      DataOutputStream stream = new DataOutputStream(b);
+    protected void writeLeaf(Leaf<Long, MultiLeaf> leaf, DataOutput stream) throws IOException {
       Serializer.writeColumn(leaf.key(), DataTypes.LongType, stream);
       stream.writeLong(leaf.value().getFirstIndex());
       stream.writeLong(leaf.value().getLastIndex());
-      raf.write(b.toByteArray());
     }
 
     @Override
@@ -319,8 +565,8 @@ public abstract class ByteMultiTrie<T> {
 
   private static class StringMultiLeafIndex extends ByteTrie<String, MultiLeaf> {
 
-    protected StringMultiLeafIndex(String fileName) throws IOException {
-      super(fileName + "#index");
+    protected StringMultiLeafIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#index", cache);
     }
 
     @Override
@@ -331,22 +577,17 @@ public abstract class ByteMultiTrie<T> {
     }
 
     @Override
-    protected Leaf<String, MultiLeaf> loadLeaf(long filePointer) throws IOException {
-      raf.seek(filePointer);
+    protected Leaf<String, MultiLeaf> readLeaf(DataInput stream) throws IOException {
       return new Leaf<String, MultiLeaf>(
-          (String) Serializer.readColumn(DataTypes.StringType, raf),
-          new MultiLeaf(raf.readLong(), raf.readLong()));
+          (String) Serializer.readColumn(DataTypes.StringType, stream),
+          new MultiLeaf(stream.readLong(), stream.readLong()));
     }
 
     @Override
-    protected void saveLeaf(long filePointer, Leaf<String, MultiLeaf> leaf) throws IOException {
-      raf.seek(filePointer);
-      ByteArrayOutputStream b = new ByteArrayOutputStream(leafSize(leaf));
-      DataOutputStream stream = new DataOutputStream(b);
+    protected void writeLeaf(Leaf<String, MultiLeaf> leaf, DataOutput stream) throws IOException {
       Serializer.writeColumn(leaf.key(), DataTypes.StringType, stream);
       stream.writeLong(leaf.value().getFirstIndex());
       stream.writeLong(leaf.value().getLastIndex());
-      raf.write(b.toByteArray());
     }
 
     @Override
@@ -357,13 +598,21 @@ public abstract class ByteMultiTrie<T> {
 
   public static class LongMultiIndex extends ByteMultiTrie<Long> {
     public LongMultiIndex(String fileName) throws IOException {
-      super(fileName + "#chain", new LongMultiLeafIndex(fileName));
+      this(fileName, NodeCache.defaultCache());
+    }
+
+    public LongMultiIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#chain", new LongMultiLeafIndex(fileName, cache));
     }
   }
 
   public static class StringMultiIndex extends ByteMultiTrie<String> {
     public StringMultiIndex(String fileName) throws IOException {
-      super(fileName + "#chain", new StringMultiLeafIndex(fileName));
+      this(fileName, NodeCache.defaultCache());
+    }
+
+    public StringMultiIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName + "#chain", new StringMultiLeafIndex(fileName, cache));
     }
   }
 }
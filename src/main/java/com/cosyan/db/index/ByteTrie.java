@@ -15,14 +15,23 @@
  */
 package com.cosyan.db.index;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -30,16 +39,22 @@ import java.util.Map;
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
 import com.cosyan.db.io.Serializer;
 import com.cosyan.db.model.DataTypes;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
 
 /**
- * A prefix trie for indexing. Supports in memory caching to minimize file
- * accesses.
+ * A prefix trie for indexing. Committed nodes are kept in a shared, size bounded
+ * {@link NodeCache} to minimize file accesses.
  * 
  * Every key is serialized to a byte array. The first <code>n</code> bytes are
  * used to address various levels of the prefix tree. Leaf nodes store the final
  * keys. In addition, every middle "index" node can store a key too, if the
  * bytes of the key exactly add up to the prefix.
  * 
+ * Index nodes are adaptive (similarly to ART): they hold 4, 16, 48 or 256 children
+ * and are moved to a bigger node when full. The root is always a 256 node at the
+ * beginning of the file.
+ * 
  * Subclass this class for to implement for various key types.
  * 
  * @author gsvigruha
@@ -50,30 +65,229 @@ import com.cosyan.db.model.DataTypes;
 public abstract class ByteTrie<K, V> {
 
   /**
-   * The keys array is addressed by a byte. The last slot is for elements matching
-   * the current prefix.
+   * The number of children addressed by a byte. Every index node has an additional
+   * slot for the element matching the current prefix.
    */
-  private static final int KEYS_SIZE = 257;
+  private static final int KEYS_SIZE = 256;
 
-  public static class Node<K, V> {
-    protected int accesses = 0;
+  private static final int CURRENT = KEYS_SIZE;
 
-    public int getAccesses() {
-      return accesses;
-    }
+  // Index node types. Files in the old format, where every node was a long[257],
+  // start with 0x00 or 0xFF.
+  private static final byte NODE_4 = 1;
+  private static final byte NODE_16 = 2;
+  private static final byte NODE_48 = 3;
+  private static final byte NODE_256 = 4;
+
+  private static final int MAX_INDEX_SIZE = 1 + (KEYS_SIZE + 1) * Long.BYTES;
+
+  private static final int LEGACY_INDEX_SIZE = (KEYS_SIZE + 1) * Long.BYTES;
+
+  public static class Node<K, V> {
   }
 
+  /**
+   * An immutable index node. Sparse nodes store the used slots sorted with the
+   * corresponding pointers, 256 nodes store the pointers addressed by the slot.
+   */
   private static class Index<K, V> extends Node<K, V> {
-    private final long[] keys;
+    private final byte type;
+    private final int count;
+    private final byte[] slots;
+    private final long[] pointers;
+    private final long current;
+
+    private Index(byte type, int count, byte[] slots, long[] pointers, long current) {
+      this.type = type;
+      this.count = count;
+      this.slots = slots;
+      this.pointers = pointers;
+      this.current = current;
+    }
+
+    private static <K, V> Index<K, V> empty(byte type) {
+      if (type == NODE_256) {
+        return new Index<>(type, 0, null, new long[KEYS_SIZE], 0L);
+      }
+      return new Index<>(type, 0, new byte[capacity(type)], new long[capacity(type)], 0L);
+    }
+
+    /**
+     * The smallest node of at least <code>minType</code> holding the pointers, the
+     * last one being the current key.
+     */
+    private static <K, V> Index<K, V> of(long[] keys, byte minType) {
+      int count = 0;
+      for (int i = 0; i < KEYS_SIZE; i++) {
+        if (keys[i] != 0) {
+          count++;
+        }
+      }
+      byte type = minType;
+      while (type < NODE_256 && capacity(type) < count) {
+        type++;
+      }
+      if (type == NODE_256) {
+        return new Index<>(type, count, null, Arrays.copyOf(keys, KEYS_SIZE), keys[CURRENT]);
+      }
+      byte[] slots = new byte[capacity(type)];
+      long[] pointers = new long[capacity(type)];
+      int j = 0;
+      for (int i = 0; i < KEYS_SIZE; i++) {
+        if (keys[i] != 0) {
+          slots[j] = (byte) i;
+          pointers[j++] = keys[i];
+        }
+      }
+      return new Index<>(type, count, slots, pointers, keys[CURRENT]);
+    }
+
+    private static int capacity(byte type) {
+      switch (type) {
+      case NODE_4:
+        return 4;
+      case NODE_16:
+        return 16;
+      case NODE_48:
+        return 48;
+      default:
+        return KEYS_SIZE;
+      }
+    }
+
+    private int find(int slot) {
+      int lo = 0;
+      int hi = count - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int midSlot = slots[mid] & 0xFF;
+        if (midSlot < slot) {
+          lo = mid + 1;
+        } else if (midSlot > slot) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(lo + 1);
+    }
 
-    private Index(long[] keys) {
-      this.keys = keys;
+    private long get(int slot) {
+      if (slot == CURRENT) {
+        return current;
+      }
+      if (type == NODE_256) {
+        return pointers[slot];
+      }
+      int i = find(slot);
+      return i >= 0 ? pointers[i] : 0L;
     }
 
-    private long[] keys() {
-      accesses++;
+    /**
+     * A copy of this node with the slot modified, a bigger node if it is full. A zero
+     * pointer removes the slot.
+     */
+    private Index<K, V> with(int slot, long pointer) {
+      if (slot == CURRENT) {
+        return new Index<>(type, count, slots, pointers, pointer);
+      }
+      if (type == NODE_256) {
+        long[] newPointers = pointers.clone();
+        newPointers[slot] = pointer;
+        int newCount = count + (pointers[slot] == 0 ? 1 : 0) - (pointer == 0 ? 1 : 0);
+        return new Index<>(type, newCount, null, newPointers, current);
+      }
+      int i = find(slot);
+      if (i >= 0) {
+        byte[] newSlots = slots.clone();
+        long[] newPointers = pointers.clone();
+        if (pointer == 0) {
+          System.arraycopy(slots, i + 1, newSlots, i, count - i - 1);
+          System.arraycopy(pointers, i + 1, newPointers, i, count - i - 1);
+          newSlots[count - 1] = 0;
+          newPointers[count - 1] = 0L;
+          return new Index<>(type, count - 1, newSlots, newPointers, current);
+        }
+        newPointers[i] = pointer;
+        return new Index<>(type, count, newSlots, newPointers, current);
+      }
+      if (pointer == 0) {
+        return this;
+      }
+      if (count == capacity(type)) {
+        return grow().with(slot, pointer);
+      }
+      int pos = -(i + 1);
+      byte[] newSlots = slots.clone();
+      long[] newPointers = pointers.clone();
+      System.arraycopy(slots, pos, newSlots, pos + 1, count - pos);
+      System.arraycopy(pointers, pos, newPointers, pos + 1, count - pos);
+      newSlots[pos] = (byte) slot;
+      newPointers[pos] = pointer;
+      return new Index<>(type, count + 1, newSlots, newPointers, current);
+    }
+
+    private Index<K, V> grow() {
+      return of(toArray(), (byte) (type + 1));
+    }
+
+    private long[] toArray() {
+      long[] keys = new long[KEYS_SIZE + 1];
+      if (type == NODE_256) {
+        System.arraycopy(pointers, 0, keys, 0, KEYS_SIZE);
+      } else {
+        for (int i = 0; i < count; i++) {
+          keys[slots[i] & 0xFF] = pointers[i];
+        }
+      }
+      keys[CURRENT] = current;
       return keys;
     }
+
+    private int size() {
+      if (type == NODE_256) {
+        return MAX_INDEX_SIZE;
+      }
+      // Type, count, slots, pointers and current.
+      return 2 + capacity(type) * (1 + Long.BYTES) + Long.BYTES;
+    }
+
+    private byte[] serialize() {
+      ByteBuffer bb = ByteBuffer.allocate(size());
+      bb.put(type);
+      if (type != NODE_256) {
+        bb.put((byte) count);
+        bb.put(slots);
+      }
+      bb.asLongBuffer().put(pointers).put(current);
+      return bb.array();
+    }
+
+    private static <K, V> Index<K, V> deserialize(ByteBuffer bb) {
+      byte type = bb.get();
+      if (type == NODE_256) {
+        long[] pointers = new long[KEYS_SIZE];
+        bb.asLongBuffer().get(pointers);
+        bb.position(bb.position() + KEYS_SIZE * Long.BYTES);
+        int count = 0;
+        for (long pointer : pointers) {
+          if (pointer != 0) {
+            count++;
+          }
+        }
+        return new Index<>(type, count, null, pointers, bb.getLong());
+      } else if (type >= NODE_4 && type < NODE_256) {
+        int count = bb.get() & 0xFF;
+        byte[] slots = new byte[capacity(type)];
+        bb.get(slots);
+        long[] pointers = new long[capacity(type)];
+        bb.asLongBuffer().get(pointers);
+        bb.position(bb.position() + pointers.length * Long.BYTES);
+        return new Index<>(type, count, slots, pointers, bb.getLong());
+      } else {
+        throw new RuntimeIndexException("Inconsistent state.");
+      }
+    }
   }
 
   protected static class Leaf<K, V> extends Node<K, V> {
@@ -86,7 +300,6 @@ public abstract class ByteTrie<K, V> {
     }
 
     protected K key() {
-      accesses++;
       return key;
     }
 
@@ -116,17 +329,142 @@ public abstract class ByteTrie<K, V> {
   private long filePointer;
   private long stableFilePointer;
 
-  private final HashMap<Long, Node<K, V>> trie = new HashMap<>();
+  private final NodeCache.Handle cache;
   private final LinkedHashMap<Long, Node<K, V>> pendingNodes = new LinkedHashMap<>();
 
-  protected ByteTrie(String fileName) throws IOException {
+  protected ByteTrie(String fileName, NodeCache nodeCache) throws IOException {
     this.fileName = fileName;
+    this.cache = nodeCache.register();
     this.raf = new RandomAccessFile(fileName, "rw");
     if (!new File(fileName).exists() || raf.length() == 0) {
-      saveIndex(0, new long[KEYS_SIZE]);
+      saveIndex(0, Index.empty(NODE_256));
     }
     filePointer = raf.length();
     stableFilePointer = filePointer;
+    raf.seek(0);
+    byte firstByte = raf.readByte();
+    if (firstByte == 0 || firstByte == -1) {
+      migrate();
+    }
+  }
+
+  /**
+   * Rebuilds an index file of the old format, where every index node was a long[257].
+   * A depth first traversal of the old trie yields the entries in sorted order, so they
+   * can be bulk loaded.
+   */
+  private void migrate() throws IOException {
+    raf.close();
+    File legacyFile = new File(fileName + ".legacy");
+    Files.move(new File(fileName).toPath(), legacyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    raf = new RandomAccessFile(fileName, "rw");
+    saveIndex(0, Index.empty(NODE_256));
+    filePointer = raf.length();
+    stableFilePointer = filePointer;
+    RandomAccessFile legacy = new RandomAccessFile(legacyFile, "r");
+    try {
+      bulkLoad(legacyEntries(legacy));
+      commit();
+    } catch (IndexException e) {
+      throw new IOException(e);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      legacy.close();
+    }
+    legacyFile.delete();
+  }
+
+  private Iterator<Map.Entry<K, V>> legacyEntries(RandomAccessFile legacy) {
+    return entries(new NodeReader<K, V>() {
+      @Override
+      public long[] index(long id) throws IOException {
+        legacy.seek(-id);
+        ByteBuffer bb = ByteBuffer.allocate(LEGACY_INDEX_SIZE);
+        legacy.readFully(bb.array());
+        long[] keys = new long[KEYS_SIZE + 1];
+        bb.asLongBuffer().get(keys);
+        return keys;
+      }
+
+      @Override
+      public Leaf<K, V> leaf(long pointer) throws IOException {
+        legacy.seek(pointer);
+        return readLeaf(legacy);
+      }
+    });
+  }
+
+  /**
+   * Iterates over the entries of the trie in the order of their serialized keys. Values
+   * can be replaced during the iteration, but keys must not be added or deleted.
+   */
+  public Iterator<Map.Entry<K, V>> entries() {
+    return entries(new NodeReader<K, V>() {
+      @Override
+      public long[] index(long id) throws IOException {
+        return getIndex(id).toArray();
+      }
+
+      @Override
+      public Leaf<K, V> leaf(long pointer) throws IOException {
+        return getLeaf(pointer);
+      }
+    });
+  }
+
+  private interface NodeReader<K, V> {
+    public long[] index(long id) throws IOException;
+
+    public Leaf<K, V> leaf(long pointer) throws IOException;
+  }
+
+  private Iterator<Map.Entry<K, V>> entries(NodeReader<K, V> reader) {
+    return new AbstractIterator<Map.Entry<K, V>>() {
+      private final ArrayDeque<long[]> nodes = new ArrayDeque<>();
+      private final ArrayDeque<int[]> positions = new ArrayDeque<>();
+
+      {
+        push(0L);
+      }
+
+      private void push(long id) {
+        try {
+          nodes.push(reader.index(id));
+          positions.push(new int[] { 0 });
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+
+      @Override
+      protected Map.Entry<K, V> computeNext() {
+        while (!nodes.isEmpty()) {
+          long[] keys = nodes.peek();
+          int[] position = positions.peek();
+          if (position[0] > KEYS_SIZE) {
+            nodes.pop();
+            positions.pop();
+            continue;
+          }
+          // The key matching the prefix precedes the longer keys.
+          int slot = position[0] == 0 ? CURRENT : position[0] - 1;
+          position[0]++;
+          long pointer = keys[slot];
+          if (pointer > 0) {
+            try {
+              Leaf<K, V> leaf = reader.leaf(pointer);
+              return Maps.immutableEntry(leaf.key(), leaf.value());
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          } else if (pointer < 0) {
+            push(pointer);
+          }
+        }
+        return endOfData();
+      }
+    };
   }
 
   public void close() throws IOException {
@@ -135,7 +473,7 @@ public abstract class ByteTrie<K, V> {
   }
 
   public void cleanUp() {
-    trie.clear();
+    cache.clear();
   }
 
   public void drop() throws IOException {
@@ -148,21 +486,39 @@ public abstract class ByteTrie<K, V> {
   }
 
   public V get(K key) throws IOException {
-    return get(getIndex(0L).keys(), toByteArray(key), 0, key);
+    long pointer = leafPointer(getIndex(0L), toByteArray(key), 0, key);
+    return pointer == 0 ? null : getLeaf(pointer).value();
   }
 
   public void put(K key, V value) throws IOException, IndexException {
-    put(0, getIndex(0L).keys(), toByteArray(key), 0, key, value);
+    put(0L, getIndex(0L), toByteArray(key), 0, key, value);
   }
 
   public boolean delete(K key) throws IOException {
-    return delete(0, getIndex(0L).keys(), toByteArray(key), 0, key);
+    return delete(0L, getIndex(0L), toByteArray(key), 0, key);
+  }
+
+  /**
+   * Changes the value of an existing key. Values of the same size replace the leaf in
+   * place without modifying any index nodes. Returns false if the key is not present.
+   */
+  public boolean replace(K key, V value) throws IOException {
+    long pointer = leafPointer(getIndex(0L), toByteArray(key), 0, key);
+    if (pointer == 0) {
+      return false;
+    }
+    Leaf<K, V> leaf = new Leaf<>(key, value);
+    if (leafSize(leaf) != leafSize(getLeaf(pointer))) {
+      throw new RuntimeIndexException("Inconsistent state.");
+    }
+    pendingNodes.put(pointer, leaf);
+    return true;
   }
 
   public void commit() throws IOException {
     for (Map.Entry<Long, Node<K, V>> node : pendingNodes.entrySet()) {
       if (node.getKey() <= 0) {
-        saveIndex(node.getKey(), ((Index<K, V>) node.getValue()).keys());
+        saveIndex(node.getKey(), (Index<K, V>) node.getValue());
       } else {
         saveLeaf(node.getKey(), ((Leaf<K, V>) node.getValue()));
       }
@@ -170,7 +526,9 @@ public abstract class ByteTrie<K, V> {
     if (filePointer != raf.length()) {
       throw new RuntimeIndexException("Inconsistent state.");
     }
-    trie.putAll(pendingNodes);
+    for (Map.Entry<Long, Node<K, V>> node : pendingNodes.entrySet()) {
+      cacheNode(node.getKey(), node.getValue());
+    }
     pendingNodes.clear();
     stableFilePointer = filePointer;
   }
@@ -178,29 +536,151 @@ public abstract class ByteTrie<K, V> {
   public void rollback() {
     filePointer = stableFilePointer;
     pendingNodes.clear();
+    try {
+      if (raf.length() > stableFilePointer) {
+        // Discard the nodes written by an uncommitted bulk load.
+        raf.setLength(stableFilePointer);
+      }
+    } catch (IOException e) {
+      throw new RuntimeIndexException("Inconsistent state.");
+    }
   }
 
-  protected abstract Leaf<K, V> loadLeaf(long filePointer) throws IOException;
+  public byte[] sortKey(K key) {
+    return toByteArray(key);
+  }
 
-  protected abstract void saveLeaf(long filePointer, Leaf<K, V> leaf) throws IOException;
+  /**
+   * Builds the trie bottom-up from entries sorted by their serialized keys (signed
+   * lexicographic order, see {@link #sortKey}). Every node is created once and
+   * appended to the file, children before parents, only the root is pending until
+   * commit. Falls back to individual puts if the trie is not empty.
+   */
+  public void bulkLoad(Iterator<? extends Map.Entry<K, V>> entries) throws IOException, IndexException {
+    if (filePointer != MAX_INDEX_SIZE || !pendingNodes.isEmpty()) {
+      while (entries.hasNext()) {
+        Map.Entry<K, V> entry = entries.next();
+        put(entry.getKey(), entry.getValue());
+      }
+      return;
+    }
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(fileName, /* append= */true), 1 << 16));
+    try {
+      // The open index nodes along the path of the last key, the root is at depth 0.
+      ArrayList<long[]> path = new ArrayList<>();
+      ArrayList<Integer> slots = new ArrayList<>();
+      path.add(new long[KEYS_SIZE + 1]);
+      slots.add(-1);
+      Map.Entry<K, V> prev = null;
+      byte[] prevBytes = null;
+      int prevCommon = 0;
+      while (entries.hasNext()) {
+        Map.Entry<K, V> entry = entries.next();
+        byte[] bytes = toByteArray(entry.getKey());
+        if (prev != null) {
+          int common = commonPrefix(prevBytes, bytes);
+          if (common == prevBytes.length && common == bytes.length) {
+            throw new IndexException("Key '" + entry.getKey() + "' already present in index.");
+          }
+          if (common == bytes.length || (common < prevBytes.length && prevBytes[common] > bytes[common])) {
+            throw new RuntimeIndexException("Keys are not sorted.");
+          }
+          bulkLoadLeaf(out, path, slots, prev, prevBytes, prevCommon, Math.max(prevCommon, common));
+          prevCommon = common;
+        }
+        prev = entry;
+        prevBytes = bytes;
+      }
+      if (prev != null) {
+        bulkLoadLeaf(out, path, slots, prev, prevBytes, prevCommon, prevCommon);
+      }
+      closeIndexNodes(out, path, slots, 0);
+      pendingNodes.put(0L, Index.of(path.get(0), NODE_256));
+      out.close();
+    } catch (IndexException | IOException | RuntimeException e) {
+      out.close();
+      rollback();
+      throw e;
+    }
+  }
+
+  private static int commonPrefix(byte[] a, byte[] b) {
+    int i = 0;
+    while (i < a.length && i < b.length && a[i] == b[i]) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Writes the leaf of a key into the index node at the given depth. Index nodes deeper
+   * than the common prefix with the previous key are complete and written first.
+   */
+  private void bulkLoadLeaf(DataOutputStream out, ArrayList<long[]> path, ArrayList<Integer> slots,
+      Map.Entry<K, V> entry, byte[] keyBytes, int prevCommon, int depth) throws IOException {
+    closeIndexNodes(out, path, slots, prevCommon);
+    for (int i = path.size(); i <= depth; i++) {
+      path.add(new long[KEYS_SIZE + 1]);
+      slots.add(keyBytes[i - 1] - Byte.MIN_VALUE);
+    }
+    Leaf<K, V> leaf = new Leaf<K, V>(entry.getKey(), entry.getValue());
+    int slot = depth < keyBytes.length ? keyBytes[depth] - Byte.MIN_VALUE : CURRENT;
+    path.get(depth)[slot] = filePointer;
+    writeLeaf(leaf, out);
+    filePointer += leafSize(leaf);
+  }
+
+  private void closeIndexNodes(DataOutputStream out, ArrayList<long[]> path, ArrayList<Integer> slots,
+      int depth) throws IOException {
+    while (path.size() - 1 > depth) {
+      int last = path.size() - 1;
+      Index<K, V> index = Index.of(path.remove(last), NODE_4);
+      int slot = slots.remove(last);
+      path.get(last - 1)[slot] = -filePointer;
+      out.write(index.serialize());
+      filePointer += index.size();
+    }
+  }
+
+  protected abstract Leaf<K, V> readLeaf(DataInput stream) throws IOException;
+
+  protected abstract void writeLeaf(Leaf<K, V> leaf, DataOutput stream) throws IOException;
+
+  private Leaf<K, V> loadLeaf(long filePointer) throws IOException {
+    raf.seek(filePointer);
+    return readLeaf(raf);
+  }
+
+  private void saveLeaf(long filePointer, Leaf<K, V> leaf) throws IOException {
+    raf.seek(filePointer);
+    ByteArrayOutputStream b = new ByteArrayOutputStream(leafSize(leaf));
+    writeLeaf(leaf, new DataOutputStream(b));
+    raf.write(b.toByteArray());
+  }
 
   protected abstract int leafSize(Leaf<K, V> leaf);
 
   protected abstract byte[] toByteArray(K key);
 
+  @SuppressWarnings("unchecked")
+  private Node<K, V> cachedNode(long id) {
+    return (Node<K, V>) cache.get(id);
+  }
+
   private Leaf<K, V> getLeaf(long id) throws IOException {
     Leaf<K, V> leafNode = (Leaf<K, V>) pendingNodes.get(id);
     if (leafNode != null) {
       return leafNode;
     }
-    leafNode = (Leaf<K, V>) trie.get(id);
+    leafNode = (Leaf<K, V>) cachedNode(id);
     if (leafNode == null) {
       // Assume leaf node exists but not in memory.
       if (id >= raf.length()) {
         throw new RuntimeIndexException("Inconsistent state.");
       }
       leafNode = loadLeaf(id);
-      trie.put(id, leafNode);
+      cacheNode(id, leafNode);
     }
     return leafNode;
   }
@@ -210,7 +690,7 @@ public abstract class ByteTrie<K, V> {
     if (indexNode != null) {
       return indexNode;
     }
-    indexNode = (Index<K, V>) trie.get(id);
+    indexNode = (Index<K, V>) cachedNode(id);
     if (indexNode == null) {
       long fileIndex = -id;
       // Index node exists but not in memory.
@@ -218,113 +698,131 @@ public abstract class ByteTrie<K, V> {
         throw new RuntimeIndexException("Inconsistent state.");
       }
       raf.seek(fileIndex);
-      ByteBuffer bb = ByteBuffer.allocate(KEYS_SIZE * Long.BYTES);
-      raf.read(bb.array());
-      long[] keysToLoad = new long[KEYS_SIZE];
-      bb.asLongBuffer().get(keysToLoad);
-
-      indexNode = new Index<K, V>(keysToLoad);
-      trie.put(id, indexNode);
+      // Read enough for the biggest node type, the header tells the actual size.
+      ByteBuffer bb = ByteBuffer.allocate((int) Math.min(MAX_INDEX_SIZE, raf.length() - fileIndex));
+      raf.readFully(bb.array());
+      indexNode = Index.deserialize(bb);
+      cacheNode(id, indexNode);
     }
     return indexNode;
   }
 
-  private void modifyIndex(long parentPointer, long[] pointers, int i, long fileIndex) {
-    long[] newPointers = pointers.clone();
-    newPointers[i] = fileIndex;
-    Index<K, V> newIndex = new Index<>(newPointers);
-    pendingNodes.put(parentPointer, newIndex);
+  /**
+   * Replaces the index node with its modified version. The node is updated in place if
+   * it has the same type, otherwise it is moved to the end of the file and the new id
+   * is returned.
+   */
+  private long modifyIndex(long id, Index<K, V> index, Index<K, V> newIndex) {
+    if (newIndex.type == index.type) {
+      pendingNodes.put(id, newIndex);
+      return id;
+    }
+    if (id == 0) {
+      throw new RuntimeIndexException("Inconsistent state.");
+    }
+    long newId = newIndexNode(newIndex);
+    return newId;
+  }
+
+  private long newIndexNode(Index<K, V> index) {
+    long id = -filePointer;
+    pendingNodes.put(id, index);
+    filePointer += index.size();
+    return id;
   }
 
-  private void saveIndex(long id, long[] indices) throws IOException {
+  private long newLeaf(K keyObject, V valueObject) {
+    Leaf<K, V> leaf = new Leaf<K, V>(keyObject, valueObject);
+    long fileIndex = filePointer;
+    pendingNodes.put(fileIndex, leaf);
+    filePointer += leafSize(leaf);
+    return fileIndex;
+  }
+
+  private void saveIndex(long id, Index<K, V> index) throws IOException {
     raf.seek(-id);
-    ByteBuffer bb = ByteBuffer.allocate(KEYS_SIZE * 8);
-    bb.asLongBuffer().put(indices);
-    raf.write(bb.array());
+    raf.write(index.serialize());
   }
 
-  public void cleanUp(int limit) {
-    Iterator<Map.Entry<Long, Node<K, V>>> iter = trie.entrySet().iterator();
-    while (iter.hasNext()) {
-      Map.Entry<Long, Node<K, V>> item = iter.next();
-      if (item.getValue().getAccesses() < limit) {
-        iter.remove();
-      }
+  private void cacheNode(long id, Node<K, V> node) {
+    int size;
+    if (id <= 0) {
+      size = ((Index<K, V>) node).size();
+    } else {
+      size = leafSize((Leaf<K, V>) node);
     }
+    cache.put(id, node, size + NodeCache.ENTRY_OVERHEAD);
   }
 
-  protected V get(long[] pointers, byte[] keyBytes, int keyBytesIndex, K keyObject)
+  /**
+   * The file pointer of the leaf of the key, or 0 if the key is not present.
+   */
+  protected long leafPointer(Index<K, V> index, byte[] keyBytes, int keyBytesIndex, K keyObject)
       throws IOException {
     if (keyBytesIndex >= keyBytes.length) {
       // Check current node.
-      long currentKey = pointers[256];
+      long currentKey = index.get(CURRENT);
       if (currentKey > 0) {
         Leaf<K, V> leaf = getLeaf(currentKey);
         if (keyObject.equals(leaf.key())) {
-          return leaf.value();
+          return currentKey;
         } else {
           throw new RuntimeIndexException("Inconsistent state.");
         }
       } else {
-        return null;
+        return 0;
       }
     }
     int keyByte = keyBytes[keyBytesIndex] - Byte.MIN_VALUE;
-    long pointer = pointers[keyByte];
+    long pointer = index.get(keyByte);
     if (pointer == 0) {
       // Equivalent of null pointer, search is over.
-      return null;
+      return 0;
     } else if (pointer < 0) {
       // Pointer to index node.
-      Index<K, V> nextIndex = getIndex(pointer);
-      return get(nextIndex.keys(), keyBytes, keyBytesIndex + 1, keyObject);
+      return leafPointer(getIndex(pointer), keyBytes, keyBytesIndex + 1, keyObject);
     } else {
       // Pointer to leaf node.
       Leaf<K, V> leaf = getLeaf(pointer);
       if (keyObject.equals(leaf.key())) {
-        return leaf.value();
+        return pointer;
       } else {
         // Search is over and not found.
-        return null;
+        return 0;
       }
     }
   }
 
-  protected void put(long parentPointer, long[] pointers, byte[] keyBytes, int keyBytesIndex, K keyObject,
+  /**
+   * Adds the key below the index node. Returns the id of the index node, which changes
+   * if the node had to grow.
+   */
+  protected long put(long id, Index<K, V> index, byte[] keyBytes, int keyBytesIndex, K keyObject,
       V valueObject)
       throws IOException, IndexException {
     if (keyBytesIndex >= keyBytes.length) {
       // Check current node.
-      long currentKey = pointers[256];
-      if (currentKey > 0) {
+      if (index.get(CURRENT) > 0) {
         throw new IndexException("Key '" + keyObject + "' already present in index.");
       } else {
-        Leaf<K, V> leaf = new Leaf<K, V>(keyObject, valueObject);
-        long fileIndex = filePointer;
-        pendingNodes.put(fileIndex, leaf);
-        filePointer += leafSize(leaf);
-
-        // Modify parent index.
-        modifyIndex(parentPointer, pointers, 256, fileIndex);
-        return;
+        long fileIndex = newLeaf(keyObject, valueObject);
+        return modifyIndex(id, index, index.with(CURRENT, fileIndex));
       }
     }
     int keyByte = keyBytes[keyBytesIndex] - Byte.MIN_VALUE;
-    long pointer = pointers[keyByte];
+    long pointer = index.get(keyByte);
     if (pointer == 0) {
       // Null pointer, create a leaf node.
-      Leaf<K, V> leaf = new Leaf<K, V>(keyObject, valueObject);
-      long fileIndex = filePointer;
-      pendingNodes.put(fileIndex, leaf);
-      filePointer += leafSize(leaf);
-
-      // Modify parent index.
-      modifyIndex(parentPointer, pointers, keyByte, fileIndex);
-      return;
+      long fileIndex = newLeaf(keyObject, valueObject);
+      return modifyIndex(id, index, index.with(keyByte, fileIndex));
     } else if (pointer < 0) {
       // Pointer to index node.
-      Index<K, V> nextIndex = getIndex(pointer);
-      put(pointer, nextIndex.keys(), keyBytes, keyBytesIndex + 1, keyObject, valueObject);
+      long newPointer = put(pointer, getIndex(pointer), keyBytes, keyBytesIndex + 1, keyObject, valueObject);
+      if (newPointer != pointer) {
+        // The child node moved.
+        return modifyIndex(id, index, index.with(keyByte, newPointer));
+      }
+      return id;
     } else {
       // Pointer to leaf node.
       Leaf<K, V> leaf = getLeaf(pointer);
@@ -334,42 +832,39 @@ public abstract class ByteTrie<K, V> {
       } else {
         // Another non-final leaf node is present, need to split.
         // Create a new index node.
-        long indexPointer = -filePointer;
-        long[] newIndex = new long[KEYS_SIZE];
+        Index<K, V> newIndex = Index.empty(NODE_4);
         byte[] existingKeyBytes = toByteArray(leaf.key());
         if (keyBytesIndex + 1 < existingKeyBytes.length) {
           // Push the existing key down the trie if has more bytes.
-          newIndex[existingKeyBytes[keyBytesIndex + 1] - Byte.MIN_VALUE] = pointer;
+          newIndex = newIndex.with(existingKeyBytes[keyBytesIndex + 1] - Byte.MIN_VALUE, pointer);
         } else {
           // Add to the new index if has no more bytes.
-          newIndex[256] = pointer;
+          newIndex = newIndex.with(CURRENT, pointer);
         }
-        // Add new index.
-        pendingNodes.put(indexPointer, new Index<K, V>(newIndex));
-        filePointer += KEYS_SIZE * Long.BYTES;
+        long indexPointer = newIndexNode(newIndex);
+        indexPointer = put(indexPointer, newIndex, keyBytes, keyBytesIndex + 1, keyObject, valueObject);
 
         // Modify parent index.
-        modifyIndex(parentPointer, pointers, keyByte, indexPointer);
-
-        put(indexPointer, newIndex, keyBytes, keyBytesIndex + 1, keyObject, valueObject);
+        return modifyIndex(id, index, index.with(keyByte, indexPointer));
       }
     }
   }
 
   protected boolean delete(
-      long parentPointer,
-      long[] pointers,
+      long id,
+      Index<K, V> index,
       byte[] keyBytes,
       int keyBytesIndex,
       K keyObject)
       throws IOException {
+    // Removing a slot never moves the node.
     if (keyBytesIndex >= keyBytes.length) {
       // Check current node.
-      long currentKey = pointers[256];
+      long currentKey = index.get(CURRENT);
       if (currentKey > 0) {
         Leaf<K, V> leaf = getLeaf(currentKey);
         if (keyObject.equals(leaf.key())) {
-          modifyIndex(parentPointer, pointers, 256, 0);
+          modifyIndex(id, index, index.with(CURRENT, 0));
           return true;
         } else {
           throw new RuntimeIndexException("Inconsistent state.");
@@ -379,19 +874,18 @@ public abstract class ByteTrie<K, V> {
       }
     }
     int keyByte = keyBytes[keyBytesIndex] - Byte.MIN_VALUE;
-    long pointer = pointers[keyByte];
+    long pointer = index.get(keyByte);
     if (pointer == 0) {
       // Equivalent of null pointer, search is over.
       return false;
     } else if (pointer < 0) {
       // Pointer to index node.
-      Index<K, V> nextIndex = getIndex(pointer);
-      return delete(pointer, nextIndex.keys(), keyBytes, keyBytesIndex + 1, keyObject);
+      return delete(pointer, getIndex(pointer), keyBytes, keyBytesIndex + 1, keyObject);
     } else {
       // Pointer to leaf node.
       Leaf<K, V> leaf = getLeaf(pointer);
       if (keyObject.equals(leaf.key())) {
-        modifyIndex(parentPointer, pointers, keyByte, 0);
+        modifyIndex(id, index, index.with(keyByte, 0));
         return true;
       } else {
         // Search is over and not found.
@@ -401,13 +895,18 @@ public abstract class ByteTrie<K, V> {
   }
 
   public ByteTrieStat stats() throws IOException {
-    return new ByteTrieStat(raf.length(), trie.size(), pendingNodes.size());
+    return new ByteTrieStat(raf.length(), cache.entries(), pendingNodes.size(),
+        cache.hits(), cache.misses(), cache.evictions());
   }
 
   public static class LongIndex extends ByteTrie<Long, Long> {
 
     public LongIndex(String fileName) throws IOException {
-      super(fileName);
+      this(fileName, NodeCache.defaultCache());
+    }
+
+    public LongIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName, cache);
     }
 
     @Override
@@ -418,19 +917,14 @@ public abstract class ByteTrie<K, V> {
     }
 
     @Override
-    protected Leaf<Long, Long> loadLeaf(long filePointer) throws IOException {
-      raf.seek(filePointer);
-      return new Leaf<Long, Long>((Long) Serializer.readColumn(DataTypes.LongType, raf), raf.readLong());
+    protected Leaf<Long, Long> readLeaf(DataInput stream) throws IOException {
+      return new Leaf<Long, Long>((Long) Serializer.readColumn(DataTypes.LongType, stream), stream.readLong());
     }
 
     @Override
-    protected void saveLeaf(long filePointer, Leaf<Long, Long> leaf) throws IOException {
-      raf.seek(filePointer);
-      ByteArrayOutputStream b = new ByteArrayOutputStream(leafSize(leaf));
-      DataOutputStream stream = new DataOutputStream(b);
+    protected void writeLeaf(Leaf<Long, Long> leaf, DataOutput stream) throws IOException {
       Serializer.writeColumn(leaf.key(), DataTypes.LongType, stream);
       stream.writeLong(leaf.value());
-      raf.write(b.toByteArray());
     }
 
     @Override
@@ -442,7 +936,11 @@ public abstract class ByteTrie<K, V> {
   public static class StringIndex extends ByteTrie<String, Long> {
 
     public StringIndex(String fileName) throws IOException {
-      super(fileName);
+      this(fileName, NodeCache.defaultCache());
+    }
+
+    public StringIndex(String fileName, NodeCache cache) throws IOException {
+      super(fileName, cache);
     }
 
     @Override
@@ -453,19 +951,14 @@ public abstract class ByteTrie<K, V> {
     }
 
     @Override
-    protected Leaf<String, Long> loadLeaf(long filePointer) throws IOException {
-      raf.seek(filePointer);
-      return new Leaf<String, Long>((String) Serializer.readColumn(DataTypes.StringType, raf), raf.readLong());
+    protected Leaf<String, Long> readLeaf(DataInput stream) throws IOException {
+      return new Leaf<String, Long>((String) Serializer.readColumn(DataTypes.StringType, stream), stream.readLong());
     }
 
     @Override
-    protected void saveLeaf(long filePointer, Leaf<String, Long> leaf) throws IOException {
-      raf.seek(filePointer);
-      ByteArrayOutputStream b = new ByteArrayOutputStream(leafSize(leaf));
-      DataOutputStream stream = new DataOutputStream(b);
+    protected void writeLeaf(Leaf<String, Long> leaf, DataOutput stream) throws IOException {
       Serializer.writeColumn(leaf.key(), DataTypes.StringType, stream);
       stream.writeLong(leaf.value());
-      raf.write(b.toByteArray());
     }
 
     @Override
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.SignedBytes;
+
+/**
+ * Key of a multi-column index: the concatenation of the order preserving encoding of
+ * every column value, compared lexicographically as signed bytes. Every value is
+ * prefixed by a null marker and strings are terminated, so the encoding of a list of
+ * values is never the prefix of a different list. Therefore keys with the same first
+ * <code>n</code> values are contiguous and a prefix key matches all of them.
+ * 
+ * @author gsvigruha
+ */
+public class CompositeKey implements Comparable<CompositeKey> {
+
+  // Unsigned order, flipped to signed order when encoding.
+  private static final int NULL = 0x00;
+  private static final int NOT_NULL = 0x01;
+
+  private final byte[] bytes;
+  // A prefix key is equal to every key starting with its bytes.
+  private final boolean prefix;
+
+  private CompositeKey(byte[] bytes, boolean prefix) {
+    this.bytes = bytes;
+    this.prefix = prefix;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public boolean isPrefix() {
+    return prefix;
+  }
+
+  /**
+   * The key of a record, <code>values</code> are the values of the indexed columns.
+   */
+  public static CompositeKey of(List<Object> values) {
+    return new CompositeKey(encode(values, /* notNull= */false), /* prefix= */false);
+  }
+
+  /**
+   * Matches every key starting with <code>values</code>.
+   */
+  public static CompositeKey prefix(List<Object> values) {
+    return new CompositeKey(encode(values, /* notNull= */false), /* prefix= */true);
+  }
+
+  /**
+   * Matches every key starting with <code>values</code> where the next value is not null.
+   */
+  public static CompositeKey notNullPrefix(List<Object> values) {
+    return new CompositeKey(encode(values, /* notNull= */true), /* prefix= */true);
+  }
+
+  private static byte[] encode(List<Object> values, boolean notNull) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(values.size() * 9 + 1);
+    for (Object value : values) {
+      if (value == null) {
+        out.write(NULL);
+        continue;
+      }
+      out.write(NOT_NULL);
+      if (value instanceof String) {
+        String string = (String) value;
+        for (int i = 0; i < string.length(); i++) {
+          char c = string.charAt(i);
+          out.write(c >>> 8);
+          out.write(c);
+          if (c == 0) {
+            // Escaped to stay above the terminator.
+            out.write(0xFF);
+          }
+        }
+        out.write(0);
+        out.write(0);
+        out.write(0);
+      } else if (value instanceof Boolean) {
+        out.write((Boolean) value ? 1 : 0);
+      } else {
+        long l = orderedLong(value);
+        for (int i = 56; i >= 0; i -= 8) {
+          out.write((int) (l >>> i));
+        }
+      }
+    }
+    if (notNull) {
+      out.write(NOT_NULL);
+    }
+    byte[] bytes = out.toByteArray();
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] ^= 0x80;
+    }
+    return bytes;
+  }
+
+  /**
+   * A long with the same unsigned order as the <code>Long</code>, <code>Double</code>
+   * or <code>Date</code> value.
+   */
+  static long orderedLong(Object value) {
+    if (value instanceof Double) {
+      long bits = Double.doubleToLongBits((Double) value);
+      return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    } else if (value instanceof Date) {
+      return ((Date) value).getTime() ^ Long.MIN_VALUE;
+    } else {
+      return ((Long) value) ^ Long.MIN_VALUE;
+    }
+  }
+
+  @Override
+  public int compareTo(CompositeKey other) {
+    int length = Math.min(bytes.length, other.bytes.length);
+    for (int i = 0; i < length; i++) {
+      int result = SignedBytes.compare(bytes[i], other.bytes[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    if ((other.prefix && bytes.length >= other.bytes.length)
+        || (prefix && other.bytes.length >= bytes.length)) {
+      return 0;
+    }
+    return Integer.compare(bytes.length, other.bytes.length);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof CompositeKey)) {
+      return false;
+    }
+    CompositeKey other = (CompositeKey) obj;
+    return prefix == other.prefix && Arrays.equals(bytes, other.bytes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return BaseEncoding.base16().encode(bytes);
+  }
+
+  public static final DataType<CompositeKey> TYPE = new DataType<CompositeKey>("composite_key") {
+
+    @Override
+    public Class<CompositeKey> javaClass() {
+      return CompositeKey.class;
+    }
+
+    @Override
+    public void write(Object value, DataOutput stream) throws IOException {
+      byte[] bytes = ((CompositeKey) value).bytes;
+      stream.writeShort(bytes.length);
+      stream.write(bytes);
+    }
+
+    @Override
+    public CompositeKey read(DataInput stream) throws IOException {
+      byte[] bytes = new byte[stream.readUnsignedShort()];
+      stream.readFully(bytes);
+      return new CompositeKey(bytes, /* prefix= */false);
+    }
+
+    @Override
+    public CompositeKey read(ByteBuffer buffer) throws IOException {
+      byte[] bytes = new byte[buffer.getShort() & 0xffff];
+      buffer.get(bytes);
+      return new CompositeKey(bytes, /* prefix= */false);
+    }
+
+    @Override
+    public int size(Object value) {
+      return 2 + ((CompositeKey) value).bytes.length;
+    }
+
+    @Override
+    public Object fromString(String string) throws RuleException {
+      throw new RuleException("Composite keys cannot be parsed.");
+    }
+  };
+}
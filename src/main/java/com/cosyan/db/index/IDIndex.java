@@ -22,7 +22,6 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -34,8 +33,9 @@ public class IDIndex {
   private static final int SIZE = 4096;
   private static final int BYTE_SIZE = SIZE * 8;
 
-  private final TreeMap<Long, long[]> cachedIndices = new TreeMap<>();
-  private final HashSet<Long> dirty = new HashSet<>();
+  // Modified segments until commit, the committed ones are in the shared cache.
+  private final TreeMap<Long, long[]> pendingSegments = new TreeMap<>();
+  private final NodeCache.Handle cache;
 
   private final String fileName;
 
@@ -44,7 +44,12 @@ public class IDIndex {
   private long lastID;
 
   public IDIndex(String fileName) throws IOException {
+    this(fileName, NodeCache.defaultCache());
+  }
+
+  public IDIndex(String fileName, NodeCache nodeCache) throws IOException {
     this.fileName = fileName;
+    this.cache = nodeCache.register();
     this.raf = new RandomAccessFile(fileName, "rw");
     filePointer = raf.length();
 
@@ -67,7 +72,7 @@ public class IDIndex {
   }
 
   public void cleanUp() {
-    cachedIndices.clear();
+    cache.clear();
   }
 
   public void drop() throws IOException {
@@ -81,12 +86,12 @@ public class IDIndex {
 
   public Long get(long key) throws IOException {
     long segment = key / SIZE;
-    long[] cachedValues = cachedIndices.get(segment);
+    long[] cachedValues = pendingSegments.get(segment);
     if (cachedValues == null) {
       if (key * 8 >= filePointer) {
         return null;
       }
-      cachedValues = read(segment);
+      cachedValues = load(segment);
     }
     long cachedValue = cachedValues[(int) (key % SIZE)];
     return cachedValue == -1 ? null : cachedValue;
@@ -102,72 +107,94 @@ public class IDIndex {
     return cachedValues;
   }
 
+  private long[] load(long segment) throws IOException {
+    long[] cachedValues = (long[]) cache.get(segment);
+    if (cachedValues == null) {
+      cachedValues = read(segment);
+      cache.put(segment, cachedValues, BYTE_SIZE + NodeCache.ENTRY_OVERHEAD);
+    }
+    return cachedValues;
+  }
+
+  /**
+   * Returns the segment to modify. Cached segments are moved to the pending ones so
+   * that uncommitted changes are never visible in the cache.
+   */
+  private long[] modify(long segment) throws IOException {
+    long[] cachedValues = pendingSegments.get(segment);
+    if (cachedValues == null) {
+      cachedValues = (long[]) cache.remove(segment);
+      if (cachedValues == null) {
+        cachedValues = read(segment);
+      }
+      pendingSegments.put(segment, cachedValues);
+    }
+    return cachedValues;
+  }
+
   public void put(long key, long value) throws IOException, IndexException {
     long segment = key / SIZE;
-    long[] cachedValues = cachedIndices.get(segment);
+    long[] cachedValues = pendingSegments.get(segment);
     if (cachedValues == null) {
       if (key * 8 >= filePointer) {
         for (long i = filePointer / BYTE_SIZE; i <= segment; i++) {
-          if (!cachedIndices.containsKey(i)) {
-            cachedValues = new long[SIZE];
-            Arrays.fill(cachedValues, -1);
-            cachedIndices.put(i, cachedValues);
-            dirty.add(i);
+          if (!pendingSegments.containsKey(i)) {
+            long[] values = new long[SIZE];
+            Arrays.fill(values, -1);
+            pendingSegments.put(i, values);
           }
         }
+        cachedValues = pendingSegments.get(segment);
       } else {
-        cachedValues = read(segment);
-        cachedIndices.put(segment, cachedValues);
+        cachedValues = modify(segment);
       }
     }
     if (cachedValues[(int) (key % SIZE)] != -1) {
       throw new IndexException("Key '" + key + "' already present in index.");
     }
-    dirty.add(segment);
     cachedValues[(int) (key % SIZE)] = value;
     lastID = Math.max(lastID, key);
   }
 
   public boolean delete(long key) throws IOException {
     long segment = key / SIZE;
-    long[] cachedValues = cachedIndices.get(segment);
+    long[] cachedValues = pendingSegments.get(segment);
     long blockStart = segment * SIZE;
     if (cachedValues == null) {
       if (key * 8 >= filePointer) {
         return false;
       }
-      cachedValues = read(segment);
-      cachedIndices.put(segment, cachedValues);
+      cachedValues = load(segment);
     }
     int idx = (int) (key - blockStart);
     long cachedValue = cachedValues[idx];
     if (cachedValue == -1) {
       return false;
     } else {
-      dirty.add(segment);
+      cachedValues = modify(segment);
       cachedValues[idx] = -1;
       return true;
     }
   }
 
   public void commit() throws IOException {
-    for (Map.Entry<Long, long[]> e : cachedIndices.entrySet()) {
+    for (Map.Entry<Long, long[]> e : pendingSegments.entrySet()) {
       long i = e.getKey();
-      if (dirty.contains(i)) {
-        long[] values = e.getValue();
-        raf.seek(i * BYTE_SIZE);
-        ByteBuffer lb = ByteBuffer.allocate(BYTE_SIZE);
-        lb.asLongBuffer().put(values);
-        raf.write(lb.array());
-      }
+      long[] values = e.getValue();
+      raf.seek(i * BYTE_SIZE);
+      ByteBuffer lb = ByteBuffer.allocate(BYTE_SIZE);
+      lb.asLongBuffer().put(values);
+      raf.write(lb.array());
     }
     filePointer = raf.length();
-    dirty.clear();
+    for (Map.Entry<Long, long[]> e : pendingSegments.entrySet()) {
+      cache.put(e.getKey(), e.getValue(), BYTE_SIZE + NodeCache.ENTRY_OVERHEAD);
+    }
+    pendingSegments.clear();
   }
 
   public void rollback() {
-    cachedIndices.clear();
-    dirty.clear();
+    pendingSegments.clear();
   }
 
   public long getLastID() {
@@ -175,6 +202,7 @@ public class IDIndex {
   }
 
   public ByteTrieStat stats() throws IOException {
-    return new ByteTrieStat(raf.length(), cachedIndices.size(), dirty.size());
+    return new ByteTrieStat(raf.length(), cache.entries(), pendingSegments.size(),
+        cache.hits(), cache.misses(), cache.evictions());
   }
 }
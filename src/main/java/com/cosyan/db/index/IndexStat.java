@@ -23,6 +23,13 @@ public class IndexStat {
     private final long indexFileSize;
     private final int inMemNodes;
     private final int pendingNodes;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long cacheEvictions;
+
+    public double getCacheHitRatio() {
+      return hitRatio(cacheHits, cacheMisses);
+    }
   }
 
   @Data
@@ -32,5 +39,16 @@ public class IndexStat {
     private final int trieInMemNodes;
     private final int triePendingNodes;
     private final int pendingNodes;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long cacheEvictions;
+
+    public double getCacheHitRatio() {
+      return hitRatio(cacheHits, cacheMisses);
+    }
+  }
+
+  private static double hitRatio(long hits, long misses) {
+    return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
   }
 }
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size bounded cache of index nodes shared by all the indexes. Entries are
+ * addressed by the owner index and a primitive long node id and are stored in an
+ * open addressing hash table. When the total size of the entries exceeds the
+ * memory budget nodes are evicted using the CLOCK (second chance) algorithm.
+ * 
+ * Every index registers a {@link Handle} which also keeps the hit, miss and
+ * eviction counters of the index.
+ * 
+ * @author gsvigruha
+ */
+public class NodeCache {
+
+  public static final long DEFAULT_SIZE_BYTES = 64L * 1024 * 1024;
+
+  // Rough per entry overhead of an object in the cache.
+  public static final int ENTRY_OVERHEAD = 64;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final NodeCache DEFAULT = new NodeCache(DEFAULT_SIZE_BYTES);
+
+  public static NodeCache defaultCache() {
+    return DEFAULT;
+  }
+
+  public static class Handle {
+    private final NodeCache cache;
+    private final int id;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int entries;
+
+    private Handle(NodeCache cache, int id) {
+      this.cache = cache;
+      this.id = id;
+    }
+
+    public Object get(long key) {
+      return cache.get(this, key);
+    }
+
+    /**
+     * Whether the node is cached, without counting it as a hit or miss.
+     */
+    public boolean contains(long key) {
+      return cache.contains(this, key);
+    }
+
+    public void put(long key, Object node, int size) {
+      cache.put(this, key, node, size);
+    }
+
+    public Object remove(long key) {
+      return cache.remove(this, key);
+    }
+
+    public void clear() {
+      cache.removeAll(this);
+    }
+
+    public long hits() {
+      cache.lock.lock();
+      try {
+        return hits;
+      } finally {
+        cache.lock.unlock();
+      }
+    }
+
+    public long misses() {
+      cache.lock.lock();
+      try {
+        return misses;
+      } finally {
+        cache.lock.unlock();
+      }
+    }
+
+    public long evictions() {
+      cache.lock.lock();
+      try {
+        return evictions;
+      } finally {
+        cache.lock.unlock();
+      }
+    }
+
+    public int entries() {
+      cache.lock.lock();
+      try {
+        return entries;
+      } finally {
+        cache.lock.unlock();
+      }
+    }
+  }
+
+  private final long budget;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private Handle[] owners;
+  private long[] keys;
+  private Object[] values;
+  private int[] sizes;
+  private boolean[] referenced;
+  private int count;
+  private long usedBytes;
+  private int hand;
+  private int nextHandleId;
+
+  public NodeCache(long budget) {
+    this.budget = budget;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    owners = new Handle[capacity];
+    keys = new long[capacity];
+    values = new Object[capacity];
+    sizes = new int[capacity];
+    referenced = new boolean[capacity];
+  }
+
+  public Handle register() {
+    lock.lock();
+    try {
+      return new Handle(this, nextHandleId++);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long budget() {
+    return budget;
+  }
+
+  public long usedBytes() {
+    lock.lock();
+    try {
+      return usedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static int hash(Handle owner, long key) {
+    long h = key * 0x9E3779B97F4A7C15L + owner.id;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private int slot(Handle owner, long key) {
+    int mask = keys.length - 1;
+    int i = hash(owner, key) & mask;
+    while (owners[i] != null) {
+      if (owners[i] == owner && keys[i] == key) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -i - 1;
+  }
+
+  private Object get(Handle owner, long key) {
+    lock.lock();
+    try {
+      int i = slot(owner, key);
+      if (i < 0) {
+        owner.misses++;
+        return null;
+      }
+      owner.hits++;
+      referenced[i] = true;
+      return values[i];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean contains(Handle owner, long key) {
+    lock.lock();
+    try {
+      return slot(owner, key) >= 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void put(Handle owner, long key, Object node, int size) {
+    lock.lock();
+    try {
+      int i = slot(owner, key);
+      if (i >= 0) {
+        usedBytes += size - sizes[i];
+        values[i] = node;
+        sizes[i] = size;
+        referenced[i] = true;
+      } else {
+        if ((count + 1) * 2 > keys.length) {
+          resize(keys.length * 2);
+          i = slot(owner, key);
+        }
+        i = -i - 1;
+        owners[i] = owner;
+        keys[i] = key;
+        values[i] = node;
+        sizes[i] = size;
+        // New entries get a second chance only after they are read again.
+        referenced[i] = false;
+        count++;
+        owner.entries++;
+        usedBytes += size;
+      }
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Object remove(Handle owner, long key) {
+    lock.lock();
+    try {
+      int i = slot(owner, key);
+      if (i < 0) {
+        return null;
+      }
+      Object value = values[i];
+      delete(i);
+      return value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void removeAll(Handle owner) {
+    lock.lock();
+    try {
+      int i = 0;
+      while (i < keys.length && owner.entries > 0) {
+        if (owners[i] == owner) {
+          // The next entry might be shifted to this slot.
+          delete(i);
+        } else {
+          i++;
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void evict() {
+    while (usedBytes > budget && count > 0) {
+      if (owners[hand] == null) {
+        hand = (hand + 1) & (keys.length - 1);
+      } else if (referenced[hand]) {
+        referenced[hand] = false;
+        hand = (hand + 1) & (keys.length - 1);
+      } else {
+        owners[hand].evictions++;
+        // Backward shift can move an unvisited entry under the hand.
+        delete(hand);
+      }
+    }
+  }
+
+  /**
+   * Removes the entry at slot <code>i</code> and shifts back the following entries
+   * of the probe sequence so that no tombstones are needed.
+   */
+  private void delete(int i) {
+    int mask = keys.length - 1;
+    owners[i].entries--;
+    usedBytes -= sizes[i];
+    count--;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (owners[j] == null) {
+        break;
+      }
+      int home = hash(owners[j], keys[j]) & mask;
+      // Move the entry at j if its home slot is not in the cyclic range (i, j].
+      if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+        continue;
+      }
+      owners[i] = owners[j];
+      keys[i] = keys[j];
+      values[i] = values[j];
+      sizes[i] = sizes[j];
+      referenced[i] = referenced[j];
+      i = j;
+    }
+    owners[i] = null;
+    values[i] = null;
+    sizes[i] = 0;
+    referenced[i] = false;
+  }
+
+  private void resize(int capacity) {
+    Handle[] oldOwners = owners;
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    int[] oldSizes = sizes;
+    boolean[] oldReferenced = referenced;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldOwners[i] != null) {
+        int j = -slot(oldOwners[i], oldKeys[i]) - 1;
+        owners[j] = oldOwners[i];
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+        sizes[j] = oldSizes[i];
+        referenced[j] = oldReferenced[i];
+      }
+    }
+    hand = 0;
+  }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compressed set of record file pointers. The high 48 bits of a pointer select a
+ * container and the low 16 bits are stored in the container, either as a sorted array
+ * if the container is sparse or as a bitmap of 2^16 bits if it is dense, like in
+ * roaring bitmaps.
+ *
+ * @author gsvigruha
+ */
+public class PositionBitmap {
+
+  private static final int ARRAY_MAX = 4096;
+  private static final int WORDS = (1 << 16) / Long.SIZE;
+
+  private static abstract class Container {
+
+    public abstract boolean contains(char low);
+
+    public abstract int cardinality();
+
+    /**
+     * Adds the value and returns the container to use from now on.
+     */
+    public abstract Container add(char low);
+
+    /**
+     * Removes the value and returns the container to use from now on.
+     */
+    public abstract Container remove(char low);
+
+    public abstract long[] words();
+
+    public abstract Container copy();
+
+    public abstract int toArray(long high, long[] result, int offset);
+
+    public abstract void write(DataOutput out) throws IOException;
+  }
+
+  private static class ArrayContainer extends Container {
+    private char[] values;
+    private int size;
+
+    private ArrayContainer(char[] values, int size) {
+      this.values = values;
+      this.size = size;
+    }
+
+    private ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    @Override
+    public boolean contains(char low) {
+      return Arrays.binarySearch(values, 0, size, low) >= 0;
+    }
+
+    @Override
+    public int cardinality() {
+      return size;
+    }
+
+    @Override
+    public Container add(char low) {
+      int i = Arrays.binarySearch(values, 0, size, low);
+      if (i >= 0) {
+        return this;
+      }
+      if (size == ARRAY_MAX) {
+        return new BitmapContainer(words(), size).add(low);
+      }
+      i = -i - 1;
+      if (size == values.length) {
+        values = Arrays.copyOf(values, Math.min(size * 2, ARRAY_MAX));
+      }
+      System.arraycopy(values, i, values, i + 1, size - i);
+      values[i] = low;
+      size++;
+      return this;
+    }
+
+    @Override
+    public Container remove(char low) {
+      int i = Arrays.binarySearch(values, 0, size, low);
+      if (i >= 0) {
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+      }
+      return this;
+    }
+
+    @Override
+    public long[] words() {
+      long[] words = new long[WORDS];
+      for (int i = 0; i < size; i++) {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+      return words;
+    }
+
+    @Override
+    public Container copy() {
+      return new ArrayContainer(Arrays.copyOf(values, Math.max(size, 1)), size);
+    }
+
+    @Override
+    public int toArray(long high, long[] result, int offset) {
+      for (int i = 0; i < size; i++) {
+        result[offset++] = high | values[i];
+      }
+      return offset;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeBoolean(false);
+      out.writeShort(size - 1);
+      for (int i = 0; i < size; i++) {
+        out.writeChar(values[i]);
+      }
+    }
+
+    private ArrayContainer and(ArrayContainer other) {
+      char[] result = new char[Math.min(size, other.size)];
+      int n = 0;
+      for (int i = 0, j = 0; i < size && j < other.size;) {
+        if (values[i] < other.values[j]) {
+          i++;
+        } else if (values[i] > other.values[j]) {
+          j++;
+        } else {
+          result[n++] = values[i];
+          i++;
+          j++;
+        }
+      }
+      return new ArrayContainer(result, n);
+    }
+
+    private Container or(ArrayContainer other) {
+      char[] result = new char[size + other.size];
+      int n = 0;
+      int i = 0;
+      int j = 0;
+      while (i < size || j < other.size) {
+        if (j == other.size || (i < size && values[i] < other.values[j])) {
+          result[n++] = values[i++];
+        } else if (i == size || values[i] > other.values[j]) {
+          result[n++] = other.values[j++];
+        } else {
+          result[n++] = values[i++];
+          j++;
+        }
+      }
+      if (n > ARRAY_MAX) {
+        return new BitmapContainer(new ArrayContainer(result, n).words(), n);
+      }
+      return new ArrayContainer(result, n);
+    }
+
+    private ArrayContainer filter(Container other, boolean keep) {
+      char[] result = new char[size];
+      int n = 0;
+      for (int i = 0; i < size; i++) {
+        if (other.contains(values[i]) == keep) {
+          result[n++] = values[i];
+        }
+      }
+      return new ArrayContainer(result, n);
+    }
+  }
+
+  private static class BitmapContainer extends Container {
+    private final long[] words;
+    private int cardinality;
+
+    private BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    public boolean contains(char low) {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    public int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    public Container add(char low) {
+      if (!contains(low)) {
+        words[low >>> 6] |= 1L << low;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    public Container remove(char low) {
+      if (contains(low)) {
+        words[low >>> 6] &= ~(1L << low);
+        cardinality--;
+        if (cardinality <= ARRAY_MAX) {
+          return toArrayContainer();
+        }
+      }
+      return this;
+    }
+
+    private ArrayContainer toArrayContainer() {
+      char[] values = new char[cardinality];
+      int n = 0;
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        while (word != 0) {
+          values[n++] = (char) (w * Long.SIZE + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values, n);
+    }
+
+    @Override
+    public long[] words() {
+      return words;
+    }
+
+    @Override
+    public Container copy() {
+      return new BitmapContainer(Arrays.copyOf(words, WORDS), cardinality);
+    }
+
+    @Override
+    public int toArray(long high, long[] result, int offset) {
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        while (word != 0) {
+          result[offset++] = high | (w * Long.SIZE + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return offset;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeBoolean(true);
+      for (long word : words) {
+        out.writeLong(word);
+      }
+    }
+  }
+
+  private static Container of(long[] words) {
+    int cardinality = 0;
+    for (long word : words) {
+      cardinality += Long.bitCount(word);
+    }
+    if (cardinality == 0) {
+      return null;
+    }
+    BitmapContainer container = new BitmapContainer(words, cardinality);
+    return cardinality <= ARRAY_MAX ? container.toArrayContainer() : container;
+  }
+
+  private static Container and(Container x, Container y) {
+    Container result;
+    if (x instanceof ArrayContainer && y instanceof ArrayContainer) {
+      result = ((ArrayContainer) x).and((ArrayContainer) y);
+    } else if (x instanceof ArrayContainer) {
+      result = ((ArrayContainer) x).filter(y, true);
+    } else if (y instanceof ArrayContainer) {
+      result = ((ArrayContainer) y).filter(x, true);
+    } else {
+      long[] words = new long[WORDS];
+      for (int w = 0; w < WORDS; w++) {
+        words[w] = x.words()[w] & y.words()[w];
+      }
+      return of(words);
+    }
+    return result.cardinality() == 0 ? null : result;
+  }
+
+  private static Container or(Container x, Container y) {
+    if (x instanceof ArrayContainer && y instanceof ArrayContainer) {
+      return ((ArrayContainer) x).or((ArrayContainer) y);
+    }
+    long[] words = x instanceof BitmapContainer ? Arrays.copyOf(x.words(), WORDS) : x.words();
+    long[] other = y.words();
+    for (int w = 0; w < WORDS; w++) {
+      words[w] |= other[w];
+    }
+    return of(words);
+  }
+
+  private static Container andNot(Container x, Container y) {
+    if (x instanceof ArrayContainer) {
+      Container result = ((ArrayContainer) x).filter(y, false);
+      return result.cardinality() == 0 ? null : result;
+    }
+    long[] words = Arrays.copyOf(x.words(), WORDS);
+    long[] other = y.words();
+    for (int w = 0; w < WORDS; w++) {
+      words[w] &= ~other[w];
+    }
+    return of(words);
+  }
+
+  private final TreeMap<Long, Container> containers = new TreeMap<>();
+
+  public boolean add(long position) {
+    Long high = position >>> 16;
+    char low = (char) position;
+    Container container = containers.get(high);
+    if (container == null) {
+      containers.put(high, new ArrayContainer().add(low));
+      return true;
+    }
+    int cardinality = container.cardinality();
+    containers.put(high, container.add(low));
+    return container.cardinality() != cardinality || containers.get(high) != container;
+  }
+
+  public boolean remove(long position) {
+    Long high = position >>> 16;
+    char low = (char) position;
+    Container container = containers.get(high);
+    if (container == null || !container.contains(low)) {
+      return false;
+    }
+    Container newContainer = container.remove(low);
+    if (newContainer.cardinality() == 0) {
+      containers.remove(high);
+    } else {
+      containers.put(high, newContainer);
+    }
+    return true;
+  }
+
+  public boolean contains(long position) {
+    Container container = containers.get(position >>> 16);
+    return container != null && container.contains((char) position);
+  }
+
+  public long cardinality() {
+    long cardinality = 0L;
+    for (Container container : containers.values()) {
+      cardinality += container.cardinality();
+    }
+    return cardinality;
+  }
+
+  public boolean isEmpty() {
+    return containers.isEmpty();
+  }
+
+  /**
+   * The positions in ascending order.
+   */
+  public long[] toArray() {
+    long[] result = new long[(int) cardinality()];
+    int offset = 0;
+    for (Map.Entry<Long, Container> entry : containers.entrySet()) {
+      offset = entry.getValue().toArray(entry.getKey() << 16, result, offset);
+    }
+    return result;
+  }
+
+  public PositionBitmap copy() {
+    PositionBitmap result = new PositionBitmap();
+    for (Map.Entry<Long, Container> entry : containers.entrySet()) {
+      result.containers.put(entry.getKey(), entry.getValue().copy());
+    }
+    return result;
+  }
+
+  public PositionBitmap and(PositionBitmap other) {
+    PositionBitmap result = new PositionBitmap();
+    for (Map.Entry<Long, Container> entry : containers.entrySet()) {
+      Container otherContainer = other.containers.get(entry.getKey());
+      if (otherContainer != null) {
+        Container container = and(entry.getValue(), otherContainer);
+        if (container != null) {
+          result.containers.put(entry.getKey(), container);
+        }
+      }
+    }
+    return result;
+  }
+
+  public PositionBitmap or(PositionBitmap other) {
+    PositionBitmap result = copy();
+    for (Map.Entry<Long, Container> entry : other.containers.entrySet()) {
+      Container container = result.containers.get(entry.getKey());
+      result.containers.put(entry.getKey(),
+          container == null ? entry.getValue().copy() : or(container, entry.getValue()));
+    }
+    return result;
+  }
+
+  public PositionBitmap andNot(PositionBitmap other) {
+    PositionBitmap result = new PositionBitmap();
+    for (Map.Entry<Long, Container> entry : containers.entrySet()) {
+      Container otherContainer = other.containers.get(entry.getKey());
+      Container container = otherContainer == null ? entry.getValue().copy()
+          : andNot(entry.getValue(), otherContainer);
+      if (container != null) {
+        result.containers.put(entry.getKey(), container);
+      }
+    }
+    return result;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(containers.size());
+    for (Map.Entry<Long, Container> entry : containers.entrySet()) {
+      out.writeLong(entry.getKey());
+      entry.getValue().write(out);
+    }
+  }
+
+  public static PositionBitmap read(DataInput in) throws IOException {
+    PositionBitmap result = new PositionBitmap();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      long high = in.readLong();
+      Container container;
+      if (in.readBoolean()) {
+        long[] words = new long[WORDS];
+        for (int w = 0; w < WORDS; w++) {
+          words[w] = in.readLong();
+        }
+        container = of(words);
+      } else {
+        int n = in.readUnsignedShort() + 1;
+        char[] values = new char[n];
+        for (int j = 0; j < n; j++) {
+          values[j] = in.readChar();
+        }
+        container = new ArrayContainer(values, n);
+      }
+      result.containers.put(high, container);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof PositionBitmap)) {
+      return false;
+    }
+    return Arrays.equals(toArray(), ((PositionBitmap) obj).toArray());
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(toArray());
+  }
+}
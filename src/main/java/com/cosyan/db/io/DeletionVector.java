@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.cosyan.db.index.PositionBitmap;
+
+/**
+ * The positions of the deleted records of a table. Every commit appends the deletions of
+ * the transaction as one block to the deletion vector file instead of marking the records
+ * in the table file one by one. Deletions are pending until commit, like index changes.
+ */
+public class DeletionVector {
+
+  private final String fileName;
+  private PositionBitmap committed = new PositionBitmap();
+  private PositionBitmap pending = new PositionBitmap();
+
+  public DeletionVector(String fileName) throws IOException {
+    this.fileName = fileName;
+    if (new File(fileName).exists()) {
+      load();
+    }
+  }
+
+  private void load() throws IOException {
+    byte[] data = Files.readAllBytes(Paths.get(fileName));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    int pointer = 0;
+    while (data.length - pointer >= Integer.BYTES) {
+      int size = in.readInt();
+      if (data.length - pointer - Integer.BYTES < size) {
+        break;
+      }
+      committed = committed.or(PositionBitmap.read(in));
+      pointer += Integer.BYTES + size;
+    }
+    if (pointer < data.length) {
+      // A partially written block of an unfinished commit.
+      try (RandomAccessFile raf = new RandomAccessFile(fileName, "rw")) {
+        raf.setLength(pointer);
+      }
+    }
+  }
+
+  public boolean contains(long position) {
+    return pending.contains(position) || committed.contains(position);
+  }
+
+  /**
+   * Marks the record as deleted, returns false if it was deleted already.
+   */
+  public boolean delete(long position) {
+    if (committed.contains(position)) {
+      return false;
+    }
+    return pending.add(position);
+  }
+
+  public boolean hasPending() {
+    return !pending.isEmpty();
+  }
+
+  public void commit() throws IOException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    ByteArrayOutputStream block = new ByteArrayOutputStream();
+    pending.write(new DataOutputStream(block));
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName, /* append= */true))) {
+      out.writeInt(block.size());
+      block.writeTo(out);
+    }
+    committed = committed.or(pending);
+    pending = new PositionBitmap();
+  }
+
+  public void rollback() {
+    pending = new PositionBitmap();
+  }
+
+  /**
+   * The number of committed deletions.
+   */
+  public long size() {
+    return committed.cardinality();
+  }
+
+  /**
+   * The committed deletions in ascending order.
+   */
+  public long[] committed() {
+    return committed.toArray();
+  }
+
+  /**
+   * Forgets the committed deletions once they are merged into the table file.
+   */
+  public void clear() throws IOException {
+    Files.deleteIfExists(Paths.get(fileName));
+    committed = new PositionBitmap();
+  }
+
+  public void drop() throws IOException {
+    pending = new PositionBitmap();
+    clear();
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.cosyan.db.io.Indexes.IndexWriter;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.SignedBytes;
+
+import lombok.Data;
+
+/**
+ * Sorts (key, file pointer) pairs by the sort key of an index for bulk loading. Sorted
+ * runs of at most <code>runSize</code> entries are spilled to temporary files and
+ * merged when iterating.
+ */
+public class IndexEntrySorter implements Closeable {
+
+  private static final Comparator<byte[]> BYTE_ORDER = SignedBytes.lexicographicalComparator();
+  private static final Comparator<Entry> ORDER = (e1, e2) -> {
+    int result = BYTE_ORDER.compare(e1.sortKey, e2.sortKey);
+    return result != 0 ? result : Long.compare(e1.pointer, e2.pointer);
+  };
+
+  @Data
+  private static class Entry {
+    private final byte[] sortKey;
+    private final Object key;
+    private final long pointer;
+  }
+
+  private final IndexWriter index;
+  private final DataType<?> keyType;
+  private final int runSize;
+  private final ArrayList<Entry> buffer = new ArrayList<>();
+  private final List<File> runs = new ArrayList<>();
+  private final List<Integer> runLengths = new ArrayList<>();
+  private final List<DataInputStream> openRuns = new ArrayList<>();
+
+  public IndexEntrySorter(IndexWriter index, DataType<?> keyType, int runSize) {
+    this.index = index;
+    this.keyType = keyType;
+    this.runSize = runSize;
+  }
+
+  public void add(Object key, long pointer) throws IOException {
+    buffer.add(new Entry(index.sortKey(key), key, pointer));
+    if (buffer.size() >= runSize) {
+      spill();
+    }
+  }
+
+  private void spill() throws IOException {
+    buffer.sort(ORDER);
+    File file = File.createTempFile("cosyan-index-", ".run");
+    file.deleteOnExit();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    try {
+      for (Entry entry : buffer) {
+        Serializer.writeColumn(entry.getKey(), keyType, out);
+        out.writeLong(entry.getPointer());
+      }
+    } finally {
+      out.close();
+    }
+    runs.add(file);
+    runLengths.add(buffer.size());
+    buffer.clear();
+  }
+
+  /**
+   * The entries in sort key order. IO errors are thrown as {@link UncheckedIOException}.
+   */
+  public Iterator<Map.Entry<Object, Long>> sorted() throws IOException {
+    buffer.sort(ORDER);
+    if (runs.isEmpty()) {
+      return Iterators.transform(buffer.iterator(), e -> Maps.immutableEntry(e.getKey(), e.getPointer()));
+    }
+    PriorityQueue<PeekingRun> queue = new PriorityQueue<>(
+        (r1, r2) -> ORDER.compare(r1.head, r2.head));
+    for (int i = 0; i < runs.size(); i++) {
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(runs.get(i)), 1 << 16));
+      openRuns.add(in);
+      addIfNotEmpty(queue, new PeekingRun(fileRun(in, runLengths.get(i))));
+    }
+    addIfNotEmpty(queue, new PeekingRun(buffer.iterator()));
+    return new AbstractIterator<Map.Entry<Object, Long>>() {
+      @Override
+      protected Map.Entry<Object, Long> computeNext() {
+        PeekingRun run = queue.poll();
+        if (run == null) {
+          return endOfData();
+        }
+        Entry entry = run.head;
+        addIfNotEmpty(queue, run);
+        return Maps.immutableEntry(entry.getKey(), entry.getPointer());
+      }
+    };
+  }
+
+  private static void addIfNotEmpty(PriorityQueue<PeekingRun> queue, PeekingRun run) {
+    if (run.iterator.hasNext()) {
+      run.head = run.iterator.next();
+      queue.add(run);
+    }
+  }
+
+  private Iterator<Entry> fileRun(DataInputStream in, int length) {
+    return new AbstractIterator<Entry>() {
+      private int i = 0;
+
+      @Override
+      protected Entry computeNext() {
+        if (i++ == length) {
+          return endOfData();
+        }
+        try {
+          Object key = Serializer.readColumn(keyType, in);
+          return new Entry(index.sortKey(key), key, in.readLong());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  private static class PeekingRun {
+    private final Iterator<Entry> iterator;
+    private Entry head;
+
+    private PeekingRun(Iterator<Entry> iterator) {
+      this.iterator = iterator;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (DataInputStream in : openRuns) {
+      in.close();
+    }
+    for (File run : runs) {
+      run.delete();
+    }
+    buffer.clear();
+  }
+}
@@ -16,8 +16,11 @@
 package com.cosyan.db.io;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
 
 import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.index.PositionBitmap;
 import com.cosyan.db.model.DataTypes.DataType;
 
 public class Indexes {
@@ -31,11 +34,67 @@ public class Indexes {
     public DataType<?> keyDataType();
   }
 
+  public static interface IndexCursor {
+
+    /**
+     * Returns the next file pointer or -1 if there are no more entries.
+     */
+    public long next() throws IOException;
+  }
+
+  public static interface OrderedIndexReader extends IndexReader {
+
+    /**
+     * Iterates over the file pointers of the records with keys between
+     * <code>from</code> and <code>to</code> in key order. Null bounds are unbounded.
+     */
+    public IndexCursor cursor(Object from, boolean fromInclusive, Object to, boolean toInclusive,
+        boolean ascending) throws IOException;
+
+    /**
+     * Iterates over the file pointers of the records with <code>key</code> starting
+     * from <code>fromPosition</code> in file pointer order.
+     */
+    public IndexCursor cursor(Object key, long fromPosition) throws IOException;
+  }
+
+  public static interface BitmapIndexReader extends IndexReader {
+
+    /**
+     * The positions of the records with the given key, must not be modified.
+     */
+    public PositionBitmap bitmap(Object key) throws IOException;
+
+    /**
+     * The positions of all the records with a non null key, must not be modified.
+     */
+    public PositionBitmap all() throws IOException;
+
+    /**
+     * The positions of the records with keys between <code>from</code> and
+     * <code>to</code>, null bounds are unbounded.
+     */
+    public PositionBitmap range(Object from, boolean fromInclusive, Object to, boolean toInclusive)
+        throws IOException;
+  }
+
   public static interface IndexWriter {
 
     public abstract void put(Object key, long fileIndex) throws IOException, IndexException;
 
     public abstract boolean delete(Object key) throws IOException;
 
+    /**
+     * The bytes defining the order of entries for {@link #bulkLoad}, compared
+     * lexicographically as signed bytes.
+     */
+    public abstract byte[] sortKey(Object key);
+
+    /**
+     * Adds entries sorted by {@link #sortKey}, which is considerably faster than
+     * individual puts into an empty index.
+     */
+    public abstract void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries)
+        throws IOException, IndexException;
   }
 }
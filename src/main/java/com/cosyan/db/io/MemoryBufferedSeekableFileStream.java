@@ -49,6 +49,30 @@ public class MemoryBufferedSeekableFileStream extends SeekableInputStream implem
     return buffer[pointer++] & 0xff;
   }
 
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (pointer >= buffer.length) {
+      return -1;
+    }
+    int n = Math.min(len, buffer.length - pointer);
+    System.arraycopy(buffer, pointer, b, off, n);
+    pointer += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0 || pointer >= buffer.length) {
+      return 0;
+    }
+    int skipped = (int) Math.min(n, buffer.length - pointer);
+    pointer += skipped;
+    return skipped;
+  }
+
   @Override
   public void close() throws IOException {
     file.close();
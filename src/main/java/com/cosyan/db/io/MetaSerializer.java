@@ -31,15 +31,20 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.lang.expr.Expression;
 import com.cosyan.db.lang.expr.TableDefinition.AggRefDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.FlatRefDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.ForeignKeyDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.RuleDefinition;
 import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MaterializedTable.ReadAhead;
+import com.cosyan.db.meta.MaterializedTable.Retention;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.BasicColumn.IndexType;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.Ident;
+import com.cosyan.db.model.Keys.CompositeIndex;
 import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.PrimaryKey;
 import com.cosyan.db.model.Rule;
@@ -49,6 +54,7 @@ import com.cosyan.db.model.TableRef;
 import com.cosyan.db.session.ILexer;
 import com.cosyan.db.session.IParser;
 import com.cosyan.db.session.IParser.ParserException;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 public class MetaSerializer {
@@ -74,6 +80,27 @@ public class MetaSerializer {
     obj.put("foreign_keys", table.foreignKeys().values().stream().map(fk -> toJSON(fk)).collect(Collectors.toList()));
     obj.put("refs", table.refs().values().stream().map(r -> toJSON(r)).collect(Collectors.toList()));
     obj.put("rules", table.rules().values().stream().map(r -> toJSON(r)).collect(Collectors.toList()));
+    obj.put("indexes", table.compositeIndexes().values().stream().map(i -> toJSON(i)).collect(Collectors.toList()));
+    if (table.readAhead().isPresent()) {
+      obj.put("read_ahead", new JSONObject(ImmutableMap.of(
+          "buffer_size", table.readAhead().get().getBufferSize(),
+          "depth", table.readAhead().get().getDepth())));
+    }
+    if (table.retention().isPresent()) {
+      obj.put("retention", new JSONObject(ImmutableMap.of(
+          "days", table.retention().get().getDays(),
+          "column", table.retention().get().getColumn())));
+    }
+    if (table.getPartitioning().isPresent()) {
+      obj.put("partitioning", table.getPartitioning().get().getExpr().print());
+    }
+    return obj;
+  }
+
+  public JSONObject toJSON(CompositeIndex index) {
+    JSONObject obj = new JSONObject();
+    obj.put("name", index.getName());
+    obj.put("columns", index.getColumns().stream().map(c -> c.getName()).collect(Collectors.toList()));
     return obj;
   }
 
@@ -86,6 +113,9 @@ public class MetaSerializer {
     obj.put("nullable", column.isNullable());
     obj.put("immutable", column.isImmutable());
     obj.put("deleted", column.isDeleted());
+    if (column.getIndexType() != IndexType.TRIE) {
+      obj.put("index_type", column.getIndexType().name());
+    }
     return obj;
   }
 
@@ -115,12 +145,12 @@ public class MetaSerializer {
     return obj;
   }
 
-  public Map<String, MaterializedTable> loadTables(Config config, Map<String, JSONObject> jsons)
+  public Map<String, MaterializedTable> loadTables(Config config, PageCache pageCache, Map<String, JSONObject> jsons)
       throws JSONException, IOException, ModelException, ParserException {
     Map<String, MaterializedTable> tables = new HashMap<>();
     for (Map.Entry<String, JSONObject> entry : jsons.entrySet()) {
       String name = entry.getKey();
-      MaterializedTable table = table(config, name, entry.getValue());
+      MaterializedTable table = table(config, pageCache, name, entry.getValue());
       tables.put(name, table);
     }
 
@@ -141,6 +171,7 @@ public class MetaSerializer {
     }
     for (Map.Entry<String, JSONObject> entry : jsons.entrySet()) {
       loadRules(tables.get(entry.getKey()), entry.getValue());
+      loadPartitioning(tables.get(entry.getKey()), entry.getValue());
     }
     for (MaterializedTable table : tables.values()) {
       for (BooleanRule rule : table.rules().values()) {
@@ -212,7 +243,15 @@ public class MetaSerializer {
     }
   }
 
-  public MaterializedTable table(Config config, String tableName, JSONObject obj)
+  public void loadPartitioning(MaterializedTable table, JSONObject obj)
+      throws JSONException, ModelException, ParserException {
+    if (obj.has("partitioning")) {
+      Expression expr = parser.parseExpression(lexer.tokenizeExpression(obj.getString("partitioning") + ";"));
+      table.setPartitioning(Optional.of(table.createPartitioning(expr)));
+    }
+  }
+
+  public MaterializedTable table(Config config, PageCache pageCache, String tableName, JSONObject obj)
       throws JSONException, IOException, ModelException {
     List<BasicColumn> columns = columns(obj.getJSONArray("columns"));
     Optional<PrimaryKey> pk = Optional.empty();
@@ -222,13 +261,33 @@ public class MetaSerializer {
           new Ident(pkObj.getString("name")),
           columns.stream().filter(c -> c.getName().equals(pkObj.getString("column"))).findFirst().get()));
     }
-    return new MaterializedTable(
+    MaterializedTable table = new MaterializedTable(
         config,
+        pageCache,
         tableName,
         obj.getString("owner"),
         columns,
         pk,
         MaterializedTable.Type.valueOf(obj.getString("type")));
+    if (obj.has("read_ahead")) {
+      JSONObject readAheadObj = obj.getJSONObject("read_ahead");
+      table.setReadAhead(new ReadAhead(readAheadObj.getInt("buffer_size"), readAheadObj.getInt("depth")));
+    }
+    if (obj.has("retention")) {
+      JSONObject retentionObj = obj.getJSONObject("retention");
+      table.setRetention(new Retention(retentionObj.getLong("days"), retentionObj.getString("column")));
+    }
+    JSONArray indexes = obj.optJSONArray("indexes");
+    for (int i = 0; indexes != null && i < indexes.length(); i++) {
+      JSONObject indexObj = indexes.getJSONObject(i);
+      ImmutableList.Builder<Ident> indexColumns = ImmutableList.builder();
+      JSONArray columnArr = indexObj.getJSONArray("columns");
+      for (int j = 0; j < columnArr.length(); j++) {
+        indexColumns.add(new Ident(columnArr.getString(j)));
+      }
+      table.addCompositeIndex(table.createCompositeIndex(new Ident(indexObj.getString("name")), indexColumns.build()));
+    }
+    return table;
   }
 
   public List<BasicColumn> columns(JSONArray arr) throws JSONException, ModelException {
@@ -244,6 +303,7 @@ public class MetaSerializer {
           colObj.getBoolean("immutable"));
       column.setDeleted(colObj.getBoolean("deleted"));
       column.setIndexed(colObj.getBoolean("indexed"));
+      column.setIndexType(IndexType.valueOf(colObj.optString("index_type", IndexType.TRIE.name())));
       columns.add(column);
     }
     return columns;
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.cosyan.db.index.NodeCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A cache of table file pages shared by all the LOG tables. Pages are keyed by the
+ * table file and the page number and are kept in a {@link NodeCache}, so they are
+ * evicted with CLOCK against a common memory budget.
+ * 
+ * Pages are immutable arrays, a page handed out to a reader stays valid after it is
+ * evicted or invalidated, so readers never have to pin pages. Writes go through the
+ * {@link CachedFile} and invalidate the pages they touch.
+ * 
+ * @author gsvigruha
+ */
+public class PageCache {
+
+  public static final int DEFAULT_PAGE_SIZE = 65536;
+
+  private static final ExecutorService READ_AHEAD_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("read-ahead-%d").setDaemon(true).build());
+
+  private final NodeCache cache;
+
+  public PageCache(long budget) {
+    this.cache = new NodeCache(budget);
+  }
+
+  public long budget() {
+    return cache.budget();
+  }
+
+  public long usedBytes() {
+    return cache.usedBytes();
+  }
+
+  /**
+   * Opens a file with the given page size. With a positive read-ahead depth sequential
+   * readers load the following pages on a background thread.
+   */
+  public CachedFile open(RandomAccessFile raf, int pageSize, int readAheadDepth) {
+    return new CachedFile(cache.register(), raf, pageSize, readAheadDepth);
+  }
+
+  public static class CachedFile implements SeekableOutputStream {
+
+    private final NodeCache.Handle handle;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int readAheadDepth;
+    private final ConcurrentHashMap<Long, Future<byte[]>> loading;
+    private long version;
+
+    private CachedFile(NodeCache.Handle handle, RandomAccessFile raf, int pageSize, int readAheadDepth) {
+      this.handle = handle;
+      this.raf = raf;
+      this.channel = raf.getChannel();
+      this.pageSize = pageSize;
+      this.readAheadDepth = readAheadDepth;
+      this.loading = new ConcurrentHashMap<>();
+    }
+
+    public int pageSize() {
+      return pageSize;
+    }
+
+    public int readAheadDepth() {
+      return readAheadDepth;
+    }
+
+    public long hits() {
+      return handle.hits();
+    }
+
+    public long misses() {
+      return handle.misses();
+    }
+
+    public long evictions() {
+      return handle.evictions();
+    }
+
+    /**
+     * Returns a new stream over the file positioned to the beginning of the file.
+     */
+    public SeekableInputStream inputStream() throws IOException {
+      return new PageInputStream(raf.length());
+    }
+
+    private byte[] page(long pageNumber, long length) throws IOException {
+      int size = (int) Math.min(pageSize, length - pageNumber * pageSize);
+      byte[] page = (byte[]) handle.get(pageNumber);
+      if (page != null && page.length >= size) {
+        return page;
+      }
+      Future<byte[]> future = loading.get(pageNumber);
+      if (future != null) {
+        page = await(future);
+        if (page.length >= size) {
+          return page;
+        }
+      }
+      return load(pageNumber, size);
+    }
+
+    private void prefetch(long pageNumber, long length) {
+      if (handle.contains(pageNumber) || loading.containsKey(pageNumber)) {
+        return;
+      }
+      int size = (int) Math.min(pageSize, length - pageNumber * pageSize);
+      FutureTask<byte[]> future = new FutureTask<byte[]>(() -> load(pageNumber, size)) {
+        @Override
+        protected void done() {
+          // A write or clear may have replaced this load with a newer one.
+          loading.remove(pageNumber, this);
+        }
+      };
+      if (loading.putIfAbsent(pageNumber, future) == null) {
+        READ_AHEAD_EXECUTOR.execute(future);
+      }
+    }
+
+    private byte[] load(long pageNumber, int size) throws IOException {
+      long loadVersion;
+      synchronized (this) {
+        loadVersion = version;
+      }
+      byte[] page = new byte[size];
+      ByteBuffer buffer = ByteBuffer.wrap(page);
+      long start = pageNumber * pageSize;
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, start + buffer.position()) < 0) {
+          throw new EOFException();
+        }
+      }
+      synchronized (this) {
+        // The page is not cached if it was written while loading.
+        if (version == loadVersion) {
+          handle.put(pageNumber, page, page.length + NodeCache.ENTRY_OVERHEAD);
+        }
+      }
+      return page;
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+
+    private synchronized void invalidate(long position, int length) {
+      version++;
+      for (long p = position / pageSize; p <= (position + length - 1) / pageSize; p++) {
+        handle.remove(p);
+        loading.remove(p);
+      }
+    }
+
+    @Override
+    public void write(long position, byte[] value) throws IOException {
+      if (value.length == 0) {
+        return;
+      }
+      raf.seek(position);
+      raf.write(value);
+      invalidate(position, value.length);
+    }
+
+    @Override
+    public FileChannel getChannel() {
+      return channel;
+    }
+
+    public synchronized void clear() {
+      version++;
+      handle.clear();
+      loading.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      clear();
+      raf.close();
+    }
+
+    private class PageInputStream extends SeekableInputStream {
+
+      private long length;
+      private long pointer;
+      private byte[] page;
+      private long pageNumber;
+      private long pageStart;
+
+      private PageInputStream(long length) {
+        this.length = length;
+        this.pageNumber = -1;
+      }
+
+      private boolean loadPage() throws IOException {
+        if (page != null && pointer >= pageStart && pointer < pageStart + page.length) {
+          return true;
+        }
+        if (pointer >= length) {
+          return false;
+        }
+        long next = pointer / pageSize;
+        boolean sequential = next == pageNumber + 1;
+        pageNumber = next;
+        pageStart = pageNumber * pageSize;
+        page = page(pageNumber, length);
+        if (sequential) {
+          for (long p = pageNumber + 1; p <= pageNumber + readAheadDepth && p * pageSize < length; p++) {
+            prefetch(p, length);
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public int read() throws IOException {
+        if (pointer >= length || !loadPage()) {
+          return -1;
+        }
+        return page[(int) (pointer++ - pageStart)] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        int n = 0;
+        while (n < len && pointer < length && loadPage()) {
+          int offset = (int) (pointer - pageStart);
+          int size = (int) Math.min(Math.min(len - n, page.length - offset), length - pointer);
+          System.arraycopy(page, offset, b, off + n, size);
+          pointer += size;
+          n += size;
+        }
+        return n == 0 ? -1 : n;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        long skipped = Math.max(0, Math.min(n, length - pointer));
+        pointer += skipped;
+        return skipped;
+      }
+
+      @Override
+      public void seek(long position) throws IOException {
+        pointer = position;
+      }
+
+      @Override
+      public long length() {
+        return length;
+      }
+
+      @Override
+      public void reset() throws IOException {
+        // The file might have changed since the last read.
+        length = raf.length();
+        pointer = 0;
+        page = null;
+        pageNumber = -1;
+      }
+
+      @Override
+      public void close() {
+        // The file is owned by the table.
+      }
+    }
+  }
+}
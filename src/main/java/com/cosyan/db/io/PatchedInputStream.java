@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads a table file with the records updated in place but not committed yet overlaid on
+ * it. Patches are keyed by their position in the file and never overlap.
+ */
+public class PatchedInputStream extends SeekableInputStream {
+
+  private final InputStream inputStream;
+  private final TreeMap<Long, byte[]> patches;
+  private long pointer;
+
+  /**
+   * The input stream has to be positioned to <code>pointer</code> already.
+   */
+  public PatchedInputStream(InputStream inputStream, TreeMap<Long, byte[]> patches, long pointer) {
+    this.inputStream = inputStream;
+    this.patches = patches;
+    this.pointer = pointer;
+  }
+
+  @Override
+  public void seek(long position) throws IOException {
+    seekable().seek(position);
+    pointer = position;
+  }
+
+  @Override
+  public long length() {
+    return seekable().length();
+  }
+
+  private SeekableInputStream seekable() {
+    if (!(inputStream instanceof SeekableInputStream)) {
+      throw new UnsupportedOperationException();
+    }
+    return (SeekableInputStream) inputStream;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int value = inputStream.read();
+    if (value == -1) {
+      return -1;
+    }
+    if (!patches.isEmpty()) {
+      Map.Entry<Long, byte[]> patch = patches.floorEntry(pointer);
+      if (patch != null && pointer < patch.getKey() + patch.getValue().length) {
+        value = patch.getValue()[(int) (pointer - patch.getKey())] & 0xff;
+      }
+    }
+    pointer++;
+    return value;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = inputStream.read(b, off, len);
+    if (n <= 0) {
+      return n;
+    }
+    if (!patches.isEmpty()) {
+      Long from = patches.floorKey(pointer);
+      for (Map.Entry<Long, byte[]> patch : patches.subMap(
+          from == null ? pointer : from, true, pointer + n, false).entrySet()) {
+        long start = Math.max(patch.getKey(), pointer);
+        long end = Math.min(patch.getKey() + patch.getValue().length, pointer + n);
+        if (start < end) {
+          System.arraycopy(patch.getValue(), (int) (start - patch.getKey()),
+              b, off + (int) (start - pointer), (int) (end - start));
+        }
+      }
+    }
+    pointer += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = inputStream.skip(n);
+    pointer += skipped;
+    return skipped;
+  }
+
+  @Override
+  public void close() throws IOException {
+    inputStream.close();
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import com.cosyan.db.model.BasicColumn;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Reusable buffer serializing records directly into a growable byte array. The
+ * encoded record is valid until the next call to {@link #encode}. Not thread safe,
+ * every {@link TableWriter} owns one.
+ */
+public class RecordBuffer implements DataOutput {
+
+  private final CRC32 checksum = new CRC32();
+  private byte[] buffer;
+  private int length;
+
+  public RecordBuffer() {
+    this(1024);
+  }
+
+  public RecordBuffer(int capacity) {
+    this.buffer = new byte[capacity];
+  }
+
+  /**
+   * Encodes the record in the same format as {@link Serializer#serialize} and returns
+   * its length.
+   */
+  public int encode(Object[] values, ImmutableList<BasicColumn> columns) throws IOException {
+    length = 0;
+    writeByte(1);
+    writeInt(0); // Placeholder for the payload size.
+    int i = 0;
+    for (BasicColumn column : columns) {
+      if (!column.isDeleted()) {
+        Serializer.writeColumn(values[i++], column.getType(), this);
+      } else {
+        writeByte(0);
+      }
+    }
+    int payloadSize = length - 5;
+    putInt(1, payloadSize);
+    checksum.reset();
+    checksum.update(buffer, 5, payloadSize);
+    writeInt((int) checksum.getValue());
+    return length;
+  }
+
+  public byte[] array() {
+    return buffer;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, length);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+    }
+  }
+
+  private void putInt(int position, int v) {
+    buffer[position] = (byte) (v >>> 24);
+    buffer[position + 1] = (byte) (v >>> 16);
+    buffer[position + 2] = (byte) (v >>> 8);
+    buffer[position + 3] = (byte) v;
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b) {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(len);
+    System.arraycopy(b, off, buffer, length, len);
+    length += len;
+  }
+
+  @Override
+  public void writeBoolean(boolean v) {
+    write(v ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(int v) {
+    write(v);
+  }
+
+  @Override
+  public void writeShort(int v) {
+    ensureCapacity(2);
+    buffer[length++] = (byte) (v >>> 8);
+    buffer[length++] = (byte) v;
+  }
+
+  @Override
+  public void writeChar(int v) {
+    writeShort(v);
+  }
+
+  @Override
+  public void writeInt(int v) {
+    ensureCapacity(4);
+    putInt(length, v);
+    length += 4;
+  }
+
+  @Override
+  public void writeLong(long v) {
+    ensureCapacity(8);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      buffer[length++] = (byte) (v >>> shift);
+    }
+  }
+
+  @Override
+  public void writeFloat(float v) {
+    writeInt(Float.floatToIntBits(v));
+  }
+
+  @Override
+  public void writeDouble(double v) {
+    writeLong(Double.doubleToLongBits(v));
+  }
+
+  @Override
+  public void writeBytes(String s) {
+    int len = s.length();
+    ensureCapacity(len);
+    for (int i = 0; i < len; i++) {
+      buffer[length++] = (byte) s.charAt(i);
+    }
+  }
+
+  @Override
+  public void writeChars(String s) {
+    int len = s.length();
+    ensureCapacity(2 * len);
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      buffer[length++] = (byte) (c >>> 8);
+      buffer[length++] = (byte) c;
+    }
+  }
+
+  @Override
+  public void writeUTF(String s) throws IOException {
+    int start = length;
+    writeShort(0); // Placeholder for the encoded length.
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        write(c);
+      } else if (c > 0x07FF) {
+        write(0xE0 | ((c >> 12) & 0x0F));
+        write(0x80 | ((c >> 6) & 0x3F));
+        write(0x80 | (c & 0x3F));
+      } else {
+        write(0xC0 | ((c >> 6) & 0x1F));
+        write(0x80 | (c & 0x3F));
+      }
+    }
+    int utfLength = length - start - 2;
+    if (utfLength > 65535) {
+      length = start;
+      throw new UTFDataFormatException("Encoded string too long: " + utfLength + " bytes.");
+    }
+    buffer[start] = (byte) (utfLength >>> 8);
+    buffer[start + 1] = (byte) utfLength;
+  }
+}
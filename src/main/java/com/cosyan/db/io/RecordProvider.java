@@ -17,14 +17,13 @@ package com.cosyan.db.io;
 
 import java.io.DataInput;
 import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.util.function.LongPredicate;
 
 import com.cosyan.db.model.BasicColumn;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
 
 import lombok.Data;
 
@@ -38,6 +37,18 @@ public interface RecordProvider {
   public static class Record {
     private final long filePointer;
     private final Object[] values;
+    // The number of bytes of the record in the file, 0 if the record was not read from a file.
+    private final int size;
+
+    public Record(long filePointer, Object[] values, int size) {
+      this.filePointer = filePointer;
+      this.values = values;
+      this.size = size;
+    }
+
+    public Record(long filePointer, Object[] values) {
+      this(filePointer, values, 0);
+    }
   }
 
   public static class EmptyRecord extends Record {
@@ -49,71 +60,90 @@ public interface RecordProvider {
 
   public static final Record EMPTY = new EmptyRecord();
 
+  public static final LongPredicate NO_DELETIONS = position -> false;
+
   public class RecordReader implements RecordProvider {
 
     private final ImmutableList<BasicColumn> columns;
-    protected final Set<Long> recordsToDelete;
+    protected final LongPredicate deleted;
     private final int numColumns;
     private final InputStream inputStream;
     private final DataInput dataInput;
+    private byte[] record = new byte[1024];
+    private ByteBuffer buffer = ByteBuffer.wrap(record);
 
     protected long pointer;
 
     public RecordReader(
         ImmutableList<BasicColumn> columns,
         InputStream inputStream,
-        Set<Long> recordsToDelete) {
+        LongPredicate deleted) {
+      this(columns, inputStream, deleted, 0L);
+    }
+
+    /**
+     * The input stream has to be positioned to <code>pointer</code> already.
+     */
+    public RecordReader(
+        ImmutableList<BasicColumn> columns,
+        InputStream inputStream,
+        LongPredicate deleted,
+        long pointer) {
       this.columns = columns;
-      this.recordsToDelete = recordsToDelete;
+      this.deleted = deleted;
       this.numColumns = (int) columns.stream().filter(column -> !column.isDeleted()).count();
       this.inputStream = inputStream;
       this.dataInput = new DataInputStream(inputStream);
-      this.pointer = 0L;
+      this.pointer = pointer;
     }
 
     public RecordReader(
         ImmutableList<BasicColumn> columns,
         InputStream inputStream) {
-      this(columns, inputStream, ImmutableSet.of());
+      this(columns, inputStream, NO_DELETIONS);
     }
 
     @Override
     public Record read() throws IOException {
       do {
         long recordPointer = pointer;
-        final byte desc;
-        try {
-          desc = dataInput.readByte();
-          pointer++;
-        } catch (EOFException e) {
+        int desc = inputStream.read();
+        if (desc == -1) {
           return EMPTY;
         }
         int recordSize = dataInput.readInt();
-        pointer += 4;
+        // The payload and the CRC are read in one go and decoded from the buffer.
+        if (record.length < recordSize + 4) {
+          record = new byte[Math.max(record.length * 2, recordSize + 4)];
+          buffer = ByteBuffer.wrap(record);
+        }
+        dataInput.readFully(record, 0, recordSize + 4);
+        pointer += recordSize + 9;
+        if (desc != 1 || deleted.test(recordPointer)) {
+          continue;
+        }
+        buffer.clear();
+        buffer.limit(recordSize);
         Object[] values = new Object[numColumns];
         int i = 0;
         for (BasicColumn column : columns) {
-          Object value = Serializer.readColumn(column.getType(), dataInput);
+          if (!buffer.hasRemaining()) {
+            // End of the record, columns added later are null.
+            break;
+          }
+          Object value = Serializer.readColumn(column.getType(), buffer);
           if (!column.isDeleted()) {
             values[i++] = value;
           }
-          pointer += Serializer.size(column.getType(), value);
-          if (pointer - recordPointer == recordSize + 5) {
-            // Pointer is at the end of the supposed length of the record.
-            break;
-          }
-        }
-        for (int j = i; j < numColumns; j++) {
-          values[j] = null;
-        }
-        dataInput.readInt(); // CRC;
-        pointer += 4;
-        if (desc == 1 && !recordsToDelete.contains(recordPointer)) {
-          return new Record(recordPointer, values);
         }
+        return new Record(recordPointer, values, recordSize + 9);
       } while (true);
     }
 
+    public long position() {
+      return pointer;
+    }
+
     @Override
     public void close() throws IOException {
       inputStream.close();
@@ -125,27 +155,23 @@ public interface RecordProvider {
     private final SeekableInputStream inputStream;
 
     public SeekableRecordReader(ImmutableList<BasicColumn> columns, SeekableInputStream inputStream) {
-      this(columns, inputStream, ImmutableSet.of());
+      this(columns, inputStream, NO_DELETIONS);
     }
 
     public SeekableRecordReader(ImmutableList<BasicColumn> columns, SeekableInputStream inputStream,
-        Set<Long> recordsToDelete) {
-      super(columns, inputStream, recordsToDelete);
+        LongPredicate deleted) {
+      super(columns, inputStream, deleted);
       this.inputStream = inputStream;
     }
 
     public void seek(long position) throws IOException {
-      if (recordsToDelete.contains(position)) {
+      if (deleted.test(position)) {
         throw new IOException("Record " + position + " is deleted.");
       }
       inputStream.seek(position);
       pointer = position;
     }
 
-    public Object position() {
-      return pointer;
-    }
-
     public void reset() throws IOException {
       pointer = 0;
       inputStream.reset();
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Compact binary encoding of results, an alternative to <code>Result.toJSON</code>.
+ * <p>
+ * Format: a version byte, the number of results and the results. A query result
+ * is the number of columns, the column names and types (as JSON), the number of
+ * rows, then the columns one after another, each prefixed by its length in bytes.
+ * Values are written with the same codecs as the table files. Other results are
+ * sent as their JSON representation.
+ */
+public class ResultSerializer {
+
+  public static final String CONTENT_TYPE = "application/x-cosyan-binary";
+
+  private static final byte VERSION = 1;
+  private static final byte QUERY = 1;
+  private static final byte JSON = 2;
+
+  public static void encode(Result result, OutputStream out) throws IOException {
+    DataOutputStream stream = new DataOutputStream(out);
+    stream.writeByte(VERSION);
+    if (result instanceof TransactionResult) {
+      ImmutableList<Result> results = ((TransactionResult) result).getResults();
+      stream.writeInt(results.size());
+      for (Result r : results) {
+        encodeResult(r, stream);
+      }
+    } else {
+      stream.writeInt(1);
+      encodeResult(result, stream);
+    }
+    stream.flush();
+  }
+
+  private static void encodeResult(Result result, DataOutputStream stream) throws IOException {
+    if (result instanceof QueryResult) {
+      QueryResult queryResult = (QueryResult) result;
+      stream.writeByte(QUERY);
+      ImmutableList<DataType<?>> types = queryResult.getTypes();
+      stream.writeInt(types.size());
+      for (int i = 0; i < types.size(); i++) {
+        stream.writeUTF(queryResult.getHeader().get(i));
+        stream.writeUTF(types.get(i).toJSON().toString());
+      }
+      ImmutableList<Object[]> values = queryResult.getValues();
+      stream.writeInt(values.size());
+      ByteArrayOutputStream column = new ByteArrayOutputStream();
+      DataOutputStream columnStream = new DataOutputStream(column);
+      for (int i = 0; i < types.size(); i++) {
+        column.reset();
+        for (Object[] row : values) {
+          Serializer.writeColumn(row[i], types.get(i), columnStream);
+        }
+        stream.writeInt(column.size());
+        column.writeTo(stream);
+      }
+    } else {
+      stream.writeByte(JSON);
+      byte[] json = result.toJSON().toString().getBytes("UTF-8");
+      stream.writeInt(json.length);
+      stream.write(json);
+    }
+  }
+
+  /**
+   * Decodes the output of <code>encode</code>. Queries are returned as
+   * <code>QueryResult</code>s, everything else as <code>JSONResult</code>s.
+   */
+  public static ImmutableList<Result> decode(InputStream in) throws IOException {
+    DataInputStream stream = new DataInputStream(in);
+    byte version = stream.readByte();
+    if (version != VERSION) {
+      throw new IOException(String.format("Unsupported version %s.", version));
+    }
+    int n = stream.readInt();
+    ImmutableList.Builder<Result> results = ImmutableList.builder();
+    for (int r = 0; r < n; r++) {
+      byte kind = stream.readByte();
+      if (kind == QUERY) {
+        int numColumns = stream.readInt();
+        ImmutableList.Builder<String> header = ImmutableList.builder();
+        ImmutableList.Builder<DataType<?>> typesBuilder = ImmutableList.builder();
+        for (int i = 0; i < numColumns; i++) {
+          header.add(stream.readUTF());
+          typesBuilder.add(DataTypes.fromJSON(new JSONObject(stream.readUTF())));
+        }
+        ImmutableList<DataType<?>> types = typesBuilder.build();
+        int numRows = stream.readInt();
+        List<Object[]> values = new ArrayList<>(numRows);
+        for (int j = 0; j < numRows; j++) {
+          values.add(new Object[numColumns]);
+        }
+        for (int i = 0; i < numColumns; i++) {
+          stream.readInt(); // Length of the column.
+          for (int j = 0; j < numRows; j++) {
+            values.get(j)[i] = Serializer.readColumn(types.get(i), stream);
+          }
+        }
+        results.add(new QueryResult(header.build(), types, values));
+      } else if (kind == JSON) {
+        byte[] json = new byte[stream.readInt()];
+        stream.readFully(json);
+        results.add(new JSONResult(new JSONObject(new String(json, "UTF-8"))));
+      } else {
+        throw new IOException(String.format("Invalid result kind %s.", kind));
+      }
+    }
+    return results.build();
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class JSONResult extends Result {
+
+    private final JSONObject json;
+
+    public JSONResult(JSONObject json) {
+      super(!json.has("error"));
+      this.json = json;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+      return json;
+    }
+  }
+}
@@ -52,6 +52,16 @@ public abstract class SeekableInputStream extends InputStream {
     public int read() throws IOException {
       return stream.read();
     }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return stream.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      return stream.skip(n);
+    }
   }
 
   public static class SeekableSequenceInputStream extends SeekableInputStream {
@@ -84,6 +94,7 @@ public abstract class SeekableInputStream extends InputStream {
         position -= actStream.length();
         actStream = streams.get(++i);
       }
+      actStreamPointer = i;
       actStream.seek(position);
     }
 
@@ -92,13 +103,25 @@ public abstract class SeekableInputStream extends InputStream {
       return length;
     }
 
+    private boolean nextStream() throws IOException {
+      if (actStreamPointer < streams.size() - 1) {
+        actStreamPointer++;
+        actStream = streams.get(actStreamPointer);
+        // The stream might have been read before a seek backwards.
+        if (actStream.length() > 0) {
+          actStream.seek(0);
+        }
+        return true;
+      } else {
+        return false;
+      }
+    }
+
     @Override
     public int read() throws IOException {
       int value = actStream.read();
       while (value == -1) {
-        if (actStreamPointer < streams.size() - 1) {
-          actStreamPointer++;
-          actStream = streams.get(actStreamPointer);
+        if (nextStream()) {
           value = actStream.read();
         } else {
           return -1;
@@ -106,5 +129,35 @@ public abstract class SeekableInputStream extends InputStream {
       }
       return value;
     }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int n = actStream.read(b, off, len);
+      while (n == -1) {
+        if (nextStream()) {
+          n = actStream.read(b, off, len);
+        } else {
+          return -1;
+        }
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0;
+      while (skipped < n) {
+        long s = actStream.skip(n - skipped);
+        if (s > 0) {
+          skipped += s;
+        } else if (!nextStream()) {
+          break;
+        }
+      }
+      return skipped;
+    }
   }
 }
@@ -15,13 +15,10 @@
  */
 package com.cosyan.db.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.zip.CRC32;
+import java.nio.ByteBuffer;
 
 import com.cosyan.db.model.BasicColumn;
 import com.cosyan.db.model.DataTypes.DataType;
@@ -42,6 +39,17 @@ public class Serializer {
     return value;
   }
 
+  public static Object readColumn(DataType<?> type, ByteBuffer buffer) throws IOException {
+    byte fieldDesc = buffer.get();
+    if (fieldDesc == 0) {
+      return null;
+    } else if (fieldDesc == 1) {
+      return type.read(buffer);
+    } else {
+      throw new IOException(String.format("Invalid record header %s.", fieldDesc));
+    }
+  }
+
   public static int size(DataType<?> type, Object value) {
     if (value == null) {
       return 1;
@@ -61,30 +69,8 @@ public class Serializer {
 
   public static byte[] serialize(Object[] values, ImmutableList<BasicColumn> columns)
       throws IOException {
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
-    serialize(values, columns, bos);
-    return bos.toByteArray();
-  }
-
-  public static void serialize(Object[] values, ImmutableList<BasicColumn> columns, OutputStream out)
-      throws IOException {
-    DataOutputStream stream = new DataOutputStream(out);
-    stream.writeByte(1);
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
-    DataOutputStream recordStream = new DataOutputStream(bos);
-    int i = 0;
-    for (BasicColumn column : columns) {
-      if (!column.isDeleted()) {
-        Serializer.writeColumn(values[i++], column.getType(), recordStream);
-      } else {
-        recordStream.writeByte(0);
-      }
-    }
-    stream.writeInt(bos.size());
-    byte[] record = bos.toByteArray();
-    stream.write(record);
-    CRC32 checksum = new CRC32();
-    checksum.update(record);
-    stream.writeInt((int) checksum.getValue());
+    RecordBuffer buffer = new RecordBuffer();
+    buffer.encode(values, columns);
+    return buffer.toByteArray();
   }
 }
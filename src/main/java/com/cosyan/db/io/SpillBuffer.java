@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * An append-only byte buffer which is kept in memory up to a limit and spills to a
+ * temporary file afterwards, so that writing a large number of records in a transaction
+ * uses bounded heap. Positions are relative to the start of the buffer.
+ */
+public class SpillBuffer {
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private final String fileName;
+  private final int memoryLimit;
+
+  private byte[] buffer = new byte[0];
+  private RandomAccessFile file;
+  private long size;
+  // Incremented when existing bytes are overwritten, so that streams reload their chunk.
+  private int version;
+
+  public SpillBuffer(String fileName, int memoryLimit) {
+    this.fileName = fileName;
+    this.memoryLimit = memoryLimit;
+  }
+
+  public long size() {
+    return size;
+  }
+
+  public boolean isSpilled() {
+    return file != null;
+  }
+
+  public void append(byte[] data) throws IOException {
+    append(data, 0, data.length);
+  }
+
+  public void append(byte[] data, int off, int len) throws IOException {
+    if (file == null && size + len > memoryLimit) {
+      spill();
+    }
+    if (file == null) {
+      if (size + len > buffer.length) {
+        buffer = Arrays.copyOf(buffer, (int) Math.max(buffer.length * 2, size + len));
+      }
+      System.arraycopy(data, off, buffer, (int) size, len);
+    } else {
+      file.seek(size);
+      file.write(data, off, len);
+    }
+    size += len;
+  }
+
+  /**
+   * Overwrites bytes already in the buffer.
+   */
+  public void write(long position, byte[] data) throws IOException {
+    write(position, data, 0, data.length);
+  }
+
+  public void write(long position, byte[] data, int off, int len) throws IOException {
+    if (position < 0 || position + len > size) {
+      throw new IOException("Position " + position + " out of range.");
+    }
+    if (file == null) {
+      System.arraycopy(data, off, buffer, (int) position, len);
+    } else {
+      file.seek(position);
+      file.write(data, off, len);
+    }
+    version++;
+  }
+
+  private void spill() throws IOException {
+    file = new RandomAccessFile(fileName, "rw");
+    file.setLength(0);
+    file.write(buffer, 0, (int) size);
+    buffer = new byte[0];
+  }
+
+  private int read(long position, byte[] b, int off, int len) throws IOException {
+    if (position >= size) {
+      return -1;
+    }
+    int n = (int) Math.min(len, size - position);
+    if (file == null) {
+      System.arraycopy(buffer, (int) position, b, off, n);
+    } else {
+      file.seek(position);
+      file.readFully(b, off, n);
+    }
+    return n;
+  }
+
+  /**
+   * Writes the content of the buffer to <code>out</code> starting at <code>position</code>.
+   */
+  public void writeTo(SeekableOutputStream out, long position) throws IOException {
+    if (file == null) {
+      out.write(position, size == buffer.length ? buffer : Arrays.copyOf(buffer, (int) size));
+      return;
+    }
+    // Written backwards so that a memory buffered output grows only once.
+    byte[] chunk = new byte[memoryLimit];
+    long end = size;
+    while (end > 0) {
+      long start = Math.max(0, end - chunk.length);
+      int n = (int) (end - start);
+      byte[] data = n == chunk.length ? chunk : new byte[n];
+      read(start, data, 0, n);
+      out.write(position + start, data);
+      end = start;
+    }
+  }
+
+  public void clear() throws IOException {
+    size = 0;
+    buffer = new byte[0];
+    version++;
+    if (file != null) {
+      file.close();
+      file = null;
+      Files.deleteIfExists(Paths.get(fileName));
+    }
+  }
+
+  public SeekableInputStream inputStream(long position) {
+    return new SpillInputStream(position);
+  }
+
+  private class SpillInputStream extends SeekableInputStream {
+
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private long chunkStart;
+    private int chunkLength;
+    private int chunkVersion;
+    private long pointer;
+
+    private SpillInputStream(long pointer) {
+      this.pointer = pointer;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+      pointer = position;
+    }
+
+    @Override
+    public long length() {
+      return size;
+    }
+
+    private boolean load() throws IOException {
+      if (chunkVersion != version || pointer < chunkStart || pointer >= chunkStart + chunkLength) {
+        int n = SpillBuffer.this.read(pointer, chunk, 0, chunk.length);
+        chunkStart = pointer;
+        chunkLength = Math.max(n, 0);
+        chunkVersion = version;
+      }
+      return chunkLength > 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!load()) {
+        return -1;
+      }
+      return chunk[(int) (pointer++ - chunkStart)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!load()) {
+        return -1;
+      }
+      int n = (int) Math.min(len, chunkStart + chunkLength - pointer);
+      System.arraycopy(chunk, (int) (pointer - chunkStart), b, off, n);
+      pointer += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = Math.max(0, Math.min(n, size - pointer));
+      pointer += skipped;
+      return skipped;
+    }
+  }
+}
@@ -15,11 +15,11 @@
  */
 package com.cosyan.db.io;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongPredicate;
 
+import com.cosyan.db.io.Indexes.IndexCursor;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.RecordProvider.Record;
 import com.cosyan.db.io.RecordProvider.RecordReader;
@@ -102,6 +102,11 @@ public abstract class TableReader implements TableIO {
 
     public abstract IterableTableReader iterableReader() throws IOException;
 
+    /**
+     * Returns a reader starting from the record at <code>position</code>.
+     */
+    public abstract RecordReader recordReader(long position) throws IOException;
+
     public TableUniqueIndex getPrimaryKeyIndex() {
       return (TableUniqueIndex) getIndex(tableMeta.primaryKey().get().getColumn().getName());
     }
@@ -114,20 +119,20 @@ public abstract class TableReader implements TableIO {
     private final SeekableRecordReader reader;
     private final SeekableInputStream fileReader;
     private final ImmutableMap<String, IndexReader> indexes;
-    private final String fileName;
     private final ImmutableList<BasicColumn> columns;
+    private final LongPredicate deleted;
 
     private Object cachedKey;
     private Record cachedRecord;
 
-    public MaterializedTableReader(MaterializedTable tableMeta, String fileName,
+    public MaterializedTableReader(MaterializedTable tableMeta,
         SeekableInputStream fileReader, ImmutableList<BasicColumn> columns,
-        ImmutableMap<String, IndexReader> indexes) throws IOException {
+        ImmutableMap<String, IndexReader> indexes, DeletionVector deletionVector) throws IOException {
       super(tableMeta);
       this.indexes = indexes;
       this.fileReader = fileReader;
-      this.reader = new SeekableRecordReader(columns, fileReader);
-      this.fileName = fileName;
+      this.deleted = deletionVector::contains;
+      this.reader = new SeekableRecordReader(columns, fileReader, deleted);
       this.columns = columns;
     }
 
@@ -157,8 +162,7 @@ public abstract class TableReader implements TableIO {
 
     @Override
     public IterableTableReader iterableReader() throws IOException {
-      RecordReader reader = new RecordReader(columns,
-          new BufferedInputStream(new FileInputStream(fileName)));
+      RecordReader reader = new RecordReader(columns, tableMeta.openStream(0L), deleted);
       return new IterableTableReader() {
 
         @Override
@@ -173,6 +177,11 @@ public abstract class TableReader implements TableIO {
       };
     }
 
+    @Override
+    public RecordReader recordReader(long position) throws IOException {
+      return new RecordReader(columns, tableMeta.openStream(position), deleted, position);
+    }
+
     @Override
     public IndexReader getIndex(String name) {
       return indexes.get(name);
@@ -188,7 +197,6 @@ public abstract class TableReader implements TableIO {
 
     protected long[] positions;
     private int pointer;
-    private boolean cancelled;
 
     public MultiFilteredTableReader(SeekableTableReader sourceReader, ColumnMeta whereColumn,
         Resources resources) {
@@ -213,8 +221,9 @@ public abstract class TableReader implements TableIO {
         pointer = 0;
       }
       Record record = RecordReader.EMPTY;
-      boolean keepGoing = false;
+      boolean keepGoing;
       do {
+        keepGoing = false;
         if (pointer < positions.length) {
           record = sourceReader.get(positions[pointer]);
           if (record == RecordReader.EMPTY) {
@@ -228,7 +237,7 @@ public abstract class TableReader implements TableIO {
         } else {
           return RecordReader.EMPTY;
         }
-      } while (keepGoing && !cancelled);
+      } while (keepGoing && !cancelled.get());
       return record;
     }
 
@@ -239,4 +248,53 @@ public abstract class TableReader implements TableIO {
       // SeekableTableReader should not be closed manually.
     }
   }
+
+  /**
+   * Reads the records in the order of an index cursor, filtered by the where clause.
+   */
+  public static abstract class CursorFilteredTableReader extends IterableTableReader {
+
+    protected final SeekableTableReader sourceReader;
+    protected final ColumnMeta whereColumn;
+    private final Resources resources;
+
+    private IndexCursor cursor;
+
+    public CursorFilteredTableReader(SeekableTableReader sourceReader, ColumnMeta whereColumn,
+        Resources resources) {
+      this.sourceReader = sourceReader;
+      this.whereColumn = whereColumn;
+      this.resources = resources;
+    }
+
+    @Override
+    public Object[] next() throws IOException {
+      if (cursor == null) {
+        cursor = openCursor();
+      }
+      while (!cancelled.get()) {
+        long position = cursor.next();
+        if (position < 0) {
+          return null;
+        }
+        Record record = sourceReader.get(position);
+        if (record == RecordReader.EMPTY) {
+          // Deleted in a pending transaction, skip it.
+          continue;
+        }
+        Object[] values = record.getValues();
+        if ((boolean) whereColumn.value(values, resources, TableContext.EMPTY)) {
+          return values;
+        }
+      }
+      return null;
+    }
+
+    protected abstract IndexCursor openCursor() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+      // SeekableTableReader should not be closed manually.
+    }
+  }
 }
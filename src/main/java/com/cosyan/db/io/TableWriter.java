@@ -15,20 +15,29 @@
  */
 package com.cosyan.db.io;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
-import java.util.LinkedHashSet;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.function.Predicate;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.index.CompositeKey;
+import com.cosyan.db.io.Indexes.BitmapIndexReader;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
 import com.cosyan.db.io.RecordProvider.Record;
@@ -51,33 +60,44 @@ import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.PrimaryKey;
 import com.cosyan.db.model.Rule.BooleanRule;
 import com.cosyan.db.model.TableMultiIndex;
+import com.cosyan.db.model.TableMultiIndex.CompositeTableMultiIndex;
 import com.cosyan.db.model.TableUniqueIndex;
 import com.cosyan.db.transaction.Resources;
-import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 
 public class TableWriter extends SeekableTableReader implements TableIO {
 
+  private static final int INDEX_BUILD_RUN_SIZE = 1 << 20;
+  // Deletions are marked in the table file only once the deletion vector gets this large.
+  private static final int DELETION_VECTOR_MERGE_SIZE = 1 << 20;
+  // Pending records and updates over this size are spilled to temporary files.
+  private static final int SPILL_SIZE = 1 << 22;
+
   private final String fileName;
   private final SeekableOutputStream writer;
+  private final SeekableInputStream fileReader;
   private final MaterializedTable tableMeta;
   private final SeekableRecordReader reader;
   private final ImmutableList<BasicColumn> allColumns;
   private final ImmutableList<BasicColumn> activeColumns;
   private final ImmutableMap<String, TableUniqueIndex> uniqueIndexes;
   private final ImmutableMap<String, TableMultiIndex> multiIndexes;
+  private final ImmutableMap<String, CompositeTableMultiIndex> compositeIndexes;
   private final ImmutableMultimap<String, IndexReader> foreignIndexes;
   private final ImmutableMultimap<String, IndexReader> reversedForeignIndexes;
   private final ImmutableMap<String, BooleanRule> rules;
   private final ReverseRuleDependencies reverseRules;
   private final Optional<PrimaryKey> primaryKey;
+  private final DeletionVector deletionVector;
 
   private long fileIndex0;
   private long actFileIndex;
-  private final Set<Long> recordsToDelete = new LinkedHashSet<>();
-  private final TreeMap<Long, byte[]> recordsToInsert = new TreeMap<>();
+  private final SpillBuffer recordsToInsert;
+  private final RecordBuffer recordBuffer = new RecordBuffer();
+  private final TreeMap<Long, byte[]> recordsToOverwrite = new TreeMap<>();
 
   private boolean cancelled = false;
 
@@ -86,9 +106,11 @@ public class TableWriter extends SeekableTableReader implements TableIO {
       String fileName,
       SeekableOutputStream fileWriter,
       SeekableInputStream fileReader,
+      DeletionVector deletionVector,
       ImmutableList<BasicColumn> allColumns,
       ImmutableMap<String, TableUniqueIndex> uniqueIndexes,
       ImmutableMap<String, TableMultiIndex> multiIndexes,
+      ImmutableMap<String, CompositeTableMultiIndex> compositeIndexes,
       ImmutableMultimap<String, IndexReader> foreignIndexes,
       ImmutableMultimap<String, IndexReader> reversedForeignIndexes,
       ImmutableMap<String, BooleanRule> rules,
@@ -98,14 +120,18 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     this.tableMeta = tableMeta;
     this.fileName = fileName;
     this.writer = fileWriter;
+    this.fileReader = fileReader;
+    this.recordsToInsert = new SpillBuffer(fileName + "#pending", SPILL_SIZE);
     this.reader = new SeekableRecordReader(allColumns, new SeekableSequenceInputStream(
-        fileReader,
-        new TreeMapInputStream(recordsToInsert)),
-        recordsToDelete);
+        new PatchedInputStream(fileReader, recordsToOverwrite, 0L),
+        recordsToInsert.inputStream(0L)),
+        deletionVector::contains);
+    this.deletionVector = deletionVector;
     this.allColumns = allColumns;
     this.activeColumns = allColumns.stream().filter(c -> !c.isDeleted()).collect(ImmutableList.toImmutableList());
     this.uniqueIndexes = uniqueIndexes;
     this.multiIndexes = multiIndexes;
+    this.compositeIndexes = compositeIndexes;
     this.foreignIndexes = foreignIndexes;
     this.reversedForeignIndexes = reversedForeignIndexes;
     this.rules = rules;
@@ -165,9 +191,11 @@ public class TableWriter extends SeekableTableReader implements TableIO {
         }
       }
     }
-    byte[] data = Serializer.serialize(values, allColumns);
-    recordsToInsert.put(fileIndex, data);
-    actFileIndex += data.length;
+    putComposite(values, fileIndex);
+    putPartition(resources, values, fileIndex);
+    int length = recordBuffer.encode(values, allColumns);
+    recordsToInsert.append(recordBuffer.array(), 0, length);
+    actFileIndex += length;
     for (Map.Entry<String, BooleanRule> rule : rules.entrySet()) {
       if (!rule.getValue().check(resources, fileIndex)) {
         throw new RuleException(
@@ -180,30 +208,157 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     }
   }
 
-  public void commit() throws IOException {
-    try {
-      int delta = 0;
-      if (recordsToInsert.size() > 1) {
-        ByteArrayOutputStream finalBuffer = new ByteArrayOutputStream(1024);
-        for (byte[] data : recordsToInsert.values()) {
-          finalBuffer.write(data);
+  /**
+   * Appends a batch of records. Unlike calling {@link #insert} per record the index
+   * entries are added per column sorted by key after all the records are appended, and
+   * foreign keys are probed once per distinct value in sorted order.
+   */
+  public void bulkInsert(Resources resources, List<Object[]> rawValuess, boolean checkReferencingRules)
+      throws IOException, RuleException {
+    int n = rawValuess.size();
+    Object[][] valuess = new Object[n][];
+    long[] fileIndexes = new long[n];
+    for (int r = 0; r < n; r++) {
+      Object[] rawValues = rawValuess.get(r);
+      Object[] values = new Object[rawValues.length];
+      for (int i = 0; i < rawValues.length; i++) {
+        BasicColumn column = activeColumns.get(i);
+        values[i] = check(column, rawValues[i]);
+        if (!column.isNullable() && values[i] == null) {
+          throw new RuleException("Column is not nullable (mandatory).");
         }
-        byte[] data = finalBuffer.toByteArray();
-        writer.write(fileIndex0, data);
-        delta = data.length;
-      } else {
-        for (byte[] data : recordsToInsert.values()) {
-          writer.write(fileIndex0, data);
-          delta += data.length;
+      }
+      int length = recordBuffer.encode(values, allColumns);
+      fileIndexes[r] = actFileIndex;
+      recordsToInsert.append(recordBuffer.array(), 0, length);
+      actFileIndex += length;
+      valuess[r] = values;
+      putPartition(resources, values, fileIndexes[r]);
+    }
+    for (int i = 0; i < activeColumns.size(); i++) {
+      BasicColumn column = activeColumns.get(i);
+      IndexWriter index = column.isUnique() ? uniqueIndexes.get(column.getName())
+          : multiIndexes.get(column.getName());
+      if (index != null) {
+        Integer[] order = sortedByColumn(valuess, i);
+        try {
+          for (Integer r : order) {
+            index.put(valuess[r][i], fileIndexes[r]);
+          }
+        } catch (IndexException e) {
+          throw new RuleException(e);
         }
       }
-      for (Long pos : recordsToDelete) {
-        writer.write(pos, new byte[] { 0 });
+      if (foreignIndexes.containsKey(column.getName())) {
+        TreeSet<Object> keys = new TreeSet<>();
+        for (Object[] values : valuess) {
+          if (values[i] != null) {
+            keys.add(values[i]);
+          }
+        }
+        for (IndexReader foreignIndex : foreignIndexes.get(column.getName())) {
+          for (Object key : keys) {
+            if (!foreignIndex.contains(key)) {
+              throw new RuleException(String.format(
+                  "Foreign key violation, value '%s' not present.", key));
+            }
+          }
+        }
+      }
+    }
+    for (CompositeTableMultiIndex index : compositeIndexes.values()) {
+      CompositeKey[] keys = new CompositeKey[n];
+      Integer[] order = new Integer[n];
+      for (int r = 0; r < n; r++) {
+        keys[r] = index.key(valuess[r], activeColumns);
+        order[r] = r;
+      }
+      Arrays.sort(order, Comparator.comparing(r -> keys[r]));
+      try {
+        for (Integer r : order) {
+          index.put(keys[r], fileIndexes[r]);
+        }
+      } catch (IndexException e) {
+        throw new RuleException(e);
+      }
+    }
+    for (Map.Entry<String, BooleanRule> rule : rules.entrySet()) {
+      for (long fileIndex : fileIndexes) {
+        if (!rule.getValue().check(resources, fileIndex)) {
+          throw new RuleException(
+              "Constraint check " + rule.getKey() + " failed.");
+        }
+      }
+    }
+    if (checkReferencingRules) {
+      RuleDependencyReader ruleDependencyReader = new RuleDependencyReader(resources, reverseRules);
+      for (int r = 0; r < n; r++) {
+        ruleDependencyReader.checkReferencingRules(new Record(fileIndexes[r], valuess[r]));
+      }
+    }
+  }
+
+  private void putComposite(Object[] values, long fileIndex) throws IOException, RuleException {
+    for (CompositeTableMultiIndex index : compositeIndexes.values()) {
+      try {
+        index.put(index.key(values, activeColumns), fileIndex);
+      } catch (IndexException e) {
+        throw new RuleException(e);
+      }
+    }
+  }
+
+  private Object partitionKey(Resources resources, Object[] values) throws IOException {
+    return tableMeta.getPartitioning().get().getColumn().value(values, resources, TableContext.EMPTY);
+  }
+
+  private void putPartition(Resources resources, Object[] values, long fileIndex)
+      throws IOException, RuleException {
+    TableMultiIndex index = multiIndexes.get(MaterializedTable.PARTITION_INDEX);
+    if (index == null) {
+      return;
+    }
+    Object key = partitionKey(resources, values);
+    if (key != null) {
+      try {
+        index.put(key, fileIndex);
+      } catch (IndexException e) {
+        throw new RuleException(e);
+      }
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Integer[] sortedByColumn(Object[][] valuess, int column) {
+    Integer[] order = new Integer[valuess.length];
+    int n = 0;
+    for (int r = 0; r < valuess.length; r++) {
+      if (valuess[r][column] != null) {
+        order[n++] = r;
+      }
+    }
+    order = Arrays.copyOf(order, n);
+    Arrays.sort(order, Comparator.comparing(r -> (Comparable) valuess[r][column]));
+    return order;
+  }
+
+  public void commit() throws IOException {
+    try {
+      long delta = recordsToInsert.size();
+      if (delta > 0) {
+        recordsToInsert.writeTo(writer, fileIndex0);
+      }
+      for (Map.Entry<Long, byte[]> record : recordsToOverwrite.entrySet()) {
+        writer.write(record.getKey(), record.getValue());
       }
       recordsToInsert.clear();
-      recordsToDelete.clear();
+      recordsToOverwrite.clear();
       fileIndex0 += delta;
       actFileIndex = fileIndex0;
+      deletionVector.commit();
+      if (deletionVector.size() >= DELETION_VECTOR_MERGE_SIZE) {
+        mergeDeletionVector();
+      }
     } catch (IOException e) {
       rollback();
       writer.getChannel().truncate(fileIndex0);
@@ -223,11 +378,30 @@ public class TableWriter extends SeekableTableReader implements TableIO {
         index.invalidate();
       }
     }
+    for (CompositeTableMultiIndex index : compositeIndexes.values()) {
+      try {
+        index.commit();
+      } catch (IOException e) {
+        index.invalidate();
+      }
+    }
+  }
+
+  private void mergeDeletionVector() throws IOException {
+    for (long pos : deletionVector.committed()) {
+      writer.write(pos, new byte[] { 0 });
+    }
+    deletionVector.clear();
   }
 
   public void rollback() {
-    recordsToDelete.clear();
-    recordsToInsert.clear();
+    deletionVector.rollback();
+    try {
+      recordsToInsert.clear();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    recordsToOverwrite.clear();
     actFileIndex = fileIndex0;
     for (TableUniqueIndex index : uniqueIndexes.values()) {
       index.rollback();
@@ -235,6 +409,9 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     for (TableMultiIndex index : multiIndexes.values()) {
       index.rollback();
     }
+    for (CompositeTableMultiIndex index : compositeIndexes.values()) {
+      index.rollback();
+    }
   }
 
   public void close() throws IOException {
@@ -245,35 +422,21 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     this.cancelled = true;
   }
 
-  private void delete(Record record, Resources resources, Predicate<Integer> checkReversedForeignIndex,
-      boolean checkReverseRuleDependencies)
-      throws IOException, RuleException {
-    recordsToDelete.add(record.getFilePointer());
-    for (BasicColumn column : activeColumns) {
-      Object value = record.getValues()[column.getIndex()];
-      if (value != null) {
-        if (uniqueIndexes.containsKey(column.getName())) {
-          uniqueIndexes.get(column.getName()).delete(value);
-        }
-        if (multiIndexes.containsKey(column.getName())) {
-          multiIndexes.get(column.getName()).delete(value, record.getFilePointer());
-        }
-        if (checkReversedForeignIndex.test(column.getIndex())) {
-          if (reversedForeignIndexes.containsKey(column.getName())) {
-            for (IndexReader reverseForeignIndex : reversedForeignIndexes.get(column.getName())) {
-              if (reverseForeignIndex.contains(value)) {
-                throw new RuleException(String.format(
-                    "Foreign key violation, key value '%s' has references.", value));
-              }
-            }
-          }
-        }
-      }
+  private void delete(Record record, Resources resources) throws IOException, RuleException {
+    deletionVector.delete(record.getFilePointer());
+    deleteIndexEntries(record, activeColumns);
+    for (CompositeTableMultiIndex index : compositeIndexes.values()) {
+      index.delete(index.key(record.getValues(), activeColumns), record.getFilePointer());
     }
-    if (checkReverseRuleDependencies) {
-      RuleDependencyReader ruleDependencyReader = new RuleDependencyReader(resources, reverseRules);
-      ruleDependencyReader.checkReferencingRules(record);
+    TableMultiIndex partitionIndex = multiIndexes.get(MaterializedTable.PARTITION_INDEX);
+    if (partitionIndex != null) {
+      Object key = partitionKey(resources, record.getValues());
+      if (key != null) {
+        partitionIndex.delete(key, record.getFilePointer());
+      }
     }
+    RuleDependencyReader ruleDependencyReader = new RuleDependencyReader(resources, reverseRules);
+    ruleDependencyReader.checkReferencingRules(record);
   }
 
   private long delete(RecordProvider recordProvider, Resources resources, ColumnMeta whereColumn)
@@ -285,9 +448,9 @@ public class TableWriter extends SeekableTableReader implements TableIO {
         recordProvider.close();
         return deletedLines;
       }
-      if (!recordsToDelete.contains(record.getFilePointer())
+      if (!deletionVector.contains(record.getFilePointer())
           && (boolean) whereColumn.value(record.getValues(), resources, TableContext.EMPTY)) {
-        delete(record, resources, Predicates.alwaysTrue(), /* checkReverseRuleDependencies= */true);
+        delete(record, resources);
         deletedLines++;
       }
     } while (true);
@@ -308,47 +471,249 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     return delete(reader, resources, whereColumn);
   }
 
-  private ImmutableList<Object[]> deleteAndCollectUpdated(
+  /**
+   * Deletes the records of the partitions with keys between <code>from</code> and <code>to</code>,
+   * reading only the records listed in the partition index. Null bounds are unbounded.
+   */
+  public long deletePartitions(Resources resources, Object from, boolean fromInclusive, Object to, boolean toInclusive)
+      throws IOException, RuleException {
+    MultiFilteredTableReader reader = new MultiFilteredTableReader(this, ColumnMeta.TRUE_COLUMN, resources) {
+      @Override
+      protected void readPositions() throws IOException {
+        BitmapIndexReader index = (BitmapIndexReader) multiIndexes.get(MaterializedTable.PARTITION_INDEX);
+        positions = index.range(from, fromInclusive, to, toInclusive).toArray();
+      }
+    };
+    return delete(reader, resources, ColumnMeta.TRUE_COLUMN);
+  }
+
+  private long update(
       RecordProvider recordProvider,
       Resources resources,
       ImmutableMap<Integer, ColumnMeta> updateExprs,
       ColumnMeta whereColumn) throws IOException, RuleException {
-    ImmutableList.Builder<Object[]> updatedRecords = ImmutableList.builder();
-    do {
-      Record record = recordProvider.read();
-      if (record == RecordReader.EMPTY || cancelled) {
-        recordProvider.close();
-        return updatedRecords.build();
-      }
-      Object[] values = record.getValues();
-      if (!recordsToDelete.contains(record.getFilePointer()) && (boolean) whereColumn.value(values, resources, TableContext.EMPTY)) {
-        delete(
-            record,
-            resources,
-            (columnIndex) -> updateExprs.containsKey(columnIndex),
-            /* checkReverseRuleDependencies= */false);
-        Object[] newValues = new Object[values.length];
-        System.arraycopy(values, 0, newValues, 0, values.length);
-        for (Map.Entry<Integer, ColumnMeta> updateExpr : updateExprs.entrySet()) {
-          newValues[updateExpr.getKey()] = updateExpr.getValue().value(values, resources, TableContext.EMPTY);
+    // The file pointers and new values of the updated records, spilled to disk if large.
+    SpillBuffer updates = new SpillBuffer(fileName + "#updates", SPILL_SIZE);
+    try {
+      long updatedLines = 0L;
+      do {
+        Record record = recordProvider.read();
+        if (record == RecordReader.EMPTY || cancelled) {
+          recordProvider.close();
+          break;
+        }
+        Object[] values = record.getValues();
+        if (!deletionVector.contains(record.getFilePointer()) && (boolean) whereColumn.value(values, resources, TableContext.EMPTY)) {
+          Object[] newValues = new Object[values.length];
+          System.arraycopy(values, 0, newValues, 0, values.length);
+          for (Map.Entry<Integer, ColumnMeta> updateExpr : updateExprs.entrySet()) {
+            int i = updateExpr.getKey();
+            newValues[i] = check(activeColumns.get(i), updateExpr.getValue().value(values, resources, TableContext.EMPTY));
+          }
+          ImmutableList<BasicColumn> changedColumns = changedColumns(values, newValues, updateExprs.keySet());
+          // Keys are removed from the indexes of all the records first so that updated records
+          // can take each other's unique keys.
+          deleteIndexEntries(record, changedColumns);
+          if (!isInPlace(changedColumns, values, newValues)
+              || recordBuffer.encode(newValues, allColumns) != record.getSize()) {
+            deletionVector.delete(record.getFilePointer());
+          }
+          ByteArrayOutputStream bos = new ByteArrayOutputStream();
+          DataOutputStream out = new DataOutputStream(bos);
+          out.writeLong(record.getFilePointer());
+          for (BasicColumn column : activeColumns) {
+            Serializer.writeColumn(newValues[column.getIndex()], column.getType(), out);
+          }
+          updates.append(bos.toByteArray());
+          updatedLines++;
+        }
+      } while (true);
+
+      ImmutableMap<String, Optional<ImmutableSet<String>>> ruleColumns = rules.entrySet().stream()
+          .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, e -> e.getValue().columnDependencies()));
+      // Reads the original version of the records, including the ones moved by this update.
+      SeekableRecordReader originalReader = new SeekableRecordReader(allColumns, new SeekableSequenceInputStream(
+          new PatchedInputStream(fileReader, recordsToOverwrite, 0L),
+          recordsToInsert.inputStream(0L)),
+          RecordProvider.NO_DELETIONS);
+      DataInputStream in = new DataInputStream(updates.inputStream(0L));
+      for (long r = 0; r < updatedLines; r++) {
+        long filePointer = in.readLong();
+        Object[] newValues = new Object[activeColumns.size()];
+        for (BasicColumn column : activeColumns) {
+          newValues[column.getIndex()] = Serializer.readColumn(column.getType(), in);
+        }
+        originalReader.seek(filePointer);
+        update(resources, originalReader.read(), newValues, updateExprs.keySet(), ruleColumns);
+        if (cancelled) {
+          return -1;
         }
-        updatedRecords.add(newValues);
       }
-    } while (true);
+      return updatedLines;
+    } finally {
+      updates.clear();
+    }
   }
 
-  public long update(Resources resources, ImmutableMap<Integer, ColumnMeta> columnExprs, ColumnMeta whereColumn)
+  private ImmutableList<BasicColumn> changedColumns(Object[] values, Object[] newValues, Set<Integer> columnIndexes) {
+    return columnIndexes.stream()
+        .filter(i -> !Objects.equals(values[i], newValues[i]))
+        .map(i -> activeColumns.get(i))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * Changes of non-null fixed width values do not change the size of the record, so the
+   * record can be overwritten in place. Records written before columns were added or dropped
+   * are encoded differently, the size of the new record has to be checked too.
+   */
+  private static boolean isInPlace(ImmutableList<BasicColumn> changedColumns, Object[] values, Object[] newValues) {
+    for (BasicColumn column : changedColumns) {
+      int i = column.getIndex();
+      if (values[i] == null || newValues[i] == null || !column.getType().isFixedWidth()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void deleteIndexEntries(Record record, ImmutableList<BasicColumn> changedColumns)
       throws IOException, RuleException {
-    RecordReader reader = recordReader();
+    Object[] values = record.getValues();
+    for (BasicColumn column : changedColumns) {
+      Object value = values[column.getIndex()];
+      if (value == null) {
+        continue;
+      }
+      if (uniqueIndexes.containsKey(column.getName())) {
+        uniqueIndexes.get(column.getName()).delete(value);
+      }
+      if (multiIndexes.containsKey(column.getName())) {
+        multiIndexes.get(column.getName()).delete(value, record.getFilePointer());
+      }
+      if (reversedForeignIndexes.containsKey(column.getName())) {
+        for (IndexReader reverseForeignIndex : reversedForeignIndexes.get(column.getName())) {
+          if (reverseForeignIndex.contains(value)) {
+            throw new RuleException(String.format(
+                "Foreign key violation, key value '%s' has references.", value));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the updated record, in place if only fixed width values changed, otherwise to
+   * the end of the file. Only the indexes of the changed columns get new keys, the entries
+   * of the other indexes are remapped if the record moved. Only the rules depending on the
+   * changed columns are checked.
+   */
+  private void update(
+      Resources resources,
+      Record record,
+      Object[] newValues,
+      Set<Integer> columnIndexes,
+      ImmutableMap<String, Optional<ImmutableSet<String>>> ruleColumns) throws IOException, RuleException {
+    long oldFileIndex = record.getFilePointer();
+    Object[] values = record.getValues();
+    ImmutableList<BasicColumn> changedColumns = changedColumns(values, newValues, columnIndexes);
+    if (changedColumns.isEmpty()) {
+      return;
+    }
+    int length = recordBuffer.encode(newValues, allColumns);
+    final long fileIndex;
+    if (isInPlace(changedColumns, values, newValues) && length == record.getSize()) {
+      fileIndex = oldFileIndex;
+      if (fileIndex < fileIndex0) {
+        recordsToOverwrite.put(fileIndex, recordBuffer.toByteArray());
+      } else {
+        recordsToInsert.write(fileIndex - fileIndex0, recordBuffer.array(), 0, length);
+      }
+    } else {
+      fileIndex = actFileIndex;
+      recordsToInsert.append(recordBuffer.array(), 0, length);
+      actFileIndex += length;
+    }
     try {
-      ImmutableList<Object[]> valuess = deleteAndCollectUpdated(reader, resources, columnExprs, whereColumn);
-      for (Object[] values : valuess) {
-        insert(resources, values, /* checkReferencingRules= */true);
-        if (cancelled) {
-          return -1;
+      for (BasicColumn column : activeColumns) {
+        Object value = newValues[column.getIndex()];
+        if (changedColumns.contains(column)) {
+          if (!column.isNullable() && value == null) {
+            throw new RuleException("Column is not nullable (mandatory).");
+          }
+          if (value != null) {
+            if (uniqueIndexes.containsKey(column.getName())) {
+              uniqueIndexes.get(column.getName()).put(value, fileIndex);
+            }
+            if (multiIndexes.containsKey(column.getName())) {
+              multiIndexes.get(column.getName()).put(value, fileIndex);
+            }
+            if (foreignIndexes.containsKey(column.getName())) {
+              for (IndexReader foreignIndex : foreignIndexes.get(column.getName())) {
+                if (!foreignIndex.contains(value)) {
+                  throw new RuleException(String.format(
+                      "Foreign key violation, value '%s' not present.", value));
+                }
+              }
+            }
+          }
+        } else if (value != null && fileIndex != oldFileIndex) {
+          if (uniqueIndexes.containsKey(column.getName())) {
+            uniqueIndexes.get(column.getName()).remap(value, fileIndex);
+          }
+          if (multiIndexes.containsKey(column.getName())) {
+            multiIndexes.get(column.getName()).remap(value, oldFileIndex, fileIndex);
+          }
+        }
+      }
+      for (CompositeTableMultiIndex index : compositeIndexes.values()) {
+        CompositeKey oldKey = index.key(values, activeColumns);
+        CompositeKey newKey = index.key(newValues, activeColumns);
+        if (!oldKey.equals(newKey)) {
+          index.delete(oldKey, oldFileIndex);
+          index.put(newKey, fileIndex);
+        } else if (fileIndex != oldFileIndex) {
+          index.remap(oldKey, oldFileIndex, fileIndex);
         }
       }
-      return valuess.size();
+      TableMultiIndex partitionIndex = multiIndexes.get(MaterializedTable.PARTITION_INDEX);
+      if (partitionIndex != null) {
+        Object oldKey = partitionKey(resources, values);
+        Object newKey = partitionKey(resources, newValues);
+        if (!Objects.equals(oldKey, newKey)) {
+          if (oldKey != null) {
+            partitionIndex.delete(oldKey, oldFileIndex);
+          }
+          if (newKey != null) {
+            partitionIndex.put(newKey, fileIndex);
+          }
+        } else if (oldKey != null && fileIndex != oldFileIndex) {
+          partitionIndex.remap(oldKey, oldFileIndex, fileIndex);
+        }
+      }
+    } catch (IndexException e) {
+      throw new RuleException(e);
+    }
+    Set<String> changedNames = changedColumns.stream().map(BasicColumn::getName).collect(Collectors.toSet());
+    for (Map.Entry<String, BooleanRule> rule : rules.entrySet()) {
+      Optional<ImmutableSet<String>> dependencies = ruleColumns.get(rule.getKey());
+      if (dependencies.isPresent() && Collections.disjoint(dependencies.get(), changedNames)) {
+        continue;
+      }
+      if (!rule.getValue().check(resources, fileIndex)) {
+        throw new RuleException(
+            "Constraint check " + rule.getKey() + " failed.");
+      }
+    }
+    RuleDependencyReader ruleDependencyReader = new RuleDependencyReader(resources, reverseRules);
+    ruleDependencyReader.checkReferencingRules(new Record(fileIndex, newValues));
+  }
+
+  public long update(Resources resources, ImmutableMap<Integer, ColumnMeta> columnExprs, ColumnMeta whereColumn)
+      throws IOException, RuleException {
+    RecordReader reader = recordReader();
+    try {
+      return update(reader, resources, columnExprs, whereColumn);
     } finally {
       reader.close();
     }
@@ -360,14 +725,7 @@ public class TableWriter extends SeekableTableReader implements TableIO {
       ColumnMeta whereColumn,
       VariableEquals clause) throws IOException, RuleException {
     MultiFilteredTableReader reader = indexFilteredReader(resources, whereColumn, clause);
-    ImmutableList<Object[]> valuess = deleteAndCollectUpdated(reader, resources, columnExprs, whereColumn);
-    for (Object[] values : valuess) {
-      insert(resources, values, /* checkReferencingRules= */true);
-      if (cancelled) {
-        return -1;
-      }
-    }
-    return valuess.size();
+    return update(reader, resources, columnExprs, whereColumn);
   }
 
   public TableUniqueIndex getPrimaryKeyIndex() {
@@ -378,6 +736,8 @@ public class TableWriter extends SeekableTableReader implements TableIO {
   public IndexReader getIndex(String name) {
     if (uniqueIndexes.containsKey(name)) {
       return uniqueIndexes.get(name);
+    } else if (compositeIndexes.containsKey(name)) {
+      return compositeIndexes.get(name);
     } else {
       return multiIndexes.get(name);
     }
@@ -407,9 +767,23 @@ public class TableWriter extends SeekableTableReader implements TableIO {
   private RecordReader recordReader() throws IOException {
     @SuppressWarnings("resource") // RecordReader closes SequenceInputStream.
     InputStream rafReader = new SequenceInputStream(
-        new BufferedInputStream(new FileInputStream(fileName)),
-        new TreeMapInputStream(recordsToInsert));
-    return new RecordReader(allColumns, rafReader, recordsToDelete);
+        new PatchedInputStream(tableMeta.openStream(0L), recordsToOverwrite, 0L),
+        recordsToInsert.inputStream(0L));
+    return new RecordReader(allColumns, rafReader, deletionVector::contains);
+  }
+
+  @SuppressWarnings("resource") // RecordReader closes the input streams.
+  @Override
+  public RecordReader recordReader(long position) throws IOException {
+    InputStream rafReader;
+    if (position < fileIndex0) {
+      rafReader = new SequenceInputStream(
+          new PatchedInputStream(tableMeta.openStream(position), recordsToOverwrite, position),
+          recordsToInsert.inputStream(0L));
+    } else {
+      rafReader = recordsToInsert.inputStream(position - fileIndex0);
+    }
+    return new RecordReader(allColumns, rafReader, deletionVector::contains, position);
   }
 
   private MultiFilteredTableReader indexFilteredReader(Resources resources, ColumnMeta whereColumn,
@@ -440,23 +814,43 @@ public class TableWriter extends SeekableTableReader implements TableIO {
     };
   }
 
+  /**
+   * Sorts the (key, file pointer) pairs of the column and bulk loads them into the index.
+   */
   public void buildIndex(String column, IndexWriter indexWriter) throws IOException, RuleException {
-    RecordReader reader = recordReader();
     int columnIndex = tableMeta.columnNames().asList().indexOf(column);
+    buildIndex(indexWriter, tableMeta.columns().get(column).getType(), values -> values[columnIndex]);
+  }
+
+  /**
+   * Builds a multi-column index, records with null values are indexed too.
+   */
+  public void buildCompositeIndex(CompositeTableMultiIndex index) throws IOException, RuleException {
+    buildIndex(index, CompositeKey.TYPE, values -> index.key(values, activeColumns));
+  }
+
+  private void buildIndex(IndexWriter indexWriter, DataType<?> keyType, Function<Object[], Object> keyFunction)
+      throws IOException, RuleException {
+    RecordReader reader = recordReader();
+    IndexEntrySorter sorter = new IndexEntrySorter(indexWriter, keyType, INDEX_BUILD_RUN_SIZE);
     Record record;
     try {
       while ((record = reader.read()) != RecordReader.EMPTY && !cancelled) {
-        Object key = record.getValues()[columnIndex];
+        Object key = keyFunction.apply(record.getValues());
         if (key != null) {
-          try {
-            indexWriter.put(key, record.getFilePointer());
-          } catch (IndexException e) {
-            throw new RuleException(e);
-          }
+          sorter.add(key, record.getFilePointer());
         }
       }
+      if (!cancelled) {
+        indexWriter.bulkLoad(sorter.sorted());
+      }
+    } catch (IndexException e) {
+      throw new RuleException(e);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
     } finally {
       reader.close();
+      sorter.close();
     }
   }
 
@@ -16,6 +16,7 @@
 package com.cosyan.db.io;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.TreeMap;
 
 public class TreeMapInputStream extends SeekableInputStream {
@@ -28,18 +29,21 @@ public class TreeMapInputStream extends SeekableInputStream {
   public TreeMapInputStream(TreeMap<Long, byte[]> map) throws IOException {
     this.map = map;
     if (!map.isEmpty()) {
-      seek(map.firstKey());
+      moveTo(map.firstKey());
     }
   }
 
   @Override
   public void seek(long position) throws IOException {
-    long offsetPosition = position + map.firstKey();
-    act = map.get(offsetPosition);
-    if (act == null) {
+    if (map.isEmpty() || !map.containsKey(position + map.firstKey())) {
       throw new IOException("Invalid position " + position + ".");
     }
-    pointer = offsetPosition;
+    moveTo(position + map.firstKey());
+  }
+
+  private void moveTo(long key) {
+    act = map.get(key);
+    pointer = key;
     pointerInAct = 0;
   }
 
@@ -56,16 +60,67 @@ public class TreeMapInputStream extends SeekableInputStream {
     if (act == null) {
       return -1;
     }
-    if (pointerInAct < act.length) {
-      return act[pointerInAct++] & 0xff;
-    } else {
-      Long next = map.ceilingKey(pointer + 1);
-      if (next == null) {
+    while (pointerInAct == act.length) {
+      if (!next()) {
         return -1;
       }
-      seek(next);
-      return read();
     }
+    return act[pointerInAct++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (act == null) {
+      return -1;
+    }
+    int n = 0;
+    while (n < len) {
+      if (pointerInAct == act.length) {
+        if (!next()) {
+          break;
+        }
+        continue;
+      }
+      int chunk = Math.min(len - n, act.length - pointerInAct);
+      System.arraycopy(act, pointerInAct, b, off + n, chunk);
+      pointerInAct += chunk;
+      n += chunk;
+    }
+    return n == 0 ? -1 : n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (act == null) {
+      return 0;
+    }
+    long skipped = 0;
+    while (skipped < n) {
+      if (pointerInAct == act.length) {
+        if (!next()) {
+          break;
+        }
+        continue;
+      }
+      int chunk = (int) Math.min(n - skipped, act.length - pointerInAct);
+      pointerInAct += chunk;
+      skipped += chunk;
+    }
+    return skipped;
+  }
+
+  private boolean next() {
+    Map.Entry<Long, byte[]> next = map.higherEntry(pointer);
+    if (next == null) {
+      return false;
+    }
+    act = next.getValue();
+    pointer = next.getKey();
+    pointerInAct = 0;
+    return true;
   }
 
   @Override
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.sql;
+
+import java.io.IOException;
+
+import com.cosyan.db.auth.AuthToken;
+import com.cosyan.db.io.TableWriter;
+import com.cosyan.db.lang.expr.Literals.Literal;
+import com.cosyan.db.lang.expr.Statements.AlterStatement;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MaterializedTable.Partitioning;
+import com.cosyan.db.meta.MetaRepo;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.meta.MetaRepoExecutor;
+import com.cosyan.db.model.DateFunctions;
+import com.cosyan.db.model.Ident;
+import com.cosyan.db.transaction.MetaResources;
+import com.cosyan.db.transaction.Resources;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+public class AlterStatementPartitions {
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class AlterTableDropPartition extends AlterStatement {
+    private final Ident table;
+    private final Literal key;
+
+    private MaterializedTable tableMeta;
+    private TableWriter writer;
+
+    @Override
+    public MetaResources executeMeta(MetaRepo metaRepo, AuthToken authToken) throws ModelException {
+      tableMeta = metaRepo.table(table);
+      if (!tableMeta.getPartitioning().isPresent()) {
+        throw new ModelException(String.format("Table '%s' is not partitioned.", table.getString()), table);
+      }
+      Partitioning partitioning = tableMeta.getPartitioning().get();
+      if (!partitioning.getColumn().getType().javaClass().isInstance(key.getValue())) {
+        throw new ModelException(String.format("Expected '%s' partition key but got '%s'.",
+            partitioning.getColumn().getType(), key.getValue()), table);
+      }
+      return MetaResources.deleteFromTable(tableMeta);
+    }
+
+    @Override
+    public Result executeData(MetaRepoExecutor metaRepo, Resources resources) throws RuleException, IOException {
+      writer = resources.writer(table.getString());
+      long deletedLines = writer.deletePartitions(resources, key.getValue(), true, key.getValue(), true);
+      tableMeta.delete(deletedLines);
+      return new StatementResult(deletedLines);
+    }
+
+    @Override
+    public void cancel() {
+      writer.cancel();
+    }
+  }
+
+  /**
+   * Deletes the partitions of a table with retention which only contain expired records. Not
+   * part of the SQL syntax, executed periodically by the
+   * {@link com.cosyan.db.tools.RetentionManager}.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class AlterTableDropExpiredPartitions extends AlterStatement {
+    private final Ident table;
+    private final long now;
+
+    private MaterializedTable tableMeta;
+    private TableWriter writer;
+
+    @Override
+    public MetaResources executeMeta(MetaRepo metaRepo, AuthToken authToken) throws ModelException {
+      tableMeta = metaRepo.table(table);
+      if (!tableMeta.retention().isPresent()) {
+        throw new ModelException(String.format("Table '%s' has no retention.", table.getString()), table);
+      }
+      return MetaResources.deleteFromTable(tableMeta);
+    }
+
+    @Override
+    public Result executeData(MetaRepoExecutor metaRepo, Resources resources) throws RuleException, IOException {
+      // The partition of a day expires when its last record does.
+      long firstDay = DateFunctions.epochDay(now) - tableMeta.retention().get().getDays();
+      writer = resources.writer(table.getString());
+      long deletedLines = writer.deletePartitions(resources, null, true, firstDay, false);
+      tableMeta.delete(deletedLines);
+      return new StatementResult(deletedLines);
+    }
+
+    @Override
+    public void cancel() {
+      writer.cancel();
+    }
+  }
+}
@@ -20,7 +20,11 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -59,6 +63,7 @@ public class CSVStatements {
     private final Ident table;
     private final boolean withHeader;
     private final long commitAfterNRecords;
+    private final boolean bulk;
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
 
     private MaterializedTable tableMeta;
@@ -90,6 +95,11 @@ public class CSVStatements {
       }
       long lines = 0;
       try {
+        if (bulk) {
+          lines = bulkImport(resources, writer, csvParser, numCols);
+          tableMeta.insert(lines);
+          return new StatementResult(lines);
+        }
         for (CSVRecord csvRecord : csvParser) {
           Object[] values = new Object[numCols];
           for (int i = 0; i < numCols; i++) {
@@ -116,6 +126,62 @@ public class CSVStatements {
       return new StatementResult(lines);
     }
 
+    /**
+     * Reads the file in batches of commitAfterNRecords lines. The CSV tokenizer is
+     * sequential but the values of a batch are converted in parallel, then the batch is
+     * appended with {@link TableWriter#bulkInsert} and committed.
+     */
+    private long bulkImport(Resources resources, TableWriter writer, CSVParser csvParser, int numCols)
+        throws IOException, RuleException {
+      int batchSize = (int) Math.max(1, Math.min(commitAfterNRecords, Integer.MAX_VALUE));
+      long lines = 0;
+      List<String[]> batch = new ArrayList<>(Math.min(batchSize, 100000));
+      for (CSVRecord csvRecord : csvParser) {
+        String[] strings = new String[numCols];
+        for (int i = 0; i < numCols; i++) {
+          strings[i] = withHeader ? csvRecord.get(tableMeta.columnNames().get(i)) : csvRecord.get(i);
+        }
+        batch.add(strings);
+        if (batch.size() == batchSize) {
+          lines += importBatch(resources, writer, batch, numCols);
+          batch.clear();
+          if (cancelled.get()) {
+            return lines;
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        lines += importBatch(resources, writer, batch, numCols);
+      }
+      return lines;
+    }
+
+    private int importBatch(Resources resources, TableWriter writer, List<String[]> batch, int numCols)
+        throws IOException, RuleException {
+      Object[][] valuess = new Object[batch.size()][];
+      RuleException[] errors = new RuleException[batch.size()];
+      IntStream.range(0, batch.size()).parallel().forEach(r -> {
+        String[] strings = batch.get(r);
+        Object[] values = new Object[numCols];
+        try {
+          for (int i = 0; i < numCols; i++) {
+            values[i] = columns.get(i).getType().fromString(strings[i]);
+          }
+        } catch (RuleException e) {
+          errors[r] = e;
+        }
+        valuess[r] = values;
+      });
+      for (RuleException error : errors) {
+        if (error != null) {
+          throw error;
+        }
+      }
+      writer.bulkInsert(resources, Arrays.asList(valuess), /* checkReferencingRules= */true);
+      writer.commit();
+      return valuess.length;
+    }
+
     @Override
     public void cancel() {
       cancelled.set(true);
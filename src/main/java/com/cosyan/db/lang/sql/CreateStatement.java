@@ -25,6 +25,7 @@ import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.io.Indexes.IndexWriter;
 import com.cosyan.db.io.TableWriter;
 import com.cosyan.db.lang.expr.Expression;
+import com.cosyan.db.lang.expr.FuncCallExpression;
 import com.cosyan.db.lang.expr.Statements.AlterStatement;
 import com.cosyan.db.lang.expr.Statements.GlobalStatement;
 import com.cosyan.db.lang.expr.TableDefinition.ColumnDefinition;
@@ -37,14 +38,18 @@ import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.meta.MetaRepo;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.meta.MaterializedTable.ReadAhead;
+import com.cosyan.db.meta.MaterializedTable.Retention;
 import com.cosyan.db.meta.MetaRepoExecutor;
 import com.cosyan.db.model.BasicColumn;
-import com.cosyan.db.model.ColumnMeta;
+import com.cosyan.db.model.BasicColumn.IndexType;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.Ident;
+import com.cosyan.db.model.Keys.CompositeIndex;
 import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.PrimaryKey;
 import com.cosyan.db.model.Rule.BooleanRule;
+import com.cosyan.db.model.TableMultiIndex.CompositeTableMultiIndex;
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.Resources;
 import com.google.common.collect.ImmutableList;
@@ -64,6 +69,8 @@ public class CreateStatement {
     private final ImmutableList<ColumnDefinition> columnDefinitions;
     private final ImmutableList<ConstraintDefinition> constraints;
     private final Optional<Expression> partitioning;
+    private final Optional<ReadAhead> readAhead;
+    private final Optional<Retention> retention;
 
     @Override
     public Result execute(MetaRepo metaRepo, AuthToken authToken) throws ModelException, IOException {
@@ -123,6 +130,7 @@ public class CreateStatement {
 
       MaterializedTable tableMeta = new MaterializedTable(
           metaRepo.config(),
+          metaRepo.pageCache(),
           name.getString(),
           authToken.username(),
           columns.values(),
@@ -131,15 +139,52 @@ public class CreateStatement {
 
       addConstraints(metaRepo, tableMeta, constraints);
 
+      if (readAhead.isPresent()) {
+        if (type != MaterializedTable.Type.LOG) {
+          throw new ModelException("Read-ahead is only supported for log tables.", name);
+        }
+        if (readAhead.get().getBufferSize() <= 0 || readAhead.get().getDepth() < 0) {
+          throw new ModelException("Invalid read-ahead buffer size or depth.", name);
+        }
+        tableMeta.setReadAhead(readAhead.get());
+      }
+
       if (partitioning.isPresent()) {
-        ColumnMeta columnMeta = partitioning.get().compileColumn(tableMeta.reader());
-        tableMeta.setPartitioning(Optional.of(columnMeta));
+        tableMeta.setPartitioning(Optional.of(tableMeta.createPartitioning(partitioning.get())));
+      }
+
+      if (retention.isPresent()) {
+        addRetention(tableMeta, retention.get());
       }
 
       metaRepo.registerTable(tableMeta);
       return Result.META_OK;
     }
 
+    /**
+     * Tables with retention are partitioned by the day of the timestamp, so expired records
+     * can be deleted per day using the partition index.
+     */
+    private void addRetention(MaterializedTable tableMeta, Retention retention) throws ModelException {
+      if (type != MaterializedTable.Type.LOG) {
+        throw new ModelException("Retention is only supported for log tables.", name);
+      }
+      if (partitioning.isPresent()) {
+        throw new ModelException("Tables with retention are partitioned by the retention column.", name);
+      }
+      if (retention.getDays() <= 0) {
+        throw new ModelException("Invalid retention period.", name);
+      }
+      Ident column = new Ident(retention.getColumn(), name.getLoc());
+      if (!tableMeta.hasColumn(column) || !tableMeta.column(column).getType().isDate()) {
+        throw new ModelException(
+            String.format("Retention column '%s' has to be a timestamp.", retention.getColumn()), name);
+      }
+      tableMeta.setRetention(retention);
+      tableMeta.setPartitioning(Optional.of(tableMeta.createPartitioning(new FuncCallExpression(
+          new Ident("get_epoch_day", name.getLoc()), null, ImmutableList.of(FuncCallExpression.of(column))))));
+    }
+
     private void addConstraints(
         MetaRepo metaRepo,
         MaterializedTable tableMeta,
@@ -181,6 +226,7 @@ public class CreateStatement {
 
     private final Ident table;
     private final Ident column;
+    private final IndexType indexType;
 
     private BasicColumn basicColumn;
     private TableWriter writer;
@@ -190,7 +236,17 @@ public class CreateStatement {
     public MetaResources executeMeta(MetaRepo metaRepo, AuthToken authToken) throws ModelException, IOException {
       MaterializedTable tableMeta = metaRepo.table(table);
       basicColumn = tableMeta.column(column);
-      basicColumn.checkIndexType(column);
+      if (indexType == IndexType.BTREE) {
+        basicColumn.checkOrderedIndexType(column);
+      } else if (indexType == IndexType.BITMAP) {
+        basicColumn.checkBitmapIndexType(column);
+      } else {
+        basicColumn.checkIndexType(column);
+      }
+      if (basicColumn.isIndexed() && basicColumn.getIndexType() != indexType) {
+        throw new ModelException(String.format("Column '%s' is already indexed.", column), column);
+      }
+      basicColumn.setIndexType(indexType);
       indexWriter = metaRepo.registerIndex(tableMeta, basicColumn);
       return MetaResources.tableMeta(tableMeta);
     }
@@ -207,4 +263,37 @@ public class CreateStatement {
       writer.cancel();
     }
   }
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class CreateCompositeIndex extends AlterStatement {
+
+    private final Ident table;
+    private final Ident name;
+    private final ImmutableList<Ident> columns;
+
+    private CompositeTableMultiIndex index;
+    private TableWriter writer;
+
+    @Override
+    public MetaResources executeMeta(MetaRepo metaRepo, AuthToken authToken) throws ModelException, IOException {
+      MaterializedTable tableMeta = metaRepo.table(table);
+      CompositeIndex compositeIndex = tableMeta.createCompositeIndex(name, columns);
+      tableMeta.addCompositeIndex(compositeIndex);
+      index = metaRepo.registerCompositeIndex(tableMeta, compositeIndex);
+      return MetaResources.tableMeta(tableMeta);
+    }
+
+    @Override
+    public Result executeData(MetaRepoExecutor metaRepo, Resources resources) throws RuleException, IOException {
+      writer = resources.writer(table.getString());
+      writer.buildCompositeIndex(index);
+      return Result.META_OK;
+    }
+
+    @Override
+    public void cancel() {
+      writer.cancel();
+    }
+  }
 }
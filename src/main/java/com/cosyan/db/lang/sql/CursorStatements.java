@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.sql;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.cosyan.db.io.Indexes.IndexCursor;
+import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.Indexes.OrderedIndexReader;
+import com.cosyan.db.io.RecordProvider;
+import com.cosyan.db.io.RecordProvider.Record;
+import com.cosyan.db.io.RecordProvider.RecordReader;
+import com.cosyan.db.io.TableReader.SeekableTableReader;
+import com.cosyan.db.lang.expr.Node;
+import com.cosyan.db.lang.expr.Statements.Statement;
+import com.cosyan.db.lang.sql.SelectStatement.Select;
+import com.cosyan.db.lang.sql.SelectStatement.Select.TableColumns;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.logic.PredicateHelper;
+import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.meta.MetaReader;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.meta.MetaRepo.RuleException;
+import com.cosyan.db.model.AggrTables.NotAggrTableException;
+import com.cosyan.db.model.ColumnMeta;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DerivedTables.DerivedTableMeta;
+import com.cosyan.db.model.DerivedTables.FilteredTableMeta;
+import com.cosyan.db.model.Ident;
+import com.cosyan.db.model.SeekableTableMeta;
+import com.cosyan.db.model.TableContext;
+import com.cosyan.db.model.TableMeta.ExposedTableMeta;
+import com.cosyan.db.transaction.MetaResources;
+import com.cosyan.db.transaction.Resources;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Server side cursors. A cursor does not hold any locks or open files between
+ * fetches, it only remembers the position of the next record in the table file.
+ * Every fetch seeks to that position (or binary searches the positions returned
+ * by the index if the where clause can use one), so fetching a later page costs
+ * the same as fetching the first one.
+ * <p>
+ * Records are visited in file order. Rows updated between two fetches are moved
+ * to the end of the file, therefore they can be returned again.
+ */
+public class CursorStatements {
+
+  @Data
+  public static class Cursor {
+    private final Ident name;
+    private final Select select;
+    private long position = 0L;
+    private long lastAccess;
+  }
+
+  /**
+   * The cursors of a session. Cursors not used for longer than the idle timeout
+   * are closed lazily, the next time the session accesses its cursors.
+   */
+  public static class Cursors {
+    private final Map<String, Cursor> cursors = new HashMap<>();
+    private final long idleTimeoutMs;
+
+    public Cursors(long idleTimeoutMs) {
+      this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public synchronized void declare(Ident name, Select select) throws ModelException {
+      expire();
+      if (cursors.containsKey(name.getString())) {
+        throw new ModelException(String.format("Cursor '%s' already exists.", name), name);
+      }
+      Cursor cursor = new Cursor(name, select);
+      cursor.setLastAccess(System.currentTimeMillis());
+      cursors.put(name.getString(), cursor);
+    }
+
+    public synchronized Cursor get(Ident name) throws ModelException {
+      expire();
+      Cursor cursor = cursors.get(name.getString());
+      if (cursor == null) {
+        throw new ModelException(String.format("Cursor '%s' does not exist.", name), name);
+      }
+      cursor.setLastAccess(System.currentTimeMillis());
+      return cursor;
+    }
+
+    public synchronized void close(Ident name) throws ModelException {
+      if (cursors.remove(name.getString()) == null) {
+        throw new ModelException(String.format("Cursor '%s' does not exist.", name), name);
+      }
+    }
+
+    public synchronized int size() {
+      expire();
+      return cursors.size();
+    }
+
+    private void expire() {
+      long now = System.currentTimeMillis();
+      cursors.values().removeIf(cursor -> now - cursor.getLastAccess() > idleTimeoutMs);
+    }
+  }
+
+  public static abstract class CursorStatement extends Statement {
+    protected Cursors cursors;
+
+    public void setCursors(Cursors cursors) {
+      this.cursors = cursors;
+    }
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class DeclareCursor extends CursorStatement {
+    private final Ident name;
+    private final Select select;
+
+    @Override
+    public MetaResources compile(MetaReader metaRepo) throws ModelException {
+      // Fail early if the select cannot be used with a cursor.
+      new CompiledCursor(name, select, metaRepo);
+      return MetaResources.empty();
+    }
+
+    @Override
+    public Result execute(Resources resources) throws RuleException, IOException {
+      try {
+        cursors.declare(name, select);
+      } catch (ModelException e) {
+        throw new RuleException(e.getSimpleMessage());
+      }
+      return new StatementResult(0);
+    }
+
+    @Override
+    public void cancel() {
+    }
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class Fetch extends CursorStatement {
+    private final Ident name;
+    private final long n;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    private Cursor cursor;
+    private CompiledCursor compiledCursor;
+
+    @Override
+    public MetaResources compile(MetaReader metaRepo) throws ModelException {
+      cursor = cursors.get(name);
+      compiledCursor = new CompiledCursor(name, cursor.getSelect(), metaRepo);
+      return compiledCursor.tableMeta.readResources();
+    }
+
+    @Override
+    public Result execute(Resources resources) throws RuleException, IOException {
+      List<Object[]> valuess = new ArrayList<>();
+      SeekableTableReader reader = resources.reader(compiledCursor.sourceTable.tableName());
+      long position = cursor.getPosition();
+      if (compiledCursor.clause != null) {
+        IndexReader index = resources.getIndex(
+            compiledCursor.sourceTable.tableName(), compiledCursor.clause.getIdent().getString());
+        Object key = compiledCursor.clause.getValue();
+        if (index instanceof OrderedIndexReader) {
+          // Resume from the last position instead of loading every entry of the key.
+          IndexCursor indexCursor = ((OrderedIndexReader) index).cursor(key, position);
+          long next;
+          while (valuess.size() < n && !cancelled.get() && (next = indexCursor.next()) >= 0) {
+            Record record = reader.get(next);
+            compiledCursor.add(record, valuess, resources);
+            position = next + 1;
+          }
+        } else {
+          long[] positions = remainingPositions(index.get(key), position);
+          for (int i = 0; i < positions.length && valuess.size() < n && !cancelled.get(); i++) {
+            Record record = reader.get(positions[i]);
+            compiledCursor.add(record, valuess, resources);
+            position = positions[i] + 1;
+          }
+        }
+      } else {
+        RecordReader recordReader = reader.recordReader(position);
+        try {
+          Record record;
+          while (valuess.size() < n && !cancelled.get()
+              && (record = recordReader.read()) != RecordProvider.EMPTY) {
+            compiledCursor.add(record, valuess, resources);
+            position = recordReader.position();
+          }
+        } finally {
+          recordReader.close();
+        }
+      }
+      cursor.setPosition(position);
+      return new QueryResult(
+          compiledCursor.tableMeta.columnNames(), compiledCursor.tableMeta.columnTypes(), valuess);
+    }
+
+    @Override
+    public void cancel() {
+      cancelled.set(true);
+    }
+
+    /**
+     * The positions not yet fetched in file pointer order, only these need sorting.
+     */
+    private static long[] remainingPositions(long[] positions, long position) {
+      long[] result = new long[positions.length];
+      int n = 0;
+      boolean sorted = true;
+      for (long p : positions) {
+        if (p >= position) {
+          sorted &= n == 0 || result[n - 1] <= p;
+          result[n++] = p;
+        }
+      }
+      result = Arrays.copyOf(result, n);
+      if (!sorted) {
+        Arrays.sort(result);
+      }
+      return result;
+    }
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class CloseCursor extends CursorStatement {
+    private final Ident name;
+
+    @Override
+    public MetaResources compile(MetaReader metaRepo) throws ModelException {
+      cursors.get(name);
+      return MetaResources.empty();
+    }
+
+    @Override
+    public Result execute(Resources resources) throws RuleException, IOException {
+      try {
+        cursors.close(name);
+      } catch (ModelException e) {
+        throw new RuleException(e.getSimpleMessage());
+      }
+      return new StatementResult(0);
+    }
+
+    @Override
+    public void cancel() {
+    }
+  }
+
+  private static class CompiledCursor {
+    private final SeekableTableMeta sourceTable;
+    private final ColumnMeta whereColumn;
+    private final VariableEquals clause;
+    private final DerivedTableMeta tableMeta;
+
+    private CompiledCursor(Ident name, Select select, MetaReader metaRepo) throws ModelException {
+      if (select.getGroupBy().isPresent() || select.getOrderBy().isPresent() || select.isDistinct()
+          || select.getLimit().isPresent()) {
+        throw new ModelException("Cursors do not support group by, order by, distinct or limit.",
+            name);
+      }
+      ExposedTableMeta table = select.getTable().compile(metaRepo);
+      if (!(table instanceof SeekableTableMeta)) {
+        throw new ModelException("Cursors are only supported on tables.", name);
+      }
+      sourceTable = (SeekableTableMeta) table;
+      ExposedTableMeta filteredTable;
+      if (select.getWhere().isPresent()) {
+        whereColumn = select.getWhere().get().compileColumn(sourceTable);
+        Node.assertType(DataTypes.BoolType, whereColumn.getType(), select.getWhere().get().loc());
+        clause = PredicateHelper.getBestClause(sourceTable, select.getWhere().get());
+        filteredTable = new FilteredTableMeta(sourceTable, whereColumn);
+      } else {
+        whereColumn = ColumnMeta.TRUE_COLUMN;
+        clause = null;
+        filteredTable = sourceTable;
+      }
+      TableColumns tableColumns;
+      try {
+        tableColumns = Select.tableColumns(filteredTable, select.getColumns());
+      } catch (NotAggrTableException e) {
+        throw new ModelException("Cursors do not support aggregation.", name);
+      }
+      tableMeta = new DerivedTableMeta(filteredTable, tableColumns.getColumns());
+    }
+
+    private void add(Record record, List<Object[]> valuess, Resources resources) throws IOException {
+      Object[] sourceValues = record.getValues();
+      if (!(boolean) whereColumn.value(sourceValues, resources, TableContext.EMPTY)) {
+        return;
+      }
+      Object[] values = new Object[tableMeta.getColumns().size()];
+      int i = 0;
+      for (ColumnMeta column : tableMeta.getColumns().values()) {
+        values[i++] = column.value(sourceValues, resources, TableContext.EMPTY);
+      }
+      valuess.add(values);
+    }
+  }
+}
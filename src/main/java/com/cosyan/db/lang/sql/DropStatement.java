@@ -72,6 +72,10 @@ public class DropStatement {
     @Override
     public Result execute(MetaRepo metaRepo, AuthToken authToken) throws ModelException, IOException, GrantException {
       MaterializedTable tableMeta = metaRepo.table(table);
+      if (tableMeta.hasCompositeIndex(column.getString())) {
+        metaRepo.dropCompositeIndex(tableMeta, column.getString(), authToken);
+        return Result.META_OK;
+      }
       basicColumn = tableMeta.column(column);
       if (basicColumn.isUnique()) {
         throw new ModelException(String.format("Cannot drop index '%s.%s', column is unique.",
@@ -47,12 +47,17 @@ import com.cosyan.db.lang.sql.AlterStatementColumns.AlterTableDropColumn;
 import com.cosyan.db.lang.sql.AlterStatementConstraints.AlterTableAddForeignKey;
 import com.cosyan.db.lang.sql.AlterStatementConstraints.AlterTableAddRule;
 import com.cosyan.db.lang.sql.AlterStatementConstraints.AlterTableDropConstraint;
+import com.cosyan.db.lang.sql.AlterStatementPartitions.AlterTableDropPartition;
 import com.cosyan.db.lang.sql.AlterStatementRefs.AlterTableAddAggRef;
 import com.cosyan.db.lang.sql.AlterStatementRefs.AlterTableAddFlatRef;
 import com.cosyan.db.lang.sql.AlterStatementRefs.AlterTableDropAggRef;
 import com.cosyan.db.lang.sql.AlterStatementRefs.AlterTableDropFlatRef;
 import com.cosyan.db.lang.sql.CSVStatements.CSVExport;
 import com.cosyan.db.lang.sql.CSVStatements.CSVImport;
+import com.cosyan.db.lang.sql.CursorStatements.CloseCursor;
+import com.cosyan.db.lang.sql.CursorStatements.DeclareCursor;
+import com.cosyan.db.lang.sql.CursorStatements.Fetch;
+import com.cosyan.db.lang.sql.CreateStatement.CreateCompositeIndex;
 import com.cosyan.db.lang.sql.CreateStatement.CreateIndex;
 import com.cosyan.db.lang.sql.CreateStatement.CreateTable;
 import com.cosyan.db.lang.sql.DeleteStatement.Delete;
@@ -73,7 +78,11 @@ import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lang.sql.UpdateStatement.SetExpression;
 import com.cosyan.db.lang.sql.UpdateStatement.Update;
 import com.cosyan.db.lang.sql.Users.CreateUser;
+import com.cosyan.db.io.PageCache;
 import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MaterializedTable.ReadAhead;
+import com.cosyan.db.meta.MaterializedTable.Retention;
+import com.cosyan.db.model.BasicColumn.IndexType;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.DateFunctions;
@@ -134,6 +143,13 @@ public class Parser implements IParser {
       return parseExport(tokens);
     } else if (token.is(Tokens.WAIT)) {
       return parseWait(tokens);
+    } else if (token.is(Tokens.DECLARE)) {
+      return parseDeclareCursor(tokens);
+    } else if (token.is(Tokens.FETCH)) {
+      return parseFetch(tokens);
+    } else if (token.is(Tokens.CLOSE)) {
+      tokens.next();
+      return new CloseCursor(parseIdent(tokens));
     }
     throw new ParserException("Syntax error, expected select, insert, delete or update.", token);
   }
@@ -161,7 +177,12 @@ public class Parser implements IParser {
       } else {
         commitAfterNRecords = 10000;
       }
-      return new CSVImport(fileName, table, withHeader, commitAfterNRecords);
+      boolean bulk = false;
+      if (tokens.peek().is(Tokens.BULK)) {
+        tokens.next();
+        bulk = true;
+      }
+      return new CSVImport(fileName, table, withHeader, commitAfterNRecords, bulk);
     } else {
       Token token = tokens.next();
       throw new ParserException(String.format("Invalid file format '%s'.", token), token);
@@ -194,6 +215,24 @@ public class Parser implements IParser {
     return new WaitStatement(time.getValue(), tag);
   }
 
+  private Statement parseDeclareCursor(PeekingIterator<Token> tokens) throws ParserException {
+    assertNext(tokens, Tokens.DECLARE);
+    Ident name = parseIdent(tokens);
+    assertNext(tokens, Tokens.CURSOR);
+    assertNext(tokens, Tokens.FOR);
+    return new DeclareCursor(name, parseSelect(tokens));
+  }
+
+  private Statement parseFetch(PeekingIterator<Token> tokens) throws ParserException {
+    assertNext(tokens, Tokens.FETCH);
+    long n = 1;
+    if (!tokens.peek().is(Tokens.FROM)) {
+      n = parseLongLiteral(tokens).getValue();
+    }
+    assertNext(tokens, Tokens.FROM);
+    return new Fetch(parseIdent(tokens), n);
+  }
+
   private Delete parseDelete(PeekingIterator<Token> tokens) throws ParserException {
     assertNext(tokens, Tokens.DELETE);
     assertNext(tokens, Tokens.FROM);
@@ -338,13 +377,64 @@ public class Parser implements IParser {
       } else {
         partitioning = Optional.empty();
       }
-      return new CreateTable(ident, type, columns.build(), constraints.build(), partitioning);
+      Optional<ReadAhead> readAhead = Optional.empty();
+      Optional<Retention> retention = Optional.empty();
+      if (tokens.peek().is(Tokens.WITH)) {
+        tokens.next();
+        while (true) {
+          assertPeek(tokens, Tokens.READ, Tokens.RETENTION);
+          if (tokens.peek().is(Tokens.READ)) {
+            tokens.next();
+            assertNext(tokens, Tokens.AHEAD);
+            int depth = parseLongLiteral(tokens).getValue().intValue();
+            int bufferSize = PageCache.DEFAULT_PAGE_SIZE;
+            if (tokens.peek().is(Tokens.BUFFER)) {
+              tokens.next();
+              bufferSize = parseLongLiteral(tokens).getValue().intValue();
+            }
+            readAhead = Optional.of(new ReadAhead(bufferSize, depth));
+          } else {
+            tokens.next();
+            long days = parseLongLiteral(tokens).getValue();
+            assertNext(tokens, Tokens.DAYS);
+            assertNext(tokens, Tokens.ON);
+            retention = Optional.of(new Retention(days, parseIdent(tokens).getString()));
+          }
+          if (tokens.peek().is(Tokens.COMMA)) {
+            tokens.next();
+          } else {
+            break;
+          }
+        }
+      }
+      return new CreateTable(
+          ident, type, columns.build(), constraints.build(), partitioning, readAhead, retention);
     } else if (tokens.peek().is(Tokens.INDEX)) {
       assertNext(tokens, Tokens.INDEX);
       Ident table = parseIdent(tokens);
       assertNext(tokens, String.valueOf(Tokens.DOT));
       Ident column = parseIdent(tokens);
-      return new CreateIndex(table, column);
+      if (tokens.peek().is(Tokens.PARENT_OPEN)) {
+        tokens.next();
+        ImmutableList.Builder<Ident> columns = ImmutableList.builder();
+        while (true) {
+          columns.add(parseIdent(tokens));
+          if (tokens.peek().is(Tokens.COMMA)) {
+            tokens.next();
+          } else {
+            assertNext(tokens, String.valueOf(Tokens.PARENT_CLOSED));
+            break;
+          }
+        }
+        return new CreateCompositeIndex(table, column, columns.build());
+      }
+      IndexType indexType = IndexType.TRIE;
+      if (tokens.peek().is(Tokens.USING)) {
+        tokens.next();
+        assertPeek(tokens, Tokens.BTREE, Tokens.BITMAP);
+        indexType = tokens.next().is(Tokens.BTREE) ? IndexType.BTREE : IndexType.BITMAP;
+      }
+      return new CreateIndex(table, column, indexType);
     } else {
       assertNext(tokens, Tokens.USER);
       Ident username = parseIdent(tokens);
@@ -428,6 +518,9 @@ public class Parser implements IParser {
         tokens.next();
         Ident constraint = parseIdent(tokens);
         return new AlterTableDropFlatRef(ident, constraint);
+      } else if (tokens.peek().is(Tokens.PARTITION)) {
+        tokens.next();
+        return new AlterTableDropPartition(ident, parseLiteral(tokens));
       } else {
         Ident columnName = parseIdent(tokens);
         return new AlterTableDropColumn(ident, columnName);
@@ -28,15 +28,23 @@ import java.util.stream.Collectors;
 import com.cosyan.db.io.TableReader.IterableTableReader;
 import com.cosyan.db.lang.expr.BinaryExpression;
 import com.cosyan.db.lang.expr.Expression;
+import com.cosyan.db.lang.expr.Expression.UnaryExpression;
 import com.cosyan.db.lang.expr.FuncCallExpression;
+import com.cosyan.db.lang.expr.Literals.Literal;
+import com.cosyan.db.lang.expr.Literals.NullLiteral;
 import com.cosyan.db.lang.expr.Node;
 import com.cosyan.db.lang.expr.Statements.Statement;
 import com.cosyan.db.lang.sql.Tokens.Loc;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StreamedQueryResult;
+import com.cosyan.db.lang.transaction.ResultSink;
+import com.cosyan.db.logic.BitmapPredicates;
+import com.cosyan.db.logic.BitmapPredicates.BitmapPredicate;
 import com.cosyan.db.logic.PredicateHelper;
 import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.logic.PredicateHelper.VariableRange;
 import com.cosyan.db.meta.MetaReader;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.meta.MetaRepo.RuleException;
@@ -45,6 +53,8 @@ import com.cosyan.db.model.AggrTables;
 import com.cosyan.db.model.AggrTables.GlobalAggrTableMeta;
 import com.cosyan.db.model.AggrTables.KeyValueAggrTableMeta;
 import com.cosyan.db.model.AggrTables.NotAggrTableException;
+import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.BasicColumn.IndexType;
 import com.cosyan.db.model.ColumnMeta;
 import com.cosyan.db.model.ColumnMeta.DerivedColumn;
 import com.cosyan.db.model.ColumnMeta.OrderColumn;
@@ -52,10 +62,13 @@ import com.cosyan.db.model.CompiledObject;
 import com.cosyan.db.model.CompiledObject.ColumnList;
 import com.cosyan.db.model.DataTypes;
 import com.cosyan.db.model.DerivedTables.AliasedTableMeta;
+import com.cosyan.db.model.DerivedTables.BitmapCountTableMeta;
+import com.cosyan.db.model.DerivedTables.BitmapFilteredTableMeta;
 import com.cosyan.db.model.DerivedTables.DerivedTableMeta;
 import com.cosyan.db.model.DerivedTables.DistinctTableMeta;
 import com.cosyan.db.model.DerivedTables.FilteredTableMeta;
 import com.cosyan.db.model.DerivedTables.IndexFilteredTableMeta;
+import com.cosyan.db.model.DerivedTables.IndexRangeTableMeta;
 import com.cosyan.db.model.DerivedTables.KeyValueTableMeta;
 import com.cosyan.db.model.DerivedTables.LimitedTableMeta;
 import com.cosyan.db.model.DerivedTables.SortedTableMeta;
@@ -107,6 +120,24 @@ public class SelectStatement extends Statement {
     return new QueryResult(tableMeta.columnNames(), tableMeta.columnTypes(), valuess);
   }
 
+  @Override
+  public Result execute(Resources resources, ResultSink sink) throws RuleException, IOException {
+    long lines = 0;
+    reader = tableMeta.reader(resources, TableContext.EMPTY);
+    try {
+      sink.header(tableMeta.columnNames(), tableMeta.columnTypes());
+      Object[] values = null;
+      while ((values = reader.next()) != null) {
+        sink.row(values);
+        lines++;
+      }
+    } finally {
+      reader.close();
+    }
+    sink.end(lines);
+    return new StreamedQueryResult(lines);
+  }
+
   @Override
   public void cancel() {
     reader.cancel();
@@ -125,8 +156,11 @@ public class SelectStatement extends Statement {
 
     public ExposedTableMeta compileTable(TableProvider tableProvider) throws ModelException {
       ExposedTableMeta sourceTable = table.compile(tableProvider);
+      IndexRangeTableMeta indexOrderedTable = indexOrderedTable(sourceTable);
       ExposedTableMeta filteredTable;
-      if (where.isPresent()) {
+      if (indexOrderedTable != null) {
+        filteredTable = indexOrderedTable;
+      } else if (where.isPresent()) {
         filteredTable = filteredTable(sourceTable, where.get());
       } else {
         filteredTable = sourceTable;
@@ -142,16 +176,19 @@ public class SelectStatement extends Statement {
       } else {
         fullTable = selectTable(filteredTable, columns);
       }
+      BitmapCountTableMeta countTable = bitmapCountTable(sourceTable, fullTable);
 
       ExposedTableMeta distinctTable;
-      if (distinct) {
+      if (countTable != null) {
+        distinctTable = countTable;
+      } else if (distinct) {
         distinctTable = new DistinctTableMeta(fullTable);
       } else {
         distinctTable = fullTable;
       }
 
       ExposedTableMeta orderedTable;
-      if (orderBy.isPresent()) {
+      if (orderBy.isPresent() && indexOrderedTable == null) {
         ImmutableList<OrderColumn> orderColumns = orderColumns(distinctTable, orderBy.get());
         orderedTable = new SortedTableMeta(distinctTable, orderColumns);
       } else {
@@ -167,6 +204,110 @@ public class SelectStatement extends Statement {
       return limitedTable;
     }
 
+    /**
+     * Returns a table read in the order of a B+tree index if the query is ordered by a
+     * single indexed column, so that the sorting can be skipped. Returns null otherwise.
+     */
+    private IndexRangeTableMeta indexOrderedTable(ExposedTableMeta sourceTable) throws ModelException {
+      if (!orderBy.isPresent() || orderBy.get().size() != 1 || groupBy.isPresent() || distinct
+          || !(sourceTable instanceof SeekableTableMeta)) {
+        return null;
+      }
+      Expression orderExpr = orderBy.get().get(0);
+      boolean ascending = true;
+      if (orderExpr instanceof UnaryExpression) {
+        UnaryExpression unaryExpr = (UnaryExpression) orderExpr;
+        if (unaryExpr.getType() == UnaryExpression.Type.DESC) {
+          ascending = false;
+        } else if (unaryExpr.getType() != UnaryExpression.Type.ASC) {
+          return null;
+        }
+        orderExpr = unaryExpr.getExpr();
+      }
+      if (!isColumnReference(orderExpr)) {
+        return null;
+      }
+      Ident ident = ((FuncCallExpression) orderExpr).getIdent();
+      SeekableTableMeta tableMeta = (SeekableTableMeta) sourceTable;
+      if (!tableMeta.tableMeta().hasColumn(ident) || !selectsColumn(ident)) {
+        return null;
+      }
+      BasicColumn column = tableMeta.tableMeta().column(ident);
+      if (!column.isIndexed() || column.getIndexType() != IndexType.BTREE) {
+        return null;
+      }
+      ColumnMeta whereColumn = ColumnMeta.TRUE_COLUMN;
+      VariableRange range = null;
+      if (where.isPresent()) {
+        if (PredicateHelper.getBestClause(tableMeta, where.get()) != null
+            || PredicateHelper.getBestCompositeRange(tableMeta, where.get(), 2) != null) {
+          // An index lookup and sorting the few results is cheaper.
+          return null;
+        }
+        range = PredicateHelper.getRange(column, where.get());
+        if (range == null && !limit.isPresent() && PredicateHelper.getBestRange(tableMeta, where.get()) != null) {
+          return null;
+        }
+        whereColumn = where.get().compileColumn(sourceTable);
+        Node.assertType(DataTypes.BoolType, whereColumn.getType(), where.get().loc());
+      }
+      if (range == null && column.isNullable()) {
+        // Null values are not indexed.
+        return null;
+      }
+      return new IndexRangeTableMeta(tableMeta, whereColumn, column.getName(), range, ascending);
+    }
+
+    /**
+     * Returns a table computing <code>count(x)</code> of a constant <code>x</code> from bitmap
+     * indexes if they evaluate the where clause exactly. Returns null otherwise.
+     */
+    private BitmapCountTableMeta bitmapCountTable(ExposedTableMeta sourceTable, DerivedTableMeta fullTable) {
+      if (!where.isPresent() || groupBy.isPresent() || distinct || columns.size() != 1
+          || !(sourceTable instanceof SeekableTableMeta)) {
+        return null;
+      }
+      Expression expr = columns.get(0);
+      if (expr instanceof AsExpression) {
+        expr = ((AsExpression) expr).getExpr();
+      }
+      if (!(expr instanceof FuncCallExpression)) {
+        return null;
+      }
+      FuncCallExpression funcCall = (FuncCallExpression) expr;
+      if (!funcCall.getIdent().is(Tokens.COUNT) || funcCall.getObject() != null || funcCall.getArgs().size() != 1
+          || !(funcCall.getArgs().get(0) instanceof Literal) || funcCall.getArgs().get(0) instanceof NullLiteral) {
+        return null;
+      }
+      SeekableTableMeta tableMeta = (SeekableTableMeta) sourceTable;
+      BitmapPredicate predicate = BitmapPredicates.of(tableMeta, where.get());
+      if (predicate == null || !predicate.isExact()) {
+        return null;
+      }
+      return new BitmapCountTableMeta(fullTable, tableMeta, predicate);
+    }
+
+    private static boolean isColumnReference(Expression expr) {
+      if (!(expr instanceof FuncCallExpression)) {
+        return false;
+      }
+      FuncCallExpression funcCall = (FuncCallExpression) expr;
+      return funcCall.getObject() == null && funcCall.getArgs().isEmpty();
+    }
+
+    private boolean selectsColumn(Ident ident) {
+      for (Expression expr : columns) {
+        if (expr instanceof AsteriskExpression) {
+          if (!((AsteriskExpression) expr).excludes(ident.getString())) {
+            return true;
+          }
+        } else if (ident.getString().equals(expr.getName(null))) {
+          return isColumnReference(expr) && ((FuncCallExpression) expr).getIdent().getString().equals(ident.getString());
+        }
+      }
+      return false;
+    }
+
     public static DerivedTableMeta selectTable(
         IterableTableMeta sourceTable,
         ImmutableList<Expression> columns) throws ModelException {
@@ -243,8 +384,28 @@ public class SelectStatement extends Statement {
       if (sourceTable instanceof SeekableTableMeta) {
         SeekableTableMeta tableMeta = (SeekableTableMeta) sourceTable;
         VariableEquals clause = PredicateHelper.getBestClause(tableMeta, where);
+        // A composite index matching multiple columns is more selective unless the clause is on a unique column.
+        VariableRange keyRange = PredicateHelper.getBestCompositeRange(tableMeta, where, 2);
+        if (keyRange != null && (clause == null || !tableMeta.tableMeta().column(clause.getIdent()).isUnique())) {
+          return new IndexRangeTableMeta(tableMeta, whereColumn, keyRange.getIdent().getString(), keyRange, true);
+        }
+        BitmapPredicate bitmapPredicate = BitmapPredicates.of(tableMeta, where);
+        // Combined bitmaps are more selective than a single multi index lookup.
+        if (bitmapPredicate != null && (clause == null || !tableMeta.tableMeta().column(clause.getIdent()).isUnique()
+            && (bitmapPredicate.size() > 1
+                || tableMeta.tableMeta().column(clause.getIdent()).getIndexType() == IndexType.BITMAP))) {
+          return new BitmapFilteredTableMeta(tableMeta, whereColumn, bitmapPredicate);
+        }
         if (clause != null) {
           return new IndexFilteredTableMeta(tableMeta, whereColumn, clause);
+        }
+        VariableRange range = PredicateHelper.getBestRange(tableMeta, where);
+        if (range != null) {
+          return new IndexRangeTableMeta(tableMeta, whereColumn, range.getIdent().getString(), range, true);
+        }
+        keyRange = PredicateHelper.getBestCompositeRange(tableMeta, where, 1);
+        if (keyRange != null) {
+          return new IndexRangeTableMeta(tableMeta, whereColumn, keyRange.getIdent().getString(), keyRange, true);
         } else {
           return new FilteredTableMeta(sourceTable, whereColumn);
         }
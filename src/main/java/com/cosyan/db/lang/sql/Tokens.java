@@ -238,6 +238,34 @@ public class Tokens {
 
   public static String LIMIT = "limit";
 
+  public static String DECLARE = "declare";
+
+  public static String CURSOR = "cursor";
+
+  public static String FOR = "for";
+
+  public static String FETCH = "fetch";
+
+  public static String CLOSE = "close";
+
+  public static String BULK = "bulk";
+
+  public static String USING = "using";
+
+  public static String BTREE = "btree";
+
+  public static String BITMAP = "bitmap";
+
+  public static String READ = "read";
+
+  public static String AHEAD = "ahead";
+
+  public static String BUFFER = "buffer";
+
+  public static String RETENTION = "retention";
+
+  public static String DAYS = "days";
+
   public static boolean isDelimiter(char c) {
     return c == SPACE ||
         c == TAB ||
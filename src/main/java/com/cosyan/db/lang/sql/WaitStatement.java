@@ -17,6 +17,9 @@ package com.cosyan.db.lang.sql;
 
 import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.cosyan.db.lang.expr.Statements.Statement;
 import com.cosyan.db.lang.transaction.Result;
@@ -31,13 +34,16 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 
 @Data
-@EqualsAndHashCode(callSuper = true)
+@EqualsAndHashCode(callSuper = true, exclude = { "lock", "cancelledCondition" })
 public class WaitStatement extends Statement {
 
   private final long time;
   private final Optional<String> tag;
   
   private boolean cancelled = false;
+  // Condition instead of Object.wait() so a waiting virtual thread can unmount.
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition cancelledCondition = lock.newCondition();
 
   @Override
   public MetaResources compile(MetaReader metaRepo) throws ModelException {
@@ -47,15 +53,25 @@ public class WaitStatement extends Statement {
   @Override
   public Result execute(Resources resources) throws RuleException, IOException {
     long startTime = System.currentTimeMillis();
+    lock.lock();
     try {
-      synchronized (this) {
-        wait(time);
-        if (cancelled) {
-          throw new RuleException("Wait cancelled.");
+      if (time == 0) {
+        while (!cancelled) {
+          cancelledCondition.await();
         }
+      } else {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(time);
+        while (!cancelled && nanos > 0) {
+          nanos = cancelledCondition.awaitNanos(nanos);
+        }
+      }
+      if (cancelled) {
+        throw new RuleException("Wait cancelled.");
       }
     } catch (InterruptedException e) {
       throw new RuleException("Wait interrupted.");
+    } finally {
+      lock.unlock();
     }
     long endTime = System.currentTimeMillis();
     return new WaitResult(startTime, endTime, tag);
@@ -63,9 +79,12 @@ public class WaitStatement extends Statement {
 
   @Override
   public void cancel() {
-    synchronized (this) {
+    lock.lock();
+    try {
       cancelled = true;
-      notify();
+      cancelledCondition.signalAll();
+    } finally {
+      lock.unlock();
     }
   }
 }
@@ -113,6 +113,27 @@ public abstract class Result {
     }
   }
 
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class StreamedQueryResult extends Result {
+
+    private final long lines;
+
+    public StreamedQueryResult(long lines) {
+      super(true);
+      this.lines = lines;
+    }
+
+    @Override
+    public JSONObject toJSON() {
+      JSONObject obj = new JSONObject();
+      obj.put("type", "query");
+      obj.put("streamed", true);
+      obj.put("lines", lines);
+      return obj;
+    }
+  }
+
   @Data
   @EqualsAndHashCode(callSuper = true)
   public static class StatementResult extends Result {
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.transaction;
+
+import java.io.IOException;
+
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Receives the rows of a query as they are read, without materializing the
+ * whole result. Writes can block, which slows down the reader accordingly.
+ */
+public interface ResultSink {
+
+  void header(ImmutableList<String> header, ImmutableList<DataType<?>> types) throws IOException;
+
+  void row(Object[] values) throws IOException;
+
+  void end(long lines) throws IOException;
+}
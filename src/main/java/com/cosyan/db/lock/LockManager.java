@@ -22,33 +22,49 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.cosyan.db.transaction.MetaResources;
 import com.cosyan.db.transaction.MetaResources.Resource;
 
+/**
+ * Uses j.u.c. locks instead of monitors so blocked virtual threads unmount from
+ * their carrier. The meta repo lock is not guarded by the lock map lock, otherwise
+ * a writer waiting for readers would block the readers from unlocking.
+ */
 public class LockManager {
 
   private final ReentrantReadWriteLock metaRepoLock = new ReentrantReadWriteLock();
   private final Map<String, ReentrantReadWriteLock> lockMap = new HashMap<>();
+  private final ReentrantLock lockMapLock = new ReentrantLock();
 
-  public synchronized void metaRepoReadLock() {
+  public void metaRepoReadLock() {
     metaRepoLock.readLock().lock();
   }
 
-  public synchronized void metaRepoWriteLock() {
+  public void metaRepoWriteLock() {
     metaRepoLock.writeLock().lock();
   }
 
-  public synchronized void metaRepoReadUnlock() {
+  public void metaRepoReadUnlock() {
     metaRepoLock.readLock().unlock();
   }
 
-  public synchronized void metaRepoWriteUnlock() {
+  public void metaRepoWriteUnlock() {
     metaRepoLock.writeLock().unlock();
   }
 
-  public synchronized boolean tryLock(MetaResources metaResources) {
+  public boolean tryLock(MetaResources metaResources) {
+    lockMapLock.lock();
+    try {
+      return tryLockResources(metaResources);
+    } finally {
+      lockMapLock.unlock();
+    }
+  }
+
+  private boolean tryLockResources(MetaResources metaResources) {
     List<Lock> locks = new ArrayList<>();
     for (Resource resource : metaResources.all()) {
       ReentrantReadWriteLock rwlock = lockMap.get(resource.getResourceId());
@@ -72,37 +88,57 @@ public class LockManager {
     return true;
   }
 
-  public synchronized void unlock(MetaResources metaResources) {
-    for (Resource resource : metaResources.all()) {
-      ReentrantReadWriteLock lock = lockMap.get(resource.getResourceId());
-      assert lock != null : String.format("Invalid resource '%s'.", resource.getResourceId());
-      if (resource.isWrite()) {
-        lock.writeLock().unlock();
-      } else {
-        lock.readLock().unlock();
+  public void unlock(MetaResources metaResources) {
+    lockMapLock.lock();
+    try {
+      for (Resource resource : metaResources.all()) {
+        ReentrantReadWriteLock lock = lockMap.get(resource.getResourceId());
+        assert lock != null : String.format("Invalid resource '%s'.", resource.getResourceId());
+        if (resource.isWrite()) {
+          lock.writeLock().unlock();
+        } else {
+          lock.readLock().unlock();
+        }
       }
+    } finally {
+      lockMapLock.unlock();
     }
   }
 
-  public synchronized void registerLock(String resourceId) {
-    lockMap.put(resourceId, new ReentrantReadWriteLock());
+  public void registerLock(String resourceId) {
+    lockMapLock.lock();
+    try {
+      lockMap.put(resourceId, new ReentrantReadWriteLock());
+    } finally {
+      lockMapLock.unlock();
+    }
   }
 
-  public synchronized void removeLock(String resourceId) {
-    lockMap.remove(resourceId);
+  public void removeLock(String resourceId) {
+    lockMapLock.lock();
+    try {
+      lockMap.remove(resourceId);
+    } finally {
+      lockMapLock.unlock();
+    }
   }
 
-  public synchronized void syncLocks(Set<String> ids) {
-    for (String resourceId : ids) {
-      if (!lockMap.containsKey(resourceId)) {
-        lockMap.put(resourceId, new ReentrantReadWriteLock());
+  public void syncLocks(Set<String> ids) {
+    lockMapLock.lock();
+    try {
+      for (String resourceId : ids) {
+        if (!lockMap.containsKey(resourceId)) {
+          lockMap.put(resourceId, new ReentrantReadWriteLock());
+        }
       }
-    }
-    Set<String> oldIds = new HashSet<>(lockMap.keySet());
-    for (String resourceId : oldIds) {
-      if (!ids.contains(resourceId)) {
-        lockMap.remove(resourceId);
+      Set<String> oldIds = new HashSet<>(lockMap.keySet());
+      for (String resourceId : oldIds) {
+        if (!ids.contains(resourceId)) {
+          lockMap.remove(resourceId);
+        }
       }
+    } finally {
+      lockMapLock.unlock();
     }
   }
 }
@@ -21,6 +21,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.cosyan.db.conf.Config;
 
@@ -28,6 +29,8 @@ public class MetaJournal {
 
   private final Config config;
   private BufferedWriter stream;
+  // Not a monitor, so virtual threads blocked on file IO do not pin their carrier.
+  private final ReentrantLock lock = new ReentrantLock();
 
   public MetaJournal(Config config) throws IOException {
     this.config = config;
@@ -39,10 +42,15 @@ public class MetaJournal {
     return config.journalDir() + File.separator + "meta.journal";
   }
 
-  public synchronized void log(String sql) throws IOException {
-    stream.write(sql.replace("\n", " "));
-    stream.newLine();
-    stream.flush();
+  public void log(String sql) throws IOException {
+    lock.lock();
+    try {
+      stream.write(sql.replace("\n", " "));
+      stream.newLine();
+      stream.flush();
+    } finally {
+      lock.unlock();
+    }
   }
 
   public static class DBException extends Exception {
@@ -21,6 +21,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.CRC32;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
@@ -32,6 +33,7 @@ public class TransactionJournal {
 
   private final Config config;
   private FileOutputStream stream = null;
+  private final ReentrantLock lock = new ReentrantLock();
 
   private final ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
   private final DataOutputStream dos = new DataOutputStream(bos);
@@ -52,7 +54,8 @@ public class TransactionJournal {
     Files.createDirectories(Paths.get(config.journalDir()));
   }
 
-  private synchronized void log(byte event, long trxNumber) throws DBException {
+  private void log(byte event, long trxNumber) throws DBException {
+    lock.lock();
     try {
       if (stream == null || !stream.getChannel().isOpen()) {
         this.stream = new FileOutputStream(
@@ -70,11 +73,18 @@ public class TransactionJournal {
       stream.flush();
     } catch (IOException e) {
       throw new DBException(e);
+    } finally {
+      lock.unlock();
     }
   }
 
-  public synchronized void close() throws IOException {
-    stream.close();
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      stream.close();
+    } finally {
+      lock.unlock();
+    }
   }
 
   public void start(long trxNumber) throws DBException {
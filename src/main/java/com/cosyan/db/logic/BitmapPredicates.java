@@ -0,0 +1,323 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.logic;
+
+import java.io.IOException;
+
+import com.cosyan.db.index.PositionBitmap;
+import com.cosyan.db.io.Indexes.BitmapIndexReader;
+import com.cosyan.db.lang.expr.BinaryExpression;
+import com.cosyan.db.lang.expr.Expression;
+import com.cosyan.db.lang.expr.Expression.UnaryExpression;
+import com.cosyan.db.lang.expr.FuncCallExpression;
+import com.cosyan.db.lang.expr.Literals.Literal;
+import com.cosyan.db.lang.expr.Literals.NullLiteral;
+import com.cosyan.db.lang.sql.Tokens;
+import com.cosyan.db.lang.sql.Tokens.Token;
+import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MaterializedTable.Partitioning;
+import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.BasicColumn.IndexType;
+import com.cosyan.db.model.Ident;
+import com.cosyan.db.model.SeekableTableMeta;
+import com.google.common.collect.ImmutableList;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Where clauses evaluated on bitmap indexes. A predicate is exact if it selects exactly
+ * the records satisfying the where clause, otherwise it selects a superset of them.
+ */
+public class BitmapPredicates {
+
+  public static interface BitmapIndexProvider {
+    public BitmapIndexReader index(String column) throws IOException;
+  }
+
+  /**
+   * The records where the predicate is true and false. Records with null values belong
+   * to neither. The falsifying records are only known for exact predicates.
+   */
+  @Data
+  public static class Evaluation {
+    private final PositionBitmap satisfying;
+    private final PositionBitmap falsifying;
+  }
+
+  public static abstract class BitmapPredicate {
+
+    public abstract boolean isExact();
+
+    /**
+     * The number of column predicates.
+     */
+    public abstract int size();
+
+    public abstract Evaluation evaluate(BitmapIndexProvider indexes) throws IOException;
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = false)
+  public static class EqualsPredicate extends BitmapPredicate {
+    private final String column;
+    private final Object value;
+
+    @Override
+    public boolean isExact() {
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return 1;
+    }
+
+    @Override
+    public Evaluation evaluate(BitmapIndexProvider indexes) throws IOException {
+      BitmapIndexReader index = indexes.index(column);
+      PositionBitmap satisfying = index.bitmap(value);
+      return new Evaluation(satisfying, index.all().andNot(satisfying));
+    }
+  }
+
+  /**
+   * Selects the records with keys in a range, null bounds are unbounded.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = false)
+  public static class RangePredicate extends BitmapPredicate {
+    private final String column;
+    private final Object from;
+    private final boolean fromInclusive;
+    private final Object to;
+    private final boolean toInclusive;
+
+    @Override
+    public boolean isExact() {
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return 1;
+    }
+
+    @Override
+    public Evaluation evaluate(BitmapIndexProvider indexes) throws IOException {
+      BitmapIndexReader index = indexes.index(column);
+      PositionBitmap satisfying = index.range(from, fromInclusive, to, toInclusive);
+      return new Evaluation(satisfying, index.all().andNot(satisfying));
+    }
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = false)
+  public static class AndPredicate extends BitmapPredicate {
+    private final ImmutableList<BitmapPredicate> predicates;
+    private final boolean exact;
+
+    @Override
+    public int size() {
+      return predicates.stream().mapToInt(p -> p.size()).sum();
+    }
+
+    @Override
+    public Evaluation evaluate(BitmapIndexProvider indexes) throws IOException {
+      Evaluation result = predicates.get(0).evaluate(indexes);
+      PositionBitmap satisfying = result.getSatisfying();
+      PositionBitmap falsifying = result.getFalsifying();
+      for (BitmapPredicate predicate : predicates.subList(1, predicates.size())) {
+        Evaluation evaluation = predicate.evaluate(indexes);
+        satisfying = satisfying.and(evaluation.getSatisfying());
+        falsifying = exact ? falsifying.or(evaluation.getFalsifying()) : null;
+      }
+      return new Evaluation(satisfying, exact ? falsifying : null);
+    }
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = false)
+  public static class OrPredicate extends BitmapPredicate {
+    private final ImmutableList<BitmapPredicate> predicates;
+
+    @Override
+    public boolean isExact() {
+      return predicates.stream().allMatch(p -> p.isExact());
+    }
+
+    @Override
+    public int size() {
+      return predicates.stream().mapToInt(p -> p.size()).sum();
+    }
+
+    @Override
+    public Evaluation evaluate(BitmapIndexProvider indexes) throws IOException {
+      boolean exact = isExact();
+      Evaluation result = predicates.get(0).evaluate(indexes);
+      PositionBitmap satisfying = result.getSatisfying();
+      PositionBitmap falsifying = result.getFalsifying();
+      for (BitmapPredicate predicate : predicates.subList(1, predicates.size())) {
+        Evaluation evaluation = predicate.evaluate(indexes);
+        satisfying = satisfying.or(evaluation.getSatisfying());
+        falsifying = exact ? falsifying.and(evaluation.getFalsifying()) : null;
+      }
+      return new Evaluation(satisfying, falsifying);
+    }
+  }
+
+  @Data
+  @EqualsAndHashCode(callSuper = false)
+  public static class NotPredicate extends BitmapPredicate {
+    private final BitmapPredicate predicate;
+
+    @Override
+    public boolean isExact() {
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return predicate.size();
+    }
+
+    @Override
+    public Evaluation evaluate(BitmapIndexProvider indexes) throws IOException {
+      Evaluation evaluation = predicate.evaluate(indexes);
+      return new Evaluation(evaluation.getFalsifying(), evaluation.getSatisfying());
+    }
+  }
+
+  /**
+   * Returns the predicate on the bitmap indexed columns and the partitioning of the table
+   * selecting the records of the where clause, or null if there is none.
+   */
+  public static BitmapPredicate of(SeekableTableMeta tableMeta, Expression where) {
+    return extract(tableMeta.tableMeta(), where);
+  }
+
+  private static BitmapPredicate extract(MaterializedTable table, Expression expr) {
+    if (expr instanceof BinaryExpression) {
+      BinaryExpression binaryExpr = (BinaryExpression) expr;
+      if (binaryExpr.getToken().is(Tokens.AND)) {
+        BitmapPredicate left = extract(table, binaryExpr.getLeft());
+        BitmapPredicate right = extract(table, binaryExpr.getRight());
+        if (left == null && right == null) {
+          return null;
+        } else if (left == null || right == null) {
+          // The records satisfying one side are a superset of the result.
+          return new AndPredicate(ImmutableList.of(left == null ? right : left), false);
+        }
+        return new AndPredicate(ImmutableList.of(left, right), left.isExact() && right.isExact());
+      } else if (binaryExpr.getToken().is(Tokens.OR)) {
+        BitmapPredicate left = extract(table, binaryExpr.getLeft());
+        BitmapPredicate right = extract(table, binaryExpr.getRight());
+        if (left == null || right == null) {
+          return null;
+        }
+        return new OrPredicate(ImmutableList.of(left, right));
+      } else if (binaryExpr.getToken().is(Tokens.EQ)) {
+        BitmapPredicate predicate = equals(table, binaryExpr.getLeft(), binaryExpr.getRight());
+        return predicate != null ? predicate : equals(table, binaryExpr.getRight(), binaryExpr.getLeft());
+      } else {
+        BitmapPredicate predicate = partitionRange(table, binaryExpr.getLeft(), binaryExpr.getRight(),
+            binaryExpr.getToken(), false);
+        return predicate != null ? predicate : partitionRange(table, binaryExpr.getRight(), binaryExpr.getLeft(),
+            binaryExpr.getToken(), true);
+      }
+    } else if (expr instanceof UnaryExpression) {
+      UnaryExpression unaryExpr = (UnaryExpression) expr;
+      if (unaryExpr.getType() == UnaryExpression.Type.NOT) {
+        BitmapPredicate predicate = extract(table, unaryExpr.getExpr());
+        // The complement of a superset is not a superset of the complement.
+        if (predicate == null || !predicate.isExact()) {
+          return null;
+        }
+        return new NotPredicate(predicate);
+      }
+    } else {
+      BasicColumn column = bitmapColumn(table, expr);
+      if (column != null && column.getType().isBool()) {
+        return new EqualsPredicate(column.getName(), true);
+      }
+    }
+    return null;
+  }
+
+  private static BitmapPredicate equals(MaterializedTable table, Expression first, Expression second) {
+    BasicColumn column = bitmapColumn(table, first);
+    if (column == null) {
+      Object value = partitionKey(table, first, second);
+      return value == null ? null : new EqualsPredicate(MaterializedTable.PARTITION_INDEX, value);
+    }
+    if (!(second instanceof Literal) || second instanceof NullLiteral) {
+      return null;
+    }
+    Object value = ((Literal) second).getValue();
+    if (!column.getType().javaClass().isInstance(value)) {
+      return null;
+    }
+    return new EqualsPredicate(column.getName(), value);
+  }
+
+  private static BitmapPredicate partitionRange(
+      MaterializedTable table, Expression first, Expression second, Token token, boolean flipped) {
+    boolean less = token.is(Tokens.LESS) || token.is(Tokens.LEQ);
+    boolean greater = token.is(Tokens.GREATER) || token.is(Tokens.GEQ);
+    Object value = partitionKey(table, first, second);
+    if ((!less && !greater) || value == null) {
+      return null;
+    }
+    boolean inclusive = token.is(Tokens.LEQ) || token.is(Tokens.GEQ);
+    if (less != flipped) {
+      return new RangePredicate(MaterializedTable.PARTITION_INDEX, null, true, value, inclusive);
+    } else {
+      return new RangePredicate(MaterializedTable.PARTITION_INDEX, value, inclusive, null, true);
+    }
+  }
+
+  /**
+   * Returns the literal value if the expression is the partitioning of the table, otherwise null.
+   */
+  private static Object partitionKey(MaterializedTable table, Expression expr, Expression literal) {
+    if (!table.getPartitioning().isPresent() || !(literal instanceof Literal) || literal instanceof NullLiteral) {
+      return null;
+    }
+    Partitioning partitioning = table.getPartitioning().get();
+    Object value = ((Literal) literal).getValue();
+    if (!expr.print().equals(partitioning.getExpr().print())
+        || !partitioning.getColumn().getType().javaClass().isInstance(value)) {
+      return null;
+    }
+    return value;
+  }
+
+  private static BasicColumn bitmapColumn(MaterializedTable table, Expression expr) {
+    if (!(expr instanceof FuncCallExpression)) {
+      return null;
+    }
+    FuncCallExpression funcCall = (FuncCallExpression) expr;
+    Ident ident = funcCall.getIdent();
+    if (funcCall.getObject() != null || !funcCall.getArgs().isEmpty() || !table.hasColumn(ident)) {
+      return null;
+    }
+    BasicColumn column = table.columns().get(ident.getString());
+    if (!column.isIndexed() || column.getIndexType() != IndexType.BITMAP) {
+      return null;
+    }
+    return column;
+  }
+}
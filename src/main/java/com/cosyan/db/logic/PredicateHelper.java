@@ -16,19 +16,26 @@
 package com.cosyan.db.logic;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 
+import com.cosyan.db.index.CompositeKey;
 import com.cosyan.db.lang.expr.BinaryExpression;
 import com.cosyan.db.lang.expr.Expression;
 import com.cosyan.db.lang.expr.Expression.UnaryExpression;
 import com.cosyan.db.lang.expr.FuncCallExpression;
 import com.cosyan.db.lang.expr.Literals.Literal;
 import com.cosyan.db.lang.expr.Literals.LongLiteral;
+import com.cosyan.db.lang.expr.Literals.NullLiteral;
 import com.cosyan.db.lang.expr.Literals.StringLiteral;
 import com.cosyan.db.lang.sql.Tokens;
+import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.BasicColumn.IndexType;
+import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.Ident;
+import com.cosyan.db.model.Keys.CompositeIndex;
 import com.cosyan.db.model.SeekableTableMeta;
 import com.google.common.collect.ImmutableList;
 
@@ -42,11 +49,65 @@ public class PredicateHelper {
     private final Object value;
   }
 
+  /**
+   * Bounds of a column, null bounds are unbounded.
+   */
+  @Data
+  public static class VariableRange {
+    private final Ident ident;
+    private final Object from;
+    private final boolean fromInclusive;
+    private final Object to;
+    private final boolean toInclusive;
+
+    private VariableRange merge(VariableRange other) {
+      Object newFrom = from;
+      boolean newFromInclusive = fromInclusive;
+      if (other.from != null) {
+        int result = from == null ? -1 : compare(from, other.from);
+        if (result < 0) {
+          newFrom = other.from;
+          newFromInclusive = other.fromInclusive;
+        } else if (result == 0) {
+          newFromInclusive = fromInclusive && other.fromInclusive;
+        }
+      }
+      Object newTo = to;
+      boolean newToInclusive = toInclusive;
+      if (other.to != null) {
+        int result = to == null ? 1 : compare(to, other.to);
+        if (result > 0) {
+          newTo = other.to;
+          newToInclusive = other.toInclusive;
+        } else if (result == 0) {
+          newToInclusive = toInclusive && other.toInclusive;
+        }
+      }
+      return new VariableRange(ident, newFrom, newFromInclusive, newTo, newToInclusive);
+    }
+
+    private boolean matches(DataType<?> type) {
+      return (from == null || type.javaClass().isInstance(from)) && (to == null || type.javaClass().isInstance(to));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object x, Object y) {
+      if (x.getClass() != y.getClass()) {
+        // Incomparable bounds, keep the first one.
+        return 0;
+      }
+      return ((Comparable<Object>) x).compareTo(y);
+    }
+  }
+
   public static VariableEquals getBestClause(SeekableTableMeta tableMeta, Expression where) throws ModelException {
     ImmutableList<VariableEquals> clauses = PredicateHelper.extractClauses(where);
     VariableEquals clause = null;
     for (VariableEquals clauseCandidate : clauses) {
       BasicColumn column = tableMeta.tableMeta().column(clauseCandidate.getIdent());
+      if (!column.getType().javaClass().isInstance(clauseCandidate.getValue())) {
+        continue;
+      }
       if ((clause == null && column.isIndexed()) || column.isUnique()) {
         clause = clauseCandidate;
       }
@@ -54,6 +115,136 @@ public class PredicateHelper {
     return clause;
   }
   
+  /**
+   * Returns the bounds of a column with an ordered (B+tree) index, or null if there
+   * are none.
+   */
+  public static VariableRange getBestRange(SeekableTableMeta tableMeta, Expression where) throws ModelException {
+    for (VariableRange range : extractRanges(where)) {
+      if (!tableMeta.tableMeta().hasColumn(range.getIdent())) {
+        continue;
+      }
+      BasicColumn column = tableMeta.tableMeta().column(range.getIdent());
+      if (column.isIndexed() && column.getIndexType() == IndexType.BTREE && range.matches(column.getType())) {
+        return range;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the key range of the composite index with equality clauses on the most
+   * leading columns, optionally followed by a range on the next column, or null if no
+   * index matches at least <code>minColumns</code> columns. The ident of the range is
+   * the name of the index.
+   */
+  public static VariableRange getBestCompositeRange(SeekableTableMeta tableMeta, Expression where, int minColumns) {
+    ImmutableList<VariableEquals> clauses = extractClauses(where);
+    VariableRange best = null;
+    int bestColumns = minColumns - 1;
+    for (CompositeIndex index : tableMeta.tableMeta().compositeIndexes().values()) {
+      List<Object> prefix = new ArrayList<>();
+      VariableRange range = null;
+      for (BasicColumn column : index.getColumns()) {
+        VariableEquals clause = clauses.stream()
+            .filter(c -> c.getIdent().getString().equals(column.getName())
+                && column.getType().javaClass().isInstance(c.getValue()))
+            .findFirst().orElse(null);
+        if (clause == null) {
+          range = getRange(column, where);
+          break;
+        }
+        prefix.add(clause.getValue());
+      }
+      int columns = prefix.size() + (range == null ? 0 : 1);
+      if (columns > bestColumns) {
+        best = keyRange(new Ident(index.getName()), prefix, range);
+        bestColumns = columns;
+      }
+    }
+    return best;
+  }
+
+  private static VariableRange keyRange(Ident ident, List<Object> prefix, VariableRange range) {
+    if (range == null) {
+      CompositeKey key = CompositeKey.prefix(prefix);
+      return new VariableRange(ident, key, true, key, true);
+    }
+    return new VariableRange(ident,
+        range.getFrom() == null ? CompositeKey.notNullPrefix(prefix) : CompositeKey.prefix(append(prefix, range.getFrom())),
+        range.getFrom() == null || range.isFromInclusive(),
+        range.getTo() == null ? CompositeKey.notNullPrefix(prefix) : CompositeKey.prefix(append(prefix, range.getTo())),
+        range.getTo() == null || range.isToInclusive());
+  }
+
+  private static List<Object> append(List<Object> prefix, Object value) {
+    List<Object> values = new ArrayList<>(prefix);
+    values.add(value);
+    return values;
+  }
+
+  /**
+   * Returns the bounds of the given column, or null if there are none.
+   */
+  public static VariableRange getRange(BasicColumn column, Expression where) {
+    for (VariableRange range : extractRanges(where)) {
+      if (range.getIdent().getString().equals(column.getName()) && range.matches(column.getType())) {
+        return range;
+      }
+    }
+    return null;
+  }
+
+  public static ImmutableList<VariableRange> extractRanges(Expression expression) {
+    LinkedHashMap<String, VariableRange> ranges = new LinkedHashMap<>();
+    extractRanges(expression, ranges);
+    return ImmutableList.copyOf(ranges.values());
+  }
+
+  private static void extractRanges(Expression node, LinkedHashMap<String, VariableRange> ranges) {
+    if (node instanceof BinaryExpression) {
+      BinaryExpression binaryExpression = (BinaryExpression) node;
+      if (binaryExpression.getToken().is(Tokens.AND)) {
+        extractRanges(binaryExpression.getLeft(), ranges);
+        extractRanges(binaryExpression.getRight(), ranges);
+      } else {
+        VariableRange range = collectRange(
+            binaryExpression.getLeft(), binaryExpression.getRight(), binaryExpression.getToken(), false);
+        if (range == null) {
+          range = collectRange(
+              binaryExpression.getRight(), binaryExpression.getLeft(), binaryExpression.getToken(), true);
+        }
+        if (range != null) {
+          String name = range.getIdent().getString();
+          ranges.put(name, ranges.containsKey(name) ? ranges.get(name).merge(range) : range);
+        }
+      }
+    }
+  }
+
+  private static VariableRange collectRange(Expression first, Expression second, Token token, boolean flipped) {
+    if (!(first instanceof FuncCallExpression) || !(second instanceof Literal) || second instanceof NullLiteral) {
+      return null;
+    }
+    FuncCallExpression column = (FuncCallExpression) first;
+    if (column.getObject() != null || !column.getArgs().isEmpty()) {
+      return null;
+    }
+    Ident ident = column.getIdent();
+    Object value = ((Literal) second).getValue();
+    boolean less = token.is(Tokens.LESS) || token.is(Tokens.LEQ);
+    boolean greater = token.is(Tokens.GREATER) || token.is(Tokens.GEQ);
+    boolean inclusive = token.is(Tokens.LEQ) || token.is(Tokens.GEQ);
+    if (!less && !greater) {
+      return null;
+    }
+    if (less != flipped) {
+      return new VariableRange(ident, null, true, value, inclusive);
+    } else {
+      return new VariableRange(ident, value, inclusive, null, true);
+    }
+  }
+
   public static ImmutableList<VariableEquals> extractClauses(Expression expression) {
     List<VariableEquals> predicates = new ArrayList<>();
     extractClauses(expression, predicates);
@@ -15,21 +15,28 @@
  */
 package com.cosyan.db.meta;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.io.DeletionVector;
 import com.cosyan.db.io.MemoryBufferedSeekableFileStream;
-import com.cosyan.db.io.RAFBufferedInputStream;
+import com.cosyan.db.io.PageCache;
+import com.cosyan.db.io.PageCache.CachedFile;
 import com.cosyan.db.io.SeekableInputStream;
 import com.cosyan.db.io.SeekableOutputStream;
-import com.cosyan.db.io.SeekableOutputStream.RAFSeekableOutputStream;
+import com.cosyan.db.lang.expr.Expression;
 import com.cosyan.db.lang.expr.TableDefinition.AggRefDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.ColumnDefinition;
 import com.cosyan.db.lang.expr.TableDefinition.FlatRefDefinition;
@@ -52,6 +59,7 @@ import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.DerivedTables.FilteredTableMeta;
 import com.cosyan.db.model.DerivedTables.KeyValueTableMeta;
 import com.cosyan.db.model.Ident;
+import com.cosyan.db.model.Keys.CompositeIndex;
 import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.PrimaryKey;
 import com.cosyan.db.model.Keys.Ref;
@@ -70,56 +78,95 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
+import lombok.Data;
+
 public class MaterializedTable {
 
   public static enum Type {
     LOG, LOOKUP
   }
 
+  @Data
+  public static class ReadAhead {
+    private final int bufferSize;
+    private final int depth;
+  }
+
+  /**
+   * The name of the bitmap index storing the positions of the records per partition key.
+   */
+  public static final String PARTITION_INDEX = "#partition";
+
+  @Data
+  public static class Partitioning {
+    private final Expression expr;
+    private final ColumnMeta column;
+  }
+
+  /**
+   * Records are expired a given number of days after the timestamp in the column.
+   */
+  @Data
+  public static class Retention {
+    private final long days;
+    private final String column;
+  }
+
   private final Config config;
+  private final PageCache pageCache;
   private final String tableName;
   private final String owner;
   private final Type type;
   private final RandomAccessFile raf;
   private final TableStats stats;
-  private final SeekableOutputStream fileWriter;
+  private final DeletionVector deletionVector;
+  private SeekableOutputStream fileWriter;
   private final List<BasicColumn> columns;
   private final Map<String, BooleanRule> rules;
   private final Optional<PrimaryKey> primaryKey;
   private final Map<String, ForeignKey> foreignKeys;
   private final Map<String, ReverseForeignKey> reverseForeignKeys;
   private final Map<String, TableRef> refs;
+  private final Map<String, CompositeIndex> compositeIndexes;
   private TableDependencies ruleDependencies;
   private ReverseRuleDependencies reverseRuleDependencies;
-  private Optional<ColumnMeta> partitioning;
+  private Optional<Partitioning> partitioning;
+  private Optional<ReadAhead> readAhead;
+  private Optional<Retention> retention;
   private SeekableInputStream fileReader;
+  private CachedFile cachedFile;
 
   public MaterializedTable(
       Config config,
+      PageCache pageCache,
       String tableName,
       String owner,
       Iterable<BasicColumn> columns,
       Optional<PrimaryKey> primaryKey,
       Type type) throws IOException, ModelException {
     this.config = config;
+    this.pageCache = pageCache;
     this.tableName = tableName;
     this.owner = owner;
     this.type = type;
     this.raf = new RandomAccessFile(fileName(), "rw");
     this.stats = new TableStats(config, tableName);
+    this.deletionVector = new DeletionVector(fileName() + "#deleted");
     this.columns = Lists.newArrayList(columns);
     this.primaryKey = primaryKey;
     this.rules = new HashMap<>();
     this.foreignKeys = new HashMap<>();
     this.reverseForeignKeys = new HashMap<>();
     this.refs = new HashMap<>();
+    this.compositeIndexes = new LinkedHashMap<>();
     this.ruleDependencies = new TableDependencies();
     this.reverseRuleDependencies = new ReverseRuleDependencies();
     this.partitioning = Optional.empty();
+    this.readAhead = Optional.empty();
+    this.retention = Optional.empty();
 
     if (type == Type.LOG) {
-      fileWriter = new RAFSeekableOutputStream(raf);
-      fileReader = new RAFBufferedInputStream(raf);
+      openCachedFile(PageCache.DEFAULT_PAGE_SIZE, 0);
     } else {
       MemoryBufferedSeekableFileStream mbsfs = new MemoryBufferedSeekableFileStream(raf);
       fileWriter = mbsfs;
@@ -152,6 +199,34 @@ public class MaterializedTable {
     return fileReader;
   }
 
+  private void openCachedFile(int pageSize, int readAheadDepth) throws IOException {
+    if (cachedFile != null) {
+      cachedFile.clear();
+    }
+    cachedFile = pageCache.open(raf, pageSize, readAheadDepth);
+    fileWriter = cachedFile;
+    fileReader = cachedFile.inputStream();
+  }
+
+  /**
+   * Opens a new stream of the committed records for scans, positioned to
+   * <code>position</code>.
+   */
+  public InputStream openStream(long position) throws IOException {
+    if (cachedFile != null) {
+      SeekableInputStream stream = cachedFile.inputStream();
+      stream.seek(position);
+      return stream;
+    }
+    FileInputStream fis = new FileInputStream(fileName());
+    fis.getChannel().position(position);
+    return new BufferedInputStream(fis);
+  }
+
+  public DeletionVector deletionVector() {
+    return deletionVector;
+  }
+
   public void loadStats() throws IOException {
     stats.load();
   }
@@ -238,6 +313,47 @@ public class MaterializedTable {
     return Collections.unmodifiableMap(refs);
   }
 
+  public Map<String, CompositeIndex> compositeIndexes() {
+    return Collections.unmodifiableMap(compositeIndexes);
+  }
+
+  public boolean hasCompositeIndex(String name) {
+    return compositeIndexes.containsKey(name);
+  }
+
+  public CompositeIndex createCompositeIndex(Ident ident, ImmutableList<Ident> columnIdents) throws ModelException {
+    String name = ident.getString();
+    if (columnNames().contains(name) || compositeIndexes.containsKey(name)) {
+      throw new ModelException(String.format("Duplicate column or index name in '%s': '%s'.", tableName, name), ident);
+    }
+    if (columnIdents.size() < 2) {
+      throw new ModelException("Composite indexes need at least two columns.", ident);
+    }
+    ImmutableList.Builder<BasicColumn> indexColumns = ImmutableList.builder();
+    HashSet<String> names = new HashSet<>();
+    for (Ident columnIdent : columnIdents) {
+      BasicColumn column = column(columnIdent);
+      if (!names.add(column.getName())) {
+        throw new ModelException(String.format("Duplicate column '%s' in index.", columnIdent), columnIdent);
+      }
+      DataType<?> type = column.getType();
+      if (!type.isString() && !type.isLong() && !type.isDouble() && !type.isDate() && !type.isBool()) {
+        throw new ModelException(String.format("Column '%s' of type %s cannot be indexed.",
+            columnIdent, column.getType()), columnIdent);
+      }
+      indexColumns.add(column);
+    }
+    return new CompositeIndex(name, indexColumns.build());
+  }
+
+  public void addCompositeIndex(CompositeIndex index) {
+    compositeIndexes.put(index.getName(), index);
+  }
+
+  public CompositeIndex dropCompositeIndex(String name) {
+    return compositeIndexes.remove(name);
+  }
+
   public void checkName(Ident ident) throws ModelException {
     String name = ident.getString();
     if (columnNames().contains(name)
@@ -267,7 +383,10 @@ public class MaterializedTable {
   }
 
   public TableStat stat() throws IOException {
-    return new TableStat(raf.length());
+    if (cachedFile == null) {
+      return new TableStat(raf.length(), 0L, 0L, 0L);
+    }
+    return new TableStat(raf.length(), cachedFile.hits(), cachedFile.misses(), cachedFile.evictions());
   }
 
   public ForeignKey createForeignKey(ForeignKeyDefinition foreignKeyDefinition, MaterializedTable refTable)
@@ -456,14 +575,43 @@ public class MaterializedTable {
     }
   }
 
-  public Optional<ColumnMeta> getPartitioning() {
+  public Optional<Partitioning> getPartitioning() {
     return partitioning;
   }
 
-  public void setPartitioning(Optional<ColumnMeta> partitioning) {
+  public Partitioning createPartitioning(Expression expr) throws ModelException {
+    ColumnMeta column = expr.compileColumn(reader());
+    if (!column.tableDependencies().getDeps().isEmpty()) {
+      throw new ModelException("Partitioning can only depend on the columns of the table.", expr);
+    }
+    return new Partitioning(expr, column);
+  }
+
+  public void setPartitioning(Optional<Partitioning> partitioning) {
     this.partitioning = partitioning;
   }
 
+  public Optional<Retention> retention() {
+    return retention;
+  }
+
+  public void setRetention(Retention retention) {
+    this.retention = Optional.of(retention);
+  }
+
+  public Optional<ReadAhead> readAhead() {
+    return readAhead;
+  }
+
+  /**
+   * Sets the page size of a LOG table in the page cache and the number of pages
+   * sequential readers prefetch in the background.
+   */
+  public void setReadAhead(ReadAhead readAhead) throws IOException {
+    this.readAhead = Optional.of(readAhead);
+    openCachedFile(readAhead.getBufferSize(), readAhead.getDepth());
+  }
+
   public ForeignKey foreignKey(Ident ident) throws ModelException {
     String name = ident.getString();
     if (!foreignKeys.containsKey(name)) {
@@ -563,6 +711,12 @@ public class MaterializedTable {
               "Cannot drop column '%s', it is used by reverse foreign key '%s'.", column, foreignKey), column);
         }
       }
+      for (CompositeIndex index : compositeIndexes.values()) {
+        if (index.getColumns().contains(basicColumn)) {
+          throw new ModelException(String.format(
+              "Cannot drop column '%s', it is used by index '%s'.", column, index), column);
+        }
+      }
       for (Rule rule : rules().values()) {
         try {
           rule.reCompile(reader());
@@ -585,7 +739,12 @@ public class MaterializedTable {
   }
 
   public void drop() throws IOException {
-    raf.close();
+    if (cachedFile != null) {
+      cachedFile.close();
+    } else {
+      raf.close();
+    }
     new File(fileName()).delete();
+    deletionVector.drop();
   }
 }
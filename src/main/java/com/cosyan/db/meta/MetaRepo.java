@@ -32,17 +32,23 @@ import org.json.JSONObject;
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.auth.LocalUsers;
 import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.index.BPlusTree;
+import com.cosyan.db.index.BitmapIndex;
 import com.cosyan.db.index.ByteMultiTrie.LongMultiIndex;
 import com.cosyan.db.index.ByteMultiTrie.StringMultiIndex;
 import com.cosyan.db.index.ByteTrie.IndexException;
 import com.cosyan.db.index.ByteTrie.LongIndex;
 import com.cosyan.db.index.ByteTrie.StringIndex;
+import com.cosyan.db.index.CompositeKey;
 import com.cosyan.db.index.IDIndex;
 import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
 import com.cosyan.db.index.IndexStat.ByteTrieStat;
+import com.cosyan.db.index.NodeCache;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
 import com.cosyan.db.io.MetaSerializer;
+import com.cosyan.db.io.PageCache;
 import com.cosyan.db.io.TableReader.MaterializedTableReader;
 import com.cosyan.db.io.TableReader.SeekableTableReader;
 import com.cosyan.db.io.TableWriter;
@@ -51,17 +57,24 @@ import com.cosyan.db.lang.sql.Tokens.Loc;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lock.LockManager;
 import com.cosyan.db.logging.MetaJournal.DBException;
+import com.cosyan.db.meta.MaterializedTable.Partitioning;
 import com.cosyan.db.meta.Grants.GrantException;
 import com.cosyan.db.meta.Grants.GrantToken;
 import com.cosyan.db.meta.Grants.Method;
 import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.BasicColumn.IndexType;
 import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.model.Ident;
+import com.cosyan.db.model.Keys.CompositeIndex;
 import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.ReverseForeignKey;
 import com.cosyan.db.model.Rule.BooleanRule;
 import com.cosyan.db.model.TableMeta.ExposedTableMeta;
 import com.cosyan.db.model.TableMultiIndex;
+import com.cosyan.db.model.TableMultiIndex.BTreeTableMultiIndex;
+import com.cosyan.db.model.TableMultiIndex.BitmapTableMultiIndex;
+import com.cosyan.db.model.TableMultiIndex.CompositeTableMultiIndex;
 import com.cosyan.db.model.TableMultiIndex.LongTableMultiIndex;
 import com.cosyan.db.model.TableMultiIndex.StringTableMultiIndex;
 import com.cosyan.db.model.TableUniqueIndex;
@@ -86,19 +99,23 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
   private final HashMap<String, MaterializedTable> tables;
   private final HashMap<String, TableUniqueIndex> uniqueIndexes;
   private final HashMap<String, TableMultiIndex> multiIndexes;
+  private final NodeCache nodeCache;
+  private final PageCache pageCache;
   private final Grants grants;
 
   private final LockManager lockManager;
   private final MetaSerializer metaSerializer;
 
   public MetaRepo(Config config, LockManager lockManager, LocalUsers localUsers, ILexer lexer, IParser parser)
-      throws IOException, DBException {
+      throws IOException, DBException, ConfigException {
     this.config = config;
     this.lockManager = lockManager;
     this.metaSerializer = new MetaSerializer(lexer, parser);
     this.tables = new HashMap<>();
     this.uniqueIndexes = new HashMap<>();
     this.multiIndexes = new HashMap<>();
+    this.nodeCache = new NodeCache(config.getInt(Config.INDEX_CACHE_SIZE_MB, 64) * 1024L * 1024L);
+    this.pageCache = new PageCache(config.getInt(Config.TABLE_CACHE_SIZE_MB, 64) * 1024L * 1024L);
     this.grants = new Grants(localUsers);
 
     Files.createDirectories(Paths.get(config.tableDir()));
@@ -113,6 +130,10 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
     return config;
   }
 
+  public PageCache pageCache() {
+    return pageCache;
+  }
+
   public void init() throws IOException {
     for (MaterializedTable tableMeta : tables.values()) {
       tableMeta.loadStats();
@@ -156,7 +177,7 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
             Charset.defaultCharset()));
         jsons.put(fileName, json);
       }
-      newTables = metaSerializer.loadTables(config, jsons);
+      newTables = metaSerializer.loadTables(config, pageCache, jsons);
       grants.fromJSON(new JSONArray(FileUtils.readFileToString(
           new File(config.usersFile()),
           Charset.defaultCharset())), newTables);
@@ -210,6 +231,13 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
         }
       }
     }
+    for (String name : table.compositeIndexes().keySet()) {
+      builder.put(name, multiIndexes.get(table.tableName() + "." + name));
+    }
+    if (table.getPartitioning().isPresent()) {
+      builder.put(MaterializedTable.PARTITION_INDEX,
+          multiIndexes.get(table.tableName() + "." + MaterializedTable.PARTITION_INDEX));
+    }
     return builder.build();
   }
 
@@ -234,6 +262,18 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
         builder.put(column.getName(), multiIndexes.get(indexName));
       }
     }
+    if (table.getPartitioning().isPresent()) {
+      builder.put(MaterializedTable.PARTITION_INDEX,
+          multiIndexes.get(table.tableName() + "." + MaterializedTable.PARTITION_INDEX));
+    }
+    return builder.build();
+  }
+
+  public ImmutableMap<String, CompositeTableMultiIndex> collectCompositeIndexes(MaterializedTable table) {
+    ImmutableMap.Builder<String, CompositeTableMultiIndex> builder = ImmutableMap.builder();
+    for (String name : table.compositeIndexes().keySet()) {
+      builder.put(name, (CompositeTableMultiIndex) multiIndexes.get(table.tableName() + "." + name));
+    }
     return builder.build();
   }
 
@@ -275,6 +315,12 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
         }
       }
     }
+    for (CompositeIndex index : tableMeta.compositeIndexes().values()) {
+      registerCompositeIndex(tableMeta, index);
+    }
+    if (tableMeta.getPartitioning().isPresent()) {
+      registerPartitionIndex(tableMeta, tableMeta.getPartitioning().get());
+    }
   }
 
   @Override
@@ -305,6 +351,10 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
         dropIndex(tableMeta, column, authToken);
       }
     }
+    for (String name : tableMeta.compositeIndexes().keySet()) {
+      dropMultiIndex(tableMeta.tableName() + "." + name);
+    }
+    dropMultiIndex(tableMeta.tableName() + "." + MaterializedTable.PARTITION_INDEX);
     lockManager.removeLock(tableName);
   }
 
@@ -318,11 +368,11 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
     String path = config.indexDir() + File.separator + indexName;
     if (!uniqueIndexes.containsKey(indexName)) {
       if (column.getType() == DataTypes.StringType) {
-        uniqueIndexes.put(indexName, new StringTableIndex(new StringIndex(path)));
+        uniqueIndexes.put(indexName, new StringTableIndex(new StringIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.LongType) {
-        uniqueIndexes.put(indexName, new LongTableIndex(new LongIndex(path)));
+        uniqueIndexes.put(indexName, new LongTableIndex(new LongIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.IDType) {
-        uniqueIndexes.put(indexName, new IDTableIndex(new IDIndex(path)));
+        uniqueIndexes.put(indexName, new IDTableIndex(new IDIndex(path, nodeCache)));
       }
     }
     return uniqueIndexes.get(indexName);
@@ -333,16 +383,48 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
     String indexName = table.tableName() + "." + column.getName();
     String path = config.indexDir() + File.separator + indexName;
     if (!multiIndexes.containsKey(indexName)) {
-
-      if (column.getType() == DataTypes.StringType) {
-        multiIndexes.put(indexName, new StringTableMultiIndex(new StringMultiIndex(path)));
+      if (column.getIndexType() == IndexType.BTREE) {
+        multiIndexes.put(indexName, new BTreeTableMultiIndex(
+            new BPlusTree(path + "#btree", column.getType(), nodeCache), column.getType()));
+      } else if (column.getIndexType() == IndexType.BITMAP) {
+        multiIndexes.put(indexName, new BitmapTableMultiIndex(
+            new BitmapIndex(path + "#bitmap", column.getType()), column.getType()));
+      } else if (column.getType() == DataTypes.StringType) {
+        multiIndexes.put(indexName, new StringTableMultiIndex(new StringMultiIndex(path, nodeCache)));
       } else if (column.getType() == DataTypes.LongType || column.getType() == DataTypes.IDType) {
-        multiIndexes.put(indexName, new LongTableMultiIndex(new LongMultiIndex(path)));
+        multiIndexes.put(indexName, new LongTableMultiIndex(new LongMultiIndex(path, nodeCache)));
       }
     }
     return multiIndexes.get(indexName);
   }
 
+  public CompositeTableMultiIndex registerCompositeIndex(MaterializedTable table, CompositeIndex index)
+      throws IOException {
+    String indexName = table.tableName() + "." + index.getName();
+    if (!multiIndexes.containsKey(indexName)) {
+      String path = config.indexDir() + File.separator + indexName + "#composite";
+      multiIndexes.put(indexName, new CompositeTableMultiIndex(
+          new BPlusTree(path, CompositeKey.TYPE, nodeCache), index.getColumns()));
+    }
+    return (CompositeTableMultiIndex) multiIndexes.get(indexName);
+  }
+
+  private void registerPartitionIndex(MaterializedTable table, Partitioning partitioning) throws IOException {
+    String indexName = table.tableName() + "." + MaterializedTable.PARTITION_INDEX;
+    if (!multiIndexes.containsKey(indexName)) {
+      DataType<?> keyType = partitioning.getColumn().getType();
+      multiIndexes.put(indexName, new BitmapTableMultiIndex(
+          new BitmapIndex(config.indexDir() + File.separator + indexName + "#bitmap", keyType), keyType));
+    }
+  }
+
+  public void dropCompositeIndex(MaterializedTable tableMeta, String name, AuthToken authToken)
+      throws IOException, GrantException {
+    grants.checkOwner(tableMeta, authToken);
+    tableMeta.dropCompositeIndex(name);
+    dropMultiIndex(tableMeta.tableName() + "." + name);
+  }
+
   @Override
   public IndexWriter registerIndex(MaterializedTable tableMeta, BasicColumn column)
       throws IOException {
@@ -365,6 +447,7 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
       dropMultiIndex(tableMeta, column);
     }
     column.setIndexed(false);
+    column.setIndexType(IndexType.TRIE);
   }
 
   private void dropUniqueIndex(MaterializedTable table, BasicColumn column) throws IOException {
@@ -377,7 +460,10 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
   }
 
   private void dropMultiIndex(MaterializedTable table, BasicColumn column) throws IOException {
-    String indexName = table.tableName() + "." + column.getName();
+    dropMultiIndex(table.tableName() + "." + column.getName());
+  }
+
+  private void dropMultiIndex(String indexName) throws IOException {
     if (!multiIndexes.containsKey(indexName)) {
       return;
     }
@@ -413,9 +499,11 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
             tableMeta.fileName(),
             tableMeta.fileWriter(),
             tableMeta.fileReader(),
+            tableMeta.deletionVector(),
             tableMeta.allColumns(),
             collectUniqueIndexes(tableMeta),
             collectMultiIndexes(tableMeta),
+            collectCompositeIndexes(tableMeta),
             resource.isForeignIndexes() ? collectForeignIndexes(tableMeta) : ImmutableMultimap.of(),
             resource.isReverseForeignIndexes() ? collectReverseForeignIndexes(tableMeta) : ImmutableMultimap.of(),
             ImmutableMap.copyOf(tableMeta.rules()),
@@ -425,10 +513,10 @@ public class MetaRepo implements MetaRepoExecutor, MetaReader {
         MaterializedTable tableMeta = resource.getTableMeta();
         readers.put(resource.getTableMeta().tableName(), new MaterializedTableReader(
             tableMeta,
-            tableMeta.fileName(),
             tableMeta.fileReader(),
             tableMeta.allColumns(),
-            collectIndexReaders(tableMeta)));
+            collectIndexReaders(tableMeta),
+            tableMeta.deletionVector()));
       }
       if (resource.isMeta()) {
         MaterializedTable tableMeta = resource.getTableMeta();
@@ -21,4 +21,11 @@ import lombok.Data;
 public class TableStat {
 
   private final long fileSize;
+  private final long cacheHits;
+  private final long cacheMisses;
+  private final long cacheEvictions;
+
+  public double getCacheHitRatio() {
+    return cacheHits + cacheMisses == 0 ? 0.0 : (double) cacheHits / (cacheHits + cacheMisses);
+  }
 }
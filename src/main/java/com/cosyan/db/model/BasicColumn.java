@@ -23,12 +23,17 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode()
 public class BasicColumn {
 
+  public static enum IndexType {
+    TRIE, BTREE, BITMAP
+  }
+
   private final String name;
   private final DataType<?> type;
   private final int index;
   private boolean nullable;
   private boolean unique;
   private boolean indexed;
+  private IndexType indexType;
   private boolean deleted;
   private boolean immutable;
 
@@ -48,6 +53,7 @@ public class BasicColumn {
     this.nullable = nullable;
     this.unique = unique;
     this.indexed = unique;
+    this.indexType = IndexType.TRIE;
     this.immutable = immutable;
     this.deleted = false;
     if (unique) {
@@ -79,6 +85,10 @@ public class BasicColumn {
     return indexed;
   }
 
+  public IndexType getIndexType() {
+    return indexType;
+  }
+
   public boolean isDeleted() {
     return deleted;
   }
@@ -102,6 +112,28 @@ public class BasicColumn {
     }
   }
 
+  public void checkOrderedIndexType(Ident ident) throws ModelException {
+    if (unique) {
+      throw new ModelException("B+tree indexes are not supported for unique columns.", ident);
+    }
+    if (!type.isString() && !type.isLong() && !type.isDouble() && !type.isDate()) {
+      throw new ModelException("B+tree indexes are only supported for " + DataTypes.StringType +
+          ", " + DataTypes.LongType + ", " + DataTypes.DoubleType + " and date types, not " + getType() + ".",
+          ident);
+    }
+  }
+
+  public void checkBitmapIndexType(Ident ident) throws ModelException {
+    if (unique) {
+      throw new ModelException("Bitmap indexes are not supported for unique columns.", ident);
+    }
+    if (!type.isString() && !type.isLong() && !type.isBool()) {
+      throw new ModelException("Bitmap indexes are only supported for " + DataTypes.StringType +
+          ", " + DataTypes.LongType + ", " + DataTypes.BoolType + " and enum types, not " + getType() + ".",
+          ident);
+    }
+  }
+
   public void setDeleted(boolean deleted) {
     this.deleted = deleted;
   }
@@ -109,4 +141,8 @@ public class BasicColumn {
   public void setIndexed(boolean indexed) {
     this.indexed = indexed;
   }
+
+  public void setIndexType(IndexType indexType) {
+    this.indexType = indexType;
+  }
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ import com.cosyan.db.model.DateFunctions.AddWeeks;
 import com.cosyan.db.model.DateFunctions.AddYears;
 import com.cosyan.db.model.DateFunctions.Date;
 import com.cosyan.db.model.DateFunctions.GetDay;
+import com.cosyan.db.model.DateFunctions.GetEpochDay;
 import com.cosyan.db.model.DateFunctions.GetDayOfMonth;
 import com.cosyan.db.model.DateFunctions.GetDayOfWeek;
 import com.cosyan.db.model.DateFunctions.GetDayOfYear;
@@ -194,6 +195,7 @@ public class BuiltinFunctions {
       .add(new GetWeekOfYear())
       .add(new GetWeekOfMonth())
       .add(new GetDay())
+      .add(new GetEpochDay())
       .add(new GetDayOfYear())
       .add(new GetDayOfMonth())
       .add(new GetDayOfWeek())
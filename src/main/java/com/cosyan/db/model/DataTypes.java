@@ -19,6 +19,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -76,6 +77,17 @@ public class DataTypes {
           return (T[]) array;
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        public T[] read(ByteBuffer buffer) throws IOException {
+          int s = buffer.getInt();
+          Object[] array = new Object[s];
+          for (int i = 0; i < s; i++) {
+            array[i] = DataType.this.read(buffer);
+          }
+          return (T[]) array;
+        }
+
         @Override
         public int size(Object value) {
           Object[] values = (Object[]) value;
@@ -91,6 +103,13 @@ public class DataTypes {
           throw new RuleException("List types are not uspported here.");
         }
 
+        @Override
+        public JSONObject toJSON() {
+          JSONObject obj = super.toJSON();
+          obj.put("element", DataType.this.toJSON());
+          return obj;
+        }
+
         @Override
         public String toString(Object obj) {
           Object[] values = (Object[]) obj;
@@ -130,8 +149,21 @@ public class DataTypes {
 
     public abstract T read(DataInput stream) throws IOException;
 
+    /**
+     * Reads a value from a buffer holding the serialized record, in the same format as
+     * {@link #read(DataInput)}.
+     */
+    public abstract T read(ByteBuffer buffer) throws IOException;
+
     public abstract int size(Object value);
 
+    /**
+     * Whether every non-null value of this type is serialized to the same number of bytes.
+     */
+    public boolean isFixedWidth() {
+      return false;
+    }
+
     public void check(Object value) throws RuleException {
     }
 
@@ -170,6 +202,16 @@ public class DataTypes {
       return new String(chars);
     }
 
+    @Override
+    public String read(ByteBuffer buffer) throws IOException {
+      int length = buffer.getInt();
+      char[] chars = new char[length];
+      for (int c = 0; c < chars.length; c++) {
+        chars[c] = buffer.getChar();
+      }
+      return new String(chars);
+    }
+
     @Override
     public int size(Object value) {
       return 4 + ((String) value).length() * 2;
@@ -198,11 +240,21 @@ public class DataTypes {
       return stream.readDouble();
     }
 
+    @Override
+    public Double read(ByteBuffer buffer) throws IOException {
+      return buffer.getDouble();
+    }
+
     @Override
     public int size(Object value) {
       return 8;
     }
 
+    @Override
+    public boolean isFixedWidth() {
+      return true;
+    }
+
     @Override
     public Object fromString(String string) throws RuleException {
       try {
@@ -230,11 +282,21 @@ public class DataTypes {
       return stream.readLong();
     }
 
+    @Override
+    public Long read(ByteBuffer buffer) throws IOException {
+      return buffer.getLong();
+    }
+
     @Override
     public int size(Object value) {
       return 8;
     }
 
+    @Override
+    public boolean isFixedWidth() {
+      return true;
+    }
+
     @Override
     public Object fromString(String string) throws RuleException {
       try {
@@ -262,11 +324,21 @@ public class DataTypes {
       return stream.readBoolean();
     }
 
+    @Override
+    public Boolean read(ByteBuffer buffer) throws IOException {
+      return buffer.get() != 0;
+    }
+
     @Override
     public int size(Object value) {
       return 1;
     }
 
+    @Override
+    public boolean isFixedWidth() {
+      return true;
+    }
+
     @Override
     public Object fromString(String string) throws RuleException {
       return boolFromString(string);
@@ -280,7 +352,8 @@ public class DataTypes {
   }
 
   public static DataType<Date> dateType(String format) {
-    SimpleDateFormat sdf = new SimpleDateFormat(format);
+    // SimpleDateFormat is not thread safe.
+    ThreadLocal<SimpleDateFormat> sdf = ThreadLocal.withInitial(() -> new SimpleDateFormat(format));
     return new DataType<Date>("timestamp") {
       @Override
       public Class<Date> javaClass() {
@@ -297,15 +370,25 @@ public class DataTypes {
         return new Date(stream.readLong());
       }
 
+      @Override
+      public Date read(ByteBuffer buffer) throws IOException {
+        return new Date(buffer.getLong());
+      }
+
       @Override
       public int size(Object value) {
         return 8;
       }
 
+      @Override
+      public boolean isFixedWidth() {
+        return true;
+      }
+
       @Override
       public Object fromString(String string) throws RuleException {
         try {
-          return sdf.parse(string);
+          return sdf.get().parse(string);
         } catch (ParseException e) {
           throw new RuleException(String.format("Invalid timestamp '%s'.", string));
         }
@@ -320,7 +403,7 @@ public class DataTypes {
 
       @Override
       public String toString(Object obj) {
-        return sdf.format((Date) obj);
+        return sdf.get().format((Date) obj);
       }
     };
   }
@@ -342,6 +425,11 @@ public class DataTypes {
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public Date read(ByteBuffer buffer) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public int size(Object value) {
       throw new UnsupportedOperationException();
@@ -375,6 +463,11 @@ public class DataTypes {
       return stream.readLong();
     }
 
+    @Override
+    public Long read(ByteBuffer buffer) throws IOException {
+      return buffer.getLong();
+    }
+
     @Override
     public int size(Object value) {
       return 8;
@@ -422,11 +515,21 @@ public class DataTypes {
         return values.get(stream.readByte());
       }
 
+      @Override
+      public String read(ByteBuffer buffer) throws IOException {
+        return values.get(buffer.get());
+      }
+
       @Override
       public int size(Object value) {
         return 1;
       }
 
+      @Override
+      public boolean isFixedWidth() {
+        return true;
+      }
+
       @Override
       public JSONObject toJSON() {
         JSONObject obj = super.toJSON();
@@ -451,7 +554,15 @@ public class DataTypes {
 
   public static DataType<?> fromJSON(JSONObject obj) {
     String name = obj.getString("type");
-    if (name.equals(StringType.getName())) {
+    if (obj.has("element")) {
+      try {
+        return fromJSON(obj.getJSONObject("element")).toListType();
+      } catch (ModelException e) {
+        throw new IllegalArgumentException(e.getMessage());
+      }
+    } else if (name.equals(NullType.getName())) {
+      return NullType;
+    } else if (name.equals(StringType.getName())) {
       return StringType;
     } else if (name.equals(DoubleType.getName())) {
       return DoubleType;
@@ -18,6 +18,7 @@ package com.cosyan.db.model;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
 
 import com.cosyan.db.doc.FunctionDocumentation.Func;
 import com.cosyan.db.doc.FunctionDocumentation.FuncCat;
@@ -30,6 +31,11 @@ public class DateFunctions {
 
   public static final SimpleDateFormat sdf1 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
   public static final SimpleDateFormat sdf2 = new SimpleDateFormat("yyyy-MM-dd");
+  // SimpleDateFormat is not thread safe, parsing can happen in parallel (e.g. bulk imports).
+  private static final ThreadLocal<SimpleDateFormat> parser1 =
+      ThreadLocal.withInitial(() -> (SimpleDateFormat) sdf1.clone());
+  private static final ThreadLocal<SimpleDateFormat> parser2 =
+      ThreadLocal.withInitial(() -> (SimpleDateFormat) sdf2.clone());
 
   public static java.util.Date convert(Object arg) {
     if (arg == null) {
@@ -37,10 +43,10 @@ public class DateFunctions {
     }
     String sarg = (String) arg;
     try {
-      return sdf1.parse(sarg);
+      return parser1.get().parse(sarg);
     } catch (ParseException e1) {
       try {
-        return sdf2.parse(sarg);
+        return parser2.get().parse(sarg);
       } catch (ParseException e2) {
         return null;
       }
@@ -230,6 +236,23 @@ public class DateFunctions {
     }
   }
 
+  @Func(doc = "Returns the number of days between 1970-01-01 (UTC) and self.")
+  public static class GetEpochDay extends SimpleFunction<Long> {
+
+    public GetEpochDay() {
+      super("get_epoch_day", DataTypes.LongType, ImmutableMap.of("self", DataTypes.dateType()));
+    }
+
+    @Override
+    public Object call(ImmutableList<Object> argValues) {
+      return epochDay(((java.util.Date) argValues.get(0)).getTime());
+    }
+  }
+
+  public static long epochDay(long millis) {
+    return Math.floorDiv(millis, TimeUnit.DAYS.toMillis(1));
+  }
+
   @Func(doc = "Returns the day of year of self.")
   public static class GetDayOfYear extends SimpleFunction<Long> {
 
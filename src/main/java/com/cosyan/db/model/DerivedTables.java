@@ -38,11 +38,18 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.TreeMap;
 
+import com.cosyan.db.io.Indexes.BitmapIndexReader;
+import com.cosyan.db.io.Indexes.IndexCursor;
 import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.Indexes.OrderedIndexReader;
+import com.cosyan.db.io.TableReader.CursorFilteredTableReader;
 import com.cosyan.db.io.TableReader.DerivedIterableTableReader;
 import com.cosyan.db.io.TableReader.IterableTableReader;
 import com.cosyan.db.io.TableReader.MultiFilteredTableReader;
+import com.cosyan.db.logic.BitmapPredicates.BitmapIndexProvider;
+import com.cosyan.db.logic.BitmapPredicates.BitmapPredicate;
 import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.logic.PredicateHelper.VariableRange;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.meta.MetaRepo.ModelException;
@@ -255,6 +262,183 @@ public class DerivedTables {
     }
   }
 
+  /**
+   * Reads the records in the order of a B+tree index, optionally restricted to a range.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class IndexRangeTableMeta extends ExposedTableMeta {
+    private final SeekableTableMeta sourceTable;
+    private final ColumnMeta whereColumn;
+    private final String column;
+    private final VariableRange range;
+    private final boolean ascending;
+
+    @Override
+    public ImmutableList<String> columnNames() {
+      return sourceTable.columnNames();
+    }
+
+    @Override
+    public ImmutableList<DataType<?>> columnTypes() {
+      return sourceTable.columnTypes();
+    }
+
+    @Override
+    public IndexColumn getColumn(Ident ident) throws ModelException {
+      return sourceTable.getColumn(ident);
+    }
+
+    @Override
+    public TableMeta getRefTable(Ident ident) throws ModelException {
+      return sourceTable.getRefTable(ident);
+    }
+
+    @Override
+    public MetaResources readResources() {
+      return sourceTable.readResources().merge(resourcesFromColumn(whereColumn));
+    }
+
+    @Override
+    public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
+      return new CursorFilteredTableReader(resources.reader(sourceTable.tableName()), whereColumn, resources) {
+        @Override
+        protected IndexCursor openCursor() throws IOException {
+          OrderedIndexReader index = (OrderedIndexReader) resources.getIndex(sourceTable.tableName(), column);
+          if (range == null) {
+            return index.cursor(null, true, null, true, ascending);
+          }
+          return index.cursor(
+              range.getFrom(), range.isFromInclusive(), range.getTo(), range.isToInclusive(), ascending);
+        }
+      };
+    }
+
+    @Override
+    public TableDependencies tableDependencies() {
+      return sourceTable.tableDependencies();
+    }
+  }
+
+  private static BitmapIndexProvider bitmapIndexes(Resources resources, String table) {
+    return column -> (BitmapIndexReader) resources.getIndex(table, column);
+  }
+
+  /**
+   * Reads the records selected by bitmap indexes in file order.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class BitmapFilteredTableMeta extends ExposedTableMeta {
+    private final SeekableTableMeta sourceTable;
+    private final ColumnMeta whereColumn;
+    private final BitmapPredicate predicate;
+
+    @Override
+    public ImmutableList<String> columnNames() {
+      return sourceTable.columnNames();
+    }
+
+    @Override
+    public ImmutableList<DataType<?>> columnTypes() {
+      return sourceTable.columnTypes();
+    }
+
+    @Override
+    public IndexColumn getColumn(Ident ident) throws ModelException {
+      return sourceTable.getColumn(ident);
+    }
+
+    @Override
+    public TableMeta getRefTable(Ident ident) throws ModelException {
+      return sourceTable.getRefTable(ident);
+    }
+
+    @Override
+    public MetaResources readResources() {
+      return sourceTable.readResources().merge(resourcesFromColumn(whereColumn));
+    }
+
+    @Override
+    public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
+      return new MultiFilteredTableReader(resources.reader(sourceTable.tableName()), whereColumn, resources) {
+        @Override
+        protected void readPositions() throws IOException {
+          positions = predicate.evaluate(bitmapIndexes(resources, sourceTable.tableName()))
+              .getSatisfying().toArray();
+        }
+      };
+    }
+
+    @Override
+    public TableDependencies tableDependencies() {
+      return sourceTable.tableDependencies();
+    }
+  }
+
+  /**
+   * The count of the records selected by an exact bitmap predicate, computed from the
+   * indexes only without reading the table.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = true)
+  public static class BitmapCountTableMeta extends ExposedTableMeta {
+    private final DerivedTableMeta countTable;
+    private final SeekableTableMeta sourceTable;
+    private final BitmapPredicate predicate;
+
+    @Override
+    public ImmutableList<String> columnNames() {
+      return countTable.columnNames();
+    }
+
+    @Override
+    public ImmutableList<DataType<?>> columnTypes() {
+      return countTable.columnTypes();
+    }
+
+    @Override
+    public IndexColumn getColumn(Ident ident) throws ModelException {
+      return countTable.getColumn(ident);
+    }
+
+    @Override
+    protected TableMeta getRefTable(Ident ident) throws ModelException {
+      return null;
+    }
+
+    @Override
+    public MetaResources readResources() {
+      return countTable.readResources();
+    }
+
+    @Override
+    public IterableTableReader reader(Resources resources, TableContext context) throws IOException {
+      return new IterableTableReader() {
+        private boolean done = false;
+
+        @Override
+        public Object[] next() throws IOException {
+          if (done) {
+            return null;
+          }
+          done = true;
+          return new Object[] { predicate.evaluate(bitmapIndexes(resources, sourceTable.tableName()))
+              .getSatisfying().cardinality() };
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+      };
+    }
+
+    @Override
+    public TableDependencies tableDependencies() {
+      return countTable.tableDependencies();
+    }
+  }
+
   @Data
   @EqualsAndHashCode(callSuper = true)
   public static class KeyValueTableMeta extends IterableTableMeta {
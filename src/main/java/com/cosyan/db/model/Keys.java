@@ -15,7 +15,10 @@
  */
 package com.cosyan.db.model;
 
+import java.util.stream.Collectors;
+
 import com.cosyan.db.meta.MaterializedTable;
+import com.google.common.collect.ImmutableList;
 
 import lombok.Data;
 
@@ -27,6 +30,17 @@ public class Keys {
     private final BasicColumn column;
   }
 
+  @Data
+  public static class CompositeIndex {
+    private final String name;
+    private final ImmutableList<BasicColumn> columns;
+
+    @Override
+    public String toString() {
+      return name + " (" + columns.stream().map(c -> c.getName()).collect(Collectors.joining(", ")) + ")";
+    }
+  }
+
   public static interface Ref {
 
     String getName();
@@ -16,10 +16,16 @@
 package com.cosyan.db.model;
 
 import java.io.IOException;
+import java.util.Optional;
 
 import javax.annotation.concurrent.Immutable;
 
+import com.cosyan.db.lang.expr.BinaryExpression;
+import com.cosyan.db.lang.expr.CaseExpression;
 import com.cosyan.db.lang.expr.Expression;
+import com.cosyan.db.lang.expr.Expression.UnaryExpression;
+import com.cosyan.db.lang.expr.FuncCallExpression;
+import com.cosyan.db.lang.expr.Literals.Literal;
 import com.cosyan.db.lang.sql.Lexer;
 import com.cosyan.db.lang.sql.Parser;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
@@ -27,6 +33,8 @@ import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.DataTypes.DataType;
 import com.cosyan.db.session.IParser.ParserException;
 import com.cosyan.db.transaction.Resources;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 
 import lombok.Data;
 
@@ -83,6 +91,57 @@ public class Rule {
     return name + " [" + expr.print() + "]";
   }
 
+  /**
+   * The columns of the table the rule depends on, or empty if the rule references other
+   * tables or the dependencies cannot be determined from the expression.
+   */
+  public Optional<ImmutableSet<String>> columnDependencies() {
+    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+    if (collectColumns(expr, ImmutableSet.copyOf(table.columnNames()), builder)) {
+      return Optional.of(builder.build());
+    }
+    return Optional.empty();
+  }
+
+  private static boolean collectColumns(
+      Expression expr, ImmutableSet<String> columnNames, ImmutableSet.Builder<String> builder) {
+    if (expr instanceof Literal) {
+      return true;
+    } else if (expr instanceof BinaryExpression) {
+      BinaryExpression binaryExpr = (BinaryExpression) expr;
+      return collectColumns(binaryExpr.getLeft(), columnNames, builder)
+          && collectColumns(binaryExpr.getRight(), columnNames, builder);
+    } else if (expr instanceof UnaryExpression) {
+      return collectColumns(((UnaryExpression) expr).getExpr(), columnNames, builder);
+    } else if (expr instanceof CaseExpression) {
+      CaseExpression caseExpr = (CaseExpression) expr;
+      for (Expression e : Iterables.concat(caseExpr.getConditions(), caseExpr.getValues())) {
+        if (!collectColumns(e, columnNames, builder)) {
+          return false;
+        }
+      }
+      return collectColumns(caseExpr.getElseValue(), columnNames, builder);
+    } else if (expr instanceof FuncCallExpression) {
+      FuncCallExpression funcCall = (FuncCallExpression) expr;
+      if (funcCall.getObject() == null && funcCall.getArgs().isEmpty()) {
+        // Anything other than a column, e.g. a foreign key, references another table.
+        String name = funcCall.getIdent().getString();
+        builder.add(name);
+        return columnNames.contains(name);
+      }
+      if (funcCall.getObject() != null && !collectColumns(funcCall.getObject(), columnNames, builder)) {
+        return false;
+      }
+      for (Expression arg : funcCall.getArgs()) {
+        if (!collectColumns(arg, columnNames, builder)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
   public BooleanRule toBooleanRule() {
     return new BooleanRule(name, table, column, expr, nullIsTrue, deps);
   }
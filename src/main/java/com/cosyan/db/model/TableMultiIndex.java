@@ -16,14 +16,27 @@
 package com.cosyan.db.model;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
 
+import com.cosyan.db.index.BPlusTree;
+import com.cosyan.db.index.BitmapIndex;
 import com.cosyan.db.index.ByteMultiTrie.LongMultiIndex;
 import com.cosyan.db.index.ByteMultiTrie.StringMultiIndex;
 import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.index.CompositeKey;
 import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
+import com.cosyan.db.index.PositionBitmap;
+import com.cosyan.db.io.Indexes.BitmapIndexReader;
+import com.cosyan.db.io.Indexes.IndexCursor;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
+import com.cosyan.db.io.Indexes.OrderedIndexReader;
 import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
 
 public abstract class TableMultiIndex implements IndexReader, IndexWriter {
   public abstract void put(Object key, long fileIndex) throws IOException, IndexException;
@@ -32,6 +45,14 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
 
   public abstract boolean delete(Object key, long fileIndex) throws IOException;
 
+  /**
+   * Replaces the file index of a record under the key with its new file index.
+   */
+  public void remap(Object key, long oldFileIndex, long newFileIndex) throws IOException, IndexException {
+    delete(key, oldFileIndex);
+    put(key, newFileIndex);
+  }
+
   public abstract long[] get(Object key) throws IOException;
 
   public abstract void commit() throws IOException;
@@ -72,11 +93,26 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       return index.delete((Long) key);
     }
 
+    @Override
+    public byte[] sortKey(Object key) {
+      return index.sortKey((Long) key);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries) throws IOException, IndexException {
+      index.bulkLoad(Iterators.transform(sortedEntries, e -> Maps.immutableEntry((Long) e.getKey(), e.getValue())));
+    }
+
     @Override
     public boolean delete(Object key, long fileIndex) throws IOException {
       return index.delete((Long) key, fileIndex);
     }
 
+    @Override
+    public void remap(Object key, long oldFileIndex, long newFileIndex) throws IOException {
+      index.replace((Long) key, oldFileIndex, newFileIndex);
+    }
+
     @Override
     public long[] get(Object key) throws IOException {
       return index.get((Long) key);
@@ -131,11 +167,26 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       return index.delete((String) key);
     }
 
+    @Override
+    public byte[] sortKey(Object key) {
+      return index.sortKey((String) key);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries) throws IOException, IndexException {
+      index.bulkLoad(Iterators.transform(sortedEntries, e -> Maps.immutableEntry((String) e.getKey(), e.getValue())));
+    }
+
     @Override
     public boolean delete(Object key, long fileIndex) throws IOException {
       return index.delete((String) key, fileIndex);
     }
 
+    @Override
+    public void remap(Object key, long oldFileIndex, long newFileIndex) throws IOException {
+      index.replace((String) key, oldFileIndex, newFileIndex);
+    }
+
     @Override
     public long[] get(Object key) throws IOException {
       return index.get((String) key);
@@ -171,4 +222,198 @@ public abstract class TableMultiIndex implements IndexReader, IndexWriter {
       return DataTypes.StringType;
     }
   }
+
+  public static class BTreeTableMultiIndex extends TableMultiIndex implements OrderedIndexReader {
+
+    private final BPlusTree index;
+    private final DataType<?> keyType;
+
+    public BTreeTableMultiIndex(BPlusTree index, DataType<?> keyType) {
+      this.index = index;
+      this.keyType = keyType;
+    }
+
+    @Override
+    public void put(Object key, long fileIndex) throws IOException, IndexException {
+      index.put(key, fileIndex);
+    }
+
+    @Override
+    public boolean delete(Object key) throws IOException {
+      return index.delete(key);
+    }
+
+    @Override
+    public byte[] sortKey(Object key) {
+      return index.sortKey(key);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries) throws IOException, IndexException {
+      index.bulkLoad(sortedEntries);
+    }
+
+    @Override
+    public boolean delete(Object key, long fileIndex) throws IOException {
+      return index.delete(key, fileIndex);
+    }
+
+    @Override
+    public long[] get(Object key) throws IOException {
+      return index.get(key);
+    }
+
+    @Override
+    public IndexCursor cursor(Object from, boolean fromInclusive, Object to, boolean toInclusive,
+        boolean ascending) throws IOException {
+      return index.cursor(from, fromInclusive, to, toInclusive, ascending)::next;
+    }
+
+    @Override
+    public IndexCursor cursor(Object key, long fromPosition) throws IOException {
+      return index.cursor(key, fromPosition)::next;
+    }
+
+    @Override
+    public void commit() throws IOException {
+      index.commit();
+    }
+
+    @Override
+    public void rollback() {
+      index.rollback();
+    }
+
+    @Override
+    public boolean contains(Object key) throws IOException {
+      return index.contains(key);
+    }
+
+    @Override
+    public ByteMultiTrieStat stats() throws IOException {
+      return index.stats();
+    }
+
+    @Override
+    public void drop() throws IOException {
+      index.drop();
+    }
+
+    @Override
+    public DataType<?> keyDataType() {
+      return keyType;
+    }
+  }
+
+  public static class CompositeTableMultiIndex extends BTreeTableMultiIndex {
+
+    private final ImmutableList<BasicColumn> columns;
+
+    public CompositeTableMultiIndex(BPlusTree index, ImmutableList<BasicColumn> columns) {
+      super(index, CompositeKey.TYPE);
+      this.columns = columns;
+    }
+
+    public ImmutableList<BasicColumn> getColumns() {
+      return columns;
+    }
+
+    /**
+     * The key of a record with the values of <code>activeColumns</code>.
+     */
+    public CompositeKey key(Object[] values, ImmutableList<BasicColumn> activeColumns) {
+      Object[] keyValues = new Object[columns.size()];
+      for (int i = 0; i < keyValues.length; i++) {
+        keyValues[i] = values[activeColumns.indexOf(columns.get(i))];
+      }
+      return CompositeKey.of(Arrays.asList(keyValues));
+    }
+  }
+
+  public static class BitmapTableMultiIndex extends TableMultiIndex implements BitmapIndexReader {
+
+    private final BitmapIndex index;
+    private final DataType<?> keyType;
+
+    public BitmapTableMultiIndex(BitmapIndex index, DataType<?> keyType) {
+      this.index = index;
+      this.keyType = keyType;
+    }
+
+    @Override
+    public void put(Object key, long fileIndex) throws IOException, IndexException {
+      index.put(key, fileIndex);
+    }
+
+    @Override
+    public boolean delete(Object key) throws IOException {
+      return index.delete(key);
+    }
+
+    @Override
+    public byte[] sortKey(Object key) {
+      return index.sortKey(key);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries) throws IOException, IndexException {
+      index.bulkLoad(sortedEntries);
+    }
+
+    @Override
+    public boolean delete(Object key, long fileIndex) throws IOException {
+      return index.delete(key, fileIndex);
+    }
+
+    @Override
+    public long[] get(Object key) throws IOException {
+      return index.get(key);
+    }
+
+    @Override
+    public PositionBitmap bitmap(Object key) throws IOException {
+      return index.bitmap(key);
+    }
+
+    @Override
+    public PositionBitmap all() throws IOException {
+      return index.all();
+    }
+
+    @Override
+    public PositionBitmap range(Object from, boolean fromInclusive, Object to, boolean toInclusive)
+        throws IOException {
+      return index.range(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public void commit() throws IOException {
+      index.commit();
+    }
+
+    @Override
+    public void rollback() {
+      index.rollback();
+    }
+
+    @Override
+    public boolean contains(Object key) throws IOException {
+      return index.contains(key);
+    }
+
+    @Override
+    public ByteMultiTrieStat stats() throws IOException {
+      return index.stats();
+    }
+
+    @Override
+    public void drop() throws IOException {
+      index.drop();
+    }
+
+    @Override
+    public DataType<?> keyDataType() {
+      return keyType;
+    }
+  }
 }
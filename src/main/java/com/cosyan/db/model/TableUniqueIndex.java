@@ -16,6 +16,8 @@
 package com.cosyan.db.model;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
 
 import com.cosyan.db.index.ByteTrie.IndexException;
 import com.cosyan.db.index.ByteTrie.LongIndex;
@@ -25,6 +27,9 @@ import com.cosyan.db.index.IndexStat.ByteTrieStat;
 import com.cosyan.db.io.Indexes.IndexReader;
 import com.cosyan.db.io.Indexes.IndexWriter;
 import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
 
 public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
 
@@ -34,6 +39,14 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
 
   public abstract long get0(Object key) throws IOException;
 
+  /**
+   * Points an existing key to the new file index of its record.
+   */
+  public void remap(Object key, long fileIndex) throws IOException, IndexException {
+    delete(key);
+    put(key, fileIndex);
+  }
+
   public abstract void commit() throws IOException;
 
   public abstract void rollback();
@@ -70,6 +83,21 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       return index.delete((Long) key);
     }
 
+    @Override
+    public void remap(Object key, long fileIndex) throws IOException {
+      index.replace((Long) key, fileIndex);
+    }
+
+    @Override
+    public byte[] sortKey(Object key) {
+      return index.sortKey((Long) key);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries) throws IOException, IndexException {
+      index.bulkLoad(Iterators.transform(sortedEntries, e -> Maps.immutableEntry((Long) e.getKey(), e.getValue())));
+    }
+
     @Override
     public long[] get(Object key) throws IOException {
       long filePointer = get0(key);
@@ -139,6 +167,21 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       return index.delete((String) key);
     }
 
+    @Override
+    public void remap(Object key, long fileIndex) throws IOException {
+      index.replace((String) key, fileIndex);
+    }
+
+    @Override
+    public byte[] sortKey(Object key) {
+      return index.sortKey((String) key);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries) throws IOException, IndexException {
+      index.bulkLoad(Iterators.transform(sortedEntries, e -> Maps.immutableEntry((String) e.getKey(), e.getValue())));
+    }
+
     @Override
     public long[] get(Object key) throws IOException {
       long filePointer = get0(key);
@@ -208,6 +251,19 @@ public abstract class TableUniqueIndex implements IndexReader, IndexWriter {
       return index.delete((Long) key);
     }
 
+    @Override
+    public byte[] sortKey(Object key) {
+      return Longs.toByteArray((Long) key);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Object, Long>> sortedEntries) throws IOException, IndexException {
+      while (sortedEntries.hasNext()) {
+        Map.Entry<Object, Long> entry = sortedEntries.next();
+        index.put((Long) entry.getKey(), entry.getValue());
+      }
+    }
+
     @Override
     public long[] get(Object key) throws IOException {
       long filePointer = get0(key);
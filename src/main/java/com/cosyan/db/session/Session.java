@@ -17,14 +17,20 @@ package com.cosyan.db.session;
 
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.auth.Authenticator.AuthException;
+import com.cosyan.db.conf.Config;
 import com.cosyan.db.conf.Config.ConfigException;
 import com.cosyan.db.lang.expr.Statements.MetaStatement;
+import com.cosyan.db.lang.expr.Statements.Statement;
+import com.cosyan.db.lang.sql.CursorStatements.CursorStatement;
+import com.cosyan.db.lang.sql.CursorStatements.Cursors;
 import com.cosyan.db.lang.sql.Tokens.Token;
 import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.ResultSink;
 import com.cosyan.db.logging.TransactionJournal;
 import com.cosyan.db.meta.MetaRepo;
 import com.cosyan.db.session.IParser.ParserException;
+import com.cosyan.db.transaction.DataTransaction;
 import com.cosyan.db.transaction.Transaction;
 import com.cosyan.db.transaction.TransactionHandler;
 import com.google.common.collect.PeekingIterator;
@@ -38,6 +44,7 @@ public class Session {
   private final TransactionHandler transactionHandler;
   private final TransactionJournal transactionJournal;
   private final AuthToken authToken;
+  private Cursors cursors;
 
   private Transaction lastTransaction = null;
 
@@ -60,13 +67,39 @@ public class Session {
     }
   }
 
+  public Result execute(String sql, ResultSink sink) {
+    try {
+      Transaction transaction = transaction(sql);
+      if (transaction instanceof DataTransaction) {
+        ((DataTransaction) transaction).setResultSink(sink);
+      }
+      return execute(transaction);
+    } catch (ParserException | ConfigException e) {
+      return new ErrorResult(e);
+    }
+  }
+
+  public Result execute(MetaStatement stmt) {
+    try {
+      return execute(transactionHandler.begin(stmt, metaRepo.config()));
+    } catch (ConfigException e) {
+      return new ErrorResult(e);
+    }
+  }
+
   private Transaction transaction(String sql) throws ConfigException, ParserException {
     PeekingIterator<Token> tokens = lexer.tokenize(sql);
     if (parser.isMeta(tokens)) {
       MetaStatement stmt = parser.parseMetaStatement(tokens);
       return transactionHandler.begin(stmt, metaRepo.config());
     } else {
-      return transactionHandler.begin(parser.parseStatements(tokens), metaRepo.config());
+      Iterable<Statement> statements = parser.parseStatements(tokens);
+      for (Statement statement : statements) {
+        if (statement instanceof CursorStatement) {
+          ((CursorStatement) statement).setCursors(cursors());
+        }
+      }
+      return transactionHandler.begin(statements, metaRepo.config());
     }
   }
 
@@ -92,6 +125,20 @@ public class Session {
     }
   }
 
+  /**
+   * Closes all the cursors of the session.
+   */
+  public synchronized void closeCursors() {
+    cursors = null;
+  }
+
+  private synchronized Cursors cursors() throws ConfigException {
+    if (cursors == null) {
+      cursors = new Cursors(metaRepo.config().getInt(Config.CURSOR_IDLE_TIMEOUT_MS, 600000));
+    }
+    return cursors;
+  }
+
   public AuthToken authToken() {
     return authToken;
   }
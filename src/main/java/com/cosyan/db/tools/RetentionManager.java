@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.tools;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.cosyan.db.conf.Config;
+import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.lang.sql.AlterStatementPartitions.AlterTableDropExpiredPartitions;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MetaRepo;
+import com.cosyan.db.model.Ident;
+import com.cosyan.db.session.Session;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Periodically deletes the expired records of the tables with retention. Tables with
+ * retention are partitioned by day, expiring a table drops its partitions older than
+ * the retention period.
+ * 
+ * @author gsvigruha
+ */
+public class RetentionManager {
+
+  private final MetaRepo metaRepo;
+  private final Supplier<Session> sessions;
+  private final ScheduledExecutorService executor;
+
+  public RetentionManager(Config config, MetaRepo metaRepo, Supplier<Session> sessions)
+      throws ConfigException {
+    this.metaRepo = metaRepo;
+    this.sessions = sessions;
+    int interval = config.getInt(Config.RETENTION_CHECK_INTERVAL_SEC, 3600);
+    if (interval > 0) {
+      executor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("retention-%d").setDaemon(true).build());
+      executor.scheduleWithFixedDelay(
+          () -> expire(System.currentTimeMillis()), interval, interval, TimeUnit.SECONDS);
+    } else {
+      executor = null;
+    }
+  }
+
+  /**
+   * Expires every table with retention as of <code>now</code> and returns the number
+   * of deleted records per table. Tables failing to expire are retried on the next check.
+   */
+  public synchronized ImmutableMap<String, Long> expire(long now) {
+    Session session = sessions.get();
+    ImmutableList.Builder<String> tables = ImmutableList.builder();
+    metaRepo.metaRepoReadLock();
+    try {
+      for (MaterializedTable table : metaRepo.getTables(session.authToken()).values()) {
+        if (table.retention().isPresent()) {
+          tables.add(table.tableName());
+        }
+      }
+    } finally {
+      metaRepo.metaRepoReadUnlock();
+    }
+
+    ImmutableMap.Builder<String, Long> deleted = ImmutableMap.builder();
+    for (String table : tables.build()) {
+      Result result = session.execute(new AlterTableDropExpiredPartitions(new Ident(table), now));
+      if (result instanceof StatementResult) {
+        deleted.put(table, ((StatementResult) result).getAffectedLines());
+      }
+    }
+    return deleted.build();
+  }
+
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -60,11 +60,12 @@ public class AlterTransaction extends Transaction {
     } catch (GrantException e) {
       return new ErrorResult(e);
     }
+    Resources resources = null;
     try {
       lock(metaResources, metaRepo);
       journal.start(trxNumber);
       Result result;
-      Resources resources = metaRepo.resources(metaResources);
+      resources = metaRepo.resources(metaResources);
       try {
         result = alterStatement.executeData(metaRepo, resources);
       } catch (RuleException e) {
@@ -85,12 +86,17 @@ public class AlterTransaction extends Transaction {
         return result;
       } catch (IOException e) {
         // Need to restore db;
+        resources.rollback();
         journal.ioWriteError(trxNumber);
         e.printStackTrace();
         return new CrashResult(e);
       }
     } catch (Throwable e) {
       // Unspecified error, need to restore db;
+      if (resources != null) {
+        // Pending changes must not be seen by later transactions.
+        resources.rollback();
+      }
       try {
         journal.crash(trxNumber);
       } catch (DBException e1) {
@@ -26,6 +26,7 @@ import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.CrashResult;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
 import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.lang.transaction.ResultSink;
 import com.cosyan.db.logging.MetaJournal.DBException;
 import com.cosyan.db.logging.TransactionJournal;
 import com.cosyan.db.meta.Grants.GrantException;
@@ -38,6 +39,7 @@ import com.google.common.collect.ImmutableList;
 
 public class DataTransaction extends Transaction {
   private final ImmutableList<Statement> statements;
+  private ResultSink sink = null;
 
   public DataTransaction(long trxNumber, Iterable<Statement> statements, Config config) throws ConfigException {
     super(trxNumber, config.getInt(Config.TR_RETRY_MS));
@@ -48,6 +50,14 @@ public class DataTransaction extends Transaction {
     return statements;
   }
 
+  /**
+   * Query results are written to the sink while the transaction holds its locks
+   * instead of being collected in the returned result.
+   */
+  public void setResultSink(ResultSink sink) {
+    this.sink = sink;
+  }
+
   protected MetaResources collectResources(MetaRepo metaRepo) throws ModelException {
     MetaResources metaResources = MetaResources.empty();
     for (Statement statement : statements) {
@@ -59,7 +69,11 @@ public class DataTransaction extends Transaction {
   protected Result execute(MetaRepo metaRepo, Resources resources) throws RuleException, IOException {
     List<Result> results = new ArrayList<>();
     for (Statement statement : statements) {
-      results.add(statement.execute(resources));
+      if (sink == null) {
+        results.add(statement.execute(resources));
+      } else {
+        results.add(statement.execute(resources, sink));
+      }
     }
     return new TransactionResult(results);
   }
@@ -91,11 +105,12 @@ public class DataTransaction extends Transaction {
     } catch (GrantException e) {
       return new ErrorResult(e);
     }
+    Resources resources = null;
     try {
       lock(metaResources, metaRepo);
       journal.start(trxNumber);
       Result result;
-      Resources resources = metaRepo.resources(metaResources);
+      resources = metaRepo.resources(metaResources);
       try {
         result = execute(metaRepo, resources);
       } catch (RuleException e) {
@@ -114,12 +129,17 @@ public class DataTransaction extends Transaction {
       } catch (IOException e) {
         // Need to restore db;
         e.printStackTrace();
+        resources.rollback();
         journal.ioWriteError(trxNumber);
         return new CrashResult(e);
       }
     } catch (Throwable e) {
       // Unspecified error, need to restore db;
       e.printStackTrace();
+      if (resources != null) {
+        // Pending changes must not be seen by later transactions.
+        resources.rollback();
+      }
       try {
         journal.crash(trxNumber);
       } catch (DBException e1) {
@@ -15,11 +15,17 @@
  */
 package com.cosyan.ui;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
@@ -30,10 +36,17 @@ import org.json.JSONObject;
 
 import com.cosyan.db.DBApi;
 import com.cosyan.db.DBApi.Task;
+import com.cosyan.db.DBExecutor;
+import com.cosyan.db.DBExecutor.OverloadException;
+import com.cosyan.db.DBExecutor.Priority;
 import com.cosyan.db.auth.AuthToken;
 import com.cosyan.db.auth.Authenticator;
 import com.cosyan.db.auth.Authenticator.AuthException;
+import com.cosyan.db.conf.Config;
 import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.io.ResultSerializer;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
 import com.cosyan.db.session.Session;
 import com.google.common.collect.ImmutableMap;
 
@@ -44,38 +57,149 @@ public class SessionHandler {
     JSONObject apply(Session session);
   }
 
-  private final Map<String, AuthToken> tokens;
+  @FunctionalInterface
+  public interface ResultFunction {
+    Result apply(Session session);
+  }
+
+  @FunctionalInterface
+  public interface StreamingFunction {
+    JSONObject apply(Session session, PrintWriter pw);
+  }
+
+  // Small responses are not worth compressing.
+  private static final int GZIP_MIN_SIZE = 64 * 1024;
+
+  private static class SessionEntry {
+    private final Session session;
+    private volatile long lastAccess;
+
+    private SessionEntry(Session session) {
+      this.session = session;
+      this.lastAccess = System.currentTimeMillis();
+    }
+  }
+
+  private static class SessionPool {
+    private final ConcurrentLinkedQueue<Session> sessions = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() traverses the queue.
+    private final AtomicInteger size = new AtomicInteger();
+
+    private Session poll() {
+      Session session = sessions.poll();
+      if (session != null) {
+        size.decrementAndGet();
+      }
+      return session;
+    }
+
+    private void offer(Session session, int maxSize) {
+      if (size.incrementAndGet() > maxSize) {
+        size.decrementAndGet();
+        return;
+      }
+      sessions.add(session);
+    }
+
+    private void clear() {
+      while (poll() != null) {
+      }
+    }
+  }
+
+  private final ConcurrentHashMap<String, AuthToken> tokens;
   private final DBApi dbApi;
-  private final Map<String, Session> sessions;
+  private final ConcurrentHashMap<String, SessionEntry> sessions;
+  // Idle sessions of requests without a session id, reused per token. Without authentication
+  // sessions do not depend on the token, so there is only one pool.
+  private final ConcurrentHashMap<String, SessionPool> pooledSessions;
+  private final boolean auth;
+  private final int maxPooledSessions;
+  private final long sessionIdleTimeoutMs;
+  private final AtomicLong lastExpiry;
 
   public SessionHandler(DBApi dbApi) throws ConfigException {
     this.dbApi = dbApi;
-    this.sessions = new HashMap<>();
-    this.tokens = new HashMap<>();
+    this.sessions = new ConcurrentHashMap<>();
+    this.tokens = new ConcurrentHashMap<>();
+    this.pooledSessions = new ConcurrentHashMap<>();
+    this.auth = dbApi.config().auth();
+    this.maxPooledSessions = dbApi.config().getInt(Config.DB_NUM_THREADS);
+    this.sessionIdleTimeoutMs = dbApi.config().getInt(Config.SESSION_IDLE_TIMEOUT_MS, 30 * 60 * 1000);
+    this.lastExpiry = new AtomicLong(System.currentTimeMillis());
   }
 
   private Session getSession(HttpServletRequest req) throws NoSessionExpression, ConfigException {
     String sessionId = req.getParameter("session");
     String token = req.getParameter("token");
     if (sessionId == null) {
-      return session(token);
+      return borrowSession(token);
     } else {
       return getSession(token, sessionId);
     }
   }
 
   private Session getSession(String token, String sessionId) throws NoSessionExpression {
-    Session session = sessions.get(sessionId);
-    if (session == null) {
+    SessionEntry entry = sessionId == null ? null : sessions.get(sessionId);
+    if (entry == null) {
       throw new NoSessionExpression("Invalid session.");
     }
-    if (!Objects.equals(session.authToken().token(), token)) {
+    if (!Objects.equals(entry.session.authToken().token(), token)) {
       throw new NoSessionExpression("Token mismatch.");
     }
-    return session;
+    entry.lastAccess = System.currentTimeMillis();
+    return entry.session;
   }
 
-  public synchronized void cancel(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+  private String poolKey(String token) {
+    return auth ? token : "";
+  }
+
+  private Session borrowSession(String token) throws NoSessionExpression, ConfigException {
+    if (auth && (token == null || !tokens.containsKey(token))) {
+      throw new NoSessionExpression("Invalid token.");
+    }
+    SessionPool pool = pooledSessions.get(poolKey(token));
+    Session session = pool == null ? null : pool.poll();
+    return session != null ? session : session(token);
+  }
+
+  private void releaseSession(HttpServletRequest req, Session session) {
+    if (req.getParameter("session") != null) {
+      return;
+    }
+    String token = req.getParameter("token");
+    if (auth && token == null) {
+      return;
+    }
+    // Cursors are bound to a session id, they must not be visible to other requests.
+    session.closeCursors();
+    // The token is checked under compute, so a concurrent logout either sees this session
+    // in the pool or the pool is not recreated.
+    pooledSessions.compute(poolKey(token), (key, pool) -> {
+      if (auth && !tokens.containsKey(token)) {
+        // Logged out in the meantime.
+        return pool;
+      }
+      if (pool == null) {
+        pool = new SessionPool();
+      }
+      pool.offer(session, maxPooledSessions);
+      return pool;
+    });
+  }
+
+  private void expireSessions() {
+    long now = System.currentTimeMillis();
+    long last = lastExpiry.get();
+    // Check at most once a minute.
+    if (now - last < 60 * 1000 || !lastExpiry.compareAndSet(last, now)) {
+      return;
+    }
+    sessions.values().removeIf(entry -> now - entry.lastAccess > sessionIdleTimeoutMs);
+  }
+
+  public void cancel(HttpServletRequest req, HttpServletResponse resp) throws IOException {
     PrintWriter pw = resp.getWriter();
     try {
       Session session = getSession(req.getParameter("token"), req.getParameter("session"));
@@ -89,13 +213,14 @@ public class SessionHandler {
     }
   }
 
-  public synchronized void execute(HttpServletRequest req, HttpServletResponse resp, CheckedFunction func) throws IOException {
+  public void execute(HttpServletRequest req, HttpServletResponse resp, CheckedFunction func) throws IOException {
     AsyncContext async = req.startAsync(req, resp);
     async.setTimeout(0);
     PrintWriter pw = resp.getWriter();
     try {
       Session session = getSession(req);
-      dbApi.execute(new Task(session) {
+      Priority priority = DBExecutor.priority(req.getParameter("priority"));
+      dbApi.execute(DBExecutor.lane(req.getParameter("sql")), priority, new Task(session) {
 
         @Override
         public void run(Session session) {
@@ -108,6 +233,7 @@ public class SessionHandler {
             }
             pw.write(result.toString());
           } finally {
+            releaseSession(req, session);
             async.complete();
             pw.close();
           }
@@ -116,13 +242,126 @@ public class SessionHandler {
     } catch (NoSessionExpression e) {
       resp.setStatus(HttpStatus.UNAUTHORIZED_401);
       pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
+      async.complete();
     } catch (ConfigException e) {
       resp.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
       pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
+      async.complete();
+    } catch (OverloadException e) {
+      overloaded(resp, e);
+      pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
+      async.complete();
     }
   }
 
-  public synchronized String login(String username, String password, String method)
+  public void stream(HttpServletRequest req, HttpServletResponse resp, String contentType,
+      StreamingFunction func) throws IOException {
+    AsyncContext async = req.startAsync(req, resp);
+    async.setTimeout(0);
+    PrintWriter pw = resp.getWriter();
+    try {
+      Session session = getSession(req);
+      Priority priority = DBExecutor.priority(req.getParameter("priority"));
+      dbApi.execute(DBExecutor.lane(req.getParameter("sql")), priority, new Task(session) {
+
+        @Override
+        public void run(Session session) {
+          try {
+            // The status cannot change once the first rows are sent, errors after that
+            // are only reported in the last line.
+            resp.setStatus(HttpStatus.OK_200);
+            resp.setContentType(contentType);
+            JSONObject result = func.apply(session, pw);
+            if (result.has("error") && !resp.isCommitted()) {
+              resp.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            }
+            pw.println(result.toString());
+          } finally {
+            releaseSession(req, session);
+            async.complete();
+            pw.close();
+          }
+        }
+      });
+    } catch (NoSessionExpression e) {
+      resp.setStatus(HttpStatus.UNAUTHORIZED_401);
+      pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
+      async.complete();
+    } catch (ConfigException e) {
+      resp.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
+      pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
+      async.complete();
+    } catch (OverloadException e) {
+      overloaded(resp, e);
+      pw.println(new JSONObject(ImmutableMap.of("error", new JSONObject(ImmutableMap.of("msg", e.getMessage())))));
+      async.complete();
+    }
+  }
+
+  public void executeBinary(HttpServletRequest req, HttpServletResponse resp, ResultFunction func)
+      throws IOException {
+    AsyncContext async = req.startAsync(req, resp);
+    async.setTimeout(0);
+    boolean gzip = Optional.ofNullable(req.getHeader("Accept-Encoding")).orElse("").contains("gzip");
+    resp.setContentType(ResultSerializer.CONTENT_TYPE);
+    try {
+      Session session = getSession(req);
+      Priority priority = DBExecutor.priority(req.getParameter("priority"));
+      dbApi.execute(DBExecutor.lane(req.getParameter("sql")), priority, new Task(session) {
+
+        @Override
+        public void run(Session session) {
+          try {
+            Result result = func.apply(session);
+            writeBinary(resp, result.isSuccess() ? HttpStatus.OK_200 : HttpStatus.INTERNAL_SERVER_ERROR_500,
+                result, gzip);
+          } catch (IOException e) {
+            // Client went away.
+          } finally {
+            releaseSession(req, session);
+            async.complete();
+          }
+        }
+      });
+    } catch (NoSessionExpression e) {
+      writeBinary(resp, HttpStatus.UNAUTHORIZED_401, new ErrorResult(e), false);
+      async.complete();
+    } catch (ConfigException e) {
+      writeBinary(resp, HttpStatus.INTERNAL_SERVER_ERROR_500, new ErrorResult(e), false);
+      async.complete();
+    } catch (OverloadException e) {
+      overloaded(resp, e);
+      writeBinary(resp, HttpStatus.SERVICE_UNAVAILABLE_503, new ErrorResult(e), false);
+      async.complete();
+    }
+  }
+
+  private void overloaded(HttpServletResponse resp, OverloadException e) {
+    resp.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+    resp.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+  }
+
+  public DBApi dbApi() {
+    return dbApi;
+  }
+
+  private void writeBinary(HttpServletResponse resp, int status, Result result, boolean gzip)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ResultSerializer.encode(result, bytes);
+    resp.setStatus(status);
+    OutputStream out = resp.getOutputStream();
+    if (gzip && bytes.size() >= GZIP_MIN_SIZE) {
+      resp.setHeader("Content-Encoding", "gzip");
+      out = new GZIPOutputStream(out);
+    } else {
+      resp.setContentLength(bytes.size());
+    }
+    bytes.writeTo(out);
+    out.close();
+  }
+
+  public String login(String username, String password, String method)
       throws AuthException, ConfigException, NoSessionExpression {
     if (dbApi.config().auth()) {
       AuthToken token = dbApi.authenticator().auth(username, password, Authenticator.Method.valueOf(method));
@@ -132,32 +371,39 @@ public class SessionHandler {
     throw new NoSessionExpression("Login not enabled.");
   }
 
-  public synchronized void logout(String token) throws NoSessionExpression, ConfigException {
+  public void logout(String token) throws NoSessionExpression, ConfigException {
     if (dbApi.config().auth()) {
-      if (tokens.containsKey(token)) {
+      if (token != null && tokens.containsKey(token)) {
         tokens.remove(token);
-        sessions.entrySet().removeIf(e -> e.getValue().authToken().token().equals(token));
+        sessions.values().removeIf(e -> e.session.authToken().token().equals(token));
+        pooledSessions.compute(token, (key, pool) -> {
+          if (pool != null) {
+            pool.clear();
+          }
+          return null;
+        });
         return;
       }
     }
     throw new NoSessionExpression("Logout not enabled or invalid token.");
   }
 
-  public synchronized String createSession(String token) throws NoSessionExpression, ConfigException {
+  public String createSession(String token) throws NoSessionExpression, ConfigException {
+    expireSessions();
     String sessionId = dbApi.authenticator().token();
-    sessions.put(sessionId, session(token));
+    sessions.put(sessionId, new SessionEntry(session(token)));
     return sessionId;
   }
 
-  public synchronized void closeSession(String token, String sessionId) throws NoSessionExpression, ConfigException {
+  public void closeSession(String token, String sessionId) throws NoSessionExpression, ConfigException {
     getSession(token, sessionId);
     sessions.remove(sessionId);
   }
 
-  public synchronized Session session(String token) throws NoSessionExpression, ConfigException {
+  public Session session(String token) throws NoSessionExpression, ConfigException {
     if (!dbApi.config().auth()) {
       return dbApi.newAdminSession(token);
-    } else if (tokens.containsKey(token)) {
+    } else if (token != null && tokens.containsKey(token)) {
       return dbApi.authSession(tokens.get(token));
     }
     throw new NoSessionExpression("Invalid token.");
@@ -39,6 +39,7 @@ import com.cosyan.ui.entity.EntityLoadServlet;
 import com.cosyan.ui.entity.EntityMetaServlet;
 import com.cosyan.ui.sql.SQLServlets.CancelServlet;
 import com.cosyan.ui.sql.SQLServlets.SQLServlet;
+import com.cosyan.ui.tcp.TCPServer;
 
 public class WebServer {
   public static void main(String[] args) throws Exception {
@@ -78,6 +79,9 @@ public class WebServer {
     handlers.setHandlers(new Handler[] { resourceHandler, handler });
 
     server.setHandler(handlers);
+    if (config.get(Config.TCP_PORT) != null) {
+      new TCPServer(dbApi, config.getInt(Config.TCP_PORT)).start();
+    }
     server.start();
     server.join();
   }
@@ -23,6 +23,8 @@ import java.util.Map.Entry;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.cosyan.db.DBExecutor.Lane;
+import com.cosyan.db.DBExecutor.LaneStat;
 import com.cosyan.db.auth.Authenticator.AuthException;
 import com.cosyan.db.conf.Config.ConfigException;
 import com.cosyan.db.index.IndexStat.ByteMultiTrieStat;
@@ -61,6 +63,8 @@ public class SystemMonitoring {
           JSONObject table = new JSONObject();
           table.put("name", entry.getKey());
           table.put("fileSize", entry.getValue().getFileSize());
+          table.put("cacheHitRatio", entry.getValue().getCacheHitRatio());
+          table.put("cacheEvictions", entry.getValue().getCacheEvictions());
           tables.put(table);
         }
         obj.put("tables", tables);
@@ -73,6 +77,8 @@ public class SystemMonitoring {
           index.put("indexFileSize", entry.getValue().getIndexFileSize());
           index.put("inMemNodes", entry.getValue().getInMemNodes());
           index.put("pendingNodes", entry.getValue().getPendingNodes());
+          index.put("cacheHitRatio", entry.getValue().getCacheHitRatio());
+          index.put("cacheEvictions", entry.getValue().getCacheEvictions());
           uniqueIndexes.put(index);
         }
         obj.put("uniqueIndexes", uniqueIndexes);
@@ -87,10 +93,27 @@ public class SystemMonitoring {
           index.put("trieInMemNodes", entry.getValue().getTrieInMemNodes());
           index.put("triePendingNodes", entry.getValue().getTriePendingNodes());
           index.put("pendingNodes", entry.getValue().getPendingNodes());
+          index.put("cacheHitRatio", entry.getValue().getCacheHitRatio());
+          index.put("cacheEvictions", entry.getValue().getCacheEvictions());
           multiIndexes.put(index);
         }
         obj.put("multiIndexes", multiIndexes);
       }
+      {
+        JSONArray lanes = new JSONArray();
+        for (Entry<Lane, LaneStat> entry : sessionHandler.dbApi().executorStats().entrySet()) {
+          JSONObject lane = new JSONObject();
+          lane.put("name", entry.getKey().name().toLowerCase());
+          lane.put("threads", entry.getValue().getThreads());
+          lane.put("active", entry.getValue().getActive());
+          lane.put("queued", entry.getValue().getQueued());
+          lane.put("capacity", entry.getValue().getCapacity());
+          lane.put("completed", entry.getValue().getCompleted());
+          lane.put("rejected", entry.getValue().getRejected());
+          lanes.put(lane);
+        }
+        obj.put("executor", lanes);
+      }
       return obj;
     } finally {
       metaRepo.metaRepoReadUnlock();
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.ui.sql;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.stream.Collectors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.ResultSink;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Writes query results as newline delimited JSON: one header object per query,
+ * one array per row and a closing object with the number of rows.
+ */
+public class NDJSONResultSink implements ResultSink {
+
+  public static final String CONTENT_TYPE = "application/x-ndjson";
+
+  private static final int FLUSH_ROWS = 1000;
+
+  private final PrintWriter pw;
+  private ImmutableList<DataType<?>> types;
+  private int unflushed;
+
+  public NDJSONResultSink(PrintWriter pw) {
+    this.pw = pw;
+  }
+
+  @Override
+  public void header(ImmutableList<String> header, ImmutableList<DataType<?>> types) throws IOException {
+    this.types = types;
+    JSONObject obj = new JSONObject();
+    obj.put("type", "header");
+    obj.put("header", header);
+    obj.put("types", types.stream().map(t -> t.toJSON()).collect(Collectors.toList()));
+    pw.println(obj.toString());
+    flush();
+  }
+
+  @Override
+  public void row(Object[] values) throws IOException {
+    pw.println(new JSONArray(QueryResult.prettyPrintToList(values, types)).toString());
+    if (++unflushed >= FLUSH_ROWS) {
+      flush();
+    }
+  }
+
+  @Override
+  public void end(long lines) throws IOException {
+    JSONObject obj = new JSONObject();
+    obj.put("type", "end");
+    obj.put("lines", lines);
+    pw.println(obj.toString());
+    flush();
+  }
+
+  private void flush() throws IOException {
+    pw.flush();
+    unflushed = 0;
+    if (pw.checkError()) {
+      // The client went away, abort the query.
+      throw new IOException("Client disconnected.");
+    }
+  }
+}
@@ -16,12 +16,14 @@
 package com.cosyan.ui.sql;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.cosyan.db.io.ResultSerializer;
 import com.cosyan.db.session.Session;
 import com.cosyan.ui.SessionHandler;
 
@@ -38,10 +40,33 @@ public class SQLServlets {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException {
-      sessionHandler.execute(req, resp, (Session session) -> {
-        String sql = req.getParameter("sql");
-        return session.execute(sql).toJSON();
-      });
+      if (streaming(req)) {
+        sessionHandler.stream(req, resp, NDJSONResultSink.CONTENT_TYPE, (Session session, PrintWriter pw) -> {
+          String sql = req.getParameter("sql");
+          return session.execute(sql, new NDJSONResultSink(pw)).toJSON();
+        });
+      } else if (binary(req)) {
+        sessionHandler.executeBinary(req, resp, (Session session) -> {
+          String sql = req.getParameter("sql");
+          return session.execute(sql);
+        });
+      } else {
+        sessionHandler.execute(req, resp, (Session session) -> {
+          String sql = req.getParameter("sql");
+          return session.execute(sql).toJSON();
+        });
+      }
+    }
+
+    private boolean binary(HttpServletRequest req) {
+      String accept = req.getHeader("Accept");
+      return accept != null && accept.contains(ResultSerializer.CONTENT_TYPE);
+    }
+
+    private boolean streaming(HttpServletRequest req) {
+      String accept = req.getHeader("Accept");
+      return "ndjson".equals(req.getParameter("format"))
+          || (accept != null && accept.contains(NDJSONResultSink.CONTENT_TYPE));
     }
   }
 
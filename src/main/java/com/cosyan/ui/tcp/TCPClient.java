@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.ui.tcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import com.cosyan.db.io.ResultSerializer;
+import com.cosyan.db.lang.transaction.Result;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Blocking client for <code>TCPServer</code>. Requests can be pipelined by
+ * calling <code>send</code> multiple times before <code>receive</code>.
+ */
+public class TCPClient implements AutoCloseable {
+
+  private final Socket socket;
+  private final DataInputStream input;
+  private final DataOutputStream output;
+
+  public TCPClient(String host, int port) throws IOException {
+    this.socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+  }
+
+  public ImmutableList<Result> login(String username, String password, String method) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream frame = new DataOutputStream(bytes);
+    frame.writeByte(TCPServer.LOGIN);
+    frame.writeUTF(username);
+    frame.writeUTF(password);
+    frame.writeUTF(method);
+    writeFrame(bytes.toByteArray());
+    return receive();
+  }
+
+  public void send(String sql) throws IOException {
+    byte[] sqlBytes = sql.getBytes(StandardCharsets.UTF_8);
+    byte[] frame = new byte[sqlBytes.length + 1];
+    frame[0] = TCPServer.EXECUTE;
+    System.arraycopy(sqlBytes, 0, frame, 1, sqlBytes.length);
+    writeFrame(frame);
+  }
+
+  public ImmutableList<Result> receive() throws IOException {
+    byte[] frame = new byte[input.readInt()];
+    input.readFully(frame);
+    return ResultSerializer.decode(new ByteArrayInputStream(frame));
+  }
+
+  public ImmutableList<Result> execute(String sql) throws IOException {
+    send(sql);
+    return receive();
+  }
+
+  public void cancel() throws IOException {
+    writeFrame(new byte[] { TCPServer.CANCEL });
+  }
+
+  private synchronized void writeFrame(byte[] frame) throws IOException {
+    output.writeInt(frame.length);
+    output.write(frame);
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.ui.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+
+import com.cosyan.db.DBApi;
+import com.cosyan.db.DBExecutor;
+import com.cosyan.db.DBExecutor.Lane;
+import com.cosyan.db.DBExecutor.OverloadException;
+import com.cosyan.db.auth.Authenticator;
+import com.cosyan.db.auth.Authenticator.AuthException;
+import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.io.ResultSerializer;
+import com.cosyan.db.io.ResultSerializer.JSONResult;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.CrashResult;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.session.Session;
+
+/**
+ * Binary protocol over persistent TCP connections, running next to the HTTP
+ * servlets. Every connection has its own <code>Session</code>.
+ * <p>
+ * Both directions use frames: an int length followed by the payload. Requests
+ * start with an opcode byte:
+ * <ul>
+ * <li><code>LOGIN</code>: username, password and method as modified UTF-8
+ * strings, only needed if authentication is enabled.</li>
+ * <li><code>EXECUTE</code>: the SQL as UTF-8 bytes.</li>
+ * <li><code>CANCEL</code>: cancels the running statement, has no response.</li>
+ * </ul>
+ * Responses are <code>ResultSerializer</code> encoded results. Requests can be
+ * pipelined, they are executed one after another and answered in order. The
+ * server stops reading from a connection with too many unanswered requests.
+ */
+public class TCPServer implements Runnable {
+
+  public static final byte LOGIN = 1;
+  public static final byte EXECUTE = 2;
+  public static final byte CANCEL = 3;
+
+  private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+  // Requests received but not answered yet, per connection.
+  private static final int MAX_PENDING_REQUESTS = 64;
+
+  private final DBApi dbApi;
+  private final Selector selector;
+  private final ServerSocketChannel serverChannel;
+  private final ConcurrentLinkedQueue<Connection> toWrite = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean running = true;
+  private Thread thread;
+
+  public TCPServer(DBApi dbApi, int port) throws IOException {
+    this.dbApi = dbApi;
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(port));
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  public int port() throws IOException {
+    return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+  }
+
+  public void start() {
+    thread = new Thread(this, "cosyan-tcp");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void stop() throws IOException, InterruptedException {
+    running = false;
+    selector.wakeup();
+    thread.join();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        selector.select();
+        Connection connection;
+        while ((connection = toWrite.poll()) != null) {
+          if (connection.key.isValid()) {
+            connection.updateInterestOps();
+          }
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection conn = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) {
+              conn.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+              conn.write();
+            }
+          } catch (IOException e) {
+            conn.close();
+          }
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof Connection) {
+          ((Connection) key.attachment()).close();
+        }
+      }
+      try {
+        serverChannel.close();
+        selector.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    try {
+      if (!dbApi.config().auth()) {
+        connection.session = dbApi.newAdminSession();
+      }
+    } catch (ConfigException e) {
+      connection.close();
+    }
+  }
+
+  private class Connection {
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private volatile Session session;
+
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+    private ByteBuffer body;
+
+    private final ArrayDeque<byte[]> requests = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> responses = new ArrayDeque<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private boolean executing = false;
+
+    private Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    private void read() throws IOException {
+      while (true) {
+        ByteBuffer buffer = body == null ? header : body;
+        int n = channel.read(buffer);
+        if (n < 0) {
+          close();
+          return;
+        }
+        if (buffer.hasRemaining()) {
+          return;
+        }
+        if (body == null) {
+          int size = header.getInt(0);
+          if (size <= 0 || size > MAX_FRAME_SIZE) {
+            throw new IOException(String.format("Invalid frame size %s.", size));
+          }
+          body = ByteBuffer.allocate(size);
+        } else {
+          byte[] frame = body.array();
+          body = null;
+          header.clear();
+          received(frame);
+          if (pending.get() >= MAX_PENDING_REQUESTS) {
+            updateInterestOps();
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Reads only if the connection has room for more requests and writes if there are
+     * responses. Must be called from the selector thread.
+     */
+    private void updateInterestOps() {
+      int ops = pending.get() < MAX_PENDING_REQUESTS ? SelectionKey.OP_READ : 0;
+      synchronized (responses) {
+        if (!responses.isEmpty()) {
+          ops |= SelectionKey.OP_WRITE;
+        }
+      }
+      key.interestOps(ops);
+    }
+
+    private void received(byte[] frame) {
+      if (frame[0] == CANCEL) {
+        // Not queued, it has to reach the running statement.
+        Session session = this.session;
+        if (session != null) {
+          session.cancel();
+        }
+        return;
+      }
+      pending.incrementAndGet();
+      synchronized (this) {
+        requests.add(frame);
+      }
+      schedule();
+    }
+
+    private void schedule() {
+      while (true) {
+        byte[] frame;
+        synchronized (this) {
+          if (executing || requests.isEmpty()) {
+            return;
+          }
+          executing = true;
+          frame = requests.poll();
+        }
+        Lane lane = frame[0] == EXECUTE
+            ? DBExecutor.lane(new String(frame, 1, Math.min(frame.length - 1, 16), StandardCharsets.UTF_8))
+            : Lane.ADMIN;
+        Session session = this.session;
+        String user = session == null ? "" : session.authToken().username();
+        try {
+          dbApi.execute(lane, user, () -> {
+            try {
+              respond(process(frame));
+            } finally {
+              synchronized (this) {
+                executing = false;
+              }
+              schedule();
+            }
+          });
+          return;
+        } catch (OverloadException e) {
+          // Reject this request and try the next one, responses have to stay in order.
+          respond(new ErrorResult(e));
+          synchronized (this) {
+            executing = false;
+          }
+        }
+      }
+    }
+
+    private Result process(byte[] frame) {
+      try {
+        if (frame[0] == LOGIN) {
+          DataInputStream input = new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1));
+          String username = input.readUTF();
+          String password = input.readUTF();
+          String method = input.readUTF();
+          if (dbApi.config().auth()) {
+            session = dbApi.authSession(username, password, Authenticator.Method.valueOf(method));
+          }
+          return new JSONResult(new JSONObject().put("token", session.authToken().token()));
+        } else if (frame[0] == EXECUTE) {
+          Session session = this.session;
+          if (session == null) {
+            return new ErrorResult(new AuthException("Not logged in."));
+          }
+          return session.execute(new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8));
+        } else {
+          return new ErrorResult(new IOException(String.format("Invalid opcode %s.", frame[0])));
+        }
+      } catch (AuthException | ConfigException | IOException | IllegalArgumentException e) {
+        return new ErrorResult(e);
+      } catch (Throwable e) {
+        return new CrashResult(e);
+      }
+    }
+
+    private void respond(Result result) {
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(0);
+        try {
+          ResultSerializer.encode(result, output);
+        } catch (RuntimeException e) {
+          // Every request has to be answered to keep the responses in order.
+          bytes.reset();
+          output.writeInt(0);
+          ResultSerializer.encode(new CrashResult(e), output);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, buffer.capacity() - 4);
+        synchronized (responses) {
+          responses.add(buffer);
+        }
+        toWrite.add(this);
+        selector.wakeup();
+      } catch (IOException e) {
+        close();
+      }
+    }
+
+    private void write() throws IOException {
+      synchronized (responses) {
+        while (!responses.isEmpty()) {
+          ByteBuffer buffer = responses.peek();
+          channel.write(buffer);
+          if (buffer.hasRemaining()) {
+            return;
+          }
+          responses.poll();
+          pending.decrementAndGet();
+        }
+      }
+      updateInterestOps();
+    }
+
+    private void close() {
+      Session session = this.session;
+      if (session != null) {
+        session.cancel();
+      }
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Already closed.
+      }
+    }
+  }
+}
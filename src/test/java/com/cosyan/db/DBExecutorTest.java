@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.cosyan.db.DBExecutor.Lane;
+import com.cosyan.db.DBExecutor.OverloadException;
+import com.cosyan.db.DBExecutor.Priority;
+import com.cosyan.db.conf.Config;
+import com.google.common.collect.ImmutableList;
+
+public class DBExecutorTest {
+
+  @Test
+  public void testLane() {
+    assertEquals(Lane.READ, DBExecutor.lane(" SELECT * from t;"));
+    assertEquals(Lane.READ, DBExecutor.lane("fetch 10 from c;"));
+    assertEquals(Lane.WRITE, DBExecutor.lane("insert into t values (1);"));
+    assertEquals(Lane.WRITE, DBExecutor.lane("update t set a = 1;"));
+    assertEquals(Lane.ANALYTICS, DBExecutor.lane("export into csv 'x' (select * from t);"));
+    assertEquals(Lane.ADMIN, DBExecutor.lane("create table t (a integer);"));
+    assertEquals(Lane.READ, DBExecutor.lane(null));
+  }
+
+  @Test
+  public void testOverload() throws Exception {
+    File dir = new File("/tmp/executor");
+    FileUtils.forceMkdir(dir);
+    FileUtils.writeStringToFile(new File(dir, "cosyan.db.properties"),
+        "DB_NUM_THREADS=1\nDB_QUEUE_SIZE=4\nAUTH=true\n", "UTF-8");
+    DBExecutor executor = new DBExecutor(new Config(dir.getPath()));
+    CountDownLatch latch = new CountDownLatch(1);
+    Runnable blocked = () -> {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    };
+    // One running, one queued, then the user reaches half of the queue.
+    executor.execute(Lane.READ, "u1", blocked);
+    executor.execute(Lane.READ, "u1", blocked);
+    try {
+      executor.execute(Lane.READ, "u1", blocked);
+      fail();
+    } catch (OverloadException e) {
+      assertEquals(1, e.getRetryAfterSeconds());
+    }
+    // Other users and lanes are not affected.
+    executor.execute(Lane.READ, "u2", blocked);
+    executor.execute(Lane.WRITE, "u1", blocked);
+    assertEquals(1, executor.stats().get(Lane.READ).getRejected());
+    assertEquals(2, executor.stats().get(Lane.READ).getQueued());
+    latch.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testNoUserLimitWithoutAuth() throws Exception {
+    File dir = new File("/tmp/executor_noauth");
+    FileUtils.forceMkdir(dir);
+    FileUtils.writeStringToFile(new File(dir, "cosyan.db.properties"),
+        "DB_NUM_THREADS=1\nDB_QUEUE_SIZE=4\n", "UTF-8");
+    DBExecutor executor = new DBExecutor(new Config(dir.getPath()));
+    CountDownLatch latch = new CountDownLatch(1);
+    Runnable blocked = () -> {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    };
+    // One running and the full queue.
+    for (int i = 0; i < 5; i++) {
+      executor.execute(Lane.READ, "admin", blocked);
+    }
+    try {
+      executor.execute(Lane.READ, "admin", blocked);
+      fail();
+    } catch (OverloadException e) {
+    }
+    assertEquals(4, executor.stats().get(Lane.READ).getQueued());
+    latch.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testPriority() throws Exception {
+    File dir = new File("/tmp/executor_priority");
+    FileUtils.forceMkdir(dir);
+    FileUtils.writeStringToFile(new File(dir, "cosyan.db.properties"),
+        "DB_NUM_THREADS=1\n", "UTF-8");
+    DBExecutor executor = new DBExecutor(new Config(dir.getPath()));
+    CountDownLatch latch = new CountDownLatch(1);
+    executor.execute(Lane.READ, "u1", () -> {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(4);
+    executor.execute(Lane.READ, "u1", Priority.LOW, () -> { order.add("low"); done.countDown(); });
+    executor.execute(Lane.READ, "u1", () -> { order.add("normal1"); done.countDown(); });
+    executor.execute(Lane.READ, "u1", Priority.HIGH, () -> { order.add("high"); done.countDown(); });
+    executor.execute(Lane.READ, "u1", () -> { order.add("normal2"); done.countDown(); });
+    latch.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(ImmutableList.of("high", "normal1", "normal2", "low"), order);
+    assertEquals(Priority.HIGH, DBExecutor.priority("high"));
+    assertEquals(Priority.NORMAL, DBExecutor.priority(null));
+    assertEquals(Priority.NORMAL, DBExecutor.priority("x"));
+    executor.shutdown();
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    File dir = new File("/tmp/executor_virtual");
+    FileUtils.forceMkdir(dir);
+    FileUtils.writeStringToFile(new File(dir, "cosyan.db.properties"),
+        "DB_NUM_THREADS=1000\nDB_VIRTUAL_THREADS=true\n", "UTF-8");
+    DBExecutor executor = new DBExecutor(new Config(dir.getPath()));
+    // Falls back to platform threads on older JVMs.
+    assertEquals(DBExecutor.virtualThreadsSupported(), executor.isVirtual());
+    CountDownLatch latch = new CountDownLatch(100);
+    for (int i = 0; i < 100; i++) {
+      executor.execute(Lane.READ, "u" + i, latch::countDown);
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+}
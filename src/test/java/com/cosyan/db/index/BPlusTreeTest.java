@@ -0,0 +1,236 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.cosyan.db.index.BPlusTree.Cursor;
+import com.cosyan.db.index.ByteTrie.IndexException;
+import com.cosyan.db.model.DataTypes;
+import com.google.common.collect.Maps;
+
+public class BPlusTreeTest {
+
+  private BPlusTree create(String fileName) throws Exception {
+    Files.deleteIfExists(Paths.get(fileName));
+    return new BPlusTree(fileName, DataTypes.LongType);
+  }
+
+  private long[] collect(Cursor cursor) throws Exception {
+    List<Long> result = new ArrayList<>();
+    long position;
+    while ((position = cursor.next()) >= 0) {
+      result.add(position);
+    }
+    return result.stream().mapToLong(l -> l).toArray();
+  }
+
+  @Test
+  public void testPutGetDelete() throws Exception {
+    BPlusTree index = create("/tmp/btree");
+    index.put(1L, 10L);
+    index.put(2L, 20L);
+    index.put(1L, 11L);
+    index.commit();
+    assertArrayEquals(new long[] { 10L, 11L }, index.get(1L));
+    assertArrayEquals(new long[] { 20L }, index.get(2L));
+    assertArrayEquals(new long[0], index.get(3L));
+    assertEquals(true, index.contains(2L));
+    assertEquals(false, index.contains(3L));
+    try {
+      index.put(1L, 10L);
+      fail();
+    } catch (IndexException e) {
+      assertEquals("Key '1' already present in index.", e.getMessage());
+    }
+
+    assertEquals(true, index.delete(1L, 10L));
+    assertEquals(false, index.delete(1L, 10L));
+    assertArrayEquals(new long[] { 11L }, index.get(1L));
+    assertEquals(true, index.delete(2L));
+    assertEquals(false, index.delete(2L));
+    index.commit();
+    assertArrayEquals(new long[] { 11L }, index.get(1L));
+    assertArrayEquals(new long[0], index.get(2L));
+  }
+
+  @Test
+  public void testManyKeys() throws Exception {
+    BPlusTree index = create("/tmp/btree");
+    List<Long> keys = new ArrayList<>();
+    for (long i = 0; i < 10000; i++) {
+      keys.add(i);
+    }
+    Collections.shuffle(keys, new Random(0));
+    for (long key : keys) {
+      index.put(key, key * 10);
+      index.put(key, key * 10 + 1);
+    }
+    index.commit();
+    index.cleanUp();
+    for (long i = 0; i < 10000; i++) {
+      assertArrayEquals(new long[] { i * 10, i * 10 + 1 }, index.get(i));
+    }
+    for (long i = 0; i < 10000; i += 2) {
+      assertEquals(true, index.delete(i));
+    }
+    index.commit();
+    for (long i = 0; i < 10000; i++) {
+      assertEquals(i % 2 == 1, index.contains(i));
+    }
+  }
+
+  @Test
+  public void testCursors() throws Exception {
+    BPlusTree index = create("/tmp/btree");
+    for (long i = 0; i < 3000; i++) {
+      index.put(i, i);
+    }
+    index.commit();
+    assertArrayEquals(new long[] { 5L, 6L, 7L }, index.range(5L, true, 7L, true));
+    assertArrayEquals(new long[] { 6L }, index.range(5L, false, 7L, false));
+    assertArrayEquals(new long[] { 0L, 1L }, index.range(null, true, 2L, false));
+    assertArrayEquals(new long[] { 2998L, 2999L }, index.range(2997L, false, null, true));
+    assertArrayEquals(new long[] { 7L, 6L, 5L }, collect(index.cursor(5L, true, 7L, true, false)));
+    assertArrayEquals(new long[] { 2999L, 2998L }, collect(index.cursor(2998L, true, null, true, false)));
+
+    long[] all = collect(index.cursor(null, true, null, true, true));
+    assertEquals(3000, all.length);
+    for (int i = 0; i < all.length; i++) {
+      assertEquals(i, all[i]);
+    }
+    long[] desc = collect(index.cursor(null, true, null, true, false));
+    assertEquals(3000, desc.length);
+    for (int i = 0; i < desc.length; i++) {
+      assertEquals(2999 - i, desc[i]);
+    }
+
+    // Empty leaves are skipped.
+    for (long i = 1000; i < 2000; i++) {
+      index.delete(i);
+    }
+    assertArrayEquals(new long[] { 999L, 2000L }, index.range(999L, true, 2000L, true));
+    assertArrayEquals(new long[] { 2000L, 999L }, collect(index.cursor(999L, true, 2000L, true, false)));
+  }
+
+  @Test
+  public void testKeyCursorFromPosition() throws Exception {
+    BPlusTree index = create("/tmp/btree_key");
+    for (long i = 0; i < 3000; i++) {
+      index.put(i % 3, i);
+    }
+    index.commit();
+    assertEquals(1000, collect(index.cursor(1L, 0L)).length);
+    assertArrayEquals(new long[] { 2995L, 2998L }, collect(index.cursor(1L, 2994L)));
+    assertArrayEquals(new long[] { 2998L }, collect(index.cursor(1L, 2998L)));
+    assertArrayEquals(new long[0], collect(index.cursor(1L, 2999L)));
+    assertArrayEquals(new long[0], collect(index.cursor(3L, 0L)));
+  }
+
+  @Test
+  public void testRollbackAndReopen() throws Exception {
+    BPlusTree index = create("/tmp/btree");
+    for (long i = 0; i < 1000; i++) {
+      index.put(i, i);
+    }
+    index.commit();
+    for (long i = 1000; i < 2000; i++) {
+      index.put(i, i);
+    }
+    index.delete(1L);
+    index.rollback();
+    assertArrayEquals(new long[] { 1L }, index.get(1L));
+    assertArrayEquals(new long[0], index.get(1500L));
+    assertEquals(1000, index.range(null, true, null, true).length);
+    index.close();
+
+    index = new BPlusTree("/tmp/btree", DataTypes.LongType);
+    assertEquals(1000, index.range(null, true, null, true).length);
+    assertArrayEquals(new long[] { 999L }, index.get(999L));
+  }
+
+  @Test
+  public void testStringKeys() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/btree_string"));
+    BPlusTree index = new BPlusTree("/tmp/btree_string", DataTypes.StringType);
+    for (long i = 0; i < 2000; i++) {
+      index.put("key" + i, i);
+    }
+    index.commit();
+    assertArrayEquals(new long[] { 1L, 10L, 100L, 1000L }, index.range("key1", true, "key1000", true));
+    assertArrayEquals(new long[] { 1999L }, index.get("key1999"));
+    try {
+      index.put(new String(new char[1000]), 1L);
+      fail();
+    } catch (IndexException e) {
+    }
+  }
+
+  @Test
+  public void testBulkLoad() throws Exception {
+    BPlusTree index = create("/tmp/btree_bulk");
+    List<Map.Entry<Object, Long>> entries = new ArrayList<>();
+    for (long i = 0; i < 20000; i++) {
+      entries.add(Maps.immutableEntry(i / 2 - 5000, i));
+    }
+    index.bulkLoad(entries.iterator());
+    index.commit();
+    index.cleanUp();
+    assertArrayEquals(new long[] { 0L, 1L }, index.get(-5000L));
+    assertArrayEquals(new long[] { 19998L, 19999L }, index.get(4999L));
+    assertEquals(20000, index.range(null, true, null, true).length);
+    assertArrayEquals(new long[] { 10001L, 10000L }, collect(index.cursor(0L, true, 0L, true, false)));
+    index.put(0L, 100000L);
+    index.commit();
+    assertArrayEquals(new long[] { 10000L, 10001L, 100000L }, index.get(0L));
+
+    BPlusTree unsorted = create("/tmp/btree_bulk2");
+    try {
+      unsorted.bulkLoad(com.google.common.collect.ImmutableList.<Map.Entry<Object, Long>>of(
+          Maps.immutableEntry(2L, 1L), Maps.immutableEntry(1L, 2L)).iterator());
+      fail();
+    } catch (RuntimeException e) {
+    }
+    assertEquals(0, unsorted.range(null, true, null, true).length);
+  }
+
+  @Test
+  public void testSortKey() throws Exception {
+    BPlusTree index = create("/tmp/btree");
+    long[] values = { Long.MIN_VALUE, -300L, -1L, 0L, 1L, 255L, 256L, Long.MAX_VALUE };
+    for (int i = 1; i < values.length; i++) {
+      assertEquals(true, com.google.common.primitives.SignedBytes.lexicographicalComparator()
+          .compare(index.sortKey(values[i - 1]), index.sortKey(values[i])) < 0);
+    }
+    double[] doubles = { -1e10, -1.5, -0.0, 0.5, 2.0, 1e10 };
+    for (int i = 1; i < doubles.length; i++) {
+      assertEquals(true, com.google.common.primitives.SignedBytes.lexicographicalComparator()
+          .compare(index.sortKey(doubles[i - 1]), index.sortKey(doubles[i])) < 0);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import com.cosyan.db.model.DataTypes;
+
+public class BitmapIndexTest {
+
+  @Test
+  public void testPutDelete() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/bitmapindex#bitmap"));
+    BitmapIndex index = new BitmapIndex("/tmp/bitmapindex#bitmap", DataTypes.StringType);
+    index.put("a", 10L);
+    index.put("b", 20L);
+    index.put("a", 30L);
+    assertArrayEquals(new long[] { 10L, 30L }, index.get("a"));
+    assertArrayEquals(new long[] { 10L, 20L, 30L }, index.all().toArray());
+    index.commit();
+
+    assertTrue(index.delete("a", 10L));
+    assertFalse(index.delete("a", 20L));
+    index.put("c", 40L);
+    assertArrayEquals(new long[] { 30L }, index.get("a"));
+    index.rollback();
+    assertArrayEquals(new long[] { 10L, 30L }, index.get("a"));
+    assertFalse(index.contains("c"));
+    assertArrayEquals(new long[] { 10L, 20L, 30L }, index.all().toArray());
+
+    assertTrue(index.delete("b"));
+    assertFalse(index.contains("b"));
+    index.commit();
+    assertArrayEquals(new long[] { 10L, 30L }, index.all().toArray());
+  }
+
+  @Test
+  public void testReload() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/bitmapindex2#bitmap"));
+    BitmapIndex index = new BitmapIndex("/tmp/bitmapindex2#bitmap", DataTypes.LongType);
+    for (long i = 0; i < 1000; i++) {
+      index.put(i % 3, i * 10);
+    }
+    index.commit();
+    long snapshotSize = new File("/tmp/bitmapindex2#bitmap").length();
+    // Small changes are appended to the log.
+    index.delete(0L, 0L);
+    index.put(3L, 10000L);
+    index.commit();
+    assertTrue(new File("/tmp/bitmapindex2#bitmap").length() > snapshotSize);
+    index.put(3L, 10010L);
+    index.rollback();
+
+    index = new BitmapIndex("/tmp/bitmapindex2#bitmap", DataTypes.LongType);
+    assertEquals(333, index.get(0L).length);
+    assertEquals(333, index.get(1L).length);
+    assertArrayEquals(new long[] { 10000L }, index.get(3L));
+    assertEquals(1000L, index.all().cardinality());
+
+    // A large log is merged into a new snapshot.
+    for (long i = 0; i < 1000; i++) {
+      index.delete(i % 3, i * 10);
+    }
+    index.commit();
+    assertTrue(new File("/tmp/bitmapindex2#bitmap").length() < snapshotSize);
+    index = new BitmapIndex("/tmp/bitmapindex2#bitmap", DataTypes.LongType);
+    assertArrayEquals(new long[] { 10000L }, index.all().toArray());
+  }
+}
@@ -15,14 +15,25 @@
  */
 package com.cosyan.db.index;
 
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
 
 import org.junit.Test;
 
 import com.cosyan.db.index.ByteMultiTrie.LongMultiIndex;
 import com.cosyan.db.index.ByteMultiTrie.StringMultiIndex;
+import com.cosyan.db.index.ByteTrie.RuntimeIndexException;
+import com.cosyan.db.io.Serializer;
+import com.cosyan.db.model.DataTypes;
+import com.google.common.collect.Maps;
 
 public class ByteMultiTrieTest {
 
@@ -38,6 +49,10 @@ public class ByteMultiTrieTest {
     org.junit.Assert.assertEquals(expected, actual);
   }
 
+  private void assertEquals(long expected, long actual) {
+    org.junit.Assert.assertEquals(expected, actual);
+  }
+
   @Test
   public void testLongByteTrie() throws Exception {
     Files.deleteIfExists(Paths.get("/tmp/longindex#chain"));
@@ -157,4 +172,203 @@ public class ByteMultiTrieTest {
     }
     assertEquals(v10L.stream().mapToLong(Long::longValue).toArray(), index.get("a"));
   }
+
+  @Test
+  public void testBulkLoad() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/stringindex_bulk#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/stringindex_bulk#index"));
+    StringMultiIndex index = new StringMultiIndex("/tmp/stringindex_bulk");
+    List<Map.Entry<String, Long>> entries = new ArrayList<>();
+    for (long i = 0; i < 25; i++) {
+      entries.add(Maps.immutableEntry("a", i));
+    }
+    entries.add(Maps.immutableEntry("ab", 100L));
+    for (long i = 0; i < 10; i++) {
+      entries.add(Maps.immutableEntry("b", 200L + i));
+    }
+    index.bulkLoad(entries.iterator());
+    index.commit();
+    assertEquals(25, index.get("a").length);
+    assertEquals(new long[] { 100L }, index.get("ab"));
+    assertEquals(10, index.get("b").length);
+    assertEquals(new long[0], index.get("c"));
+    // Appending to a bulk loaded chain.
+    index.put("a", 25L);
+    index.put("b", 210L);
+    index.commit();
+    assertEquals(26, index.get("a").length);
+    assertEquals(true, index.get("b")[10] == 210L);
+  }
+
+  @Test
+  public void testGrowingNodes() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_hot#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/longindex_hot#index"));
+    LongMultiIndex index = new LongMultiIndex("/tmp/longindex_hot");
+    long[] expected = new long[1000];
+    for (int i = 0; i < 1000; i++) {
+      expected[i] = i;
+      index.put(1L, i);
+    }
+    index.commit();
+    assertEquals(expected, index.get(1L));
+    // Nodes of 10, 20, 40, ..., 640 slots: 7 nodes instead of 100.
+    long slots = 10 + 20 + 40 + 80 + 160 + 320 + 640;
+    assertEquals(1L + 7 * 16 + slots * 8, index.stats().getIndexFileSize());
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_compact#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/longindex_compact#index"));
+    LongMultiIndex index = new LongMultiIndex("/tmp/longindex_compact");
+    for (long i = 0; i < 100; i++) {
+      index.put(1L, i);
+      index.put(2L, i);
+    }
+    index.commit();
+    long size = index.stats().getIndexFileSize();
+
+    // Few deletes leave the chain in place.
+    assertEquals(true, index.delete(1L, 0L));
+    index.commit();
+    assertEquals(size, index.stats().getIndexFileSize());
+    assertEquals(99, index.get(1L).length);
+
+    // Deleting most of the values rewrites the chain into one node.
+    for (long i = 1; i < 80; i++) {
+      assertEquals(true, index.delete(1L, i));
+    }
+    index.commit();
+    assertEquals(size + 16 + 20 * 8, index.stats().getIndexFileSize());
+    assertEquals(LongStream.range(80, 100).toArray(), index.get(1L));
+    index.put(1L, 100L);
+    index.commit();
+    assertEquals(LongStream.range(80, 101).toArray(), index.get(1L));
+    assertEquals(LongStream.range(0, 100).toArray(), index.get(2L));
+
+    // Deleting every value removes the key.
+    for (long i = 0; i < 100; i++) {
+      assertEquals(true, index.delete(2L, i));
+    }
+    index.commit();
+    assertEquals(new long[0], index.get(2L));
+    assertEquals(false, index.delete(2L));
+
+    index.close();
+    index = new LongMultiIndex("/tmp/longindex_compact");
+    assertEquals(LongStream.range(80, 101).toArray(), index.get(1L));
+    assertEquals(new long[0], index.get(2L));
+  }
+
+  @Test
+  public void testCompactionRollback() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_compact2#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/longindex_compact2#index"));
+    LongMultiIndex index = new LongMultiIndex("/tmp/longindex_compact2");
+    for (long i = 0; i < 30; i++) {
+      index.put(1L, i);
+    }
+    index.commit();
+    for (long i = 0; i < 30; i++) {
+      index.delete(1L, i);
+    }
+    index.rollback();
+    index.put(1L, 30L);
+    index.commit();
+    assertEquals(LongStream.range(0, 31).toArray(), index.get(1L));
+  }
+
+  @Test
+  public void testBulkLoadHotKey() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_bulk#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/longindex_bulk#index"));
+    LongMultiIndex index = new LongMultiIndex("/tmp/longindex_bulk");
+    List<Map.Entry<Long, Long>> entries = new ArrayList<>();
+    for (long i = 0; i < 20000; i++) {
+      entries.add(Maps.immutableEntry(1L, i));
+    }
+    entries.add(Maps.immutableEntry(2L, 0L));
+    index.bulkLoad(entries.iterator());
+    index.commit();
+    assertEquals(LongStream.range(0, 20000).toArray(), index.get(1L));
+    assertEquals(new long[] { 0L }, index.get(2L));
+    // Nodes of 8192, 8192, 3616 and 10 slots.
+    assertEquals(1L + 4 * 16 + (20000 + 10) * 8, index.stats().getIndexFileSize());
+    index.put(1L, 20000L);
+    index.commit();
+    assertEquals(LongStream.range(0, 20001).toArray(), index.get(1L));
+  }
+
+  @Test(expected = RuntimeIndexException.class)
+  public void testUnsupportedFormat() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_old#index"));
+    Files.write(Paths.get("/tmp/longindex_old#chain"), new byte[] { 7, 0, 0, 0, 0, 0, 0, 0, 0 });
+    new LongMultiIndex("/tmp/longindex_old");
+  }
+
+  private void writeLegacyNode(DataOutputStream out, long nextPointer, long... values) throws Exception {
+    out.writeLong(nextPointer);
+    for (int i = 0; i < 10; i++) {
+      out.writeLong(i < values.length ? values[i] : Long.MIN_VALUE);
+    }
+  }
+
+  @Test
+  public void testMigrateLegacyFormat() throws Exception {
+    // Index and chain files of the old format with keys 1 << 56 and 2 << 56.
+    DataOutputStream out = new DataOutputStream(new FileOutputStream("/tmp/longindex_legacy#index"));
+    ByteBuffer root = ByteBuffer.allocate(257 * 8);
+    root.asLongBuffer().put(129, 2056L).put(130, 2081L);
+    out.write(root.array());
+    Serializer.writeColumn(1L << 56, DataTypes.LongType, out);
+    out.writeLong(1L);
+    out.writeLong(89L);
+    Serializer.writeColumn(2L << 56, DataTypes.LongType, out);
+    out.writeLong(177L);
+    out.writeLong(177L);
+    out.close();
+    out = new DataOutputStream(new FileOutputStream("/tmp/longindex_legacy#chain"));
+    out.write(0);
+    writeLegacyNode(out, 89L, 10L, Long.MIN_VALUE, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L);
+    writeLegacyNode(out, 0L, 110L);
+    // All the values of the key are deleted.
+    writeLegacyNode(out, 0L);
+    out.close();
+
+    LongMultiIndex index = new LongMultiIndex("/tmp/longindex_legacy");
+    assertEquals(new long[] { 10L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L, 110L }, index.get(1L << 56));
+    assertEquals(new long[0], index.get(2L << 56));
+    index.put(1L << 56, 120L);
+    index.put(2L << 56, 130L);
+    index.commit();
+    index.close();
+
+    index = new LongMultiIndex("/tmp/longindex_legacy");
+    assertEquals(new long[] { 10L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L, 110L, 120L }, index.get(1L << 56));
+    assertEquals(new long[] { 130L }, index.get(2L << 56));
+    assertEquals(false, Files.exists(Paths.get("/tmp/longindex_legacy#chain.legacy")));
+  }
+
+  @Test
+  public void testReplace() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/replacemultiindex#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/replacemultiindex#index"));
+    LongMultiIndex index = new LongMultiIndex("/tmp/replacemultiindex");
+    index.put(1L, 10L);
+    index.put(1L, 20L);
+    index.put(2L, 30L);
+    index.commit();
+
+    assertEquals(true, index.replace(1L, 20L, 40L));
+    assertEquals(false, index.replace(1L, 30L, 50L));
+    assertEquals(new long[] { 10L, 40L }, index.get(1L));
+    index.rollback();
+    assertEquals(new long[] { 10L, 20L }, index.get(1L));
+
+    index.replace(1L, 10L, 50L);
+    index.commit();
+    assertEquals(new long[] { 50L, 20L }, index.get(1L));
+    assertEquals(new long[] { 30L }, index.get(2L));
+  }
 }
@@ -17,14 +17,25 @@ package com.cosyan.db.index;
 
 import static org.junit.Assert.fail;
 
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 
 import com.cosyan.db.index.ByteTrie.IndexException;
 import com.cosyan.db.index.ByteTrie.LongIndex;
 import com.cosyan.db.index.ByteTrie.StringIndex;
+import com.cosyan.db.io.Serializer;
+import com.cosyan.db.model.DataTypes;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.SignedBytes;
 
 public class ByteTrieTest {
 
@@ -270,4 +281,183 @@ public class ByteTrieTest {
     } catch (IndexException e) {
     }
   }
+
+  @Test
+  public void testBulkLoad() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_bulk"));
+    LongIndex index = new LongIndex("/tmp/longindex_bulk");
+    Random random = new Random(0);
+    List<Map.Entry<Long, Long>> entries = new ArrayList<>();
+    for (long i = -1000; i < 1000; i++) {
+      entries.add(Maps.immutableEntry(i * 997 + random.nextInt(997), i));
+    }
+    entries.add(Maps.immutableEntry(Long.MIN_VALUE, 1L));
+    entries.add(Maps.immutableEntry(Long.MAX_VALUE, 2L));
+    entries.sort((e1, e2) -> SignedBytes.lexicographicalComparator().compare(
+        index.sortKey(e1.getKey()), index.sortKey(e2.getKey())));
+    index.bulkLoad(entries.iterator());
+    index.commit();
+    index.cleanUp();
+    for (Map.Entry<Long, Long> entry : entries) {
+      assertEquals(entry.getValue(), index.get(entry.getKey()));
+    }
+    assertEquals(null, index.get(997L * 2000));
+    // Regular puts and deletes keep working.
+    index.put(997L * 2000, 5L);
+    assertEquals(true, index.delete(Long.MIN_VALUE));
+    index.commit();
+    assertEquals(5L, index.get(997L * 2000));
+    assertEquals(null, index.get(Long.MIN_VALUE));
+  }
+
+  @Test
+  public void testStringBulkLoad() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/stringindex_bulk"));
+    StringIndex index = new StringIndex("/tmp/stringindex_bulk");
+    List<Map.Entry<String, Long>> entries = new ArrayList<>();
+    // Keys which are prefixes of each other.
+    entries.add(Maps.immutableEntry("", 1L));
+    entries.add(Maps.immutableEntry("a", 2L));
+    entries.add(Maps.immutableEntry("ab", 3L));
+    entries.add(Maps.immutableEntry("abc", 4L));
+    entries.add(Maps.immutableEntry("abd", 5L));
+    entries.add(Maps.immutableEntry("b", 6L));
+    index.bulkLoad(entries.iterator());
+    index.commit();
+    index.cleanUp();
+    for (Map.Entry<String, Long> entry : entries) {
+      assertEquals(entry.getValue(), index.get(entry.getKey()));
+    }
+    assertEquals(null, index.get("abe"));
+  }
+
+  @Test
+  public void testBulkLoadDuplicateKeys() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_bulk"));
+    LongIndex index = new LongIndex("/tmp/longindex_bulk");
+    List<Map.Entry<Long, Long>> entries = new ArrayList<>();
+    entries.add(Maps.immutableEntry(1L, 1L));
+    entries.add(Maps.immutableEntry(2L, 2L));
+    entries.add(Maps.immutableEntry(2L, 3L));
+    try {
+      index.bulkLoad(entries.iterator());
+      fail();
+    } catch (IndexException e) {
+    }
+    // Rolled back, the index is still empty and usable.
+    assertEquals(null, index.get(1L));
+    index.put(1L, 10L);
+    index.commit();
+    assertEquals(10L, index.get(1L));
+  }
+
+  @Test
+  public void testAdaptiveNodes() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_adaptive"));
+    LongIndex index = new LongIndex("/tmp/longindex_adaptive");
+    // The last byte varies, the node of the 7 byte prefix grows to 4, 16, 48 and 256 children.
+    for (long i = 0; i < 256; i++) {
+      index.put(i, i * 10);
+      if (i % 3 == 0) {
+        index.commit();
+      }
+    }
+    index.commit();
+    for (long i = 0; i < 256; i++) {
+      assertEquals(i * 10, index.get(i));
+    }
+    index.cleanUp();
+    for (long i = 0; i < 256; i += 2) {
+      assertEquals(true, index.delete(i));
+    }
+    index.commit();
+    index.cleanUp();
+    for (long i = 0; i < 256; i++) {
+      assertEquals(i % 2 == 0 ? null : i * 10, index.get(i));
+    }
+  }
+
+  @Test
+  public void testSparseNodesAreSmall() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/stringindex_sparse"));
+    StringIndex index = new StringIndex("/tmp/stringindex_sparse");
+    for (int i = 0; i < 1000; i++) {
+      index.put("key_" + i, (long) i);
+    }
+    index.commit();
+    index.cleanUp();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals((long) i, index.get("key_" + i));
+    }
+    // A long[257] per index node would be more than 2 MB.
+    org.junit.Assert.assertTrue(index.stats().getIndexFileSize() < 500000);
+  }
+
+  private void writeLegacyLeaf(DataOutputStream out, long key, long value) throws Exception {
+    Serializer.writeColumn(key, DataTypes.LongType, out);
+    out.writeLong(value);
+  }
+
+  private void writeLegacyIndex(DataOutputStream out, long[] keys) throws Exception {
+    ByteBuffer bb = ByteBuffer.allocate(257 * 8);
+    bb.asLongBuffer().put(keys);
+    out.write(bb.array());
+  }
+
+  @Test
+  public void testMigrateLegacyFormat() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_legacy"));
+    // Keys 0x00000...01 and 0x0001000...00 share the first byte, 0x0100000...00 does not.
+    DataOutputStream out = new DataOutputStream(new FileOutputStream("/tmp/longindex_legacy"));
+    long[] root = new long[257];
+    root[128] = -2056L;
+    root[129] = 4146L;
+    writeLegacyIndex(out, root);
+    long[] node = new long[257];
+    node[128] = 4112L;
+    node[129] = 4129L;
+    writeLegacyIndex(out, node);
+    writeLegacyLeaf(out, 1L, 10L);
+    writeLegacyLeaf(out, 1L << 48, 20L);
+    writeLegacyLeaf(out, 1L << 56, 30L);
+    out.close();
+
+    LongIndex index = new LongIndex("/tmp/longindex_legacy");
+    assertEquals(10L, index.get(1L));
+    assertEquals(20L, index.get(1L << 48));
+    assertEquals(30L, index.get(1L << 56));
+    assertEquals(null, index.get(2L));
+    index.put(2L, 40L);
+    index.commit();
+    index.close();
+
+    index = new LongIndex("/tmp/longindex_legacy");
+    assertEquals(10L, index.get(1L));
+    assertEquals(40L, index.get(2L));
+    assertEquals(false, Files.exists(Paths.get("/tmp/longindex_legacy.legacy")));
+  }
+
+  @Test
+  public void testReplace() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/replaceindex"));
+    StringIndex index = new StringIndex("/tmp/replaceindex");
+    index.put("abc", 10L);
+    index.put("abd", 20L);
+    index.commit();
+    long size = index.stats().getIndexFileSize();
+
+    assertEquals(true, index.replace("abc", 30L));
+    assertEquals(false, index.replace("xyz", 40L));
+    org.junit.Assert.assertEquals(1, index.stats().getPendingNodes());
+    assertEquals(30L, index.get("abc"));
+    index.rollback();
+    assertEquals(10L, index.get("abc"));
+
+    index.replace("abc", 30L);
+    index.commit();
+    org.junit.Assert.assertEquals(size, index.stats().getIndexFileSize());
+    index.cleanUp();
+    assertEquals(30L, index.get("abc"));
+    assertEquals(20L, index.get("abd"));
+  }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class CompositeKeyTest {
+
+  private static CompositeKey key(Object... values) {
+    return CompositeKey.of(Arrays.asList(values));
+  }
+
+  private static void assertOrdered(CompositeKey... keys) {
+    for (int i = 1; i < keys.length; i++) {
+      assertTrue(keys[i - 1] + " < " + keys[i], keys[i - 1].compareTo(keys[i]) < 0);
+      assertTrue(keys[i] + " > " + keys[i - 1], keys[i].compareTo(keys[i - 1]) > 0);
+    }
+  }
+
+  @Test
+  public void testOrder() {
+    assertOrdered(key(-5L, "b"), key(1L, "a"), key(1L, "b"), key(2L, "a"));
+    assertOrdered(key("a", 5L), key("a\u0000", 1L), key("a\u0001", 1L), key("ab", 1L), key("b", 0L));
+    assertOrdered(key(null, 1L), key(-1.5, 1L), key(0.0, 1L), key(2.5, 1L));
+    assertOrdered(key(new Date(0L), false), key(new Date(0L), true), key(new Date(1L), null));
+    assertOrdered(key("x", null), key("x", Long.MIN_VALUE), key("x", Long.MAX_VALUE));
+    assertEquals(0, key(1L, "a").compareTo(key(1L, "a")));
+    assertEquals(key(1L, "a"), key(1L, "a"));
+  }
+
+  @Test
+  public void testPrefix() {
+    List<Object> prefix = ImmutableList.of("a");
+    assertEquals(0, key("a", 1L).compareTo(CompositeKey.prefix(prefix)));
+    assertEquals(0, key("a", null).compareTo(CompositeKey.prefix(prefix)));
+    assertTrue(key("ab", 1L).compareTo(CompositeKey.prefix(prefix)) > 0);
+    assertTrue(key("", 1L).compareTo(CompositeKey.prefix(prefix)) < 0);
+
+    assertEquals(0, key("a", 1L).compareTo(CompositeKey.notNullPrefix(prefix)));
+    assertTrue(key("a", null).compareTo(CompositeKey.notNullPrefix(prefix)) < 0);
+  }
+
+  @Test
+  public void testBPlusTree() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/composite"));
+    BPlusTree index = new BPlusTree("/tmp/composite", CompositeKey.TYPE);
+    long pos = 0;
+    for (long i = 0; i < 20; i++) {
+      for (long j = 0; j < 50; j++) {
+        index.put(key("k" + i, j), pos++);
+      }
+    }
+    index.put(key("k1", null), pos++);
+    index.commit();
+    index.cleanUp();
+
+    assertArrayEquals(new long[] { 57L }, index.get(key("k1", 7L)));
+    assertEquals(51, index.get(CompositeKey.prefix(ImmutableList.of("k1"))).length);
+    assertArrayEquals(new long[] { 53L, 54L, 55L }, index.range(
+        CompositeKey.prefix(ImmutableList.of("k1", 2L)), false,
+        CompositeKey.prefix(ImmutableList.of("k1", 5L)), true));
+    assertEquals(50, index.range(
+        CompositeKey.notNullPrefix(ImmutableList.of("k1")), true,
+        CompositeKey.notNullPrefix(ImmutableList.of("k1")), true).length);
+  }
+}
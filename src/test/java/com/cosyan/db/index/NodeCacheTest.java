@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.cosyan.db.index.ByteTrie.LongIndex;
+import com.cosyan.db.index.IndexStat.ByteTrieStat;
+
+public class NodeCacheTest {
+
+  @Test
+  public void testGetPutRemove() {
+    NodeCache cache = new NodeCache(1000);
+    NodeCache.Handle h1 = cache.register();
+    NodeCache.Handle h2 = cache.register();
+    h1.put(1L, "a", 10);
+    h2.put(1L, "b", 10);
+    h1.put(-5L, "c", 10);
+    assertEquals("a", h1.get(1L));
+    assertEquals("b", h2.get(1L));
+    assertEquals("c", h1.get(-5L));
+    assertNull(h2.get(-5L));
+    assertEquals(2, h1.hits());
+    assertEquals(1, h2.hits());
+    assertEquals(1, h2.misses());
+
+    assertEquals("a", h1.remove(1L));
+    assertNull(h1.get(1L));
+    assertEquals("b", h2.get(1L));
+    assertEquals(20, cache.usedBytes());
+
+    h1.clear();
+    assertEquals(0, h1.entries());
+    assertEquals(1, h2.entries());
+    assertEquals(10, cache.usedBytes());
+  }
+
+  @Test
+  public void testEviction() {
+    NodeCache cache = new NodeCache(100);
+    NodeCache.Handle h = cache.register();
+    for (long i = 0; i < 10; i++) {
+      h.put(i, i, 10);
+    }
+    assertEquals(0, h.evictions());
+    // Reading 0 gives it a second chance.
+    assertEquals(0L, h.get(0L));
+    h.put(10L, 10L, 10);
+    assertEquals(1, h.evictions());
+    assertEquals(100, cache.usedBytes());
+    assertEquals(0L, h.get(0L));
+    int missing = 0;
+    for (long i = 1; i <= 10; i++) {
+      if (h.get(i) == null) {
+        missing++;
+      }
+    }
+    assertEquals(1, missing);
+
+    for (long i = 11; i < 1000; i++) {
+      h.put(i, i, 10);
+    }
+    assertEquals(10, h.entries());
+    assertEquals(990, h.evictions());
+    assertTrue(cache.usedBytes() <= 100);
+  }
+
+  @Test
+  public void testManyEntries() {
+    NodeCache cache = new NodeCache(Long.MAX_VALUE);
+    NodeCache.Handle h1 = cache.register();
+    NodeCache.Handle h2 = cache.register();
+    HashMap<Long, Long> expected = new HashMap<>();
+    Random random = new Random(0);
+    for (int i = 0; i < 100000; i++) {
+      long key = random.nextInt(10000) - 5000;
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), h1.remove(key));
+      } else {
+        h1.put(key, key * 2, 1);
+        expected.put(key, key * 2);
+      }
+      h2.put(i, i, 1);
+    }
+    for (long key = -5000; key < 5000; key++) {
+      assertEquals(expected.get(key), h1.get(key));
+    }
+    assertEquals(expected.size(), h1.entries());
+    h2.clear();
+    assertEquals(expected.size(), cache.size());
+    for (long key = -5000; key < 5000; key++) {
+      assertEquals(expected.get(key), h1.get(key));
+    }
+  }
+
+  @Test
+  public void testByteTrieWithSmallCache() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/longindex_cache"));
+    NodeCache cache = new NodeCache(4096);
+    LongIndex index = new LongIndex("/tmp/longindex_cache", cache);
+    for (long i = 0; i < 1000; i++) {
+      index.put(i * 7919, i);
+    }
+    index.commit();
+    for (long i = 0; i < 1000; i++) {
+      assertEquals(Long.valueOf(i), index.get(i * 7919));
+    }
+    assertTrue(cache.usedBytes() <= 4096);
+    ByteTrieStat stat = index.stats();
+    assertTrue(stat.getCacheEvictions() > 0);
+    assertTrue(stat.getCacheHits() > 0);
+    assertTrue(stat.getCacheHitRatio() > 0.0 && stat.getCacheHitRatio() < 1.0);
+    index.close();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testIDIndexWithSmallCache() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/idindex_cache"));
+    NodeCache cache = new NodeCache(100000);
+    IDIndex index = new IDIndex("/tmp/idindex_cache", cache);
+    for (long i = 0; i < 40000; i += 7) {
+      index.put(i, i * 10);
+    }
+    index.commit();
+    for (long i = 0; i < 40000; i += 7) {
+      assertEquals(Long.valueOf(i * 10), index.get(i));
+    }
+    index.delete(7L);
+    index.rollback();
+    assertEquals(Long.valueOf(70L), index.get(7L));
+    assertTrue(cache.usedBytes() <= 100000);
+    assertTrue(index.stats().getCacheEvictions() > 0);
+    index.close();
+  }
+}
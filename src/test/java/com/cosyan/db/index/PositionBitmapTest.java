@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class PositionBitmapTest {
+
+  private static long[] toArray(TreeSet<Long> set) {
+    return set.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  @Test
+  public void testAddRemove() {
+    PositionBitmap bitmap = new PositionBitmap();
+    assertTrue(bitmap.isEmpty());
+    assertTrue(bitmap.add(5L));
+    assertFalse(bitmap.add(5L));
+    assertTrue(bitmap.add(1L << 40));
+    assertTrue(bitmap.add(3L));
+    assertArrayEquals(new long[] { 3L, 5L, 1L << 40 }, bitmap.toArray());
+    assertTrue(bitmap.contains(1L << 40));
+    assertFalse(bitmap.contains(4L));
+    assertTrue(bitmap.remove(5L));
+    assertFalse(bitmap.remove(5L));
+    assertEquals(2L, bitmap.cardinality());
+  }
+
+  @Test
+  public void testDenseContainer() {
+    PositionBitmap bitmap = new PositionBitmap();
+    // Converts to a bitmap container and back.
+    for (long i = 0; i < 10000; i++) {
+      bitmap.add(i * 3);
+    }
+    assertEquals(10000L, bitmap.cardinality());
+    assertTrue(bitmap.contains(2997L));
+    assertFalse(bitmap.contains(2998L));
+    for (long i = 0; i < 9000; i++) {
+      assertTrue(bitmap.remove(i * 3));
+    }
+    assertEquals(1000L, bitmap.cardinality());
+    assertEquals(27000L, bitmap.toArray()[0]);
+  }
+
+  @Test
+  public void testSetOperations() {
+    Random random = new Random(1);
+    for (int round = 0; round < 20; round++) {
+      TreeSet<Long> x = new TreeSet<>();
+      TreeSet<Long> y = new TreeSet<>();
+      PositionBitmap bx = new PositionBitmap();
+      PositionBitmap by = new PositionBitmap();
+      // Mix of sparse and dense containers.
+      int range = round % 2 == 0 ? 1 << 18 : 1 << 14;
+      for (int i = 0; i < 6000; i++) {
+        long vx = random.nextInt(range);
+        long vy = random.nextInt(range);
+        x.add(vx);
+        bx.add(vx);
+        y.add(vy);
+        by.add(vy);
+      }
+      TreeSet<Long> and = new TreeSet<>(x);
+      and.retainAll(y);
+      TreeSet<Long> or = new TreeSet<>(x);
+      or.addAll(y);
+      TreeSet<Long> andNot = new TreeSet<>(x);
+      andNot.removeAll(y);
+      assertArrayEquals(toArray(x), bx.toArray());
+      assertArrayEquals(toArray(and), bx.and(by).toArray());
+      assertArrayEquals(toArray(or), bx.or(by).toArray());
+      assertArrayEquals(toArray(andNot), bx.andNot(by).toArray());
+      assertEquals(andNot.size(), bx.andNot(by).cardinality());
+      // Operands are not modified.
+      assertArrayEquals(toArray(y), by.toArray());
+    }
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    PositionBitmap bitmap = new PositionBitmap();
+    for (long i = 0; i < 5000; i++) {
+      bitmap.add(i * 2);
+    }
+    bitmap.add(1L << 33);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bitmap.write(new DataOutputStream(bos));
+    PositionBitmap result = PositionBitmap.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    assertEquals(bitmap, result);
+  }
+}
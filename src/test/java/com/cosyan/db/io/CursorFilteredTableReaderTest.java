@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.cosyan.db.io.Indexes.IndexCursor;
+import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.RecordProvider.Record;
+import com.cosyan.db.io.RecordProvider.RecordReader;
+import com.cosyan.db.io.TableReader.CursorFilteredTableReader;
+import com.cosyan.db.io.TableReader.IterableTableReader;
+import com.cosyan.db.io.TableReader.SeekableTableReader;
+import com.cosyan.db.model.ColumnMeta;
+import com.cosyan.db.transaction.Resources;
+import com.google.common.collect.ImmutableList;
+
+public class CursorFilteredTableReaderTest {
+
+  private static class FixedTableReader extends SeekableTableReader {
+
+    public FixedTableReader() {
+      super(null);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public Record get(long position) throws IOException {
+      if (position == 2L) {
+        return RecordReader.EMPTY;
+      }
+      return new Record(position, new Object[] { position }, 0);
+    }
+
+    @Override
+    public Record get(Object key, Resources resources) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IterableTableReader iterableReader() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public RecordReader recordReader(long position) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IndexReader getIndex(String name) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @Test
+  public void testCursorSkipsDeletedRecords() throws IOException {
+    Iterator<Long> positions = ImmutableList.of(1L, 2L, 3L).iterator();
+    CursorFilteredTableReader reader = new CursorFilteredTableReader(
+        new FixedTableReader(), ColumnMeta.TRUE_COLUMN, null) {
+      @Override
+      protected IndexCursor openCursor() throws IOException {
+        return () -> positions.hasNext() ? positions.next() : -1L;
+      }
+    };
+    assertArrayEquals(new Object[] { 1L }, reader.next());
+    assertArrayEquals(new Object[] { 3L }, reader.next());
+    assertNull(reader.next());
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class DeletionVectorTest {
+
+  private static final String FILE_NAME = "/tmp/deletionvector#deleted";
+
+  @Test
+  public void testDeleteCommitRollback() throws IOException {
+    Files.deleteIfExists(Paths.get(FILE_NAME));
+    DeletionVector vector = new DeletionVector(FILE_NAME);
+    assertTrue(vector.delete(10L));
+    assertFalse(vector.delete(10L));
+    assertTrue(vector.contains(10L));
+    assertTrue(vector.hasPending());
+    assertEquals(0L, vector.size());
+    vector.commit();
+    assertFalse(vector.hasPending());
+    assertEquals(1L, vector.size());
+
+    assertFalse(vector.delete(10L));
+    assertTrue(vector.delete(30L));
+    assertTrue(vector.contains(30L));
+    vector.rollback();
+    assertFalse(vector.contains(30L));
+    assertTrue(vector.contains(10L));
+
+    vector.delete(20L);
+    vector.delete(5L);
+    vector.commit();
+    assertArrayEquals(new long[] { 5L, 10L, 20L }, vector.committed());
+
+    vector.clear();
+    assertEquals(0L, vector.size());
+    assertFalse(vector.contains(10L));
+    assertFalse(Files.exists(Paths.get(FILE_NAME)));
+  }
+
+  @Test
+  public void testReload() throws IOException {
+    Files.deleteIfExists(Paths.get(FILE_NAME));
+    DeletionVector vector = new DeletionVector(FILE_NAME);
+    vector.delete(1L);
+    vector.delete(100000L);
+    vector.commit();
+    vector.delete(7L);
+    vector.commit();
+    vector.delete(8L);
+
+    DeletionVector reloaded = new DeletionVector(FILE_NAME);
+    assertArrayEquals(new long[] { 1L, 7L, 100000L }, reloaded.committed());
+    assertFalse(reloaded.contains(8L));
+  }
+
+  @Test
+  public void testPartialBlock() throws IOException {
+    Files.deleteIfExists(Paths.get(FILE_NAME));
+    DeletionVector vector = new DeletionVector(FILE_NAME);
+    vector.delete(3L);
+    vector.commit();
+    long length = Files.size(Paths.get(FILE_NAME));
+    try (FileOutputStream out = new FileOutputStream(FILE_NAME, /* append= */true)) {
+      out.write(new byte[] { 0, 0, 0, 100, 1, 2 });
+    }
+
+    DeletionVector reloaded = new DeletionVector(FILE_NAME);
+    assertArrayEquals(new long[] { 3L }, reloaded.committed());
+    assertEquals(length, Files.size(Paths.get(FILE_NAME)));
+    reloaded.delete(4L);
+    reloaded.commit();
+    assertArrayEquals(new long[] { 3L, 4L }, new DeletionVector(FILE_NAME).committed());
+  }
+}
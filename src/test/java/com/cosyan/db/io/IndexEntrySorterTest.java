@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.cosyan.db.index.ByteMultiTrie.LongMultiIndex;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.TableMultiIndex.LongTableMultiIndex;
+import com.google.common.primitives.SignedBytes;
+
+public class IndexEntrySorterTest {
+
+  @Test
+  public void testSortWithRuns() throws Exception {
+    Files.deleteIfExists(Paths.get("/tmp/sorterindex#chain"));
+    Files.deleteIfExists(Paths.get("/tmp/sorterindex#index"));
+    LongTableMultiIndex index = new LongTableMultiIndex(new LongMultiIndex("/tmp/sorterindex"));
+    IndexEntrySorter sorter = new IndexEntrySorter(index, DataTypes.LongType, 7);
+    for (long i = 0; i < 100; i++) {
+      sorter.add((i * 37) % 50 - 25, i);
+    }
+    List<Map.Entry<Object, Long>> sorted = new ArrayList<>();
+    Iterator<Map.Entry<Object, Long>> iterator = sorter.sorted();
+    iterator.forEachRemaining(sorted::add);
+    sorter.close();
+    assertEquals(100, sorted.size());
+    for (int i = 1; i < sorted.size(); i++) {
+      assertTrue(SignedBytes.lexicographicalComparator().compare(
+          index.sortKey(sorted.get(i - 1).getKey()), index.sortKey(sorted.get(i).getKey())) <= 0);
+    }
+
+    index.bulkLoad(sorted.iterator());
+    index.commit();
+    for (long i = -25; i < 25; i++) {
+      assertEquals(2, index.get(i).length);
+    }
+  }
+}
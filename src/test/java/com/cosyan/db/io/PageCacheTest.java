@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import com.cosyan.db.io.PageCache.CachedFile;
+
+public class PageCacheTest {
+
+  private RandomAccessFile file(String name, int size) throws IOException {
+    Files.deleteIfExists(Paths.get("/tmp/" + name));
+    RandomAccessFile raf = new RandomAccessFile("/tmp/" + name, "rw");
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) i;
+    }
+    raf.write(data);
+    return raf;
+  }
+
+  @Test
+  public void testReadersSharePages() throws IOException {
+    CachedFile file = new PageCache(1024 * 1024).open(file("pagecache1", 100), 16, 0);
+    byte[] data = new byte[100];
+    new DataInputStream(file.inputStream()).readFully(data);
+    assertEquals(0, file.hits());
+    assertEquals(7, file.misses());
+    new DataInputStream(file.inputStream()).readFully(data);
+    assertEquals(7, file.hits());
+    assertEquals(7, file.misses());
+    assertEquals(99, data[99]);
+  }
+
+  @Test
+  public void testWriteInvalidatesPages() throws IOException {
+    CachedFile file = new PageCache(1024 * 1024).open(file("pagecache2", 40), 16, 0);
+    SeekableInputStream stream = file.inputStream();
+    stream.seek(17);
+    assertEquals(17, stream.read());
+    file.write(15, new byte[] { 100, 101, 102 });
+    file.write(40, new byte[] { 103 });
+    stream.reset();
+    byte[] data = new byte[41];
+    new DataInputStream(stream).readFully(data);
+    assertEquals(100, data[15]);
+    assertEquals(101, data[16]);
+    assertEquals(102, data[17]);
+    assertEquals(18, data[18]);
+    assertEquals(103, data[40]);
+    assertEquals(-1, stream.read());
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    PageCache pageCache = new PageCache(1024);
+    CachedFile file = pageCache.open(file("pagecache3", 4096), 256, 0);
+    byte[] data = new byte[4096];
+    new DataInputStream(file.inputStream()).readFully(data);
+    assertTrue(pageCache.usedBytes() <= 1024);
+    assertTrue(file.evictions() > 0);
+    assertEquals((byte) 4095, data[4095]);
+  }
+
+  @Test
+  public void testReadAhead() throws IOException {
+    CachedFile file = new PageCache(1024 * 1024).open(file("pagecache4", 1000), 100, 4);
+    byte[] data = new byte[1000];
+    new DataInputStream(file.inputStream()).readFully(data);
+    byte[] expected = new byte[1000];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = (byte) i;
+    }
+    assertArrayEquals(expected, data);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.cosyan.db.meta.MetaRepo.ModelException;
+import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.Ident;
+import com.google.common.collect.ImmutableList;
+
+public class RecordBufferTest {
+
+  @Test
+  public void testPrimitivesMatchDataOutputStream() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream expected = new DataOutputStream(bos);
+    RecordBuffer actual = new RecordBuffer(1);
+    expected.writeByte(-3);
+    expected.writeBoolean(true);
+    expected.writeShort(-2);
+    expected.writeInt(123456789);
+    expected.writeLong(-1234567890123L);
+    expected.writeDouble(1.5);
+    expected.writeChars("abc\u0151");
+    expected.writeUTF("x\u0000\u00e9\u20ac");
+    actual.writeByte(-3);
+    actual.writeBoolean(true);
+    actual.writeShort(-2);
+    actual.writeInt(123456789);
+    actual.writeLong(-1234567890123L);
+    actual.writeDouble(1.5);
+    actual.writeChars("abc\u0151");
+    actual.writeUTF("x\u0000\u00e9\u20ac");
+    assertArrayEquals(bos.toByteArray(), actual.toByteArray());
+  }
+
+  @Test
+  public void testEncodeReusesBuffer() throws IOException, ModelException {
+    BasicColumn deleted = new BasicColumn(1, new Ident("b"), DataTypes.LongType, true, false, false);
+    deleted.setDeleted(true);
+    ImmutableList<BasicColumn> columns = ImmutableList.of(
+        new BasicColumn(0, new Ident("a"), DataTypes.StringType, true, false, false),
+        deleted,
+        new BasicColumn(1, new Ident("c"), DataTypes.LongType, true, false, false));
+    RecordBuffer buffer = new RecordBuffer(4);
+    buffer.encode(new Object[] { "a long string value", 1L }, columns);
+    int length = buffer.encode(new Object[] { "x", null }, columns);
+    assertEquals(length, buffer.length());
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, length));
+    assertEquals(1, in.readByte());
+    int payloadSize = in.readInt();
+    assertEquals(length - 9, payloadSize);
+    assertEquals("x", Serializer.readColumn(DataTypes.StringType, in));
+    assertNull(Serializer.readColumn(DataTypes.LongType, in));
+    assertNull(Serializer.readColumn(DataTypes.LongType, in));
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 5, payloadSize);
+    assertEquals((int) checksum.getValue(), in.readInt());
+    assertArrayEquals(buffer.toByteArray(), Serializer.serialize(new Object[] { "x", null }, columns));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.cosyan.db.io.ResultSerializer.JSONResult;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StatementResult;
+import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+
+public class ResultSerializerTest {
+
+  private ImmutableList<Result> encodeDecode(Result result) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ResultSerializer.encode(result, out);
+    return ResultSerializer.decode(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  @Test
+  public void testQueryResult() throws IOException {
+    ImmutableList<DataType<?>> types = ImmutableList.of(
+        DataTypes.StringType, DataTypes.LongType, DataTypes.DoubleType,
+        DataTypes.BoolType, DataTypes.dateType(), DataTypes.enumType(ImmutableList.of("a", "b")));
+    Date date = new Date(1000L);
+    QueryResult result = new QueryResult(ImmutableList.of("s", "l", "d", "b", "t", "e"), types,
+        ImmutableList.of(
+            new Object[] { "x", 1L, 1.5, true, date, "b" },
+            new Object[] { null, null, null, null, null, null }));
+    ImmutableList<Result> results = encodeDecode(new TransactionResult(ImmutableList.of(result)));
+    assertEquals(1, results.size());
+    QueryResult decoded = (QueryResult) results.get(0);
+    assertEquals(result.getHeader(), decoded.getHeader());
+    assertEquals(result.getTypes().toString(), decoded.getTypes().toString());
+    assertEquals(2, decoded.getValues().size());
+    assertArrayEquals(result.getValues().get(0), decoded.getValues().get(0));
+    assertArrayEquals(result.getValues().get(1), decoded.getValues().get(1));
+  }
+
+  @Test
+  public void testListAndNullTypes() throws Exception {
+    ImmutableList<DataType<?>> types = ImmutableList.of(
+        DataTypes.StringType.toListType(), DataTypes.LongType.toListType(), DataTypes.NullType);
+    QueryResult result = new QueryResult(ImmutableList.of("s", "l", "n"), types,
+        ImmutableList.of(
+            new Object[] { new Object[] { "x", "y" }, new Object[] { 1L }, null },
+            new Object[] { null, new Object[] {}, null }));
+    QueryResult decoded = (QueryResult) encodeDecode(result).get(0);
+    assertEquals(result.getTypes().toString(), decoded.getTypes().toString());
+    assertArrayEquals(result.getValues().get(0), decoded.getValues().get(0));
+    assertArrayEquals(result.getValues().get(1), decoded.getValues().get(1));
+  }
+
+  @Test
+  public void testOtherResults() throws IOException {
+    ImmutableList<Result> results = encodeDecode(new TransactionResult(ImmutableList.of(
+        new StatementResult(3),
+        new QueryResult(ImmutableList.of("a"), ImmutableList.of(DataTypes.LongType), ImmutableList.of()))));
+    assertEquals(2, results.size());
+    assertEquals(3, ((JSONResult) results.get(0)).toJSON().getLong("lines"));
+    assertEquals(0, ((QueryResult) results.get(1)).getValues().size());
+
+    Result error = encodeDecode(new ErrorResult(new IOException("x"))).get(0);
+    assertFalse(error.isSuccess());
+    assertEquals("x", error.toJSON().getJSONObject("error").getString("msg"));
+  }
+}
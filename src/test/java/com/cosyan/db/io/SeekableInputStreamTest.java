@@ -15,9 +15,16 @@
  */
 package com.cosyan.db.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.TreeMap;
 
 import org.junit.Test;
 
@@ -111,4 +118,111 @@ public class SeekableInputStreamTest {
     assertEquals(1, stream.read());
     stream.close();
   }
+
+  @Test
+  public void testTreeMapInputStreamWithOffset() throws IOException {
+    TreeMap<Long, byte[]> map = new TreeMap<>();
+    map.put(10L, new byte[] { 1, 2 });
+    map.put(12L, new byte[] { 3 });
+    SeekableInputStream stream = new TreeMapInputStream(map);
+    assertEquals(1, stream.read());
+    assertEquals(2, stream.read());
+    assertEquals(3, stream.read());
+    assertEquals(-1, stream.read());
+    stream.seek(2);
+    assertEquals(3, stream.read());
+    stream.close();
+  }
+
+  @Test
+  public void testPatchedInputStream() throws IOException {
+    TreeMap<Long, byte[]> patches = new TreeMap<>();
+    patches.put(1L, new byte[] { 10, 11 });
+    patches.put(4L, new byte[] { 12 });
+    SeekableInputStream stream = new PatchedInputStream(
+        new SeekableByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 }), patches, 0L);
+    assertEquals(1, stream.read());
+    assertEquals(10, stream.read());
+    assertEquals(11, stream.read());
+    assertEquals(4, stream.read());
+    stream.seek(4);
+    assertEquals(12, stream.read());
+    assertEquals(6, stream.read());
+    assertEquals(-1, stream.read());
+
+    stream.seek(2);
+    byte[] buffer = new byte[4];
+    assertEquals(4, stream.read(buffer, 0, 4));
+    assertEquals(11, buffer[0]);
+    assertEquals(4, buffer[1]);
+    assertEquals(12, buffer[2]);
+    assertEquals(6, buffer[3]);
+    stream.close();
+  }
+
+  @Test
+  public void testBulkReadSeekableSequenceInputStream() throws IOException {
+    SeekableInputStream stream = new SeekableSequenceInputStream(ImmutableList.of(
+        new SeekableByteArrayInputStream(new byte[] { 1, 2 }),
+        new SeekableByteArrayInputStream(new byte[] {}),
+        new SeekableByteArrayInputStream(new byte[] { 3, 4, 5 })));
+    byte[] buffer = new byte[5];
+    new DataInputStream(stream).readFully(buffer);
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, buffer);
+    assertEquals(-1, stream.read(buffer, 0, 5));
+    stream.seek(3);
+    assertEquals(4, stream.read());
+    stream.seek(1);
+    assertEquals(3, stream.skip(3));
+    assertEquals(5, stream.read());
+    stream.close();
+  }
+
+  @Test
+  public void testBulkReadTreeMapInputStream() throws IOException {
+    TreeMap<Long, byte[]> map = new TreeMap<>();
+    map.put(10L, new byte[] { 1, 2 });
+    map.put(12L, new byte[] {});
+    map.put(13L, new byte[] { 3, 4 });
+    SeekableInputStream stream = new TreeMapInputStream(map);
+    byte[] buffer = new byte[4];
+    new DataInputStream(stream).readFully(buffer);
+    assertArrayEquals(new byte[] { 1, 2, 3, 4 }, buffer);
+    assertEquals(-1, stream.read(buffer, 0, 4));
+    stream.seek(0);
+    assertEquals(3, stream.skip(3));
+    assertEquals(4, stream.read());
+    assertEquals(0, stream.skip(1));
+    stream.close();
+  }
+
+  @Test
+  public void testBulkReadFileStreams() throws IOException {
+    Files.deleteIfExists(Paths.get("/tmp/seekableinputstream"));
+    RandomAccessFile raf = new RandomAccessFile("/tmp/seekableinputstream", "rw");
+    int pageSize = PageCache.DEFAULT_PAGE_SIZE;
+    byte[] data = new byte[pageSize * 2 + 10];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    raf.write(data);
+    PageCache pageCache = new PageCache(1024 * 1024);
+    for (SeekableInputStream stream : ImmutableList.of(
+        pageCache.open(raf, pageSize, 0).inputStream(),
+        pageCache.open(raf, 1000, 3).inputStream(),
+        new MemoryBufferedSeekableFileStream(raf))) {
+      stream.seek(0);
+      assertEquals(0, stream.read());
+      byte[] buffer = new byte[data.length - 1];
+      new DataInputStream(stream).readFully(buffer);
+      assertArrayEquals(Arrays.copyOfRange(data, 1, data.length), buffer);
+      assertEquals(-1, stream.read(buffer, 0, 1));
+      stream.seek(5);
+      assertEquals(pageSize, stream.skip(pageSize));
+      assertEquals(data[pageSize + 5] & 0xff, stream.read());
+      assertEquals(data.length - pageSize - 6, stream.skip(data.length));
+      assertEquals(-1, stream.read());
+    }
+    raf.close();
+  }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class SpillBufferTest {
+
+  private static final String FILE_NAME = "/tmp/spillbuffer#pending";
+
+  @Test
+  public void testAppendAndRead() throws IOException {
+    SpillBuffer buffer = new SpillBuffer(FILE_NAME, 8);
+    SeekableInputStream stream = buffer.inputStream(0L);
+    assertEquals(-1, stream.read());
+    buffer.append(new byte[] { 1, 2, 3 });
+    assertFalse(buffer.isSpilled());
+    assertEquals(1, stream.read());
+    buffer.append(new byte[] { 4, 5, 6, 7, 8, 9 });
+    assertTrue(buffer.isSpilled());
+    assertEquals(9, buffer.size());
+    byte[] data = new byte[8];
+    new DataInputStream(stream).readFully(data);
+    assertArrayEquals(new byte[] { 2, 3, 4, 5, 6, 7, 8, 9 }, data);
+    assertEquals(-1, stream.read());
+
+    buffer.write(2, new byte[] { 10, 11 });
+    stream.seek(1);
+    assertEquals(2, stream.read());
+    assertEquals(10, stream.read());
+    assertEquals(11, stream.read());
+    assertEquals(5, buffer.inputStream(4L).skip(10));
+
+    buffer.clear();
+    assertEquals(0, buffer.size());
+    assertFalse(Files.exists(Paths.get(FILE_NAME)));
+    assertEquals(-1, buffer.inputStream(0L).read());
+  }
+
+  @Test
+  public void testWriteTo() throws IOException {
+    Files.deleteIfExists(Paths.get("/tmp/spillbuffer"));
+    RandomAccessFile raf = new RandomAccessFile("/tmp/spillbuffer", "rw");
+    raf.write(new byte[] { 100, 101 });
+    MemoryBufferedSeekableFileStream stream = new MemoryBufferedSeekableFileStream(raf);
+    SpillBuffer buffer = new SpillBuffer(FILE_NAME, 4);
+    for (byte i = 0; i < 10; i++) {
+      buffer.append(new byte[] { i });
+    }
+    buffer.writeTo(stream, 2L);
+    assertEquals(12, stream.length());
+    byte[] data = new byte[12];
+    stream.seek(0);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) stream.read();
+    }
+    assertArrayEquals(new byte[] { 100, 101, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 }, data);
+    assertEquals(12, raf.length());
+    buffer.clear();
+    stream.close();
+  }
+}
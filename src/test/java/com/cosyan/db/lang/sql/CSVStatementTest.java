@@ -27,6 +27,7 @@ import org.junit.Test;
 
 import com.cosyan.db.UnitTestBase;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.meta.MetaRepo.RuleException;
 import com.cosyan.db.model.DateFunctions;
 
 public class CSVStatementTest extends UnitTestBase {
@@ -90,4 +91,33 @@ public class CSVStatementTest extends UnitTestBase {
     QueryResult r = query("select * from t6;");
     assertValues(new Object[][] { { "abc" }, { "abc" }, { "abc" } }, r);
   }
+
+  @Test
+  public void testCSVImportBulk() throws IOException {
+    String csv = config.dataDir() + File.separator + "bulk_1.csv";
+    StringBuilder sb = new StringBuilder("a,b,c\n");
+    for (int i = 9; i >= 0; i--) {
+      sb.append(i).append(",x").append(i % 3).append(",").append(i % 2).append("\n");
+    }
+    FileUtils.writeStringToFile(new File(csv), sb.toString(), Charset.defaultCharset());
+    execute("create table t7(a integer, constraint pk_a primary key (a));");
+    execute("insert into t7 values (0), (1);");
+    execute("create table t8(a integer unique, b varchar, c integer, "
+        + "constraint fk_c foreign key (c) references t7(a));");
+    execute("create index t8.b;");
+    statement("import from csv '" + csv + "' into t8 with header commit 4 bulk;");
+
+    assertValues(new Object[][] { { 10L } }, query("select count(1) as c from t8;"));
+    assertValues(new Object[][] { { 3L, "x0", 1L } }, query("select * from t8 where a = 3;"));
+    assertValues(new Object[][] { { 0L }, { 3L }, { 6L }, { 9L } },
+        query("select a from t8 where b = 'x0' order by a;"));
+
+    FileUtils.writeStringToFile(new File(csv), "a,b,c\n20,y,0\n21,y,5\n", Charset.defaultCharset());
+    assertError(RuleException.class, "Foreign key violation, value '5' not present.",
+        error("import from csv '" + csv + "' into t8 with header bulk;"));
+    FileUtils.writeStringToFile(new File(csv), "a,b,c\n22,y,0\n22,y,1\n", Charset.defaultCharset());
+    assertError(RuleException.class, "Key '22' already present in index.",
+        error("import from csv '" + csv + "' into t8 with header bulk;"));
+    assertValues(new Object[][] { { 10L } }, query("select count(1) as c from t8;"));
+  }
 }
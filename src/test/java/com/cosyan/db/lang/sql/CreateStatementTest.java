@@ -20,16 +20,23 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.io.PageCache;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
 import com.cosyan.db.meta.Dependencies.TableDependencies;
 import com.cosyan.db.meta.MaterializedTable;
+import com.cosyan.db.meta.MaterializedTable.ReadAhead;
+import com.cosyan.db.meta.MaterializedTable.Retention;
+import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.model.BasicColumn;
+import com.cosyan.db.model.BasicColumn.IndexType;
 import com.cosyan.db.model.DataTypes;
+import com.cosyan.db.model.DateFunctions;
 import com.cosyan.db.model.Ident;
 import com.cosyan.db.model.Keys.ForeignKey;
 import com.cosyan.db.model.Keys.ReverseForeignKey;
 import com.cosyan.db.model.Rule;
 import com.cosyan.db.model.TableMultiIndex;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 public class CreateStatementTest extends UnitTestBase {
@@ -110,6 +117,57 @@ public class CreateStatementTest extends UnitTestBase {
     assertEquals(1, metaRepo.collectMultiIndexes(metaRepo.table(new Ident("t7"))).size());
   }
 
+  @Test
+  public void testCreateCompositeIndex() throws Exception {
+    execute("create table t7c (a varchar, b integer, c float);");
+    execute("insert into t7c values ('x', 1, 1.0), ('y', 2, 2.0);");
+    execute("create index t7c.i (a, b, c);");
+    assertEquals(ImmutableList.of("a", "b", "c"), metaRepo.table(new Ident("t7c")).compositeIndexes().get("i")
+        .getColumns().stream().map(c -> c.getName()).collect(ImmutableList.toImmutableList()));
+    assertEquals(1, metaRepo.collectCompositeIndexes(metaRepo.table(new Ident("t7c"))).size());
+
+    assertError(ModelException.class, "[17, 18]: Duplicate column or index name in 't7c': 'i'.",
+        error("create index t7c.i (a, b);"));
+    assertError(ModelException.class, "[17, 18]: Duplicate column or index name in 't7c': 'a'.",
+        error("create index t7c.a (a, b);"));
+    assertError(ModelException.class, "[17, 19]: Composite indexes need at least two columns.",
+        error("create index t7c.j2 (a);"));
+    assertError(ModelException.class, "[23, 24]: Duplicate column 'a' in index.",
+        error("create index t7c.j (a, a);"));
+  }
+
+  @Test
+  public void testCreateBTreeIndex() throws Exception {
+    execute("create table t7b (a integer, b varchar unique, c boolean, d integer);");
+    execute("create index t7b.a using btree;");
+    assertEquals(1, metaRepo.collectMultiIndexes(metaRepo.table(new Ident("t7b"))).size());
+    assertEquals(IndexType.BTREE, metaRepo.table(new Ident("t7b")).column(new Ident("a")).getIndexType());
+
+    assertError(ModelException.class, "[17, 18]: B+tree indexes are not supported for unique columns.",
+        error("create index t7b.b using btree;"));
+    assertError(ModelException.class,
+        "[17, 18]: B+tree indexes are only supported for varchar, integer, float and date types, not boolean.",
+        error("create index t7b.c using btree;"));
+    execute("create index t7b.d;");
+    assertError(ModelException.class, "[17, 18]: Column 'd' is already indexed.",
+        error("create index t7b.d using btree;"));
+  }
+
+  @Test
+  public void testCreateBitmapIndex() throws Exception {
+    execute("create table t7d (a enum('x', 'y'), b varchar unique, c float, d boolean);");
+    execute("create index t7d.a using bitmap;");
+    execute("create index t7d.d using bitmap;");
+    assertEquals(2, metaRepo.collectMultiIndexes(metaRepo.table(new Ident("t7d"))).size());
+    assertEquals(IndexType.BITMAP, metaRepo.table(new Ident("t7d")).column(new Ident("a")).getIndexType());
+
+    assertError(ModelException.class, "[17, 18]: Bitmap indexes are not supported for unique columns.",
+        error("create index t7d.b using bitmap;"));
+    assertError(ModelException.class,
+        "[17, 18]: Bitmap indexes are only supported for varchar, integer, boolean and enum types, not float.",
+        error("create index t7d.c using bitmap;"));
+  }
+
   @Test
   public void testCreateSimpleRule() throws Exception {
     execute("create table t9 (a integer, constraint c_a check (a > 1));");
@@ -247,4 +305,66 @@ public class CreateStatementTest extends UnitTestBase {
     assertArrayEquals(new long[] { 0L, 32L }, index.get("x"));
     assertArrayEquals(new long[] { 16L }, index.get("y"));
   }
+
+  @Test
+  public void testCreateTableWithReadAhead() throws Exception {
+    execute("create log table t27 (a integer, b varchar) with read ahead 2 buffer 64;");
+    MaterializedTable t27 = metaRepo.table(new Ident("t27"));
+    assertEquals(new ReadAhead(64, 2), t27.readAhead().get());
+    StringBuilder sb = new StringBuilder("insert into t27 values ");
+    for (int i = 0; i < 100; i++) {
+      sb.append(i > 0 ? ", " : "").append("(" + i + ", 'x')");
+    }
+    execute(sb.append(";").toString());
+    assertValues(new Object[][] { { 100L, 4950L } }, query("select count(1), sum(a) from t27;"));
+    assertValues(new Object[][] { { 50L } }, query("select a from t27 where a = 50;"));
+
+    ErrorResult e = error("create lookup table t28 (a integer) with read ahead 2;");
+    assertEquals("[20, 23]: Read-ahead is only supported for log tables.", e.getError().getMessage());
+  }
+
+  @Test
+  public void testCreateTableWithPartitioning() throws Exception {
+    execute("create table t29 (a integer, b varchar) partition by a % 3;");
+    MaterializedTable t29 = metaRepo.table(new Ident("t29"));
+    assertEquals("(a % 3)", t29.getPartitioning().get().getExpr().print());
+    execute("insert into t29 values (0, 'x'), (1, 'x'), (2, 'x'), (3, 'x'), (4, 'x'), (5, 'x'), (6, 'x'), (7, 'x');");
+    assertValues(new Object[][] { { 1L }, { 4L }, { 7L } }, query("select a from t29 where a % 3 = 1;"));
+
+    execute("alter table t29 drop partition 1;");
+    assertValues(new Object[][] { { 5L } }, query("select count(1) from t29;"));
+    assertValues(new Object[][] { { 0L } }, query("select count(1) from t29 where a % 3 = 1;"));
+
+    ErrorResult e = error("alter table t29 drop partition 'x';");
+    assertEquals("[12, 15]: Expected 'integer' partition key but got 'x'.", e.getError().getMessage());
+    execute("create table t30 (a integer);");
+    e = error("alter table t30 drop partition 1;");
+    assertEquals("[12, 15]: Table 't30' is not partitioned.", e.getError().getMessage());
+  }
+
+  @Test
+  public void testCreateTableWithRetention() throws Exception {
+    execute("create log table t31 (a integer, ts timestamp) with retention 5 days on ts, read ahead 2;");
+    MaterializedTable t31 = metaRepo.table(new Ident("t31"));
+    assertEquals(new Retention(5, "ts"), t31.retention().get());
+    assertEquals(new ReadAhead(PageCache.DEFAULT_PAGE_SIZE, 2), t31.readAhead().get());
+    assertEquals("get_epoch_day(ts)", t31.getPartitioning().get().getExpr().print());
+    execute("insert into t31 values (1, dt '2018-01-01 12:00:00'), (2, dt '2018-01-04 12:00:00'), "
+        + "(3, dt '2018-01-05 12:00:00'), (4, dt '2018-01-10 12:00:00'), (5, null);");
+
+    long now = DateFunctions.sdf1.parse("2018-01-10 12:00:00").getTime();
+    assertEquals(ImmutableMap.of("t31", 2L), dbApi.retentionManager().expire(now));
+    assertValues(new Object[][] { { 3L }, { 4L }, { 5L } }, query("select a from t31;"));
+    assertEquals(ImmutableMap.of("t31", 0L), dbApi.retentionManager().expire(now));
+
+    ErrorResult e = error("create lookup table t32 (a integer, ts timestamp) with retention 5 days on ts;");
+    assertEquals("[20, 23]: Retention is only supported for log tables.", e.getError().getMessage());
+    e = error("create log table t32 (a integer, ts timestamp) partition by a with retention 5 days on ts;");
+    assertEquals("[17, 20]: Tables with retention are partitioned by the retention column.",
+        e.getError().getMessage());
+    e = error("create log table t32 (a integer, ts timestamp) with retention 0 days on ts;");
+    assertEquals("[17, 20]: Invalid retention period.", e.getError().getMessage());
+    e = error("create log table t32 (a integer, ts timestamp) with retention 5 days on a;");
+    assertEquals("[17, 20]: Retention column 'a' has to be a timestamp.", e.getError().getMessage());
+  }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.db.lang.sql;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result.ErrorResult;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.meta.MetaRepo.ModelException;
+
+public class CursorStatementTest extends UnitTestBase {
+
+  @Test
+  public void testFetch() {
+    execute("create table t1 (a varchar, b integer);");
+    execute("insert into t1 values ('x', 1), ('y', 2), ('z', 3), ('w', 4), ('v', 5);");
+    execute("declare c1 cursor for select a, b + 1 as c from t1 where b > 1;");
+
+    QueryResult r1 = query("fetch 2 from c1;");
+    assertHeader(new String[] { "a", "c" }, r1);
+    assertValues(new Object[][] { { "y", 3L }, { "z", 4L } }, r1);
+
+    execute("insert into t1 values ('u', 6);");
+    QueryResult r2 = query("fetch 2 from c1;");
+    assertValues(new Object[][] { { "w", 5L }, { "v", 6L } }, r2);
+
+    QueryResult r3 = query("fetch 2 from c1;");
+    assertValues(new Object[][] { { "u", 7L } }, r3);
+
+    QueryResult r4 = query("fetch from c1;");
+    assertValues(new Object[][] {}, r4);
+
+    execute("close c1;");
+    assertError(ModelException.class, "[11, 13]: Cursor 'c1' does not exist.", error("fetch from c1;"));
+  }
+
+  @Test
+  public void testFetchDeletedRecords() {
+    execute("create table t2 (a varchar);");
+    execute("insert into t2 values ('x'), ('y'), ('z');");
+    execute("declare c2 cursor for select a from t2;");
+
+    QueryResult r1 = query("fetch 1 from c2;");
+    assertValues(new Object[][] { { "x" } }, r1);
+    execute("delete from t2 where a = 'y';");
+    QueryResult r2 = query("fetch 1 from c2;");
+    assertValues(new Object[][] { { "z" } }, r2);
+    execute("close c2;");
+  }
+
+  @Test
+  public void testFetchWithIndex() {
+    execute("create table t3 (a varchar, b integer);");
+    execute("create index t3.a;");
+    execute("insert into t3 values ('x', 1), ('y', 2), ('x', 3), ('x', 4);");
+    execute("declare c3 cursor for select b from t3 where a = 'x';");
+
+    QueryResult r1 = query("fetch 2 from c3;");
+    assertValues(new Object[][] { { 1L }, { 3L } }, r1);
+    QueryResult r2 = query("fetch 2 from c3;");
+    assertValues(new Object[][] { { 4L } }, r2);
+    execute("close c3;");
+  }
+
+  @Test
+  public void testFetchWithBTreeIndex() {
+    execute("create table t6 (a varchar, b integer);");
+    execute("create index t6.a using btree;");
+    execute("insert into t6 values ('x', 1), ('y', 2), ('x', 3), ('x', 4), ('x', 5);");
+    execute("declare c6 cursor for select b from t6 where a = 'x';");
+
+    QueryResult r1 = query("fetch 2 from c6;");
+    assertValues(new Object[][] { { 1L }, { 3L } }, r1);
+    execute("delete from t6 where b = 4;");
+    execute("insert into t6 values ('x', 6);");
+    QueryResult r2 = query("fetch 2 from c6;");
+    assertValues(new Object[][] { { 5L }, { 6L } }, r2);
+    QueryResult r3 = query("fetch 2 from c6;");
+    assertValues(new Object[][] {}, r3);
+    execute("close c6;");
+  }
+
+  @Test
+  public void testCursorErrors() {
+    execute("create table t4 (a varchar);");
+    ErrorResult e1 = error("declare c4 cursor for select a from t4 order by a;");
+    assertError(ModelException.class,
+        "[8, 10]: Cursors do not support group by, order by, distinct or limit.", e1);
+
+    execute("declare c4 cursor for select a from t4;");
+    ErrorResult e2 = error("declare c4 cursor for select a from t4;");
+    assertEquals("Cursor 'c4' already exists.", e2.getError().getMessage());
+    execute("close c4;");
+  }
+
+  @Test
+  public void testCloseCursors() {
+    execute("create table t5 (a varchar);");
+    execute("insert into t5 values ('x');");
+    execute("declare c5 cursor for select a from t5;");
+    session.closeCursors();
+    assertError(ModelException.class, "[11, 13]: Cursor 'c5' does not exist.", error("fetch from c5;"));
+    execute("declare c5 cursor for select a from t5;");
+    assertValues(new Object[][] { { "x" } }, query("fetch from c5;"));
+    execute("close c5;");
+  }
+}
@@ -16,10 +16,13 @@
 package com.cosyan.db.lang.sql;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.CrashResult;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
 import com.cosyan.db.meta.MetaRepo.RuleException;
@@ -179,4 +182,17 @@ public class DeleteTest extends UnitTestBase {
     QueryResult r2 = query("select e, fk_d.fk_c.a from t12;");
     assertValues(new Object[][] { { 2L, "x" }, { -1L, "x" } }, r2);
   }
+
+  @Test
+  public void testDeleteRollbackAfterCrash() throws Exception {
+    execute("create table t13 (a varchar, b integer);");
+    execute("insert into t13 values ('k1', 6), ('k1', 6), ('k2', 6), ('k1', null), ('k1', 7);");
+    // Comparing to the null value fails after the first records are deleted.
+    Result result = session.execute("delete from t13 where b = 6;");
+    assertTrue(result instanceof CrashResult);
+    assertValues(new Object[][] { { 5L } }, query("select count(1) from t13;"));
+
+    execute("insert into t13 values ('k3', 1);");
+    assertValues(new Object[][] { { 6L } }, query("select count(1) from t13;"));
+  }
 }
@@ -88,4 +88,17 @@ public class DropStatementTest extends UnitTestBase {
       assertEquals("[14, 15]: Column 'c' not found in table 't6'.", e.getError().getMessage());
     }
   }
+
+  @Test
+  public void testDropCompositeIndex() throws Exception {
+    execute("create table t7 (a varchar, b integer);");
+    execute("create index t7.i (a, b);");
+    assertEquals(1, metaRepo.collectCompositeIndexes(metaRepo.table(new Ident("t7"))).size());
+    ErrorResult e = error("alter table t7 drop b;");
+    assertEquals("[20, 21]: Cannot drop column 'b', it is used by index 'i (a, b)'.", e.getError().getMessage());
+
+    execute("drop index t7.i;");
+    assertEquals(0, metaRepo.collectCompositeIndexes(metaRepo.table(new Ident("t7"))).size());
+    execute("alter table t7 drop b;");
+  }
 }
@@ -15,10 +15,23 @@
  */
 package com.cosyan.db.lang.sql;
 
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.lang.transaction.Result.StreamedQueryResult;
+import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.lang.transaction.ResultSink;
+import com.cosyan.db.model.DataTypes.DataType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 public class SelectStatementTest extends UnitTestBase {
 
@@ -200,4 +213,162 @@ public class SelectStatementTest extends UnitTestBase {
     assertHeader(new String[] { "a", "b" }, r1);
     assertValues(new Object[][] { { "x", "y" } }, r1);
   }
+
+  @Test
+  public void testStreamedQuery() {
+    execute("create table t25 (a varchar, b integer);");
+    execute("insert into t25 values ('x', 1), ('y', 2), ('z', 3);");
+
+    List<String> header = new ArrayList<>();
+    List<Object[]> rows = new ArrayList<>();
+    long[] end = new long[1];
+    Result result = session.execute("select a, b * 2 as c from t25 where b > 1;", new ResultSink() {
+      @Override
+      public void header(ImmutableList<String> h, ImmutableList<DataType<?>> types) throws IOException {
+        header.addAll(h);
+      }
+
+      @Override
+      public void row(Object[] values) throws IOException {
+        rows.add(values);
+      }
+
+      @Override
+      public void end(long lines) throws IOException {
+        end[0] = lines;
+      }
+    });
+    assertEquals(ImmutableList.of("a", "c"), header);
+    assertEquals(2, rows.size());
+    assertArrayEquals(new Object[] { "y", 4L }, rows.get(0));
+    assertArrayEquals(new Object[] { "z", 6L }, rows.get(1));
+    assertEquals(2L, end[0]);
+    StreamedQueryResult sr = (StreamedQueryResult) Iterables.getOnlyElement(((TransactionResult) result).getResults());
+    assertEquals(2L, sr.getLines());
+  }
+
+  @Test
+  public void testBTreeIndexRange() {
+    execute("create table t26 (a integer, b varchar);");
+    execute("create index t26.a using btree;");
+    execute("insert into t26 values (5, 'e'), (1, 'a'), (3, 'c'), (2, 'b'), (4, 'd'), (3, 'cc'), (null, 'n');");
+
+    assertValues(new Object[][] { { 2L, "b" }, { 3L, "c" }, { 3L, "cc" }, { 4L, "d" } },
+        query("select * from t26 where a >= 2 and a < 5;"));
+    assertValues(new Object[][] { { 4L, "d" }, { 5L, "e" } },
+        query("select * from t26 where 3 < a;"));
+    assertValues(new Object[][] { { 3L, "cc" } },
+        query("select * from t26 where a > 2 and a <= 3 and b = 'cc';"));
+    assertValues(new Object[][] {},
+        query("select * from t26 where a > 2 and a < 5 and b = 'x';"));
+    assertValues(new Object[][] { { 3L, "c" }, { 3L, "cc" } },
+        query("select * from t26 where a = 3;"));
+
+    execute("delete from t26 where a = 3;");
+    assertValues(new Object[][] { { 2L, "b" }, { 4L, "d" } },
+        query("select * from t26 where a >= 2 and a < 5;"));
+  }
+
+  @Test
+  public void testBTreeIndexOrderBy() {
+    execute("create table t27 (a timestamp not null, b integer);");
+    execute("create index t27.a using btree;");
+    execute("insert into t27 values (dt '2018-03-01', 3), (dt '2018-01-01', 1), (dt '2018-02-01', 2);");
+
+    assertValues(new Object[][] { { 3L }, { 2L } },
+        query("select b, a from t27 order by a desc limit 2;"));
+    assertValues(new Object[][] { { 1L }, { 2L }, { 3L } },
+        query("select b, a from t27 order by a;"));
+    assertValues(new Object[][] { { 2L }, { 1L } },
+        query("select b, a from t27 where a < dt '2018-03-01' order by a desc;"));
+    assertValues(new Object[][] { { 2L } },
+        query("select b, a from t27 where b > 1 order by a limit 1;"));
+  }
+
+  @Test
+  public void testCompositeIndex() {
+    execute("create table t28 (tenant varchar, ts timestamp, v integer);");
+    execute("insert into t28 values ('x', dt '2018-01-01', 1), ('x', dt '2018-02-01', 2), "
+        + "('x', dt '2018-03-01', 3), ('y', dt '2018-02-01', 4), ('y', null, 5), (null, dt '2018-02-01', 6);");
+    execute("create index t28.tenant_ts (tenant, ts);");
+    execute("insert into t28 values ('x', dt '2018-04-01', 7);");
+
+    assertValues(new Object[][] { { 2L }, { 3L } },
+        query("select v from t28 where tenant = 'x' and ts >= dt '2018-02-01' and ts < dt '2018-04-01';"));
+    assertValues(new Object[][] { { 3L }, { 7L } },
+        query("select v from t28 where tenant = 'x' and ts > dt '2018-02-01';"));
+    // Nulls come first in the index.
+    assertValues(new Object[][] { { 5L }, { 4L } },
+        query("select v from t28 where tenant = 'y';"));
+    assertValues(new Object[][] { { 4L } },
+        query("select v from t28 where tenant = 'y' and ts <= dt '2018-02-01';"));
+    assertValues(new Object[][] { { 4L }, { 5L } },
+        query("select v from t28 where tenant > 'x' order by v;"));
+    assertValues(new Object[][] { { 3L }, { 7L } },
+        query("select v from t28 where tenant = 'x' and v > 2;"));
+
+    execute("delete from t28 where v = 2;");
+    execute("update t28 set ts = dt '2018-05-01' where v = 3;");
+    assertValues(new Object[][] { { 7L }, { 3L } },
+        query("select v from t28 where tenant = 'x' and ts > dt '2018-01-01';"));
+  }
+
+  @Test
+  public void testBitmapIndex() {
+    execute("create table t29 (s enum('new', 'open', 'done'), f boolean, v integer);");
+    execute("insert into t29 values ('new', true, 1), ('open', true, 2), ('open', false, 3), "
+        + "('done', false, 4), ('done', true, 5), ('new', false, 6);");
+    execute("create index t29.s using bitmap;");
+    execute("create index t29.f using bitmap;");
+    execute("insert into t29 values ('open', true, 7);");
+
+    assertValues(new Object[][] { { 2L }, { 7L } },
+        query("select v from t29 where s = 'open' and f;"));
+    assertValues(new Object[][] { { 1L }, { 2L }, { 5L }, { 6L }, { 7L } },
+        query("select v from t29 where s = 'new' or f;"));
+    assertValues(new Object[][] { { 3L }, { 4L } },
+        query("select v from t29 where not (s = 'new' or f);"));
+    assertValues(new Object[][] { { 2L }, { 7L } },
+        query("select v from t29 where s = 'open' and v % 2 = 0 or s = 'open' and f;"));
+    assertValues(new Object[][] { { 4L } },
+        query("select v from t29 where not f and v > 3 and s = 'done';"));
+
+    assertValues(new Object[][] { { 2L } }, query("select count(1) from t29 where s = 'done';"));
+    assertValues(new Object[][] { { 3L } }, query("select count(1) as c from t29 where not s = 'done' and f or v = 7;"));
+    assertValues(new Object[][] { { 5L } }, query("select count(1) from t29 where not s = 'done';"));
+
+    execute("delete from t29 where v = 2;");
+    execute("update t29 set s = 'done' where v = 3;");
+    // Enum values are updated in place.
+    assertValues(new Object[][] { { 3L }, { 4L }, { 5L } },
+        query("select v from t29 where s = 'done';"));
+    assertValues(new Object[][] { { 1L } }, query("select count(1) from t29 where s = 'open';"));
+
+    // Nulls are neither equal nor not equal to a value.
+    execute("insert into t29 values ('new', null, 8);");
+    assertValues(new Object[][] { { 3L } }, query("select count(1) from t29 where not f;"));
+    assertValues(new Object[][] { { 6L } }, query("select count(1) from t29 where f or not f;"));
+    assertValues(new Object[][] { { 7L } }, query("select count(1) from t29;"));
+  }
+
+  @Test
+  public void testPartitionPruning() {
+    execute("create table t30 (d integer, v integer) partition by d;");
+    execute("insert into t30 values (1, 1), (1, 2), (2, 3), (3, 4), (3, 5), (null, 6);");
+
+    assertValues(new Object[][] { { 1L }, { 2L } }, query("select v from t30 where d = 1;"));
+    assertValues(new Object[][] { { 3L }, { 4L }, { 5L } }, query("select v from t30 where d >= 2;"));
+    assertValues(new Object[][] { { 1L }, { 2L }, { 3L } }, query("select v from t30 where 3 > d;"));
+    assertValues(new Object[][] { { 4L } }, query("select v from t30 where d > 1 and v = 4;"));
+    assertValues(new Object[][] { { 3L } }, query("select count(1) from t30 where d > 1;"));
+    assertValues(new Object[][] { { 3L } }, query("select count(1) from t30 where not d = 1;"));
+
+    execute("update t30 set d = 2 where v = 5;");
+    execute("delete from t30 where v = 3;");
+    assertValues(new Object[][] { { 5L } }, query("select v from t30 where d = 2;"));
+    assertValues(new Object[][] { { 4L } }, query("select v from t30 where d = 3;"));
+
+    execute("alter table t30 drop partition 1;");
+    assertValues(new Object[][] { { 4L }, { 5L }, { 6L } }, query("select v from t30;"));
+  }
 }
@@ -17,6 +17,7 @@ package com.cosyan.db.lang.sql;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
@@ -25,6 +26,7 @@ import org.junit.Test;
 import com.cosyan.db.UnitTestBase;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.cosyan.db.meta.MaterializedTable;
 import com.cosyan.db.meta.MetaRepo.ModelException;
 import com.cosyan.db.meta.MetaRepo.RuleException;
 import com.cosyan.db.model.Ident;
@@ -162,7 +164,8 @@ public class UpdateTest extends UnitTestBase {
     execute("update t9 set b = 2;");
     QueryResult r2 = query("select a, fk_a.a as a2, fk_a.b as b2 from t10;");
     assertValues(new Object[][] { { 1L, 1L, 2L } }, r2);
-    assertEquals(27L, t9a.get0(1L));
+    // Integers are updated in place, the file pointer does not change.
+    assertEquals(0L, t9a.get0(1L));
     assertEquals(0L, t10a.get(1L)[0]);
   }
 
@@ -448,4 +451,93 @@ public class UpdateTest extends UnitTestBase {
     ErrorResult e1 = error("update t34 set a = '201803';");
     assertError(RuleException.class, "Invalid timestamp '201803'.", e1);
   }
+
+  @Test
+  public void testUpdateInPlace() throws Exception {
+    execute("create table t35 (a integer unique, b integer, c varchar, d float, "
+        + "constraint c_b check (b > 0), constraint c_c check (length(c) < 3));");
+    execute("create index t35.b;");
+    execute("insert into t35 values (1, 10, 'x', 1.0), (2, 20, 'y', 2.0);");
+    MaterializedTable t35 = metaRepo.table(new Ident("t35"));
+    long size = new File(t35.fileName()).length();
+    TableUniqueIndex t35a = metaRepo.collectUniqueIndexes(t35).get("a");
+    TableMultiIndex t35b = metaRepo.collectMultiIndexes(t35).get("b");
+    long pointer = t35a.get0(2L);
+
+    execute("update t35 set a = a + 1, b = b + 1, d = d * 2;");
+    assertValues(new Object[][] { { 2L, 11L, "x", 2.0 }, { 3L, 21L, "y", 4.0 } },
+        query("select * from t35;"));
+    assertEquals(size, new File(t35.fileName()).length());
+    assertEquals(pointer, t35a.get0(3L));
+    assertEquals(pointer, t35b.get(21L)[0]);
+    assertEquals(0, t35b.get(20L).length);
+
+    ErrorResult e1 = error("update t35 set b = b - 11;");
+    assertError(RuleException.class, "Constraint check c_b failed.", e1);
+    assertValues(new Object[][] { { 2L, 11L, "x", 2.0 }, { 3L, 21L, "y", 4.0 } },
+        query("select * from t35;"));
+
+    execute("update t35 set c = 'zz' where a = 3;");
+    assertValues(new Object[][] { { 2L, 11L, "x", 2.0 }, { 3L, 21L, "zz", 4.0 } },
+        query("select * from t35;"));
+    assertEquals(true, new File(t35.fileName()).length() > size);
+  }
+
+  @Test
+  public void testUpdateRemapsIndexes() throws Exception {
+    execute("create table t36 (a integer unique, b varchar, c varchar, constraint c_a check (a > 0));");
+    execute("create index t36.b;");
+    execute("insert into t36 values (1, 'x', 'p'), (2, 'y', 'q');");
+    MaterializedTable t36 = metaRepo.table(new Ident("t36"));
+    TableUniqueIndex t36a = metaRepo.collectUniqueIndexes(t36).get("a");
+    TableMultiIndex t36b = metaRepo.collectMultiIndexes(t36).get("b");
+    long size = new File(t36.fileName()).length();
+
+    execute("update t36 set c = 'rr' where a = 1;");
+    assertValues(new Object[][] { { 2L, "y", "q" }, { 1L, "x", "rr" } },
+        query("select * from t36;"));
+    assertEquals(size, t36a.get0(1L));
+    assertEquals(size, t36b.get("x")[0]);
+    assertEquals(1, t36b.get("x").length);
+
+    // Records taking each other's unique keys.
+    execute("update t36 set a = 3 - a, b = b + '2';");
+    assertValues(new Object[][] { { 1L, "y2", "q" }, { 2L, "x2", "rr" } },
+        query("select * from t36 where a > 0;"));
+    assertEquals(0, t36b.get("x").length);
+    assertEquals(1, t36b.get("x2").length);
+
+    ErrorResult e1 = error("update t36 set a = 0 - a, b = 'z';");
+    assertError(RuleException.class, "Constraint check c_a failed.", e1);
+    assertValues(new Object[][] { { 1L, "y2", "q" }, { 2L, "x2", "rr" } },
+        query("select * from t36 where a > 0;"));
+  }
+
+  @Test
+  public void testUpdateAfterAddColumn() throws Exception {
+    execute("create table t37 (a varchar, b integer);");
+    execute("insert into t37 values ('x', 1), ('y', 2);");
+    execute("alter table t37 add c float;");
+    // The old records have no value for the new column, so they cannot be overwritten in place.
+    execute("update t37 set b = b + 10 where a = 'x';");
+    assertValues(new Object[][] { { "y", 2L, null }, { "x", 11L, null } },
+        query("select * from t37;"));
+    execute("update t37 set b = b + 10 where a = 'x';");
+    assertValues(new Object[][] { { "y", 2L, null }, { "x", 21L, null } },
+        query("select * from t37;"));
+  }
+
+  @Test
+  public void testUpdateAfterDropColumn() throws Exception {
+    execute("create table t38 (a varchar, b integer, c varchar);");
+    execute("insert into t38 values ('x', 1, 'long value'), ('y', 2, 'long value');");
+    execute("alter table t38 drop c;");
+    // The old records still contain the dropped value, so they cannot be overwritten in place.
+    execute("update t38 set b = b + 10 where a = 'x';");
+    assertValues(new Object[][] { { "y", 2L }, { "x", 11L } },
+        query("select * from t38;"));
+    execute("update t38 set b = b + 10 where a = 'x';");
+    assertValues(new Object[][] { { "y", 2L }, { "x", 21L } },
+        query("select * from t38;"));
+  }
 }
@@ -22,6 +22,7 @@ import org.junit.Test;
 import com.cosyan.db.lang.sql.Lexer;
 import com.cosyan.db.lang.sql.Parser;
 import com.cosyan.db.logic.PredicateHelper.VariableEquals;
+import com.cosyan.db.logic.PredicateHelper.VariableRange;
 import com.cosyan.db.model.Ident;
 import com.cosyan.db.session.IParser.ParserException;
 import com.google.common.collect.ImmutableList;
@@ -36,6 +37,11 @@ public class PredicateHelperTest {
         PredicateHelper.extractClauses(parser.parseExpression(lexer.tokenize(sql))));
   }
 
+  private void assertRange(String sql, VariableRange... ranges) throws ParserException {
+    assertEquals(ImmutableList.copyOf(ranges),
+        PredicateHelper.extractRanges(parser.parseExpression(lexer.tokenize(sql))));
+  }
+
   @Test
   public void testExtractClauses() throws ParserException {
     assertClause("a = 1 and b = 2;",
@@ -52,4 +58,17 @@ public class PredicateHelperTest {
     assertClause("(a > 1 or b = 2) and c = 3;",
         new VariableEquals(new Ident("c"), 3L));
   }
+
+  @Test
+  public void testExtractRanges() throws ParserException {
+    assertRange("a > 1 and a <= 5 and 3 < b;",
+        new VariableRange(new Ident("a"), 1L, false, 5L, true),
+        new VariableRange(new Ident("b"), 3L, false, null, true));
+    assertRange("a >= 1 and a > 2 and a < 10 and a < 7;",
+        new VariableRange(new Ident("a"), 2L, false, 7L, false));
+    assertRange("5 >= a and (b = 1 and c < 'x');",
+        new VariableRange(new Ident("a"), null, true, 5L, true),
+        new VariableRange(new Ident("c"), null, true, "x", false));
+    assertRange("a > 1 or a < 5;");
+  }
 }
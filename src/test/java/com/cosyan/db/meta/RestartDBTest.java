@@ -31,15 +31,22 @@ import com.cosyan.db.DBApi;
 import com.cosyan.db.auth.Authenticator.Method;
 import com.cosyan.db.conf.Config;
 import com.cosyan.db.conf.Config.ConfigException;
+import com.cosyan.db.io.Indexes.BitmapIndexReader;
 import com.cosyan.db.io.Indexes.IndexReader;
+import com.cosyan.db.io.Indexes.OrderedIndexReader;
 import com.cosyan.db.lang.transaction.Result;
 import com.cosyan.db.lang.transaction.Result.CrashResult;
 import com.cosyan.db.lang.transaction.Result.ErrorResult;
 import com.cosyan.db.lang.transaction.Result.QueryResult;
 import com.cosyan.db.lang.transaction.Result.TransactionResult;
+import com.cosyan.db.meta.MaterializedTable.ReadAhead;
+import com.cosyan.db.meta.MaterializedTable.Retention;
+import com.cosyan.db.model.BasicColumn.IndexType;
+import com.cosyan.db.model.DateFunctions;
 import com.cosyan.db.model.Ident;
 import com.cosyan.db.session.Session;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 
 public class RestartDBTest {
@@ -289,6 +296,68 @@ public class RestartDBTest {
     }
   }
 
+  @Test
+  public void testCompositeIndexAfterRestart() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    dbApi.newAdminSession().execute("create table t14c(a varchar, b integer);");
+    dbApi.newAdminSession().execute("insert into t14c values ('x', 1), ('x', 2), ('y', 1);");
+    dbApi.newAdminSession().execute("create index t14c.ab (a, b);");
+
+    dbApi = new DBApi(config);
+    assertEquals(1, dbApi.getMetaRepo().collectCompositeIndexes(dbApi.getMetaRepo().table("t14c")).size());
+    QueryResult result = query("select b from t14c where a = 'x' and b > 1;", dbApi.newAdminSession());
+    assertEquals(1, result.getValues().size());
+    assertEquals(2L, result.getValues().get(0)[0]);
+  }
+
+  @Test
+  public void testBTreeIndexAfterRestart() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    dbApi.newAdminSession().execute("create table t14b(a integer);");
+    dbApi.newAdminSession().execute("insert into t14b values (1), (2);");
+    dbApi.newAdminSession().execute("create index t14b.a using btree;");
+
+    dbApi = new DBApi(config);
+    MaterializedTable t14b = dbApi.getMetaRepo().table("t14b");
+    assertEquals(IndexType.BTREE, t14b.column(new Ident("a")).getIndexType());
+    IndexReader index = dbApi.getMetaRepo().collectIndexReaders(t14b).get("a");
+    assertTrue(index instanceof OrderedIndexReader);
+    assertArrayEquals(new long[] { 0L }, index.get(1L));
+    assertArrayEquals(new long[] { 18L }, index.get(2L));
+  }
+
+  @Test
+  public void testBitmapIndexAfterRestart() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    dbApi.newAdminSession().execute("create table t14d(a varchar, b boolean);");
+    dbApi.newAdminSession().execute("insert into t14d values ('x', true), ('y', true), ('x', false);");
+    dbApi.newAdminSession().execute("create index t14d.a using bitmap;");
+    dbApi.newAdminSession().execute("create index t14d.b using bitmap;");
+    dbApi.newAdminSession().execute("delete from t14d where a = 'y';");
+
+    dbApi = new DBApi(config);
+    MaterializedTable t14d = dbApi.getMetaRepo().table("t14d");
+    assertEquals(IndexType.BITMAP, t14d.column(new Ident("a")).getIndexType());
+    assertTrue(dbApi.getMetaRepo().collectIndexReaders(t14d).get("a") instanceof BitmapIndexReader);
+    QueryResult result = query("select count(1) from t14d where a = 'x' and b;", dbApi.newAdminSession());
+    assertEquals(1L, result.getValues().get(0)[0]);
+  }
+
+  @Test
+  public void testDeletesAfterRestart() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    dbApi.newAdminSession().execute("create table t14e(a varchar, b integer);");
+    dbApi.newAdminSession().execute("insert into t14e values ('x', 1), ('y', 2), ('z', 3);");
+    dbApi.newAdminSession().execute("delete from t14e where b = 2;");
+    dbApi.newAdminSession().execute("update t14e set b = 4 where a = 'z';");
+
+    dbApi = new DBApi(config);
+    QueryResult result = query("select a, b from t14e;", dbApi.newAdminSession());
+    assertEquals(2, result.getValues().size());
+    assertArrayEquals(new Object[] { "x", 1L }, result.getValues().get(0));
+    assertArrayEquals(new Object[] { "z", 4L }, result.getValues().get(1));
+  }
+
   @Test
   public void testIDIndexesAfterRestart() throws Exception {
     DBApi dbApi = new DBApi(config);
@@ -350,4 +419,54 @@ public class RestartDBTest {
       assertEquals("(fk1.b + 1) as x, (fk1.b + 2) as y;", t20.refs().get("s").getExpr());
     }
   }
+
+  @Test
+  public void testReadAheadAfterRestart() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    dbApi.newAdminSession().execute("create table t21(a integer) with read ahead 4 buffer 1024;");
+    dbApi.newAdminSession().execute("insert into t21 values (1), (2);");
+
+    dbApi = new DBApi(config);
+    MaterializedTable t21 = dbApi.getMetaRepo().table("t21");
+    assertEquals(new ReadAhead(1024, 4), t21.readAhead().get());
+    QueryResult result = query("select a from t21;", dbApi.newAdminSession());
+    assertEquals(2, result.getValues().size());
+  }
+
+  @Test
+  public void testPartitioningAfterRestart() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    dbApi.newAdminSession().execute("create table t22(a integer, b varchar) partition by b;");
+    dbApi.newAdminSession().execute("insert into t22 values (1, 'x'), (2, 'y'), (3, 'x');");
+    dbApi.newAdminSession().execute("alter table t22 drop partition 'y';");
+
+    dbApi = new DBApi(config);
+    MaterializedTable t22 = dbApi.getMetaRepo().table("t22");
+    assertEquals("b", t22.getPartitioning().get().getExpr().print());
+    assertTrue(dbApi.getMetaRepo().collectIndexReaders(t22).get(MaterializedTable.PARTITION_INDEX)
+        instanceof BitmapIndexReader);
+    QueryResult result = query("select a from t22 where b = 'x';", dbApi.newAdminSession());
+    assertEquals(2, result.getValues().size());
+    assertArrayEquals(new Object[] { 1L }, result.getValues().get(0));
+    assertArrayEquals(new Object[] { 3L }, result.getValues().get(1));
+    result = query("select count(1) from t22;", dbApi.newAdminSession());
+    assertEquals(2L, result.getValues().get(0)[0]);
+  }
+
+  @Test
+  public void testRetentionAfterRestart() throws Exception {
+    DBApi dbApi = new DBApi(config);
+    dbApi.newAdminSession().execute("create log table t23(a integer, ts timestamp) with retention 1 days on ts;");
+    dbApi.newAdminSession().execute(
+        "insert into t23 values (1, dt '2018-01-01 12:00:00'), (2, dt '2018-01-02 12:00:00');");
+
+    dbApi = new DBApi(config);
+    MaterializedTable t23 = dbApi.getMetaRepo().table("t23");
+    assertEquals(new Retention(1, "ts"), t23.retention().get());
+    long now = DateFunctions.sdf1.parse("2018-01-03 12:00:00").getTime();
+    assertEquals(ImmutableMap.of("t23", 1L), dbApi.retentionManager().expire(now));
+    QueryResult result = query("select a from t23;", dbApi.newAdminSession());
+    assertEquals(1, result.getValues().size());
+    assertArrayEquals(new Object[] { 2L }, result.getValues().get(0));
+  }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Gergely Svigruha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cosyan.ui.tcp;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.cosyan.db.UnitTestBase;
+import com.cosyan.db.lang.transaction.Result;
+import com.cosyan.db.lang.transaction.Result.QueryResult;
+import com.google.common.collect.ImmutableList;
+
+public class TCPServerTest extends UnitTestBase {
+
+  private static TCPServer server;
+
+  @BeforeClass
+  public static void setUpServer() throws Exception {
+    server = new TCPServer(dbApi, 0);
+    server.start();
+  }
+
+  @AfterClass
+  public static void tearDownServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    try (TCPClient client = new TCPClient("localhost", server.port())) {
+      assertTrue(client.execute("create table t1 (a varchar, b integer);").get(0).isSuccess());
+      assertTrue(client.execute("insert into t1 values ('x', 1), ('y', 2);").get(0).isSuccess());
+      QueryResult result = (QueryResult) client.execute("select a, b from t1;").get(0);
+      assertEquals(ImmutableList.of("a", "b"), result.getHeader());
+      assertArrayEquals(new Object[] { "x", 1L }, result.getValues().get(0));
+      assertArrayEquals(new Object[] { "y", 2L }, result.getValues().get(1));
+
+      ImmutableList<Result> error = client.execute("select c from t1;");
+      assertFalse(error.get(0).isSuccess());
+    }
+  }
+
+  @Test
+  public void testPipelining() throws Exception {
+    execute("create table t2 (a integer);");
+    try (TCPClient client = new TCPClient("localhost", server.port())) {
+      for (int i = 0; i < 100; i++) {
+        client.send("insert into t2 values (" + i + ");");
+        client.send("select count(1) as c from t2;");
+      }
+      for (int i = 0; i < 100; i++) {
+        assertTrue(client.receive().get(0).isSuccess());
+        QueryResult result = (QueryResult) client.receive().get(0);
+        assertEquals((long) i + 1, result.getValues().get(0)[0]);
+      }
+    }
+  }
+}